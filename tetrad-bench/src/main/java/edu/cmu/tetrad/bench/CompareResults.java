@@ -0,0 +1,121 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Compares two JMH JSON result files, say from the last release and from the
+ * current build, printing the ratio of scores for each benchmark and parameter
+ * setting they share and flagging those that got worse by more than a
+ * threshold (by default 10%). Exits with status 1 if any did, so it can fail a
+ * build.
+ * <p>
+ * Usage: CompareResults old.json new.json [threshold]
+ */
+public final class CompareResults {
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: CompareResults old.json new.json [threshold]");
+            System.exit(2);
+        }
+
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : 0.10;
+
+        Map<String, JSONObject> before = read(args[0]);
+        Map<String, JSONObject> after = read(args[1]);
+
+        int numRegressions = 0;
+
+        for (String key : after.keySet()) {
+            if (!before.containsKey(key)) {
+                System.out.println("new\t" + key);
+                continue;
+            }
+
+            JSONObject metric1 = before.get(key).getJSONObject("primaryMetric");
+            JSONObject metric2 = after.get(key).getJSONObject("primaryMetric");
+            double score1 = metric1.getDouble("score");
+            double score2 = metric2.getDouble("score");
+            double ratio = score2 / score1;
+
+            // Higher is better for throughput; lower is better for the time modes.
+            boolean throughput = "thrpt".equals(after.get(key).getString("mode"));
+            double change = throughput ? 1.0 / ratio - 1.0 : ratio - 1.0;
+            boolean regression = change > threshold;
+
+            if (regression) numRegressions++;
+
+            System.out.println(String.format("%s\t%s\t%.4g -> %.4g %s\t(%.3fx)",
+                    regression ? "WORSE" : change < -threshold ? "better" : "same",
+                    key, score1, score2, metric2.getString("scoreUnit"), ratio));
+        }
+
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                System.out.println("gone\t" + key);
+            }
+        }
+
+        if (numRegressions > 0) {
+            System.out.println(numRegressions + " regression(s) over " + (int) (100 * threshold) + "%.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a JMH JSON result file, keyed by benchmark name and parameters.
+     */
+    private static Map<String, JSONObject> read(String file) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        JSONArray results = new JSONArray(json);
+        Map<String, JSONObject> map = new TreeMap<>();
+
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            StringBuilder key = new StringBuilder(result.getString("benchmark"));
+
+            if (result.has("params")) {
+                JSONObject params = result.getJSONObject("params");
+
+                for (String name : new TreeSet<>(params.keySet())) {
+                    key.append(" ").append(name).append("=").append(params.get(name));
+                }
+            }
+
+            map.put(key.toString(), result);
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,114 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.data.CovarianceAccumulator;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of a full covariance matrix from continuous data, through
+ * CovarianceAccumulator in double and in float, and by the pairwise loops over
+ * demeaned columns that CovarianceMatrix used before it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CovarianceMatrixBenchmark {
+
+    @Param({"50", "200", "1000"})
+    public int numVars;
+
+    @Param({"1000", "10000"})
+    public int sampleSize;
+
+    private DataSet data;
+    private double[][] columns;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Graph graph = Fixtures.graph(numVars, 2);
+        data = Fixtures.continuousData(graph, sampleSize);
+
+        TetradMatrix doubleData = data.getDoubleData();
+        columns = new double[numVars][];
+
+        for (int j = 0; j < numVars; j++) {
+            columns[j] = doubleData.getColumn(j).toArray();
+        }
+    }
+
+    @Benchmark
+    public CovarianceMatrix construct() {
+        return new CovarianceMatrix(data);
+    }
+
+    @Benchmark
+    public TetradMatrix singlePrecision() {
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(numVars);
+        accumulator.setSinglePrecision(true);
+        accumulator.addColumns(columns, sampleSize);
+        return accumulator.getMatrix();
+    }
+
+    @Benchmark
+    public TetradMatrix pairwiseLoops() {
+        double[][] centered = new double[numVars][sampleSize];
+
+        for (int j = 0; j < numVars; j++) {
+            double sum = 0.0;
+            for (int k = 0; k < sampleSize; k++) sum += columns[j][k];
+            double mean = sum / sampleSize;
+            for (int k = 0; k < sampleSize; k++) centered[j][k] = columns[j][k] - mean;
+        }
+
+        TetradMatrix matrix = new TetradMatrix(numVars, numVars);
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = 0; j <= i; j++) {
+                double[] v1 = centered[i];
+                double[] v2 = centered[j];
+                double d = 0.0;
+                int count = 0;
+
+                for (int k = 0; k < sampleSize; k++) {
+                    if (Double.isNaN(v1[k]) || Double.isNaN(v2[k])) continue;
+                    d += v1[k] * v2[k];
+                    count++;
+                }
+
+                matrix.set(i, j, d / (count - 1));
+                matrix.set(j, i, d / (count - 1));
+            }
+        }
+
+        return matrix;
+    }
+}
@@ -0,0 +1,76 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.data.DataReader;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DataWriter;
+import edu.cmu.tetrad.data.DelimiterType;
+import edu.cmu.tetrad.graph.Graph;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of tab-delimited continuous or discrete data already in memory, so
+ * that disk speed does not enter into it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataReaderBenchmark {
+
+    @Param({"50", "200"})
+    public int numVars;
+
+    @Param({"1000", "10000"})
+    public int sampleSize;
+
+    @Param({"continuous", "discrete"})
+    public String dataType;
+
+    private char[] chars;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Graph graph = Fixtures.graph(numVars, 2);
+        DataSet data = "discrete".equals(dataType)
+                ? Fixtures.discreteData(graph, sampleSize, 3)
+                : Fixtures.continuousData(graph, sampleSize);
+
+        CharArrayWriter writer = new CharArrayWriter();
+        DataWriter.writeRectangularData(data, writer, '\t');
+        chars = writer.toCharArray();
+    }
+
+    @Benchmark
+    public DataSet parseTabular() {
+        DataReader reader = new DataReader();
+        reader.setDelimiter(DelimiterType.TAB);
+        return reader.parseTabular(chars);
+    }
+}
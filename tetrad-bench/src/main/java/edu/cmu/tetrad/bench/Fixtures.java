@@ -0,0 +1,118 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.sem.LargeScaleSimulation;
+import edu.cmu.tetrad.util.RandomUtil;
+
+/**
+ * Generated fixtures for the benchmarks. Everything is seeded, so a given set
+ * of benchmark parameters always sees the same graph and data, across runs and
+ * across releases.
+ */
+public final class Fixtures {
+
+    /**
+     * The seed used for fixtures unless a benchmark says otherwise.
+     */
+    public static final long SEED = 29834729L;
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return a random DAG over numVars variables with the given average degree.
+     */
+    public static Graph graph(int numVars, double avgDegree) {
+        RandomUtil.getInstance().setSeed(SEED);
+        int numEdges = (int) (numVars * avgDegree / 2);
+        return GraphUtils.randomGraph(numVars, 0, numEdges, 100, 100, 100, false);
+    }
+
+    /**
+     * @return continuous data simulated from a random linear model of the graph,
+     * with the defaults of the linear Fisher model simulation.
+     */
+    public static DataSet continuousData(Graph graph, int sampleSize) {
+        RandomUtil.getInstance().setSeed(SEED + 1);
+        LargeScaleSimulation simulation = new LargeScaleSimulation(graph);
+        return simulation.simulateDataFisher(10, 10, sampleSize, 0.001, false);
+    }
+
+    /**
+     * @return discrete data simulated from a random Bayes IM of the graph, with
+     * the given number of categories for every variable.
+     */
+    public static DataSet discreteData(Graph graph, int sampleSize, int numCategories) {
+        RandomUtil.getInstance().setSeed(SEED + 1);
+        BayesPm pm = new BayesPm(graph, numCategories, numCategories);
+        MlBayesIm im = new MlBayesIm(pm, MlBayesIm.RANDOM);
+        return im.simulateData(sampleSize, false);
+    }
+
+    /**
+     * @return numQueries random (child, parents) queries for local scores, each
+     * an array with the child first and then between minParents and maxParents
+     * distinct parents.
+     */
+    public static int[][] familyQueries(int numVars, int numQueries, int minParents, int maxParents) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(SEED + 2);
+        int[][] queries = new int[numQueries][];
+
+        for (int q = 0; q < numQueries; q++) {
+            int max = Math.min(maxParents, numVars - 1);
+            int numParents = minParents + random.nextInt(max - minParents + 1);
+            int[] query = new int[numParents + 1];
+            query[0] = random.nextInt(numVars);
+
+            for (int k = 1; k <= numParents; k++) {
+                query[k] = distinctIndex(query, k, numVars, random);
+            }
+
+            queries[q] = query;
+        }
+
+        return queries;
+    }
+
+    private static int distinctIndex(int[] chosen, int numChosen, int numVars, RandomUtil random) {
+        while (true) {
+            int index = random.nextInt(numVars);
+            boolean distinct = true;
+
+            for (int k = 0; k < numChosen; k++) {
+                if (chosen[k] == index) {
+                    distinct = false;
+                    break;
+                }
+            }
+
+            if (distinct) return index;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fisher Z tests of random (x, y | z) triples with up to three conditioning
+ * variables, the inner loop of constraint-based searches. Each invocation does
+ * QUERIES tests, so reported times are per test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndTestFisherZBenchmark {
+
+    static final int QUERIES = 1000;
+
+    @Param({"50", "200"})
+    public int numVars;
+
+    @Param({"1000", "10000"})
+    public int sampleSize;
+
+    @Param({"2", "4"})
+    public double avgDegree;
+
+    private IndTestFisherZ test;
+    private Node[] x;
+    private Node[] y;
+    private List<List<Node>> z;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Graph graph = Fixtures.graph(numVars, avgDegree);
+        DataSet data = Fixtures.continuousData(graph, sampleSize);
+        test = new IndTestFisherZ(data, 0.01);
+
+        List<Node> variables = test.getVariables();
+        int[][] queries = Fixtures.familyQueries(numVars, QUERIES, 1, 4);
+        x = new Node[QUERIES];
+        y = new Node[QUERIES];
+        z = new ArrayList<>();
+
+        for (int q = 0; q < QUERIES; q++) {
+            x[q] = variables.get(queries[q][0]);
+            y[q] = variables.get(queries[q][1]);
+            List<Node> _z = new ArrayList<>();
+            for (int k = 2; k < queries[q].length; k++) _z.add(variables.get(queries[q][k]));
+            z.add(_z);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void isIndependent(Blackhole blackhole) {
+        for (int q = 0; q < QUERIES; q++) {
+            blackhole.consume(test.isIndependent(x[q], y[q], z.get(q)));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.util.MatrixKernel;
+import edu.cmu.tetrad.util.TetradMatrix;
+import edu.cmu.tetrad.util.TetradVector;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partial correlations, residual variances and log determinants of random
+ * submatrices of a covariance matrix, the arithmetic inside SemBicScore and
+ * IndTestFisherZ, computed through TetradMatrix selections and commons-math LU
+ * as they were before MatrixKernel, and through MatrixKernel. Each invocation
+ * does QUERIES computations, so reported times are per computation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixKernelBenchmark {
+
+    static final int QUERIES = 1000;
+
+    @Param({"5", "10", "20", "30"})
+    public int size;
+
+    private CovarianceMatrix cov;
+    private int[][] queries;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Graph graph = Fixtures.graph(100, 4);
+        cov = new CovarianceMatrix(Fixtures.continuousData(graph, 1000));
+        queries = Fixtures.familyQueries(100, QUERIES, size - 1, size - 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void partialCorrelationLu(Blackhole blackhole) {
+        for (int[] query : queries) {
+            TetradMatrix submatrix = cov.getSelection(query, query);
+            TetradMatrix inverse = new TetradMatrix(new LUDecomposition(submatrix.getRealMatrix(), 1e-9)
+                    .getSolver().getInverse());
+            blackhole.consume(-inverse.get(0, 1) / Math.sqrt(inverse.get(0, 0) * inverse.get(1, 1)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void partialCorrelationKernel(Blackhole blackhole) {
+        for (int[] query : queries) {
+            blackhole.consume(MatrixKernel.partialCorrelation(cov, query[0], query[1],
+                    Arrays.copyOfRange(query, 2, query.length)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void residualVarianceLu(Blackhole blackhole) {
+        for (int[] query : queries) {
+            int[] parents = Arrays.copyOfRange(query, 1, query.length);
+            TetradMatrix covxx = cov.getSelection(parents, parents);
+            TetradVector covxy = cov.getSelection(parents, new int[]{query[0]}).getColumn(0);
+            TetradMatrix inverse = new TetradMatrix(new LUDecomposition(covxx.getRealMatrix(), 1e-9)
+                    .getSolver().getInverse());
+            blackhole.consume(cov.getValue(query[0], query[0]) - inverse.times(covxy).dotProduct(covxy));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void residualVarianceKernel(Blackhole blackhole) {
+        for (int[] query : queries) {
+            blackhole.consume(MatrixKernel.residualVariance(cov, query[0],
+                    Arrays.copyOfRange(query, 1, query.length)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void logDeterminantLu(Blackhole blackhole) {
+        for (int[] query : queries) {
+            TetradMatrix submatrix = cov.getSelection(query, query);
+            blackhole.consume(Math.log(new LUDecomposition(submatrix.getRealMatrix()).getDeterminant()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void logDeterminantKernel(Blackhole blackhole) {
+        for (int[] query : queries) {
+            blackhole.consume(MatrixKernel.logDeterminant(cov.getMatrix(), query));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.MeekRules;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meek orientation of a random DAG's skeleton with its unshielded colliders
+ * oriented, which recovers the DAG's pattern. A fresh copy of that graph is
+ * made, untimed, before each invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeekRulesBenchmark {
+
+    @Param({"50", "200", "1000"})
+    public int numVars;
+
+    @Param({"2", "4"})
+    public double avgDegree;
+
+    private Graph colliders;
+    private Graph graph;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Graph dag = Fixtures.graph(numVars, avgDegree);
+        colliders = new EdgeListGraph(dag);
+
+        for (Edge edge : new ArrayList<>(colliders.getEdges())) {
+            colliders.removeEdge(edge);
+            colliders.addUndirectedEdge(edge.getNode1(), edge.getNode2());
+        }
+
+        for (Node z : dag.getNodes()) {
+            List<Node> parents = dag.getParents(z);
+
+            for (int i = 0; i < parents.size(); i++) {
+                for (int j = i + 1; j < parents.size(); j++) {
+                    Node x = parents.get(i);
+                    Node y = parents.get(j);
+
+                    if (!dag.isAdjacentTo(x, y)) {
+                        colliders.removeEdge(x, z);
+                        colliders.addDirectedEdge(x, z);
+                        colliders.removeEdge(y, z);
+                        colliders.addDirectedEdge(y, z);
+                    }
+                }
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        graph = new EdgeListGraph(colliders);
+    }
+
+    @Benchmark
+    public Graph orientImplied() {
+        new MeekRules().orientImplied(graph);
+        return graph;
+    }
+}
@@ -0,0 +1,130 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.search.BDeuScore;
+import edu.cmu.tetrad.search.SemBicScore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local scores for random families, the inner loop of score-based searches.
+ * Each invocation scores QUERIES families, so reported times are per family.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoreBenchmark {
+
+    static final int QUERIES = 1000;
+
+    @State(Scope.Benchmark)
+    public static class ContinuousState {
+
+        @Param({"50", "200"})
+        public int numVars;
+
+        @Param({"1000", "10000"})
+        public int sampleSize;
+
+        @Param({"2", "4"})
+        public double avgDegree;
+
+        SemBicScore score;
+        int[] children;
+        int[][] parents;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Graph graph = Fixtures.graph(numVars, avgDegree);
+            DataSet data = Fixtures.continuousData(graph, sampleSize);
+            score = new SemBicScore(new CovarianceMatrix(data));
+            int[][] queries = Fixtures.familyQueries(numVars, QUERIES, 0, 3);
+            children = new int[QUERIES];
+            parents = new int[QUERIES][];
+
+            for (int q = 0; q < QUERIES; q++) {
+                children[q] = queries[q][0];
+                parents[q] = Arrays.copyOfRange(queries[q], 1, queries[q].length);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DiscreteState {
+
+        @Param({"50", "200"})
+        public int numVars;
+
+        @Param({"1000", "10000"})
+        public int sampleSize;
+
+        @Param({"2", "4"})
+        public double avgDegree;
+
+        @Param({"3"})
+        public int numCategories;
+
+        BDeuScore score;
+        int[] children;
+        int[][] parents;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Graph graph = Fixtures.graph(numVars, avgDegree);
+            DataSet data = Fixtures.discreteData(graph, sampleSize, numCategories);
+            score = new BDeuScore(data);
+            int[][] queries = Fixtures.familyQueries(numVars, QUERIES, 0, 3);
+            children = new int[QUERIES];
+            parents = new int[QUERIES][];
+
+            for (int q = 0; q < QUERIES; q++) {
+                children[q] = queries[q][0];
+                parents[q] = Arrays.copyOfRange(queries[q], 1, queries[q].length);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void semBicLocalScore(ContinuousState state, Blackhole blackhole) {
+        for (int q = 0; q < QUERIES; q++) {
+            blackhole.consume(state.score.localScore(state.children[q], state.parents[q]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void bdeuLocalScore(DiscreteState state, Blackhole blackhole) {
+        for (int q = 0; q < QUERIES; q++) {
+            blackhole.consume(state.score.localScore(state.children[q], state.parents[q]));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.bench;
+
+import edu.cmu.tetrad.algcomparison.statistic.*;
+import edu.cmu.tetrad.algcomparison.statistic.utils.GraphConfusion;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A table row of confusion-based statistics for a random DAG against the
+ * pattern of another random DAG over the same nodes, with each statistic
+ * comparing the graphs itself, as outside the comparison harness, and with
+ * the comparison shared, as inside it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsBenchmark {
+
+    @Param({"200", "2000"})
+    public int numVars;
+
+    @Param({"2", "4"})
+    public double avgDegree;
+
+    private Graph truth;
+    private Graph est;
+    private List<Statistic> statistics;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        truth = Fixtures.graph(numVars, avgDegree);
+        est = SearchGraphUtils.patternForDag(GraphUtils.randomGraph(truth.getNodes(), 0,
+                (int) (avgDegree * numVars / 2), 100, 100, 100, false));
+
+        statistics = new ArrayList<>();
+        statistics.add(new AdjacencyPrecision());
+        statistics.add(new AdjacencyRecall());
+        statistics.add(new AdjacencyTP());
+        statistics.add(new AdjacencyFP());
+        statistics.add(new AdjacencyFN());
+        statistics.add(new ArrowheadPrecision());
+        statistics.add(new ArrowheadRecall());
+        statistics.add(new ArrowheadTP());
+        statistics.add(new ArrowheadFP());
+        statistics.add(new ArrowheadFN());
+        statistics.add(new TailPrecision());
+        statistics.add(new TailRecall());
+        statistics.add(new F1Adj());
+        statistics.add(new F1Arrow());
+        statistics.add(new MathewsCorrAdj());
+        statistics.add(new MathewsCorrArrow());
+    }
+
+    @Benchmark
+    public double separate() {
+        return row();
+    }
+
+    @Benchmark
+    public double shared() {
+        GraphConfusion.setCaching(true);
+
+        try {
+            return row();
+        } finally {
+            GraphConfusion.setCaching(false);
+        }
+    }
+
+    private double row() {
+        double sum = 0;
+
+        for (Statistic statistic : statistics) {
+            sum += statistic.getValue(truth, est);
+        }
+
+        return sum;
+    }
+}
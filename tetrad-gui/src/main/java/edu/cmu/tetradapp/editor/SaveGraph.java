@@ -23,17 +23,18 @@ package edu.cmu.tetradapp.editor;
 
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.JsonUtils;
 import edu.cmu.tetradapp.model.EditorUtils;
 
 import javax.swing.*;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.prefs.Preferences;
 
@@ -114,17 +115,13 @@ public class SaveGraph extends AbstractAction {
         }
         else if (type == Type.json) {
             File file = EditorUtils.getSaveFile("graph", "json", parent, false, title);
-            try {
-        	Gson gson = new GsonBuilder().setPrettyPrinting().create();
-                String text = gson.toJson(graph);
-
-                PrintWriter out = new PrintWriter(file);
-                out.println(text);
+            try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+                JsonUtils.writeGraphJson(graph, out, true);
+                out.println();
                 Preferences.userRoot().put("fileSaveLocation", file.getParent());
-                out.close();
-            } catch (FileNotFoundException e1) {
+            } catch (IOException e1) {
                 e1.printStackTrace();
-                throw new RuntimeException("Not a directed graph.", e1);
+                throw new RuntimeException("Could not save " + file, e1);
             } catch (IllegalArgumentException e1) {
 
                 // Probably not a directed graph.
@@ -29,13 +29,16 @@ import edu.cmu.tetrad.algcomparison.independence.FisherZ;
 import edu.cmu.tetrad.algcomparison.independence.IndependenceWrapper;
 import edu.cmu.tetrad.algcomparison.score.BdeuScore;
 import edu.cmu.tetrad.algcomparison.score.ScoreWrapper;
+import edu.cmu.tetrad.algcomparison.simulation.BinaryDataCache;
 import edu.cmu.tetrad.algcomparison.simulation.LoadDataAndGraphs;
 import edu.cmu.tetrad.algcomparison.simulation.Simulation;
 import edu.cmu.tetrad.algcomparison.simulation.Simulations;
 import edu.cmu.tetrad.algcomparison.statistic.ElapsedTime;
 import edu.cmu.tetrad.algcomparison.statistic.ParameterColumn;
+import edu.cmu.tetrad.algcomparison.statistic.SearchMetric;
 import edu.cmu.tetrad.algcomparison.statistic.Statistic;
 import edu.cmu.tetrad.algcomparison.statistic.Statistics;
+import edu.cmu.tetrad.algcomparison.statistic.utils.GraphConfusion;
 import edu.cmu.tetrad.algcomparison.utils.HasKnowledge;
 import edu.cmu.tetrad.algcomparison.utils.HasParameterValues;
 import edu.cmu.tetrad.algcomparison.utils.HasParameters;
@@ -53,7 +56,10 @@ import java.lang.reflect.Constructor;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
-import java.util.concurrent.RecursiveTask;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.rmi.MarshalledObject;
+import java.util.concurrent.*;
 
 /**
  * Script to do a comparison of a list of algorithms using a list of statistics and a list
@@ -81,8 +87,14 @@ public class Comparison {
     private boolean parallelized = true;
     private boolean savePatterns = false;
     private boolean savePags = false;
+    private boolean saveBinaryData = true;
+    private boolean compressBinaryData = false;
     private ArrayList<String> dirs = null;
     private ComparisonGraph comparisonGraph = ComparisonGraph.true_DAG;
+    private int numWorkers = Runtime.getRuntime().availableProcessors();
+    private long memoryPerTask = -1;
+    private long timeout = -1;
+    private boolean checkpointed = false;
 
     public void compareFromFiles(String filePath, Algorithms algorithms,
                                  Statistics statistics, Parameters parameters) {
@@ -532,6 +544,7 @@ public class Comparison {
                     dir4.mkdirs();
                 }
 
+                BinaryDataCache cache = isSaveBinaryData() ? BinaryDataCache.create(subdir) : null;
 
                 for (int j = 0; j < simulationWrapper.getNumDataModels(); j++) {
                     File file2 = new File(dir1, "graph." + (j + 1) + ".txt");
@@ -545,6 +558,10 @@ public class Comparison {
                     DataWriter.writeRectangularData((DataSet) dataModel, out, '\t');
                     out.close();
 
+                    if (cache != null) {
+                        cache.add((DataSet) dataModel, file2, isCompressBinaryData());
+                    }
+
                     if (isSavePatterns()) {
                         File file3 = new File(dir3, "pattern." + (j + 1) + ".txt");
                         GraphUtils.saveGraph(SearchGraphUtils.patternForDag(graph), file3, false);
@@ -556,6 +573,10 @@ public class Comparison {
                     }
                 }
 
+                if (cache != null) {
+                    cache.writeIndex();
+                }
+
                 PrintStream out = new PrintStream(new FileOutputStream(new File(subdir, "parameters.txt")));
                 out.println(simulationWrapper.getDescription());
                 out.println(simulationWrapper.getSimulationSpecificParameters());
@@ -847,6 +868,14 @@ public class Comparison {
     }
 
 
+    /**
+     * Runs every (algorithm-simulation, run) cell of the grid. Cells are run by a pool of worker threads
+     * (one if not parallelized); a cell does not start until the memory it is estimated to need is free,
+     * and is cancelled if it runs longer than the timeout. Each cell writes only its own entries of the
+     * returned array, so the tables come out the same whatever order the cells finish in. If checkpointing
+     * is on, finished cells are saved under the results path and not run again by a later comparison of
+     * the same grid.
+     */
     private double[][][][] calcStats(final List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
                                      List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
                                      Statistics statistics, int numRuns) {
@@ -856,70 +885,206 @@ public class Comparison {
 
         double[][][][] allStats = new double[4][algorithmSimulationWrappers.size()][statistics.size() + 1][numRuns];
 
-        List<AlgorithmTask> tasks = new ArrayList<>();
+        File checkpointDir = checkpointed ? openCheckpoint(algorithmSimulationWrappers, statistics, numRuns) : null;
+
+        int numWorkers = getNumWorkers(algorithmWrappers);
+        int totalMemoryMb = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() >> 20);
+
+        ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        Semaphore memory = new Semaphore(totalMemoryMb);
+
+        List<Future<Boolean>> futures = new ArrayList<>();
         int index = 0;
 
         for (int algSimIndex = 0; algSimIndex < algorithmSimulationWrappers.size(); algSimIndex++) {
             for (int runIndex = 0; runIndex < numRuns; runIndex++) {
                 AlgorithmSimulationWrapper algorithmSimulationWrapper = algorithmSimulationWrappers.get(algSimIndex);
                 Run run = new Run(algSimIndex, runIndex, index++, algorithmSimulationWrapper);
+
+                if (checkpointDir != null && readCheckpoint(checkpointDir, run, allStats)) {
+                    System.out.println("Run " + (run.getIndex() + 1) + " restored from checkpoint.");
+                    continue;
+                }
+
                 AlgorithmTask task = new AlgorithmTask(algorithmSimulationWrappers,
                         algorithmWrappers, simulationWrappers,
-                        statistics, numGraphTypes, allStats, run);
-                task.compute();
-//                tasks.add(task);
+                        statistics, numGraphTypes, allStats, run, numWorkers > 1, checkpointDir,
+                        memory, estimateMemoryMb(run, totalMemoryMb), timer);
+                futures.add(pool.submit(task));
             }
         }
 
-//        if (!isParallelized()) {
-//            for (AlgorithmTask task : tasks) {
-//                task.compute();
-//            }
-//        } else {
-//            class Task extends RecursiveTask<Boolean> {
-//                List<AlgorithmTask> tasks;
-//
-//                public Task(List<AlgorithmTask> tasks) {
-//                    this.tasks = tasks;
-//                }
-//
-//                @Override
-//                protected Boolean compute() {
-//                    Queue<AlgorithmTask> tasks = new ArrayDeque<>();
-//
-//                    for (AlgorithmTask task : this.tasks) {
-//                        tasks.add(task);
-//                        task.fork();
-//
-//                        for (AlgorithmTask _task : new ArrayList<>(tasks)) {
-//                            if (_task.isDone()) {
-//                                _task.join();
-//                                tasks.remove(_task);
-//                            }
-//                        }
-//
-//                        while (tasks.size() > Runtime.getRuntime().availableProcessors()) {
-//                            AlgorithmTask _task = tasks.poll();
-//                            _task.join();
-//                        }
-//                    }
-//
-//                    for (AlgorithmTask task : tasks) {
-//                        task.join();
-//                    }
-//
-//                    return true;
-//                }
-//            }
-
-//            Task task = new Task(tasks);
-//
-//            ForkJoinPoolInstance.getInstance().getPool().invoke(task);
-//        }
+        try {
+            for (Future<Boolean> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Comparison interrupted.", e);
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+            timer.shutdownNow();
+        }
 
         return allStats;
     }
 
+    // Algorithms and their parameters are shared by the cells of a grid, so cells may run concurrently
+    // only if each can be given copies of them; external algorithms keep per-run state and can't, and
+    // algorithms that don't serialize can't be copied.
+    private int getNumWorkers(List<AlgorithmWrapper> algorithmWrappers) {
+        if (!isParallelized()) return 1;
+
+        for (AlgorithmWrapper wrapper : algorithmWrappers) {
+            if (wrapper.getAlgorithm() instanceof ExternalAlgorithm) return 1;
+
+            try {
+                copyAlgorithm(wrapper.getAlgorithm());
+            } catch (IllegalStateException e) {
+                System.out.println(e.getMessage() + "; running the cells one at a time.");
+                return 1;
+            }
+        }
+
+        return numWorkers;
+    }
+
+    // In megabytes, at least 1 and at most the whole heap.
+    private int estimateMemoryMb(Run run, int totalMemoryMb) {
+        long bytes = memoryPerTask;
+
+        if (bytes <= 0) {
+            DataModel data = run.getWrapper().getSimulationWrapper().getDataModel(run.getRunIndex());
+            long numVars = data.getVariables().size();
+
+            // The data (and a copy if data are copied), a covariance matrix and its inverse.
+            bytes = 16 * numVars * numVars;
+
+            if (data instanceof DataSet) {
+                bytes += 8L * ((DataSet) data).getNumRows() * numVars * (copyData ? 2 : 1);
+            }
+        }
+
+        return (int) Math.max(1, Math.min(bytes >> 20, totalMemoryMb));
+    }
+
+    // Algorithms are not thread-safe, so a cell that can't have its own copy must not run concurrently.
+    private Algorithm copyAlgorithm(Algorithm algorithm) {
+        try {
+            return new MarshalledObject<>(algorithm).get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not copy " + algorithm.getDescription(), e);
+        }
+    }
+
+    private File openCheckpoint(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
+                                Statistics statistics, int numRuns) {
+        if (resultsPath == null) {
+            throw new IllegalStateException("Checkpointing requires a results path.");
+        }
+
+        StringBuilder grid = new StringBuilder();
+        grid.append("numRuns = ").append(numRuns).append("\n");
+
+        for (Statistic statistic : statistics.getStatistics()) {
+            grid.append(statistic.getAbbreviation()).append("\n");
+        }
+
+        for (AlgorithmSimulationWrapper wrapper : algorithmSimulationWrappers) {
+            grid.append(wrapper.getAlgorithmWrapper().getDescription()).append(" / ")
+                    .append(wrapper.getSimulationWrapper().getDescription()).append("\n");
+        }
+
+        File dir = new File(resultsPath, "checkpoint");
+        File gridFile = new File(dir, "grid.txt");
+
+        try {
+            if (gridFile.exists() && !new String(Files.readAllBytes(gridFile.toPath()), "UTF-8").equals(grid.toString())) {
+                System.out.println("The checkpoint in " + dir + " is for a different comparison; starting over.");
+                deleteFilesThenDirectory(dir);
+            }
+
+            dir.mkdirs();
+            Files.write(gridFile.toPath(), grid.toString().getBytes("UTF-8"));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open checkpoint in " + dir, e);
+        }
+
+        return dir;
+    }
+
+    // One line per graph type: whether it was used, then the statistics.
+    private void writeCheckpoint(File dir, Run run, boolean[] used, double[][][][] allStats) {
+        File file = new File(dir, "run." + (run.getIndex() + 1) + ".txt");
+        File temp = new File(dir, "run." + (run.getIndex() + 1) + ".tmp");
+
+        try (PrintStream out = new PrintStream(new FileOutputStream(temp))) {
+            for (int u = 0; u < allStats.length; u++) {
+                out.print(used[u]);
+
+                for (int t = 0; t < allStats[u][run.getAlgSimIndex()].length; t++) {
+                    out.print("\t" + allStats[u][run.getAlgSimIndex()][t][run.getRunIndex()]);
+                }
+
+                out.println();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write checkpoint " + file, e);
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write checkpoint " + file, e);
+        }
+    }
+
+    // False if the run has not been checkpointed, or its checkpoint cannot be read. Only finished runs
+    // are checkpointed.
+    private boolean readCheckpoint(File dir, Run run, double[][][][] allStats) {
+        File file = new File(dir, "run." + (run.getIndex() + 1) + ".txt");
+
+        if (!file.exists()) return false;
+
+        try {
+            List<String> lines = Files.readAllLines(file.toPath());
+            int numStats = allStats[0][run.getAlgSimIndex()].length;
+
+            if (lines.size() != allStats.length) return false;
+
+            double[][] values = new double[allStats.length][numStats];
+            boolean[] used = new boolean[allStats.length];
+
+            for (int u = 0; u < allStats.length; u++) {
+                String[] tokens = lines.get(u).split("\t");
+                if (tokens.length != numStats + 1) return false;
+                used[u] = Boolean.parseBoolean(tokens[0]);
+
+                for (int t = 0; t < numStats; t++) {
+                    values[u][t] = Double.parseDouble(tokens[t + 1]);
+                }
+            }
+
+            for (int u = 0; u < allStats.length; u++) {
+                for (int t = 0; t < numStats; t++) {
+                    allStats[u][run.getAlgSimIndex()][t][run.getRunIndex()] = values[u][t];
+                }
+
+                if (used[u]) graphTypeUsed[u] = true;
+            }
+
+            return true;
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+    }
+
     public boolean isShowSimulationIndices() {
         return showSimulationIndices;
     }
@@ -976,6 +1141,81 @@ public class Comparison {
         this.parallelized = parallelized;
     }
 
+    /**
+     * @return The number of cells of the grid run at once if the comparison is parallelized.
+     */
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * @param numWorkers The number of cells of the grid run at once if the comparison is parallelized;
+     *                   by default the number of processors.
+     */
+    public void setNumWorkers(int numWorkers) {
+        if (numWorkers < 1) throw new IllegalArgumentException("Number of workers must be at least 1: " + numWorkers);
+        this.numWorkers = numWorkers;
+    }
+
+    /**
+     * @return The memory in bytes each cell is assumed to need, or -1 if it is estimated from the data.
+     */
+    public long getMemoryPerTask() {
+        return memoryPerTask;
+    }
+
+    /**
+     * @param memoryPerTask The memory in bytes each cell is assumed to need, or -1 (the default) to
+     *                      estimate it from the size of the data. Cells wait to start until that much of
+     *                      the heap is not claimed by running cells.
+     */
+    public void setMemoryPerTask(long memoryPerTask) {
+        if (memoryPerTask < -1 || memoryPerTask == 0) {
+            throw new IllegalArgumentException("Memory per task must be -1 (estimate) or positive: " + memoryPerTask);
+        }
+
+        this.memoryPerTask = memoryPerTask;
+    }
+
+    /**
+     * @return The time in milliseconds after which a cell is cancelled, or -1 if cells are never cancelled.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout The time after which a cell is cancelled, or -1 (the default) for no timeout. A
+     *                cancelled cell is recorded like one whose algorithm could not be run, and is not
+     *                checkpointed.
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout < -1 || timeout == 0) {
+            throw new IllegalArgumentException("Timeout must be -1 (none) or positive: " + timeout);
+        }
+
+        this.timeout = timeout == -1 ? -1 : unit.toMillis(timeout);
+    }
+
+    /**
+     * @return True if finished cells are saved to the results path as they finish.
+     */
+    public boolean isCheckpointed() {
+        return checkpointed;
+    }
+
+    /**
+     * @param checkpointed True if finished cells should be saved in a "checkpoint" directory under the
+     *                     results path as they finish, so that a comparison of the same grid that is
+     *                     interrupted and started again picks up where it stopped. This is only
+     *                     meaningful if the data are the same each time, as when they are loaded from
+     *                     files. Cells that failed or timed out are not saved, and are run again.
+     *                     False by default.
+     */
+    public void setCheckpointed(boolean checkpointed) {
+        this.checkpointed = checkpointed;
+    }
+
     /**
      * @return True if patterns should be saved out.
      */
@@ -990,6 +1230,38 @@ public class Comparison {
         this.savePatterns = savePatterns;
     }
 
+    /**
+     * @return True if binary copies of the data should be saved out, which the loaders
+     * prefer to the text files.
+     */
+    public boolean isSaveBinaryData() {
+        return saveBinaryData;
+    }
+
+    /**
+     * @param saveBinaryData True if binary copies of the data should be saved out, which
+     *                       the loaders prefer to the text files. True by default.
+     */
+    public void setSaveBinaryData(boolean saveBinaryData) {
+        this.saveBinaryData = saveBinaryData;
+    }
+
+    /**
+     * @return True if the binary copies of the data should be compressed.
+     */
+    public boolean isCompressBinaryData() {
+        return compressBinaryData;
+    }
+
+    /**
+     * @param compressBinaryData True if the binary copies of the data should be compressed.
+     *                           Compressed data are smaller but have to be loaded into memory
+     *                           rather than memory-mapped. False by default.
+     */
+    public void setCompressBinaryData(boolean compressBinaryData) {
+        this.compressBinaryData = compressBinaryData;
+    }
+
     /**
      * @return True if patterns should be saved out.
      */
@@ -1065,7 +1337,7 @@ public class Comparison {
     }
 
 
-    private class AlgorithmTask extends RecursiveTask<Boolean> {
+    private class AlgorithmTask implements Callable<Boolean> {
         private List<AlgorithmSimulationWrapper> algorithmSimulationWrappers;
         private List<AlgorithmWrapper> algorithmWrappers;
         private List<SimulationWrapper> simulationWrappers;
@@ -1073,10 +1345,17 @@ public class Comparison {
         private int numGraphTypes;
         private double[][][][] allStats;
         private final Run run;
+        private final boolean concurrent;
+        private final File checkpointDir;
+        private final Semaphore memory;
+        private final int memoryMb;
+        private final ScheduledExecutorService timer;
 
         public AlgorithmTask(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
                              List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
-                             Statistics statistics, int numGraphTypes, double[][][][] allStats, Run run) {
+                             Statistics statistics, int numGraphTypes, double[][][][] allStats, Run run,
+                             boolean concurrent, File checkpointDir, Semaphore memory, int memoryMb,
+                             ScheduledExecutorService timer) {
             this.algorithmSimulationWrappers = algorithmSimulationWrappers;
             this.simulationWrappers = simulationWrappers;
             this.algorithmWrappers = algorithmWrappers;
@@ -1084,13 +1363,62 @@ public class Comparison {
             this.numGraphTypes = numGraphTypes;
             this.allStats = allStats;
             this.run = run;
+            this.concurrent = concurrent;
+            this.checkpointDir = checkpointDir;
+            this.memory = memory;
+            this.memoryMb = memoryMb;
+            this.timer = timer;
         }
 
         @Override
-        protected Boolean compute() {
-            doRun(algorithmSimulationWrappers, algorithmWrappers,
-                    simulationWrappers, statistics, numGraphTypes, allStats, run);
-            return true;
+        public Boolean call() throws InterruptedException {
+            memory.acquire(memoryMb);
+
+            try {
+                final SearchMetrics metrics = new SearchMetrics();
+                final Thread thread = Thread.currentThread();
+                ScheduledFuture<?> cancellation = null;
+
+                // Tests and scores stop the search on their next call; searches that check for
+                // interruption stop sooner.
+                if (timeout > 0) {
+                    cancellation = timer.schedule(() -> {
+                        metrics.cancel();
+                        thread.interrupt();
+                    }, timeout, TimeUnit.MILLISECONDS);
+                }
+
+                boolean[] used;
+
+                try {
+                    used = doRun(algorithmSimulationWrappers, algorithmWrappers,
+                            simulationWrappers, statistics, numGraphTypes, allStats, run, metrics, concurrent);
+                } finally {
+                    if (cancellation != null) cancellation.cancel(false);
+                    Thread.interrupted();
+                }
+
+                if (used == null && metrics.isCancelled()) {
+                    System.out.println("Run " + (run.getIndex() + 1) + " timed out after " + timeout + " ms.");
+                }
+
+                if (used != null) {
+                    synchronized (graphTypeUsed) {
+                        for (int u = 0; u < numGraphTypes; u++) {
+                            if (used[u]) graphTypeUsed[u] = true;
+                        }
+                    }
+                }
+
+                // Cells that failed or timed out are left out, so a resumed comparison runs them again.
+                if (checkpointDir != null && used != null) {
+                    writeCheckpoint(checkpointDir, run, used, allStats);
+                }
+
+                return used != null;
+            } finally {
+                memory.release(memoryMb);
+            }
         }
     }
 
@@ -1137,10 +1465,19 @@ public class Comparison {
         dir.delete();
     }
 
-    private void doRun(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
-                       List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
-                       Statistics statistics,
-                       int numGraphTypes, double[][][][] allStats, Run run) {
+    /**
+     * Runs one cell, recording its statistics in allStats.
+     *
+     * @param metrics    The metrics the algorithm's searches, tests and scores report into.
+     * @param concurrent True if other cells may be running at the same time, in which case the algorithm
+     *                   and its parameters are copied for this cell.
+     * @return which graph types were compared, or null if the algorithm could not be run.
+     */
+    private boolean[] doRun(List<AlgorithmSimulationWrapper> algorithmSimulationWrappers,
+                            List<AlgorithmWrapper> algorithmWrappers, List<SimulationWrapper> simulationWrappers,
+                            Statistics statistics,
+                            int numGraphTypes, double[][][][] allStats, Run run, SearchMetrics metrics,
+                            boolean concurrent) {
         System.out.println();
         System.out.println("Run " + (run.getRunIndex() + 1));
         System.out.println();
@@ -1157,10 +1494,25 @@ public class Comparison {
         long start = System.currentTimeMillis();
         Graph out;
 
+        // Searches, tests and scores constructed by the algorithm on this thread report into these.
+        SearchMetrics previousMetrics = SearchMetrics.setCurrent(metrics);
+
         try {
             Algorithm algorithm = algorithmWrapper.getAlgorithm();
             Simulation simulation = simulationWrapper.getSimulation();
 
+            Parameters sharedParams = algorithmWrapper.getAlgorithmSpecificParameters();
+            Parameters _params = sharedParams;
+
+            // Cells running at the same time each get their own algorithm and parameters; neither is
+            // thread-safe.
+            if (concurrent) {
+                synchronized (sharedParams) {
+                    algorithm = copyAlgorithm(algorithmWrapper.getAlgorithm());
+                    _params = new Parameters(sharedParams);
+                }
+            }
+
             if (algorithm instanceof HasKnowledge && simulation instanceof HasKnowledge) {
                 ((HasKnowledge) algorithm).setKnowledge(((HasKnowledge) simulation).getKnowledge());
             }
@@ -1179,25 +1531,35 @@ public class Comparison {
                 Collections.shuffle(indices);
 
                 List<DataModel> dataModels = new ArrayList<>();
-                int randomSelectionSize = algorithmWrapper.getAlgorithmSpecificParameters().getInt(
-                        "randomSelectionSize");
+                int randomSelectionSize = _params.getInt("randomSelectionSize");
                 for (int i = 0; i < Math.min(numDataModels, randomSelectionSize); i++) {
                     dataModels.add(simulationWrapper.getSimulation().getDataModel(indices.get(i)));
                 }
 
-                Parameters _params = algorithmWrapper.getAlgorithmSpecificParameters();
                 out = ((MultiDataSetAlgorithm) algorithm).search(dataModels, _params);
             } else {
                 DataModel dataModel = copyData ? data.copy() : data;
-                Parameters _params = algorithmWrapper.getAlgorithmSpecificParameters();
                 out = algorithm.search(dataModel, _params);
             }
+
+            // Parameters record which of them were used, and algorithms describe themselves using the
+            // parameters they were last run with, so the copies stand in for the originals afterward.
+            if (concurrent) {
+                synchronized (sharedParams) {
+                    sharedParams.putAll(_params);
+                    algorithmWrapper.setAlgorithm(algorithm);
+                }
+            }
         } catch (Exception e) {
             System.out.println("Could not run " + algorithmWrapper.getDescription());
             e.printStackTrace();
-            return;
+            return null;
+        } finally {
+            SearchMetrics.setCurrent(previousMetrics);
         }
 
+        Map<String, Double> metricValues = metrics.snapshot();
+
         int simIndex = simulationWrappers.indexOf(simulationWrapper) + 1;
         int algIndex = algorithmWrappers.indexOf(algorithmWrapper) + 1;
 
@@ -1221,6 +1583,7 @@ public class Comparison {
         }
 
         Graph[] est = new Graph[numGraphTypes];
+        boolean[] graphTypeUsed = new boolean[numGraphTypes];
 
         Graph comparisonGraph;
 
@@ -1260,28 +1623,40 @@ public class Comparison {
         }
 
         if (comparisonGraph != null) {
-            for (int u = 0; u < numGraphTypes; u++) {
-                if (!graphTypeUsed[u]) continue;
+            // The statistics for a pair of graphs share one comparison of them.
+            GraphConfusion.setCaching(true);
 
-                int statIndex = -1;
+            try {
+                for (int u = 0; u < numGraphTypes; u++) {
+                    if (!graphTypeUsed[u]) continue;
 
-                for (Statistic _stat : statistics.getStatistics()) {
-                    statIndex++;
+                    int statIndex = -1;
 
-                    if (_stat instanceof ParameterColumn) continue;
+                    for (Statistic _stat : statistics.getStatistics()) {
+                        statIndex++;
 
-                    double stat;
+                        if (_stat instanceof ParameterColumn) continue;
 
-                    if (_stat instanceof ElapsedTime) {
-                        stat = elapsed / 1000.0;
-                    } else {
-                        stat = _stat.getValue(truth[u], est[u]);
-                    }
+                        double stat;
+
+                        if (_stat instanceof ElapsedTime) {
+                            stat = elapsed / 1000.0;
+                        } else if (_stat instanceof SearchMetric) {
+                            Double value = metricValues.get(((SearchMetric) _stat).getName());
+                            stat = value == null ? 0.0 : value;
+                        } else {
+                            stat = _stat.getValue(truth[u], est[u]);
+                        }
 
-                    allStats[u][run.getAlgSimIndex()][statIndex][run.getRunIndex()] = stat;
+                        allStats[u][run.getAlgSimIndex()][statIndex][run.getRunIndex()] = stat;
+                    }
                 }
+            } finally {
+                GraphConfusion.setCaching(false);
             }
         }
+
+        return graphTypeUsed;
     }
 
     private void saveGraph(String resultsPath, Graph graph, int i, int simIndex, int algIndex,
@@ -1701,6 +2076,10 @@ public class Comparison {
             return algorithm;
         }
 
+        public void setAlgorithm(Algorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
         public Parameters getAlgorithmSpecificParameters() {
             return this.parameters;
         }
@@ -40,7 +40,8 @@ public class Glasso implements Algorithm {
             glasso.setItr(parameters.getBoolean("itr"));
             glasso.setIpen(parameters.getBoolean("ipen"));
             glasso.setThr(parameters.getDouble("thr"));
-            glasso.setRhoAllEqual(1.0);
+            glasso.setRhoAllEqual(parameters.getDouble("rho"));
+            glasso.setBlockScreening(parameters.getBoolean("blockScreening"));
 
             edu.cmu.tetrad.search.Glasso.Result result = glasso.search();
             TetradMatrix wwi = new TetradMatrix(result.getWwi().toArray());
@@ -104,6 +105,8 @@ public class Glasso implements Algorithm {
         params.add("itr");
         params.add("ipen");
         params.add("thr");
+        params.add("rho");
+        params.add("blockScreening");
         // Bootstrapping
         params.add("bootstrapSampleSize");
         params.add("bootstrapEnsemble");
@@ -11,6 +11,7 @@ import edu.cmu.tetrad.data.DataType;
 import edu.cmu.tetrad.graph.EdgeListGraph;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomUtil;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -132,17 +133,17 @@ public class BayesNetSimulation implements Simulation {
                     pm = new BayesPm(graph, minCategories, maxCategories);
                     im = new MlBayesIm(pm, MlBayesIm.RANDOM);
                     ims.add(im);
-                    return im.simulateData(parameters.getInt("sampleSize"), saveLatentVars);
+                    return simulate(im, parameters.getInt("sampleSize"), saveLatentVars);
                 } else {
                     im = new MlBayesIm(pm, MlBayesIm.RANDOM);
                     this.im = im;
                     ims.add(im);
-                    return im.simulateData(parameters.getInt("sampleSize"), saveLatentVars);
+                    return simulate(im, parameters.getInt("sampleSize"), saveLatentVars);
                 }
             } else {
                 ims = new ArrayList<>();
                 ims.add(im);
-                return im.simulateData(parameters.getInt("sampleSize"), saveLatentVars);
+                return simulate(im, parameters.getInt("sampleSize"), saveLatentVars);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -151,6 +152,18 @@ public class BayesNetSimulation implements Simulation {
         }
     }
 
+    // Simulates in parallel blocks where the IM allows it; the seed is drawn from
+    // RandomUtil, so the data are still determined by its seed, though they are not
+    // the data that simulateData gave for that seed.
+    private DataSet simulate(BayesIm im, int sampleSize, boolean saveLatentVars) {
+        if (im instanceof MlBayesIm) {
+            long seed = RandomUtil.getInstance().nextLong();
+            return ((MlBayesIm) im).simulateDataParallel(sampleSize, seed, saveLatentVars);
+        } else {
+            return im.simulateData(sampleSize, saveLatentVars);
+        }
+    }
+
     public List<BayesIm> getBayesIms() {
         return ims;
     }
@@ -0,0 +1,164 @@
+package edu.cmu.tetrad.algcomparison.simulation;
+
+import edu.cmu.tetrad.data.BinaryDataReader;
+import edu.cmu.tetrad.data.BinaryDataWriter;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary copies of the data sets of a saved simulation, which load much faster than
+ * the text files. They are kept in a "binary" subdirectory of the simulation directory,
+ * one file per run in the format of BinaryDataWriter, together with an index file that
+ * maps each run to its data file and to its true graph. The index has a header line and
+ * then one tab-separated line per run: the run number (from 1), the data file and the
+ * graph file, with paths relative to the simulation directory ("-" if there is no graph).
+ * The index is written last, so a directory whose index exists holds a complete cache.
+ */
+public class BinaryDataCache {
+    public static final String DIRECTORY = "binary";
+    public static final String INDEX = "index.txt";
+
+    private final File dir;
+    private final List<String> dataFiles = new ArrayList<>();
+    private final List<String> graphFiles = new ArrayList<>();
+
+    private BinaryDataCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return True if the given simulation directory has a complete binary cache.
+     */
+    public static boolean exists(File dir) {
+        return new File(new File(dir, DIRECTORY), INDEX).isFile();
+    }
+
+    /**
+     * @return True if the given simulation directory has a complete binary cache written no
+     * earlier than any of its text data files were last modified. A cache older than some
+     * text file, which may have been edited since, should not be used in place of it.
+     */
+    public static boolean isCurrent(File dir) {
+        if (!exists(dir)) return false;
+
+        long written = new File(new File(dir, DIRECTORY), INDEX).lastModified();
+        File[] files = new File(dir, "data").listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                if (file.lastModified() > written) {
+                    System.out.println("Binary cache in " + dir.getAbsolutePath() + " is older than "
+                            + file.getName() + "; loading the text files");
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return An empty cache for the given simulation directory, to be filled using add
+     * and finished with writeIndex. Any index already there is removed.
+     */
+    public static BinaryDataCache create(File dir) throws IOException {
+        File binary = new File(dir, DIRECTORY);
+
+        if (!binary.isDirectory() && !binary.mkdirs()) {
+            throw new IOException("Could not create " + binary.getAbsolutePath());
+        }
+
+        Files.deleteIfExists(new File(binary, INDEX).toPath());
+        return new BinaryDataCache(dir);
+    }
+
+    /**
+     * @return The cache of the given simulation directory, as recorded in its index.
+     */
+    public static BinaryDataCache read(File dir) throws IOException {
+        BinaryDataCache cache = new BinaryDataCache(dir);
+
+        try (BufferedReader in = new BufferedReader(new FileReader(new File(new File(dir, DIRECTORY), INDEX)))) {
+            String line = in.readLine();
+
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+
+                String[] tokens = line.split("\t");
+
+                if (tokens.length != 3 || Integer.parseInt(tokens[0]) != cache.dataFiles.size() + 1) {
+                    throw new IOException("Malformed binary cache index line: " + line);
+                }
+
+                cache.dataFiles.add(tokens[1]);
+                cache.graphFiles.add(tokens[2]);
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Saves the data set of the next run in binary form.
+     *
+     * @param dataSet    The data set.
+     * @param graphFile  The file the true graph of the run has been saved to, or null if none.
+     * @param compressed True if the data should be compressed; compressed data cannot be
+     *                   memory-mapped when loaded.
+     */
+    public void add(DataSet dataSet, File graphFile, boolean compressed) throws IOException {
+        String dataFile = DIRECTORY + "/data." + (dataFiles.size() + 1) + ".tds";
+        BinaryDataWriter.writeData(dataSet, new File(dir, dataFile), compressed);
+        dataFiles.add(dataFile);
+        graphFiles.add(graphFile == null ? "-" : relativePath(graphFile));
+    }
+
+    /**
+     * Writes the index, completing the cache.
+     */
+    public void writeIndex() throws IOException {
+        File index = new File(new File(dir, DIRECTORY), INDEX);
+        File tmp = new File(index.getPath() + ".tmp");
+
+        try (PrintWriter out = new PrintWriter(new FileWriter(tmp))) {
+            out.println("run\tdata\tgraph");
+
+            for (int i = 0; i < dataFiles.size(); i++) {
+                out.println((i + 1) + "\t" + dataFiles.get(i) + "\t" + graphFiles.get(i));
+            }
+        }
+
+        Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public int getNumRuns() {
+        return dataFiles.size();
+    }
+
+    /**
+     * @return The data set of the given run (from 0), memory-mapped unless it was compressed.
+     */
+    public DataSet getDataSet(int index) throws IOException {
+        return BinaryDataReader.readData(new File(dir, dataFiles.get(index)));
+    }
+
+    /**
+     * @return The true graph of the given run (from 0), or null if there is none.
+     */
+    public Graph getTrueGraph(int index) {
+        String graphFile = graphFiles.get(index);
+        return "-".equals(graphFile) ? null : GraphUtils.loadGraphTxt(new File(dir, graphFile));
+    }
+
+    private String relativePath(File file) {
+        return dir.getAbsoluteFile().toPath().relativize(file.getAbsoluteFile().toPath())
+                .toString().replace(File.separatorChar, '/');
+    }
+}
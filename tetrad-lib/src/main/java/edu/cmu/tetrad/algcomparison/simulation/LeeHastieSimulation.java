@@ -10,9 +10,9 @@ import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.sem.GeneralizedSemIm;
 import edu.cmu.tetrad.sem.GeneralizedSemPm;
 import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomUtil;
 import edu.pitt.csb.mgm.MixedUtils;
 import java.util.*;
-import org.apache.commons.lang3.RandomUtils;
 
 /**
  * A version of the Lee & Hastic simulation which is guaranteed ot generate a
@@ -118,11 +118,12 @@ public class LeeHastieSimulation implements Simulation, HasParameters {
 
         List<Node> nodes = dag.getNodes();
 
-        Collections.shuffle(nodes);
+        // Shuffled from RandomUtil, so that its seed reproduces the data.
+        Collections.shuffle(nodes, new Random(RandomUtil.getInstance().nextLong()));
 
         if (this.shuffledOrder == null) {
             List<Node> shuffledNodes = new ArrayList<>(nodes);
-            Collections.shuffle(shuffledNodes);
+            Collections.shuffle(shuffledNodes, new Random(RandomUtil.getInstance().nextLong()));
             this.shuffledOrder = shuffledNodes;
         }
 
@@ -149,6 +150,6 @@ public class LeeHastieSimulation implements Simulation, HasParameters {
     }
 
     private int pickNumCategories(int min, int max) {
-        return RandomUtils.nextInt(min, max + 1);
+        return min + RandomUtil.getInstance().nextInt(max - min + 1);
     }
 }
@@ -32,6 +32,29 @@ public class LoadContinuousDataAndGraphs implements Simulation {
     public void createData(Parameters parameters) {
         this.dataSets = new ArrayList<>();
 
+        if (BinaryDataCache.isCurrent(new File(path))) {
+            try {
+                BinaryDataCache cache = BinaryDataCache.read(new File(path));
+                System.out.println("Loading binary data and graphs from " + new File(path).getAbsolutePath());
+
+                for (int i = 0; i < cache.getNumRuns(); i++) {
+                    this.graphs.add(cache.getTrueGraph(i));
+                    GraphUtils.circleLayout(this.graphs.get(i), 225, 200, 150);
+                    dataSets.add(cache.getDataSet(i));
+                }
+
+                loadParameters(parameters, cache.getNumRuns());
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+
+                // Fall back to the text files, from scratch.
+                this.graphs.clear();
+                this.dataSets.clear();
+                this.usedParameters.clear();
+            }
+        }
+
         if (new File(path + "/data").exists()) {
             int numDataSets = new File(path + "/data").listFiles().length;
 
@@ -51,40 +74,44 @@ public class LoadContinuousDataAndGraphs implements Simulation {
                     dataSets.add(reader.parseTabular(file1));
                 }
 
-                File paramFile = new File(path, "parameters.txt");
-                System.out.println("Loading parameters from " + paramFile.getAbsolutePath());
-                BufferedReader r = new BufferedReader(new FileReader(paramFile));
-
-                String line;
-
-                while ((line = r.readLine()) != null) {
-                    if (line.contains(" = ")) {
-                        String[] tokens = line.split(" = ");
-                        String key = tokens[0];
-                        String value = tokens[1];
-
-                        usedParameters.add(key);
-                        try {
-                            double _value = Double.parseDouble(value);
-                            parameters.set(key, _value);
-                        } catch (NumberFormatException e) {
-                        	if(value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")){
-                                parameters.set(key, Boolean.valueOf(value));
-                        	}else{
-                                parameters.set(key, value);
-                        	}
-                        }
-                        System.out.println(key + " : " + value);
-                    }
-                }
-
-                parameters.set("numRuns", numDataSets);
+                loadParameters(parameters, numDataSets);
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
 
+    private void loadParameters(Parameters parameters, int numDataSets) throws IOException {
+        File paramFile = new File(path, "parameters.txt");
+        System.out.println("Loading parameters from " + paramFile.getAbsolutePath());
+        BufferedReader r = new BufferedReader(new FileReader(paramFile));
+
+        String line;
+
+        while ((line = r.readLine()) != null) {
+            if (line.contains(" = ")) {
+                String[] tokens = line.split(" = ");
+                String key = tokens[0];
+                String value = tokens[1];
+
+                usedParameters.add(key);
+                try {
+                    double _value = Double.parseDouble(value);
+                    parameters.set(key, _value);
+                } catch (NumberFormatException e) {
+                	if(value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")){
+                        parameters.set(key, Boolean.valueOf(value));
+                	}else{
+                        parameters.set(key, value);
+                	}
+                }
+                System.out.println(key + " : " + value);
+            }
+        }
+
+        parameters.set("numRuns", numDataSets);
+    }
+
     @Override
     public Graph getTrueGraph(int index) {
         return graphs.get(index);
@@ -34,6 +34,29 @@ public class LoadDataAndGraphs implements Simulation {
     public void createData(Parameters parameters) {
         this.dataSets = new ArrayList<>();
 
+        if (BinaryDataCache.isCurrent(new File(path))) {
+            try {
+                BinaryDataCache cache = BinaryDataCache.read(new File(path));
+                System.out.println("Loading binary data and graphs from " + new File(path).getAbsolutePath());
+
+                for (int i = 0; i < cache.getNumRuns(); i++) {
+                    this.graphs.add(cache.getTrueGraph(i));
+                    GraphUtils.circleLayout(this.graphs.get(i), 225, 200, 150);
+                    dataSets.add(cache.getDataSet(i));
+                }
+
+                loadParameters(parameters, cache.getNumRuns());
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+
+                // Fall back to the text files, from scratch.
+                this.graphs.clear();
+                this.dataSets.clear();
+                this.usedParameters.clear();
+            }
+        }
+
         if (new File(path + "/data").exists()) {
             int numDataSets = new File(path + "/data").listFiles().length;
 
@@ -78,40 +101,44 @@ public class LoadDataAndGraphs implements Simulation {
                     dataSets.add(ds);
                 }
 
-                File file = new File(path, "parameters.txt");
-                BufferedReader r = new BufferedReader(new FileReader(file));
+                loadParameters(parameters, numDataSets);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-                String line;
+    private void loadParameters(Parameters parameters, int numDataSets) throws IOException {
+        File file = new File(path, "parameters.txt");
+        BufferedReader r = new BufferedReader(new FileReader(file));
 
-                line = r.readLine();
+        String line;
 
-                if (line != null) this.description = line;
+        line = r.readLine();
 
-                while ((line = r.readLine()) != null) {
-                    if (line.contains(" = ")) {
-                        String[] tokens = line.split(" = ");
-                        String key = tokens[0];
-                        String value = tokens[1].trim();
+        if (line != null) this.description = line;
 
-                        usedParameters.add(key);
-                        try {
-                            double _value = Double.parseDouble(value);
-                            parameters.set(key, _value);
-                        } catch (NumberFormatException e) {
-                        	if(value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")){
-                                parameters.set(key, Boolean.valueOf(value));
-                        	}else{
-                                parameters.set(key, value);
-                        	}
-                        }
-                    }
-                }
+        while ((line = r.readLine()) != null) {
+            if (line.contains(" = ")) {
+                String[] tokens = line.split(" = ");
+                String key = tokens[0];
+                String value = tokens[1].trim();
 
-                parameters.set("numRuns", numDataSets);
-            } catch (IOException e) {
-                e.printStackTrace();
+                usedParameters.add(key);
+                try {
+                    double _value = Double.parseDouble(value);
+                    parameters.set(key, _value);
+                } catch (NumberFormatException e) {
+                	if(value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")){
+                        parameters.set(key, Boolean.valueOf(value));
+                	}else{
+                        parameters.set(key, value);
+                	}
+                }
             }
         }
+
+        parameters.set("numRuns", numDataSets);
     }
 
     @Override
@@ -64,7 +64,7 @@ public class TimeSeriesSemSimulation implements Simulation, HasKnowledge {
 
             int numLags = ((TimeLagGraph) graph).getMaxLag();
 
-            dataSet = TimeSeriesUtils.createLagData(dataSet, numLags);
+            dataSet = TimeSeriesUtils.createLagDataView(dataSet, numLags);
 
             dataSet.setName("" + (i + 1));
             dataSet.setKnowledge(knowledge.copy());
@@ -0,0 +1,47 @@
+package edu.cmu.tetrad.algcomparison.statistic;
+
+import edu.cmu.tetrad.graph.Graph;
+
+/**
+ * Records one of the counts or phase times (in milliseconds) the algorithm reported while it
+ * ran, for instance "independenceTests", "scores" or "skeletonMs"; see SearchMetrics for the
+ * names. Like ElapsedTime, this is a placeholder; the value is taken by the comparison class
+ * from the metrics collected for the run, 0 if the algorithm reported nothing by that name.
+ */
+public class SearchMetric implements Statistic {
+    static final long serialVersionUID = 23L;
+
+    private final String name;
+
+    public SearchMetric(String name) {
+        if (name == null) throw new NullPointerException("Name may not be null.");
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the count or phase time recorded.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getAbbreviation() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Search metric " + name;
+    }
+
+    @Override
+    public double getValue(Graph trueGraph, Graph estGraph) {
+        return Double.NaN; // This has to be handled separately.
+    }
+
+    @Override
+    public double getNormValue(double value) {
+        return 1 - Math.tanh(0.001 * value);
+    }
+}
@@ -0,0 +1,353 @@
+package edu.cmu.tetrad.algcomparison.statistic.utils;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Edges;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.*;
+
+/**
+ * Compares a true and an estimated graph in one pass, counting the adjacency, arrow, tail
+ * and two-cycle confusions that AdjacencyConfusion, ArrowConfusion and TailConfusion report
+ * (they are views of this). Nodes of the two graphs are matched by name and numbered; the
+ * edges of each graph are grouped by unordered pair of node numbers, and each pair adjacent
+ * in either graph is visited once.
+ * <p>
+ * Statistics that each build a confusion for the same pair of graphs can share one: while
+ * caching is on for a thread (see setCaching), of(truth, est) returns the confusion already
+ * computed for those two graph objects. The comparison harness turns caching on while it
+ * computes the statistics for a run.
+ */
+public class GraphConfusion {
+
+    private static final ThreadLocal<Map<Graph, Map<Graph, GraphConfusion>>> CACHE = new ThreadLocal<>();
+
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    private int adjTp;
+    private int adjFp;
+    private int adjFn;
+    private int adjTn;
+
+    private int arrowsTp;
+    private int arrowsTpc;
+    private int arrowsFp;
+    private int arrowsFpc;
+    private int arrowsFn;
+    private int arrowsFnc;
+    private int arrowsTn;
+    private int arrowsTnc;
+
+    private int tailsTp;
+    private int tailsFp;
+    private int tailsFn;
+    private int tailsTn;
+
+    private int twoCycleTp;
+    private int twoCycleFp;
+    private int twoCycleFn;
+
+    public GraphConfusion(Graph truth, Graph est) {
+        for (Node node : truth.getNodes()) index(node);
+        for (Node node : est.getNodes()) index(node);
+
+        Map<Long, List<Edge>> truthPairs = pairs(truth);
+        Map<Long, List<Edge>> estPairs = pairs(est);
+
+        Set<Long> keys = new HashSet<>(truthPairs.keySet());
+        keys.addAll(estPairs.keySet());
+
+        List<Edge> none = Collections.emptyList();
+
+        for (Long key : keys) {
+            List<Edge> trueEdges = truthPairs.containsKey(key) ? truthPairs.get(key) : none;
+            List<Edge> estEdges = estPairs.containsKey(key) ? estPairs.get(key) : none;
+
+            countAdjacency(!trueEdges.isEmpty(), !estEdges.isEmpty());
+
+            for (Edge edge : trueEdges) {
+                countTrueEdge(edge, trueEdges, estEdges);
+            }
+
+            for (Edge edge : estEdges) {
+                countEstEdge(edge, trueEdges, estEdges);
+            }
+        }
+
+        int allEdges = truth.getNumNodes() * (truth.getNumNodes() - 1) / 2;
+        adjTn = allEdges - adjFn;
+
+        // Each two-cycle has been seen once for each of its edges.
+        twoCycleTp /= 2;
+        twoCycleFn /= 2;
+        twoCycleFp /= 2;
+    }
+
+    /**
+     * @return the confusion for the given graphs, from the cache if caching is on for this
+     * thread and it has already been computed for these two graph objects.
+     */
+    public static GraphConfusion of(Graph truth, Graph est) {
+        Map<Graph, Map<Graph, GraphConfusion>> cache = CACHE.get();
+
+        if (cache == null) {
+            return new GraphConfusion(truth, est);
+        }
+
+        Map<Graph, GraphConfusion> forTruth = cache.get(truth);
+
+        if (forTruth == null) {
+            forTruth = new IdentityHashMap<>();
+            cache.put(truth, forTruth);
+        }
+
+        GraphConfusion confusion = forTruth.get(est);
+
+        if (confusion == null) {
+            confusion = new GraphConfusion(truth, est);
+            forTruth.put(est, confusion);
+        }
+
+        return confusion;
+    }
+
+    /**
+     * Turns caching on or off for this thread. Graphs must not be modified while caching is
+     * on; turning it off discards what has been cached.
+     */
+    public static void setCaching(boolean caching) {
+        if (caching) {
+            if (CACHE.get() == null) CACHE.set(new IdentityHashMap<>());
+        } else {
+            CACHE.remove();
+        }
+    }
+
+    public int getAdjTp() {
+        return adjTp;
+    }
+
+    public int getAdjFp() {
+        return adjFp;
+    }
+
+    public int getAdjFn() {
+        return adjFn;
+    }
+
+    public int getAdjTn() {
+        return adjTn;
+    }
+
+    public int getArrowsTp() {
+        return arrowsTp;
+    }
+
+    public int getArrowsFp() {
+        return arrowsFp;
+    }
+
+    public int getArrowsFn() {
+        return arrowsFn;
+    }
+
+    public int getArrowsTn() {
+        return arrowsTn;
+    }
+
+    /**
+     * True positives for common edges.
+     */
+    public int getArrowsTpc() {
+        return arrowsTpc;
+    }
+
+    /**
+     * False positives for common edges.
+     */
+    public int getArrowsFpc() {
+        return arrowsFpc;
+    }
+
+    /**
+     * False negatives for common edges.
+     */
+    public int getArrowsFnc() {
+        return arrowsFnc;
+    }
+
+    /**
+     * True negatives for common edges.
+     */
+    public int getArrowsTnc() {
+        return arrowsTnc;
+    }
+
+    public int getTailsTp() {
+        return tailsTp;
+    }
+
+    public int getTailsFp() {
+        return tailsFp;
+    }
+
+    public int getTailsFn() {
+        return tailsFn;
+    }
+
+    public int getTailsTn() {
+        return tailsTn;
+    }
+
+    public int getTwoCycleTp() {
+        return twoCycleTp;
+    }
+
+    public int getTwoCycleFp() {
+        return twoCycleFp;
+    }
+
+    public int getTwoCycleFn() {
+        return twoCycleFn;
+    }
+
+    private void countAdjacency(boolean inTruth, boolean inEst) {
+        if (inTruth && inEst) adjTp++;
+        else if (inEst) adjFp++;
+        else if (inTruth) adjFn++;
+    }
+
+    // Counts the positives and negatives of a true edge against the estimated edge between its nodes.
+    private void countTrueEdge(Edge edge, List<Edge> trueEdges, List<Edge> estEdges) {
+        int x = index(edge.getNode1());
+        int y = index(edge.getNode2());
+
+        Edge estEdge = edgeBetween(estEdges, x, y);
+        Edge trueEdge = edgeBetween(trueEdges, x, y);
+        boolean common = estEdge != null && trueEdge != null;
+
+        Endpoint e1Est = endpoint(estEdge, x);
+        Endpoint e2Est = endpoint(estEdge, y);
+        Endpoint e1True = endpoint(trueEdge, x);
+        Endpoint e2True = endpoint(trueEdge, y);
+
+        for (int k = 0; k < 2; k++) {
+            Endpoint _true = k == 0 ? e1True : e2True;
+            Endpoint _est = k == 0 ? e1Est : e2Est;
+
+            if (_true == Endpoint.ARROW) {
+                if (_est == Endpoint.ARROW) {
+                    arrowsTp++;
+                    if (common) arrowsTpc++;
+                } else {
+                    arrowsFn++;
+                    if (common) arrowsFnc++;
+                }
+            } else if (_est != Endpoint.ARROW) {
+                arrowsTn++;
+                if (common) arrowsTnc++;
+            }
+
+            if (_true == Endpoint.TAIL) {
+                if (_est == Endpoint.TAIL) tailsTp++;
+                else tailsFn++;
+            } else if (_est != Endpoint.TAIL) {
+                tailsTn++;
+            }
+        }
+
+        if (trueEdges.size() == 2) {
+            if (estEdges.size() == 2) twoCycleTp++;
+            else twoCycleFn++;
+        }
+    }
+
+    // Counts the false positives of an estimated edge against the true edge between its nodes.
+    private void countEstEdge(Edge edge, List<Edge> trueEdges, List<Edge> estEdges) {
+        int x = index(edge.getNode1());
+        int y = index(edge.getNode2());
+
+        Edge estEdge = edgeBetween(estEdges, x, y);
+        Edge trueEdge = edgeBetween(trueEdges, x, y);
+        boolean common = estEdge != null && trueEdge != null;
+
+        Endpoint e1Est = endpoint(estEdge, x);
+        Endpoint e2Est = endpoint(estEdge, y);
+        Endpoint e1True = endpoint(trueEdge, x);
+        Endpoint e2True = endpoint(trueEdge, y);
+
+        for (int k = 0; k < 2; k++) {
+            Endpoint _true = k == 0 ? e1True : e2True;
+            Endpoint _est = k == 0 ? e1Est : e2Est;
+
+            if (_est == Endpoint.ARROW && _true != Endpoint.ARROW) {
+                arrowsFp++;
+                if (common) arrowsFpc++;
+            }
+
+            if (_est == Endpoint.TAIL && _true != Endpoint.TAIL) {
+                tailsFp++;
+            }
+        }
+
+        if (trueEdges.size() != 2 && estEdges.size() == 2) {
+            twoCycleFp++;
+        }
+    }
+
+    // The only edge between x and y, or if there are several (or none) the one directed from x to y, if any.
+    private Edge edgeBetween(List<Edge> edges, int x, int y) {
+        if (edges.size() == 1) return edges.get(0);
+
+        for (Edge edge : edges) {
+            if (Edges.isDirectedEdge(edge) && endpoint(edge, y) == Endpoint.ARROW) {
+                return edge;
+            }
+        }
+
+        return null;
+    }
+
+    // The endpoint of the edge at the node with the given index, null if there is none.
+    private Endpoint endpoint(Edge edge, int node) {
+        if (edge == null) return null;
+        if (index(edge.getNode1()) == node) return edge.getEndpoint1();
+        if (index(edge.getNode2()) == node) return edge.getEndpoint2();
+        return null;
+    }
+
+    // The edges of the graph, by unordered pair of node indices.
+    private Map<Long, List<Edge>> pairs(Graph graph) {
+        Map<Long, List<Edge>> pairs = new HashMap<>();
+
+        for (Edge edge : graph.getEdges()) {
+            int x = index(edge.getNode1());
+            int y = index(edge.getNode2());
+            long key = ((long) Math.min(x, y) << 32) | Math.max(x, y);
+
+            List<Edge> edges = pairs.get(key);
+
+            if (edges == null) {
+                edges = new ArrayList<>(1);
+                pairs.put(key, edges);
+            }
+
+            edges.add(edge);
+        }
+
+        return pairs;
+    }
+
+    private int index(Node node) {
+        Integer index = indices.get(node.getName());
+
+        if (index == null) {
+            index = indices.size();
+            indices.put(node.getName(), index);
+        }
+
+        return index;
+    }
+}
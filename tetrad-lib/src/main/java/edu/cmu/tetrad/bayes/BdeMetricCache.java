@@ -22,10 +22,11 @@
 package edu.cmu.tetrad.bayes;
 
 import edu.cmu.tetrad.data.DataSet;
-import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Dag;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.ProbUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +67,11 @@ public final class BdeMetricCache {
 
     private double[][] observedCounts;
 
+    //The Bayes IM the scores in the map were computed against, and the expected
+    //counts of the data under it.
+    private BayesIm scoredIm;
+    private ExpectedCounts expectedCounts;
+
     public BdeMetricCache(DataSet dataSet, BayesPm bayesPm) {
         this.bayesPm = bayesPm;
         this.dataSet = dataSet;
@@ -95,6 +101,12 @@ public final class BdeMetricCache {
         NodeParentsPair nodeAndParents = new NodeParentsPair(node, parents);
         double score;
 
+        //Scores computed against a different Bayes IM do not apply.
+        if (bayesIm != scoredIm) {
+            scores.clear();
+            scoredIm = bayesIm;
+        }
+
         //If the score of this factor has already been computed and stored, retrieve it from the
         //Map scores.
         if (scores.containsKey(nodeAndParents)) {
@@ -257,209 +269,95 @@ public final class BdeMetricCache {
     }
 
 
+    /**
+     * Sets observedCounts to the expected counts of the node with its parents in the
+     * test Bayes PM, given the data, under the Bayes IM, which must have the variables
+     * of the data and may have latent variables as well. See ExpectedCounts.
+     */
     private void computeObservedCountsMD(Node node, BayesPm bayesPmTest,
                                          BayesIm bayesIm) {
-        //private void computeObservedCountsMD(Node node, BayesPm bayesPm, BayesIm bayesIm) {
-        //        System.out.println("Using the new  obs counts MD");
-        int numCases = dataSet.getNumRows();
-        int numVariables = variables.size();
-
-        //Graph graph1 = bayesIm.getBayesPm().getGraph();    //The original model
-        //Graph graph2 = bayesPm.getGraph();                 //The variation
-        Graph graph = bayesIm.getBayesPm().getDag();
-
-//        int[][] rawData = dataSet.getIntMatrixTransposedTrimmed();
-        RowSummingExactUpdater rseu = new RowSummingExactUpdater(bayesIm);
-        //BayesImProbs imProbs = new BayesImProbs(bayesIm);   XXX
-
-        String name = node.getName();
-
-        int index = getVarIndex(name);   //Index of the variable in the dataset.
-//        DiscreteVariable ar = (DiscreteVariable) variables.get(index);
-
-        //int numCols = ar.getNumSplits();
-        int numCols = bayesPmTest.getNumCategories(node);
-
         BayesIm bayesImTest = new MlBayesIm(bayesPmTest);
-        int nodeIndexImTest = bayesImTest.getNodeIndex(node);
-        int numRows = bayesImTest.getNumRows(nodeIndexImTest);
-
-        int varIndex = bayesImTest.getNodeIndex(
-                node);    //Index of the variable in the Bayes net
+        int varIndex = bayesImTest.getNodeIndex(node);
         int[] parentVarIndices = bayesImTest.getParents(varIndex);
+        int numRows = bayesImTest.getNumRows(varIndex);
+        int numCols = bayesImTest.getNumColumns(varIndex);
 
-        //For variables with parents
-        //int numRows = bayesImTest.getNumRows(varIndex);
-        if (parentVarIndices.length == 0) {              //node has no parents
-
-            for (int col = 0; col < numCols; col++) {
-                observedCounts[0][col] = 0;
-            }
-
-            for (int i = 0; i < numCases; i++) {
-//                if (rawData[index][i] != -99) {
-                if (dataSet.getInt(i, index) != -99) {
-                    observedCounts[0][dataSet.getInt(i, index)] += 1.0;
-                } else {
-                    //Find marginal probability, given the obs data in this case p(v=0)
-                    Evidence evidenceThisCase = Evidence.tautology(bayesIm);
-                    boolean existsEvidence = false;
-
-                    //Define evidence for updating by using the values of the other vars.
-                    for (int k = 0; k < numVariables; k++) {
-                        /*
-                        if(k == index) continue;
-                        Variable otherVar = (Variable) variables.get(k);
-                        if(rawData[k][i] == -99) continue;
-                        */
+        //The same family, by the indices of its variables in bayesIm.
+        int nodeIndex = getImIndex(bayesIm, node.getName());
+        int[] parents = new int[parentVarIndices.length];
 
-                        if (dataSet.getInt(i, k) == -99) {
-                            continue;
-                        }
-                        Node otherVar = variables.get(k);
-
-                        existsEvidence = true;
-                        String otherVarName = otherVar.getName();
-                        //Node otherNode = graph1.getNode(otherVarName);
-                        Node otherNode = graph.getNode(otherVarName);
-                        int otherIndex = bayesIm.getNodeIndex(otherNode);
-
-                        evidenceThisCase.getProposition().setCategory(
-                                otherIndex, dataSet.getInt(i, k));
-
-                    }
-
-                    //if(!existsEvidence) continue;  //No other variable contained useful data.
+        for (int p = 0; p < parents.length; p++) {
+            parents[p] = getImIndex(bayesIm,
+                    bayesImTest.getNode(parentVarIndices[p]).getName());
+        }
 
-                    rseu.setEvidence(evidenceThisCase);
+        double[] counts = getExpectedCounts(bayesIm).getCounts(bayesIm,
+                nodeIndex, parents);
 
-                    //Compute marginal probabilities of each value  of ar and increase
-                    //observed counts accordingly
-                    for (int m = 0; m < numCols; m++) {
-                        double p = rseu.getMarginal(varIndex, m);
-                        if (Double.isNaN(p)) {
-                            System.out.println(
-                                    "esixtsEvidence = " + existsEvidence);
-                            System.out.println("getMarginal returns NaN for ");
-                            System.exit(0);
-                        }
-                        //double p = imProbs.getProb(evidenceThisCase.getProposition());  XXX
-                        observedCounts[0][m] += p;
-                    }
+        observedCounts = new double[numRows][numCols];
 
-                }
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                observedCounts[row][col] = counts[row * numCols + col];
             }
-        } else {
-            for (int row = 0; row < numRows; row++) {
-                int[] parValues = bayesImTest.getParentValues(varIndex, row);
-
-                for (int col = 0; col < numCols; col++) {
-                    observedCounts[row][col] = 0.0;
-                }
-
-                for (int i = 0; i < numCases; i++) {
-                    //For a case where the parent values = parValues increment the counts
-
-                    boolean parentMatch = true;
-
-                    for (int p = 0; p < parentVarIndices.length; p++) {
-                        if (parValues[p] !=
-                                dataSet.getInt(i, parentVarIndices[p]) &&
-                                dataSet.getInt(i, parentVarIndices[p]) != -99) {
-                            parentMatch = false;
-                            break;
-                        }
-                    }
-
-                    if (!parentMatch) {
-                        continue;
-                    }
-
-                    boolean parentMissing = false;
-
-                    for (int parentVarIndice : parentVarIndices) {
-                        if (dataSet.getInt(i, parentVarIndice) == -99) {
-                            parentMissing = true;
-                            break;
-                        }
-                    }
-
-                    if (dataSet.getInt(i, index) != -99 && !parentMissing) {
-                        observedCounts[row][dataSet.getInt(i, index)] += 1.0;
-                        continue;    //Next case
-                    }
-
-                    //For a case with missing data (either ar or one of its parents)
-                    //compute the joint marginal distrubiton for ar and this combination
-                    //of values of its parents and update observedCounts accordingly.
+        }
+    }
 
-                    //To compute marginals create the evidence
-                    Evidence evidenceThisCase = Evidence.tautology(bayesIm);
+    /**
+     * Computes the expected counts of all of the factors of the given DAGs under
+     * the given Bayes IM together, propagating each pattern of values in the
+     * data once for all of them, so that scoreLnGam finds them already computed
+     * when it scores the DAGs against that Bayes IM.
+     */
+    public void computeExpectedCounts(List<Dag> dags, BayesIm bayesIm) {
+        List<Integer> nodes = new ArrayList<>();
+        List<int[]> parents = new ArrayList<>();
 
-                    // "evidenceVars" not used.
-//                List<String> evidenceVars = new LinkedList<String>();
-//                for (int k = 0; k < numVariables; k++) {
-//                    Variable otherVar = variables.get(k);
-//                    if (dataSet.getInt(i, k) == -99) {
-//                        continue;
-//                    }
-//                    existsEvidence = true;
-//                    String otherVarName = otherVar.getNode();
-//                    //Node otherNode = graph1.getNode(otherVarName);
-//                    Node otherNode = graph.getNode(otherVarName);
-//                    int otherIndex = bayesIm.getNodeIndex(otherNode);
-//                    evidenceThisCase.getProposition().setCategory(
-//                            otherIndex, dataSet.getInt(i, k));
-//                    evidenceVars.add(otherVarName);
-//                }
+        for (Dag dag : dags) {
+            for (Node node : dag.getNodes()) {
+                List<Node> parentList = dag.getParents(node);
+                int[] parentIndices = new int[parentList.size()];
 
-                    //if(!existsEvidence) continue;
+                for (int p = 0; p < parentIndices.length; p++) {
+                    parentIndices[p] = getImIndex(bayesIm, parentList.get(p).getName());
+                }
 
-                    rseu.setEvidence(evidenceThisCase);
+                nodes.add(getImIndex(bayesIm, node.getName()));
+                parents.add(parentIndices);
+            }
+        }
 
-                    int[] parPlusChildIndices =
-                            new int[parentVarIndices.length + 1];
-                    int[] parPlusChildValues =
-                            new int[parentVarIndices.length + 1];
+        int[] _nodes = new int[nodes.size()];
+        for (int i = 0; i < _nodes.length; i++) _nodes[i] = nodes.get(i);
 
-                    parPlusChildIndices[0] = varIndex;
-                    for (int pc = 1; pc < parPlusChildIndices.length; pc++) {
-                        parPlusChildIndices[pc] = parentVarIndices[pc - 1];
-                        parPlusChildValues[pc] = parValues[pc - 1];
-                    }
+        getExpectedCounts(bayesIm).getCounts(bayesIm, _nodes,
+                parents.toArray(new int[parents.size()][]));
+    }
 
-                    for (int m = 0; m < numCols; m++) {
-                        parPlusChildValues[0] = m;
-
-                        //double p = imProbs.getProb(evidenceThisCase.getProposition());  XXX
-                        //next stmt commented out on 11/29/04 in favor of following stmt.
-                        double p = rseu.getJointMarginal(parPlusChildIndices,
-                                parPlusChildValues);
-                        //double p = rseu.getMarginal(varIndex, m);
-                        if (Double.isNaN(p)) {
-                            System.out.println(
-                                    "existsEvidence = " + false);
-                            System.out.println(
-                                    "getJointMarginal returns NaN for ");
-                            System.exit(0);
-                        }
-                        observedCounts[row][m] += p;
+    //The expected counts for the data over the variables of the Bayes IM; the
+    //rows of the data are grouped anew only if the variables change.
+    private ExpectedCounts getExpectedCounts(BayesIm bayesIm) {
+        List<Node> imVariables = new ArrayList<>();
 
-                    }
+        for (int i = 0; i < bayesIm.getNumNodes(); i++) {
+            imVariables.add(bayesIm.getNode(i));
+        }
 
-                }       //numCases
+        if (expectedCounts == null || !expectedCounts.getVariables().equals(imVariables)) {
+            expectedCounts = new ExpectedCounts(dataSet, imVariables);
+        }
 
+        return expectedCounts;
+    }
 
-            }    //row loop
-        }
+    private static int getImIndex(BayesIm bayesIm, String name) {
+        Node node = bayesIm.getNode(name);
 
-        //else/*   Commented out on 11.22.04 to see if it causes a problem.
-        for (int row = 0; row < numRows; row++) {
-            for (int col = 0; col < numCols; col++) {
-                observedCounts[row][col] *= numCases;
-            }
+        if (node == null) {
+            throw new IllegalArgumentException("Not a variable of the Bayes IM: " + name);
         }
 
+        return bayesIm.getNodeIndex(node);
     }
 
 //    //This is the version that uses BayesImProbs
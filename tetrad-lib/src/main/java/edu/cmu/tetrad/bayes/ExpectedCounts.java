@@ -0,0 +1,430 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.DiscreteVariable;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Expected counts of the families of a Bayes net, given a discrete data set in which
+ * values may be missing and variables of the net may be latent: for a node and a set of
+ * parents, the sum over the rows of the data of P(node, parents | row's observed values)
+ * under the net. These are the sufficient statistics of the E-step of EM (see
+ * EmBayesEstimator) and of the expected BDe scores of structural EM (see
+ * BdeMetricCache).
+ * <p>
+ * The rows are grouped once by their pattern of observed values, so each distinct
+ * pattern is propagated once, weighted by the number of rows having it. Patterns are
+ * propagated in a junction tree (see JunctionTree), in parallel over fixed blocks of
+ * patterns, each with a tree of its own; the blocks are sorted so that neighboring
+ * patterns differ in few values and the propagation is mostly incremental. Patterns
+ * in which the whole family is observed are counted without propagation.
+ * <p>
+ * Families need not be families of the net, so candidate structures can be scored
+ * against it. The counts are cached by node and (unordered) parent set until they are
+ * asked for with a different net.
+ */
+public final class ExpectedCounts {
+
+    // The number of patterns propagated in one tree; fixed, so the sums do not depend
+    // on the number of threads.
+    private static final int BLOCK_SIZE = 200;
+
+    private final List<Node> variables;
+    private final int[][] patterns;
+    private final double[] weights;
+    private final int numRows;
+
+    private BayesIm bayesIm;
+    private final Map<List<Integer>, double[]> cache = new HashMap<>();
+
+    /**
+     * @param dataSet   A discrete data set, with missing values coded as -99.
+     * @param variables The variables of the Bayes nets the counts will be for, in
+     *                  order. Each is matched by name to a column of the data; those
+     *                  that have none are latent, missing in every row.
+     */
+    public ExpectedCounts(DataSet dataSet, List<Node> variables) {
+        if (dataSet == null) throw new NullPointerException("Data set may not be null.");
+        if (variables == null) throw new NullPointerException("Variables may not be null.");
+
+        this.variables = new ArrayList<>(variables);
+        this.numRows = dataSet.getNumRows();
+
+        int[] columns = new int[variables.size()];
+
+        for (int v = 0; v < columns.length; v++) {
+            Node column = dataSet.getVariable(variables.get(v).getName());
+            columns[v] = column == null ? -1 : dataSet.getColumn(column);
+
+            if (columns[v] != -1 && !(column instanceof DiscreteVariable)) {
+                throw new IllegalArgumentException("Not a discrete variable: " + column);
+            }
+        }
+
+        Map<Pattern, int[]> counts = new HashMap<>();
+
+        for (int i = 0; i < numRows; i++) {
+            int[] values = new int[columns.length];
+
+            for (int v = 0; v < columns.length; v++) {
+                values[v] = columns[v] == -1 ? DiscreteVariable.MISSING_VALUE : dataSet.getInt(i, columns[v]);
+                if (values[v] < 0) values[v] = DiscreteVariable.MISSING_VALUE;
+            }
+
+            Pattern pattern = new Pattern(values);
+            int[] count = counts.get(pattern);
+
+            if (count == null) {
+                counts.put(pattern, new int[]{1});
+            } else {
+                count[0]++;
+            }
+        }
+
+        List<Pattern> sorted = new ArrayList<>(counts.keySet());
+
+        Collections.sort(sorted, new Comparator<Pattern>() {
+            public int compare(Pattern p1, Pattern p2) {
+                for (int v = 0; v < p1.values.length; v++) {
+                    if (p1.values[v] != p2.values[v]) return Integer.compare(p1.values[v], p2.values[v]);
+                }
+
+                return 0;
+            }
+        });
+
+        this.patterns = new int[sorted.size()][];
+        this.weights = new double[sorted.size()];
+
+        for (int k = 0; k < sorted.size(); k++) {
+            patterns[k] = sorted.get(k).values;
+            weights[k] = counts.get(sorted.get(k))[0];
+        }
+    }
+
+    /**
+     * @return The expected counts of each node's family in the given net, in the layout
+     * of its conditional probability table: the count for row r and column j is at
+     * r * numColumns + j.
+     */
+    public double[][] getCounts(BayesIm bayesIm) {
+        int[][] families = new int[bayesIm.getNumNodes()][];
+
+        for (int node = 0; node < families.length; node++) {
+            families[node] = bayesIm.getParents(node);
+        }
+
+        int[] nodes = new int[families.length];
+        for (int node = 0; node < nodes.length; node++) nodes[node] = node;
+
+        return getCounts(bayesIm, nodes, families);
+    }
+
+    /**
+     * @return The expected counts of the given node with the given parents (indices of
+     * variables in the net, in the order of the rows of the table), over the parents
+     * and then the node, the node varying fastest.
+     */
+    public double[] getCounts(BayesIm bayesIm, int node, int[] parents) {
+        return getCounts(bayesIm, new int[]{node}, new int[][]{parents})[0];
+    }
+
+    /**
+     * @return The expected counts of each node with the corresponding parents, as for
+     * getCounts(bayesIm, node, parents), propagating each pattern once for all of the
+     * families not yet cached.
+     */
+    public synchronized double[][] getCounts(BayesIm bayesIm, int[] nodes, int[][] parents) {
+        if (bayesIm == null) throw new NullPointerException("Bayes IM may not be null.");
+        if (nodes.length != parents.length) {
+            throw new IllegalArgumentException("There must be a parent set for each node.");
+        }
+
+        if (bayesIm != this.bayesIm) {
+            checkVariables(bayesIm);
+            cache.clear();
+            this.bayesIm = bayesIm;
+        }
+
+        List<List<Integer>> keys = new ArrayList<>();
+        List<int[]> toCompute = new ArrayList<>();
+
+        for (int f = 0; f < nodes.length; f++) {
+            List<Integer> key = key(nodes[f], parents[f]);
+
+            if (!cache.containsKey(key) && !keys.contains(key)) {
+                keys.add(key);
+                toCompute.add(sortedFamily(key));
+            }
+        }
+
+        if (!toCompute.isEmpty()) {
+            int[][] families = toCompute.toArray(new int[toCompute.size()][]);
+            double[][] counts = compute(bayesIm, families);
+
+            for (int f = 0; f < families.length; f++) {
+                cache.put(keys.get(f), counts[f]);
+            }
+        }
+
+        double[][] counts = new double[nodes.length][];
+
+        for (int f = 0; f < nodes.length; f++) {
+            List<Integer> key = key(nodes[f], parents[f]);
+            counts[f] = relayout(bayesIm, cache.get(key), sortedFamily(key), nodes[f], parents[f]);
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return The number of distinct patterns of observed values in the data.
+     */
+    public int getNumPatterns() {
+        return patterns.length;
+    }
+
+    /**
+     * @return The number of rows of the data.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public List<Node> getVariables() {
+        return new ArrayList<>(variables);
+    }
+
+    // Sums the expected counts of the families (each its variables with the node last)
+    // over the blocks of patterns, in parallel; the blocks are added in order.
+    private double[][] compute(final BayesIm bayesIm, final int[][] families) {
+        final int numBlocks = (patterns.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final double[][][] blockCounts = new double[numBlocks][][];
+
+        class BlockTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private BlockTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 1) {
+                    for (int b = from; b < to; b++) {
+                        blockCounts[b] = computeBlock(bayesIm, families, b * BLOCK_SIZE,
+                                Math.min(patterns.length, (b + 1) * BLOCK_SIZE));
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    BlockTask left = new BlockTask(from, mid);
+                    BlockTask right = new BlockTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        if (numBlocks > 1) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new BlockTask(0, numBlocks));
+        } else if (numBlocks == 1) {
+            blockCounts[0] = computeBlock(bayesIm, families, 0, patterns.length);
+        }
+
+        double[][] counts = new double[families.length][];
+
+        for (int f = 0; f < families.length; f++) {
+            counts[f] = new double[size(bayesIm, families[f])];
+
+            for (int b = 0; b < numBlocks; b++) {
+                double[] block = blockCounts[b][f];
+
+                for (int cell = 0; cell < block.length; cell++) {
+                    counts[f][cell] += block[cell];
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    private double[][] computeBlock(BayesIm bayesIm, int[][] families, int from, int to) {
+        double[][] counts = new double[families.length][];
+
+        for (int f = 0; f < families.length; f++) {
+            counts[f] = new double[size(bayesIm, families[f])];
+        }
+
+        JunctionTree tree = null;
+
+        for (int k = from; k < to; k++) {
+            int[] values = patterns[k];
+            boolean propagated = false;
+
+            for (int f = 0; f < families.length; f++) {
+                int[] family = families[f];
+                int index = 0;
+
+                for (int v : family) {
+                    if (values[v] < 0) {
+                        index = -1;
+                        break;
+                    }
+
+                    index = index * bayesIm.getNumColumns(v) + values[v];
+                }
+
+                if (index != -1) {
+                    counts[f][index] += weights[k];
+                    continue;
+                }
+
+                if (!propagated) {
+                    if (tree == null) tree = new JunctionTree(bayesIm);
+                    tree.setEvidence(values);
+                    propagated = true;
+                }
+
+                double[] joint = tree.getJointTable(family);
+
+                for (int cell = 0; cell < joint.length; cell++) {
+                    counts[f][cell] += weights[k] * joint[cell];
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    private void checkVariables(BayesIm bayesIm) {
+        if (bayesIm.getNumNodes() != variables.size()) {
+            throw new IllegalArgumentException("The Bayes IM does not have the variables of the counts.");
+        }
+
+        for (int v = 0; v < variables.size(); v++) {
+            if (!bayesIm.getNode(v).getName().equals(variables.get(v).getName())) {
+                throw new IllegalArgumentException("Expecting variable " + variables.get(v)
+                        + " at index " + v + " of the Bayes IM: " + bayesIm.getNode(v));
+            }
+        }
+    }
+
+    // The node, then its parents in ascending order.
+    private static List<Integer> key(int node, int[] parents) {
+        int[] sorted = parents.clone();
+        Arrays.sort(sorted);
+
+        List<Integer> key = new ArrayList<>(sorted.length + 1);
+        key.add(node);
+        for (int p : sorted) key.add(p);
+        return key;
+    }
+
+    // The sorted parents, then the node.
+    private static int[] sortedFamily(List<Integer> key) {
+        int[] family = new int[key.size()];
+
+        for (int i = 1; i < key.size(); i++) family[i - 1] = key.get(i);
+        family[family.length - 1] = key.get(0);
+
+        return family;
+    }
+
+    private static int size(BayesIm bayesIm, int[] family) {
+        int size = 1;
+        for (int v : family) size *= bayesIm.getNumColumns(v);
+        return size;
+    }
+
+    // Lays out counts over the sorted family over the parents in the order given instead.
+    private static double[] relayout(BayesIm bayesIm, double[] counts, int[] sorted, int node, int[] parents) {
+        int[] family = Arrays.copyOf(parents, parents.length + 1);
+        family[parents.length] = node;
+
+        if (Arrays.equals(family, sorted)) return counts.clone();
+
+        int[] weights = new int[family.length];
+        int stride = 1;
+
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            for (int j = 0; j < family.length; j++) {
+                if (family[j] == sorted[i]) weights[j] = stride;
+            }
+
+            stride *= bayesIm.getNumColumns(sorted[i]);
+        }
+
+        double[] laidOut = new double[counts.length];
+        int[] values = new int[family.length];
+        int index = 0;
+
+        for (int cell = 0; cell < laidOut.length; cell++) {
+            laidOut[cell] = counts[index];
+
+            for (int k = family.length - 1; k >= 0; k--) {
+                if (++values[k] < bayesIm.getNumColumns(family[k])) {
+                    index += weights[k];
+                    break;
+                }
+
+                index -= weights[k] * (values[k] - 1);
+                values[k] = 0;
+            }
+        }
+
+        return laidOut;
+    }
+
+    private static final class Pattern {
+        private final int[] values;
+        private final int hashCode;
+
+        private Pattern(int[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Pattern && Arrays.equals(values, ((Pattern) o).values);
+        }
+    }
+}
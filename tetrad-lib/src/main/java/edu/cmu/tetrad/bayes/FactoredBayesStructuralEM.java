@@ -29,6 +29,7 @@ import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.TetradLogger;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -368,6 +369,17 @@ public final class FactoredBayesStructuralEM {
                 Dag dagMn = new Dag(graphMn);
                 List<Graph> models = ModelGenerator.generate(graphMn);
 
+                //The models share most of their factors; compute the expected counts
+                //of all of them under bayesImMn in one pass over the data.
+                List<Dag> dags = new ArrayList<>();
+                dags.add(dagMn);
+
+                for (Graph model : models) {
+                    dags.add(new Dag(model));
+                }
+
+                bdeMetricCache.computeExpectedCounts(dags, bayesImMn);
+
                 //double bestScore = 0.0;
                 //Initialize bestScore to the score of bayesPmMn
                 //(whose graph is varied in the for loop).
@@ -0,0 +1,808 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.bayes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A junction tree compiled from a Bayes IM, for exact updating. The moral graph of the
+ * IM's DAG is triangulated by eliminating variables in min-fill order, the maximal
+ * clusters become the cliques, and the cliques are joined into a tree by a maximum
+ * spanning tree on separator size. Each conditional probability table is multiplied
+ * into one clique containing its family. Potentials are flat double arrays over the
+ * clique's variables in ascending order, the last varying fastest.
+ * <p>
+ * Evidence is a set of allowed categories for each variable, entered into the smallest
+ * clique containing it. Propagation is lazy and incremental: the message a clique
+ * sends toward the root depends only on the evidence in its subtree, so when evidence
+ * changes only the cliques on the paths from the changed variables to the root collect
+ * again, and the beliefs of a clique are computed only when a query needs them, by
+ * distributing down the path from the root. A new tree must be compiled if the
+ * probabilities or the graph of the IM change.
+ */
+final class JunctionTree {
+
+    // Number of categories of each variable.
+    private final int[] dims;
+
+    // The variables of each clique, ascending, and their strides in the clique's potential.
+    private final int[][] cliques;
+    private final int[][] strides;
+    private final BitSet[] cliqueSets;
+
+    // The parent of each clique in the tree (-1 for the root), the cliques in an order
+    // in which each parent comes before its children, and the children of each clique.
+    private final int[] parent;
+    private final int[] order;
+    private final int[][] children;
+
+    // For each clique other than the root, the separator cell of each of its cells and of
+    // each of its parent's cells.
+    private final int[][] sepMapChild;
+    private final int[][] sepMapParent;
+    private final int[] sepSizes;
+
+    // For each variable, the smallest clique containing it and the clique its conditional
+    // probability table was multiplied into. For each clique, the variables whose home it is.
+    private final int[] home;
+    private final int[] family;
+    private final int[][] homeVars;
+
+    // The product of the tables assigned to each clique, the same times the evidence and the
+    // messages from the clique's children, the (normalized) message each clique sends its
+    // parent, and the (normalized) beliefs of each clique.
+    private final double[][] base;
+    private final double[][] collected;
+    private final double[][] up;
+    private final double[][] belief;
+    private final boolean[] collectedValid;
+    private final boolean[] beliefValid;
+
+    // The allowed categories of each variable, and whether any is disallowed.
+    private final boolean[][] allowed;
+    private final boolean[] restricted;
+
+    private final BayesIm bayesIm;
+
+    /**
+     * Compiles a junction tree for the given IM, with no evidence.
+     */
+    JunctionTree(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        int numVars = bayesIm.getNumNodes();
+        this.dims = new int[numVars];
+
+        for (int v = 0; v < numVars; v++) {
+            dims[v] = bayesIm.getNumColumns(v);
+        }
+
+        List<BitSet> clusters = triangulate(moralize());
+        int numCliques = clusters.size();
+
+        this.cliqueSets = clusters.toArray(new BitSet[numCliques]);
+        this.cliques = new int[numCliques][];
+        this.strides = new int[numCliques][];
+
+        for (int c = 0; c < numCliques; c++) {
+            cliques[c] = cliqueSets[c].stream().toArray();
+            strides[c] = new int[cliques[c].length];
+            long size = 1;
+
+            for (int k = cliques[c].length - 1; k >= 0; k--) {
+                strides[c][k] = (int) size;
+                size *= dims[cliques[c][k]];
+
+                if (size > Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("The junction tree for this Bayes IM has " +
+                            "a clique too large to store: " + names(cliques[c]));
+                }
+            }
+        }
+
+        this.parent = new int[numCliques];
+        this.order = new int[numCliques];
+        connect();
+
+        this.children = new int[numCliques][];
+        int[] numChildren = new int[numCliques];
+
+        for (int c = 0; c < numCliques; c++) {
+            if (parent[c] != -1) numChildren[parent[c]]++;
+        }
+
+        for (int c = 0; c < numCliques; c++) {
+            children[c] = new int[numChildren[c]];
+            numChildren[c] = 0;
+        }
+
+        for (int c : order) {
+            if (parent[c] != -1) children[parent[c]][numChildren[parent[c]]++] = c;
+        }
+
+        this.sepMapChild = new int[numCliques][];
+        this.sepMapParent = new int[numCliques][];
+        this.sepSizes = new int[numCliques];
+
+        for (int c = 0; c < numCliques; c++) {
+            if (parent[c] == -1) continue;
+            BitSet sep = (BitSet) cliqueSets[c].clone();
+            sep.and(cliqueSets[parent[c]]);
+            int[] sepVars = sep.stream().toArray();
+            sepMapChild[c] = map(c, sepVars);
+            sepMapParent[c] = map(parent[c], sepVars);
+            sepSizes[c] = 1;
+            for (int v : sepVars) sepSizes[c] *= dims[v];
+        }
+
+        this.home = new int[numVars];
+        this.family = new int[numVars];
+        Arrays.fill(home, -1);
+        Arrays.fill(family, -1);
+
+        for (int c = 0; c < numCliques; c++) {
+            for (int v : cliques[c]) {
+                if (home[v] == -1 || size(c) < size(home[v])) home[v] = c;
+            }
+        }
+
+        this.homeVars = new int[numCliques][];
+        int[] numHome = new int[numCliques];
+        for (int v = 0; v < numVars; v++) numHome[home[v]]++;
+        for (int c = 0; c < numCliques; c++) homeVars[c] = new int[numHome[c]];
+        Arrays.fill(numHome, 0);
+        for (int v = 0; v < numVars; v++) homeVars[home[v]][numHome[home[v]]++] = v;
+
+        this.base = new double[numCliques][];
+
+        for (int c = 0; c < numCliques; c++) {
+            base[c] = new double[size(c)];
+            Arrays.fill(base[c], 1.0);
+        }
+
+        for (int v = 0; v < numVars; v++) {
+            int[] familyVars = familyVars(v);
+            BitSet familySet = new BitSet(numVars);
+            for (int w : familyVars) familySet.set(w);
+
+            for (int c = 0; c < numCliques; c++) {
+                BitSet missing = (BitSet) familySet.clone();
+                missing.andNot(cliqueSets[c]);
+
+                if (missing.isEmpty() && (family[v] == -1 || size(c) < size(family[v]))) {
+                    family[v] = c;
+                }
+            }
+
+            int numRows = bayesIm.getNumRows(v);
+            int numCols = bayesIm.getNumColumns(v);
+            double[] table = new double[numRows * numCols];
+
+            for (int row = 0; row < numRows; row++) {
+                for (int col = 0; col < numCols; col++) {
+                    table[row * numCols + col] = bayesIm.getProbability(v, row, col);
+                }
+            }
+
+            double[] potential = base[family[v]];
+            int[] map = map(family[v], familyVars);
+
+            for (int cell = 0; cell < potential.length; cell++) {
+                potential[cell] *= table[map[cell]];
+            }
+        }
+
+        this.collected = new double[numCliques][];
+        this.up = new double[numCliques][];
+        this.belief = new double[numCliques][];
+        this.collectedValid = new boolean[numCliques];
+        this.beliefValid = new boolean[numCliques];
+
+        this.allowed = new boolean[numVars][];
+        this.restricted = new boolean[numVars];
+
+        for (int v = 0; v < numVars; v++) {
+            allowed[v] = new boolean[dims[v]];
+            Arrays.fill(allowed[v], true);
+        }
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * Sets the evidence to the given proposition, which must be over the variables of
+     * the IM, in order. Only the cliques affected by variables whose allowed categories
+     * have changed will be propagated again.
+     */
+    public void setEvidence(Proposition proposition) {
+        if (proposition.getNumVariables() != dims.length) {
+            throw new IllegalArgumentException("The proposition must be over the variables of the IM.");
+        }
+
+        boolean[] _allowed = new boolean[0];
+
+        for (int v = 0; v < dims.length; v++) {
+            if (_allowed.length != dims[v]) _allowed = new boolean[dims[v]];
+
+            for (int j = 0; j < dims[v]; j++) {
+                _allowed[j] = proposition.isAllowed(v, j);
+            }
+
+            setAllowed(v, _allowed);
+        }
+    }
+
+    /**
+     * Sets the evidence to the given values of the variables, in the order of the IM;
+     * a negative value (such as the missing value code -99) leaves the variable free.
+     */
+    public void setEvidence(int[] values) {
+        if (values.length != dims.length) {
+            throw new IllegalArgumentException("There must be a value for each variable of the IM.");
+        }
+
+        boolean[] _allowed = new boolean[0];
+
+        for (int v = 0; v < dims.length; v++) {
+            if (_allowed.length != dims[v]) _allowed = new boolean[dims[v]];
+
+            if (values[v] < 0) {
+                Arrays.fill(_allowed, true);
+            } else {
+                Arrays.fill(_allowed, false);
+                _allowed[values[v]] = true;
+            }
+
+            setAllowed(v, _allowed);
+        }
+    }
+
+    /**
+     * @return P(variable = j | evidence) for each category j of the variable, or NaNs if
+     * the evidence has probability zero.
+     */
+    public double[] getMarginal(int variable) {
+        int c = home[variable];
+        double[] potential = belief(c);
+        int k = position(c, variable);
+        int stride = strides[c][k];
+        int dim = dims[variable];
+
+        double[] marginal = new double[dim];
+
+        for (int cell = 0; cell < potential.length; cell++) {
+            marginal[(cell / stride) % dim] += potential[cell];
+        }
+
+        return normalize(marginal);
+    }
+
+    /**
+     * @return P(variables[i] = values[i] for all i | evidence), or NaN if the evidence has
+     * probability zero. If no clique contains all of the variables, this is found by the
+     * chain rule, adding the variables to the evidence one at a time.
+     */
+    public double getJointMarginal(int[] variables, int[] values) {
+        if (variables.length != values.length) {
+            throw new IllegalArgumentException("Values must match variables.");
+        }
+
+        BitSet set = new BitSet(dims.length);
+        for (int v : variables) set.set(v);
+
+        for (int c = 0; c < cliques.length; c++) {
+            BitSet missing = (BitSet) set.clone();
+            missing.andNot(cliqueSets[c]);
+            if (!missing.isEmpty()) continue;
+
+            double[] potential = belief(c);
+            int[] _strides = new int[variables.length];
+
+            for (int i = 0; i < variables.length; i++) {
+                _strides[i] = strides[c][position(c, variables[i])];
+            }
+
+            double total = 0.0;
+            double sum = 0.0;
+
+            cells:
+            for (int cell = 0; cell < potential.length; cell++) {
+                total += potential[cell];
+
+                for (int i = 0; i < variables.length; i++) {
+                    if ((cell / _strides[i]) % dims[variables[i]] != values[i]) continue cells;
+                }
+
+                sum += potential[cell];
+            }
+
+            return total > 0 ? sum / total : Double.NaN;
+        }
+
+        boolean[][] saved = new boolean[variables.length][];
+        for (int i = 0; i < variables.length; i++) saved[i] = allowed[variables[i]].clone();
+
+        double p = 1.0;
+
+        try {
+            for (int i = 0; i < variables.length && p > 0; i++) {
+                p *= getMarginal(variables[i])[values[i]];
+
+                boolean[] only = new boolean[dims[variables[i]]];
+                only[values[i]] = allowed[variables[i]][values[i]];
+                setAllowed(variables[i], only);
+            }
+        } finally {
+            for (int i = variables.length - 1; i >= 0; i--) {
+                setAllowed(variables[i], saved[i]);
+            }
+        }
+
+        return p;
+    }
+
+    /**
+     * @return P(variables | evidence) as a table over the given (distinct) variables, the
+     * last varying fastest; all zero if the evidence has probability zero. If no clique
+     * contains all of the variables, this is found by conditioning on each in turn,
+     * skipping categories of probability zero.
+     */
+    public double[] getJointTable(int[] variables) {
+        int size = 1;
+        for (int v : variables) size *= dims[v];
+        double[] table = new double[size];
+
+        BitSet set = new BitSet(dims.length);
+        for (int v : variables) set.set(v);
+
+        for (int c = 0; c < cliques.length; c++) {
+            BitSet missing = (BitSet) set.clone();
+            missing.andNot(cliqueSets[c]);
+            if (!missing.isEmpty()) continue;
+
+            double[] potential = belief(c);
+            if (Double.isNaN(potential[0])) return table;
+            int[] map = map(c, variables);
+
+            for (int cell = 0; cell < potential.length; cell++) {
+                table[map[cell]] += potential[cell];
+            }
+
+            return table;
+        }
+
+        fillJointTable(variables, 0, 1.0, 0, table);
+        return table;
+    }
+
+    /**
+     * @return P(variable, parents | evidence) as a table in the layout of the variable's
+     * conditional probability table in the IM: the entry for row r and column j is at
+     * r * numColumns + j. Entries are NaN if the evidence has probability zero.
+     */
+    public double[] getFamilyMarginal(int variable) {
+        int c = family[variable];
+        double[] potential = belief(c);
+        int[] map = map(c, familyVars(variable));
+
+        double[] marginal = new double[bayesIm.getNumRows(variable) * dims[variable]];
+
+        for (int cell = 0; cell < potential.length; cell++) {
+            marginal[map[cell]] += potential[cell];
+        }
+
+        return normalize(marginal);
+    }
+
+    /**
+     * @return The number of cliques.
+     */
+    public int getNumCliques() {
+        return cliques.length;
+    }
+
+    /**
+     * @return The number of cells in the largest clique potential.
+     */
+    public int getMaxCliqueSize() {
+        int max = 0;
+        for (int c = 0; c < cliques.length; c++) max = Math.max(max, size(c));
+        return max;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    // The moral graph of the IM's DAG, as neighbor sets.
+    private BitSet[] moralize() {
+        int numVars = dims.length;
+        BitSet[] adj = new BitSet[numVars];
+        for (int v = 0; v < numVars; v++) adj[v] = new BitSet(numVars);
+
+        for (int v = 0; v < numVars; v++) {
+            int[] parents = bayesIm.getParents(v);
+
+            for (int i = 0; i < parents.length; i++) {
+                link(adj, v, parents[i]);
+
+                for (int j = i + 1; j < parents.length; j++) {
+                    link(adj, parents[i], parents[j]);
+                }
+            }
+        }
+
+        return adj;
+    }
+
+    // Eliminates the variables in min-fill order, breaking ties by the size of the cluster
+    // formed and then by index, and returns the maximal clusters in the order formed.
+    private List<BitSet> triangulate(BitSet[] adj) {
+        int numVars = dims.length;
+        BitSet remaining = new BitSet(numVars);
+        remaining.set(0, numVars);
+
+        int[] fill = new int[numVars];
+        double[] weight = new double[numVars];
+        boolean[] dirty = new boolean[numVars];
+        Arrays.fill(dirty, true);
+
+        List<BitSet> clusters = new ArrayList<>();
+
+        for (int step = 0; step < numVars; step++) {
+            int best = -1;
+
+            for (int v = remaining.nextSetBit(0); v >= 0; v = remaining.nextSetBit(v + 1)) {
+                if (dirty[v]) {
+                    fill[v] = numFillEdges(adj, v);
+                    weight[v] = logWeight(adj[v], v);
+                    dirty[v] = false;
+                }
+
+                if (best == -1 || fill[v] < fill[best]
+                        || (fill[v] == fill[best] && weight[v] < weight[best])) {
+                    best = v;
+                }
+            }
+
+            BitSet neighbors = adj[best];
+            BitSet cluster = (BitSet) neighbors.clone();
+            cluster.set(best);
+
+            for (int x = neighbors.nextSetBit(0); x >= 0; x = neighbors.nextSetBit(x + 1)) {
+                for (int y = neighbors.nextSetBit(x + 1); y >= 0; y = neighbors.nextSetBit(y + 1)) {
+                    link(adj, x, y);
+                }
+
+                adj[x].clear(best);
+                dirty[x] = true;
+
+                for (int z = adj[x].nextSetBit(0); z >= 0; z = adj[x].nextSetBit(z + 1)) {
+                    dirty[z] = true;
+                }
+            }
+
+            remaining.clear(best);
+
+            // A cluster can only be contained in one formed earlier, since it contains a
+            // variable eliminated now.
+            boolean maximal = true;
+
+            for (BitSet other : clusters) {
+                BitSet missing = (BitSet) cluster.clone();
+                missing.andNot(other);
+
+                if (missing.isEmpty()) {
+                    maximal = false;
+                    break;
+                }
+            }
+
+            if (maximal) clusters.add(cluster);
+        }
+
+        return clusters;
+    }
+
+    private int numFillEdges(BitSet[] adj, int v) {
+        int fill = 0;
+        BitSet neighbors = adj[v];
+
+        for (int x = neighbors.nextSetBit(0); x >= 0; x = neighbors.nextSetBit(x + 1)) {
+            BitSet missing = (BitSet) neighbors.clone();
+            missing.andNot(adj[x]);
+            missing.clear(0, x + 1);
+            fill += missing.cardinality();
+        }
+
+        return fill;
+    }
+
+    private double logWeight(BitSet neighbors, int v) {
+        double weight = Math.log(dims[v]);
+
+        for (int x = neighbors.nextSetBit(0); x >= 0; x = neighbors.nextSetBit(x + 1)) {
+            weight += Math.log(dims[x]);
+        }
+
+        return weight;
+    }
+
+    private static void link(BitSet[] adj, int x, int y) {
+        adj[x].set(y);
+        adj[y].set(x);
+    }
+
+    // Joins the cliques into a tree rooted at clique 0 by a maximum spanning tree on
+    // separator size (Prim's algorithm), filling in parent and order. Cliques of
+    // disconnected parts of the graph are joined by empty separators.
+    private void connect() {
+        int numCliques = cliques.length;
+        boolean[] inTree = new boolean[numCliques];
+        int[] best = new int[numCliques];
+        int[] bestFrom = new int[numCliques];
+
+        if (numCliques == 0) return;
+
+        inTree[0] = true;
+        parent[0] = -1;
+        order[0] = 0;
+
+        for (int c = 1; c < numCliques; c++) {
+            best[c] = intersection(0, c);
+            bestFrom[c] = 0;
+        }
+
+        for (int i = 1; i < numCliques; i++) {
+            int next = -1;
+
+            for (int c = 1; c < numCliques; c++) {
+                if (!inTree[c] && (next == -1 || best[c] > best[next])) next = c;
+            }
+
+            inTree[next] = true;
+            parent[next] = bestFrom[next];
+            order[i] = next;
+
+            for (int c = 1; c < numCliques; c++) {
+                if (inTree[c]) continue;
+                int w = intersection(next, c);
+
+                if (w > best[c]) {
+                    best[c] = w;
+                    bestFrom[c] = next;
+                }
+            }
+        }
+    }
+
+    private int intersection(int c1, int c2) {
+        BitSet sep = (BitSet) cliqueSets[c1].clone();
+        sep.and(cliqueSets[c2]);
+        return sep.cardinality();
+    }
+
+    // For each cell of the clique's potential, the cell of a table over the given
+    // variables of the clique (in the given order, the last varying fastest).
+    private int[] map(int c, int[] vars) {
+        int[] cliqueVars = cliques[c];
+        int[] weights = new int[cliqueVars.length];
+        int stride = 1;
+
+        for (int i = vars.length - 1; i >= 0; i--) {
+            weights[position(c, vars[i])] = stride;
+            stride *= dims[vars[i]];
+        }
+
+        int[] map = new int[size(c)];
+        int[] values = new int[cliqueVars.length];
+        int index = 0;
+
+        for (int cell = 0; cell < map.length; cell++) {
+            map[cell] = index;
+
+            for (int k = cliqueVars.length - 1; k >= 0; k--) {
+                if (++values[k] < dims[cliqueVars[k]]) {
+                    index += weights[k];
+                    break;
+                }
+
+                index -= weights[k] * (values[k] - 1);
+                values[k] = 0;
+            }
+        }
+
+        return map;
+    }
+
+    // The variable's parents in the IM followed by the variable.
+    private int[] familyVars(int v) {
+        int[] parents = bayesIm.getParents(v);
+        int[] vars = Arrays.copyOf(parents, parents.length + 1);
+        vars[parents.length] = v;
+        return vars;
+    }
+
+    private int position(int c, int v) {
+        return Arrays.binarySearch(cliques[c], v);
+    }
+
+    private int size(int c) {
+        return cliques[c].length == 0 ? 1 : strides[c][0] * dims[cliques[c][0]];
+    }
+
+    private void setAllowed(int v, boolean[] _allowed) {
+        if (Arrays.equals(allowed[v], _allowed)) return;
+
+        System.arraycopy(_allowed, 0, allowed[v], 0, dims[v]);
+        restricted[v] = false;
+
+        for (boolean a : _allowed) {
+            if (!a) restricted[v] = true;
+        }
+
+        // Cliques that must collect again are closed under taking parents, so the walk
+        // can stop at the first one already marked.
+        for (int c = home[v]; c != -1 && collectedValid[c]; c = parent[c]) {
+            collectedValid[c] = false;
+        }
+
+        Arrays.fill(beliefValid, false);
+    }
+
+    // Adds p times P(variables[i..] | evidence) into the table at the cells extending index,
+    // conditioning on each category of variables[i] in turn.
+    private void fillJointTable(int[] variables, int i, double p, int index, double[] table) {
+        if (i == variables.length) {
+            table[index] += p;
+            return;
+        }
+
+        int v = variables[i];
+        double[] marginal = getMarginal(v);
+        boolean[] saved = allowed[v].clone();
+        boolean[] only = new boolean[dims[v]];
+
+        for (int a = 0; a < dims[v]; a++) {
+            if (!(marginal[a] > 0)) continue;
+
+            Arrays.fill(only, false);
+            only[a] = true;
+            setAllowed(v, only);
+            fillJointTable(variables, i + 1, p * marginal[a], index * dims[v] + a, table);
+        }
+
+        setAllowed(v, saved);
+    }
+
+    // Collects toward the root for the cliques whose subtrees have changed.
+    private void collect() {
+        for (int i = order.length - 1; i >= 0; i--) {
+            int c = order[i];
+            if (collectedValid[c]) continue;
+
+            double[] potential = collected[c];
+
+            if (potential == null) {
+                potential = collected[c] = new double[base[c].length];
+            }
+
+            System.arraycopy(base[c], 0, potential, 0, potential.length);
+
+            for (int v : homeVars[c]) {
+                if (!restricted[v]) continue;
+                int stride = strides[c][position(c, v)];
+
+                for (int cell = 0; cell < potential.length; cell++) {
+                    if (!allowed[v][(cell / stride) % dims[v]]) potential[cell] = 0.0;
+                }
+            }
+
+            for (int child : children[c]) {
+                double[] message = up[child];
+                int[] map = sepMapParent[child];
+
+                for (int cell = 0; cell < potential.length; cell++) {
+                    potential[cell] *= message[map[cell]];
+                }
+            }
+
+            if (parent[c] != -1) {
+                up[c] = normalize(marginalize(potential, sepMapChild[c], sepSizes[c]));
+            }
+
+            collectedValid[c] = true;
+        }
+    }
+
+    // The beliefs of the clique, distributing to it from the root as needed.
+    private double[] belief(int c) {
+        collect();
+
+        int[] path = new int[order.length];
+        int length = 0;
+
+        for (int d = c; d != -1 && !beliefValid[d]; d = parent[d]) {
+            path[length++] = d;
+        }
+
+        for (int i = length - 1; i >= 0; i--) {
+            int d = path[i];
+            double[] potential = collected[d].clone();
+
+            if (parent[d] != -1) {
+                double[] message = marginalize(belief[parent[d]], sepMapParent[d], sepSizes[d]);
+                double[] sent = up[d];
+
+                for (int s = 0; s < message.length; s++) {
+                    message[s] = sent[s] == 0.0 ? 0.0 : message[s] / sent[s];
+                }
+
+                int[] map = sepMapChild[d];
+
+                for (int cell = 0; cell < potential.length; cell++) {
+                    potential[cell] *= message[map[cell]];
+                }
+            }
+
+            belief[d] = normalize(potential);
+            beliefValid[d] = true;
+        }
+
+        return belief[c];
+    }
+
+    private static double[] marginalize(double[] potential, int[] map, int size) {
+        double[] marginal = new double[size];
+
+        for (int cell = 0; cell < potential.length; cell++) {
+            marginal[map[cell]] += potential[cell];
+        }
+
+        return marginal;
+    }
+
+    // Normalizes in place; all NaN if the sum is zero.
+    private static double[] normalize(double[] table) {
+        double sum = 0.0;
+        for (double p : table) sum += p;
+
+        if (!(sum > 0)) {
+            Arrays.fill(table, Double.NaN);
+            return table;
+        }
+
+        for (int i = 0; i < table.length; i++) table[i] /= sum;
+        return table;
+    }
+
+    private String names(int[] vars) {
+        List<String> names = new ArrayList<>();
+        for (int v : vars) names.add(bayesIm.getNode(v).getName());
+        return names.toString();
+    }
+}
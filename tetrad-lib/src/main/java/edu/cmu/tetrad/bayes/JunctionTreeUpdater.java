@@ -0,0 +1,380 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Performs exact updating on a BayesIm by message passing in a junction tree (see
+ * JunctionTree). The cost depends on the size of the largest clique of the
+ * triangulated moral graph rather than on the number of variables not in evidence,
+ * so networks of dozens or hundreds of variables can be updated quickly if they are
+ * not too densely connected.
+ * <p>
+ * The tree is compiled for the manipulated BayesIm and kept as long as the
+ * manipulations in the evidence stay the same; if only the evidence on unmanipulated
+ * variables changes, only the messages it affects are passed again.
+ */
+public final class JunctionTreeUpdater implements ManipulatingBayesUpdater {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The BayesIm which this updater modifies.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm bayesIm;
+
+    /**
+     * Stores evidence for all variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Evidence evidence;
+
+    /**
+     * The last manipulated BayesIm.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm manipulatedBayesIm;
+
+    /**
+     * The BayesIm after update, if this was calculated.
+     *
+     * @serial Can be null.
+     */
+    private BayesIm updatedBayesIm;
+
+    /**
+     * The junction tree for the manipulated BayesIm; compiled again when needed.
+     */
+    private transient JunctionTree junctionTree;
+
+    //==============================CONSTRUCTORS===========================//
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public JunctionTreeUpdater(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(Evidence.tautology(bayesIm));
+    }
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public JunctionTreeUpdater(BayesIm bayesIm, Evidence evidence) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(evidence);
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static JunctionTreeUpdater serializableInstance() {
+        return new JunctionTreeUpdater(MlBayesIm.serializableInstance());
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * The BayesIm that this updater bases its update on. This BayesIm is not
+     * modified; rather, a new BayesIm is created and updated.
+     */
+    public BayesIm getBayesIm() {
+        return bayesIm;
+    }
+
+    /**
+     * @return the manipulated BayesIm.
+     */
+    public BayesIm getManipulatedBayesIm() {
+        return this.manipulatedBayesIm;
+    }
+
+    public Graph getManipulatedGraph() {
+        return getManipulatedBayesIm().getDag();
+    }
+
+    /**
+     * The updated BayesIm. This is a different object from the source BayesIm.
+     *
+     * @see #getBayesIm
+     */
+    public BayesIm getUpdatedBayesIm() {
+        if (updatedBayesIm == null) {
+            updateAll();
+        }
+
+        return updatedBayesIm;
+    }
+
+    /**
+     * @return a defensive copy of the evidence.
+     */
+    public Evidence getEvidence() {
+        return new Evidence(this.evidence);
+    }
+
+    public final void setEvidence(Evidence evidence) {
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence.isIncompatibleWith(bayesIm)) {
+            throw new IllegalArgumentException("The variable list for the " +
+                    "given bayesIm must be compatible with the variable list " +
+                    "for this evidence.");
+        }
+
+        boolean sameManipulation = manipulatedBayesIm != null
+                && sameManipulation(this.evidence, evidence);
+
+        // Copied, so that changes the caller makes to the evidence are seen when it is
+        // set again.
+        this.evidence = new Evidence(evidence);
+        this.updatedBayesIm = null;
+
+        if (!sameManipulation) {
+            Graph graph = bayesIm.getBayesPm().getDag();
+            Dag manipulatedGraph = createManipulatedGraph(graph);
+            BayesPm manipulatedPm = createUpdatedBayesPm(manipulatedGraph);
+
+            this.manipulatedBayesIm = createdUpdatedBayesIm(manipulatedPm);
+
+            for (int i = 0; i < evidence.getNumNodes(); i++) {
+                if (evidence.isManipulated(i)) {
+                    for (int j = 0; j < evidence.getNumCategories(i); j++) {
+                        if (evidence.getProposition().isAllowed(i, j)) {
+                            manipulatedBayesIm.setProbability(i, 0, j, 1.0);
+                        } else {
+                            manipulatedBayesIm.setProbability(i, 0, j, 0.0);
+                        }
+                    }
+                }
+            }
+
+            this.junctionTree = null;
+        } else if (junctionTree != null) {
+            junctionTree.setEvidence(condition());
+        }
+    }
+
+    public boolean isJointMarginalSupported() {
+        return true;
+    }
+
+    public double getJointMarginal(int[] variables, int[] values) {
+        if (variables.length != values.length) {
+            throw new IllegalArgumentException("Values must match variables.");
+        }
+
+        if (!condition().existsCombination()) {
+            return Double.NaN;
+        }
+
+        return junctionTree().getJointMarginal(variables, values);
+    }
+
+    /**
+     * @return P&lpar;variable&equals;value &vbar; evidence&rpar; where evidence is getEvidence().
+     */
+    public double getMarginal(int variable, int value) {
+        if (!condition().existsCombination()) {
+            return Double.NaN;
+        }
+
+        return junctionTree().getMarginal(variable)[value];
+    }
+
+    public double[] calculatePriorMarginals(int nodeIndex) {
+        Evidence evidence = getEvidence();
+        setEvidence(Evidence.tautology(evidence.getVariableSource()));
+
+        double[] marginals = calculateUpdatedMarginals(nodeIndex);
+
+        setEvidence(evidence);
+        return marginals;
+    }
+
+    public double[] calculateUpdatedMarginals(int nodeIndex) {
+        double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+        if (!condition().existsCombination()) {
+            Arrays.fill(marginals, Double.NaN);
+            return marginals;
+        }
+
+        double[] marginal = junctionTree().getMarginal(nodeIndex);
+        System.arraycopy(marginal, 0, marginals, 0, marginals.length);
+        return marginals;
+    }
+
+    /**
+     * Prints out the most recent marginal.
+     */
+    public String toString() {
+        return "Junction tree updater, evidence = " + evidence;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private JunctionTree junctionTree() {
+        if (junctionTree == null) {
+            junctionTree = new JunctionTree(manipulatedBayesIm);
+            junctionTree.setEvidence(condition());
+        }
+
+        return junctionTree;
+    }
+
+    private Proposition condition() {
+        return new Proposition(manipulatedBayesIm, evidence.getProposition());
+    }
+
+    // Sets each row of each table to P(node = col | parents = row, evidence), NaN if
+    // the condition has probability zero.
+    private void updateAll() {
+        BayesIm updatedBayesIm = new MlBayesIm(manipulatedBayesIm);
+        int numNodes = manipulatedBayesIm.getNumNodes();
+        boolean possible = condition().existsCombination();
+
+        for (int node = 0; node < numNodes; node++) {
+            int numRows = manipulatedBayesIm.getNumRows(node);
+            int numCols = manipulatedBayesIm.getNumColumns(node);
+            double[] joint = possible ? junctionTree().getFamilyMarginal(node) : null;
+
+            for (int row = 0; row < numRows; row++) {
+                double rowSum = 0.0;
+
+                if (possible) {
+                    for (int col = 0; col < numCols; col++) {
+                        rowSum += joint[row * numCols + col];
+                    }
+                }
+
+                for (int col = 0; col < numCols; col++) {
+                    double p = rowSum > 0 ? joint[row * numCols + col] / rowSum : Double.NaN;
+                    updatedBayesIm.setProbability(node, row, col, p);
+                }
+            }
+        }
+
+        this.updatedBayesIm = updatedBayesIm;
+    }
+
+    // True if the two pieces of evidence manipulate the same variables to the same
+    // categories, so that they have the same manipulated BayesIm.
+    private boolean sameManipulation(Evidence evidence1, Evidence evidence2) {
+        if (evidence1.getVariableSource() != evidence2.getVariableSource()) {
+            return false;
+        }
+
+        for (int i = 0; i < evidence1.getNumNodes(); i++) {
+            if (evidence1.isManipulated(i) != evidence2.isManipulated(i)) {
+                return false;
+            }
+
+            if (evidence1.isManipulated(i)) {
+                for (int j = 0; j < evidence1.getNumCategories(i); j++) {
+                    if (evidence1.getProposition().isAllowed(i, j)
+                            != evidence2.getProposition().isAllowed(i, j)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private BayesIm createdUpdatedBayesIm(BayesPm updatedBayesPm) {
+
+        // Switching this to MANUAL since the initial values don't matter.
+        return new MlBayesIm(updatedBayesPm, bayesIm, MlBayesIm.MANUAL);
+    }
+
+    private BayesPm createUpdatedBayesPm(Dag updatedGraph) {
+        return new BayesPm(updatedGraph, bayesIm.getBayesPm());
+    }
+
+    private Dag createManipulatedGraph(Graph graph) {
+        Dag updatedGraph = new Dag(graph);
+
+        // alters graph for manipulated evidenceItems
+        for (int i = 0; i < evidence.getNumNodes(); ++i) {
+            if (evidence.isManipulated(i)) {
+                Node node = updatedGraph.getNode(evidence.getNode(i).getName());
+                List<Node> parents = updatedGraph.getParents(node);
+
+                for (Node parent : parents) {
+                    updatedGraph.removeEdge(node, parent);
+                }
+            }
+        }
+
+        return updatedGraph;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+    }
+}
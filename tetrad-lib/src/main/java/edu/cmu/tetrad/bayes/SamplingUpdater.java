@@ -0,0 +1,908 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.bayes;
+
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.RandomUtil;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Estimates updated marginals for a Bayes net by sampling from the manipulated
+ * Bayes IM, for networks too large for exact updating. Two methods are offered.
+ * <p>
+ * Likelihood weighting samples each variable in causal order from its
+ * conditional distribution restricted to the categories the evidence allows,
+ * weighting the sample by the probability of those categories. It needs no
+ * burn-in and handles evidence of low probability far better than simulating
+ * until enough samples satisfy the evidence, though the weights become uneven
+ * when the evidence is far downstream of what it explains.
+ * <p>
+ * Gibbs sampling runs several Markov chains, each resampling the variables not
+ * fixed by the evidence one at a time from their distributions given their
+ * Markov blankets. Chains started in a state of zero probability, or IMs with
+ * deterministic tables, may not mix.
+ * <p>
+ * Samples are drawn in rounds, in parallel across chains (for likelihood
+ * weighting, independent batches), until the effective sample size reaches the
+ * target or the maximum number of samples is drawn. Each chain has its own
+ * substream of a RandomStream drawn from RandomUtil, and the results are
+ * combined in chain order, so the estimates do not depend on the number of
+ * threads. For likelihood weighting the effective sample size is Kish's,
+ * (sum w)^2 / sum w^2; for Gibbs sampling it is the smallest, over the
+ * categories of the variables, of p(1 - p) over the variance of the mean of the
+ * chains' estimates of p.
+ */
+public final class SamplingUpdater implements ManipulatingBayesUpdater {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The sampling methods.
+     */
+    public enum Method {LIKELIHOOD_WEIGHTING, GIBBS}
+
+    // Samples drawn by each chain in each round.
+    private static final int ROUND_SIZE = 1000;
+
+    /**
+     * The IM which this updater modifies.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm bayesIm;
+
+    /**
+     * Stores evidence for all variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Evidence evidence;
+
+    /**
+     * The source BayesIm after manipulation; samples are drawn from this.
+     *
+     * @serial Cannot be null.
+     */
+    private BayesIm manipulatedBayesIm;
+
+    /**
+     * @serial Cannot be null.
+     */
+    private Method method = Method.LIKELIHOOD_WEIGHTING;
+
+    /**
+     * @serial Range (0, +inf).
+     */
+    private double targetEss = 10000;
+
+    /**
+     * @serial Range [1, +inf).
+     */
+    private long maxSamples = 1000000;
+
+    /**
+     * @serial Range [1, +inf).
+     */
+    private int numChains = 8;
+
+    /**
+     * @serial Range [0, +inf).
+     */
+    private int burnIn = 1000;
+
+    /**
+     * The estimate from the last sampling run for the current evidence.
+     */
+    private transient Estimate estimate;
+
+    //==============================CONSTRUCTORS===========================//
+
+    public SamplingUpdater(BayesIm bayesIm) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(Evidence.tautology(bayesIm));
+    }
+
+    /**
+     * Constructs a new updater for the given Bayes net.
+     */
+    public SamplingUpdater(BayesIm bayesIm, Evidence evidence) {
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        this.bayesIm = bayesIm;
+        setEvidence(evidence);
+    }
+
+    /**
+     * @return a simple exemplar of this class to test serialization.
+     */
+    public static SamplingUpdater serializableInstance() {
+        return new SamplingUpdater(MlBayesIm.serializableInstance());
+    }
+
+    //============================PUBLIC METHODS==========================//
+
+    /**
+     * @return the Bayes instantiated model that is being updated.
+     */
+    public BayesIm getBayesIm() {
+        return bayesIm;
+    }
+
+    /**
+     * @return the Bayes instantiated model after manipulations have been
+     * applied.
+     */
+    public BayesIm getManipulatedBayesIm() {
+        return this.manipulatedBayesIm;
+    }
+
+    /**
+     * @return the graph for getManipulatedBayesIm().
+     */
+    public Graph getManipulatedGraph() {
+        return this.manipulatedBayesIm.getDag();
+    }
+
+    /**
+     * @return the manipulated Bayes IM with each row of each table estimated as
+     * P(node = col | parents = row, evidence); NaN for rows no sample fell in.
+     */
+    public BayesIm getUpdatedBayesIm() {
+        Estimate estimate = estimate();
+        BayesIm updatedBayesIm = new MlBayesIm(manipulatedBayesIm);
+
+        for (int node = 0; node < manipulatedBayesIm.getNumNodes(); node++) {
+            int numRows = manipulatedBayesIm.getNumRows(node);
+            int numCols = manipulatedBayesIm.getNumColumns(node);
+            double[] counts = estimate.counts[node];
+
+            for (int row = 0; row < numRows; row++) {
+                double rowSum = 0.0;
+
+                for (int col = 0; col < numCols; col++) {
+                    rowSum += counts[row * numCols + col];
+                }
+
+                for (int col = 0; col < numCols; col++) {
+                    double p = rowSum > 0 ? counts[row * numCols + col] / rowSum : Double.NaN;
+                    updatedBayesIm.setProbability(node, row, col, p);
+                }
+            }
+        }
+
+        return updatedBayesIm;
+    }
+
+    /**
+     * @return a copy of the getModel evidence.
+     */
+    public Evidence getEvidence() {
+        return new Evidence(this.evidence);
+    }
+
+    /**
+     * Sets new evidence for the next update operation.
+     */
+    public final void setEvidence(Evidence evidence) {
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence.isIncompatibleWith(bayesIm)) {
+            throw new IllegalArgumentException("The variables for the given " +
+                    "evidence must be compatible with the Bayes IM being updated.");
+        }
+
+        this.evidence = new Evidence(evidence);
+
+        Graph graph = bayesIm.getBayesPm().getDag();
+        Dag manipulatedGraph = createManipulatedGraph(graph);
+        BayesPm manipulatedBayesPm = createUpdatedBayesPm(manipulatedGraph);
+        this.manipulatedBayesIm = createdUpdatedBayesIm(manipulatedBayesPm);
+
+        for (int i = 0; i < evidence.getNumNodes(); i++) {
+            if (evidence.isManipulated(i)) {
+                for (int j = 0; j < evidence.getNumCategories(i); j++) {
+                    if (evidence.getProposition().isAllowed(i, j)) {
+                        manipulatedBayesIm.setProbability(i, 0, j, 1.0);
+                    } else {
+                        manipulatedBayesIm.setProbability(i, 0, j, 0.0);
+                    }
+                }
+            }
+        }
+
+        this.estimate = null;
+    }
+
+    public double getMarginal(int variable, int value) {
+        double[] counts = estimate().counts[variable];
+        int numCols = manipulatedBayesIm.getNumColumns(variable);
+        double sum = 0.0;
+        double count = 0.0;
+
+        for (int i = 0; i < counts.length; i++) {
+            sum += counts[i];
+            if (i % numCols == value) count += counts[i];
+        }
+
+        return sum > 0 ? count / sum : Double.NaN;
+    }
+
+    public boolean isJointMarginalSupported() {
+        return true;
+    }
+
+    /**
+     * @return the joint marginal, estimated from a new sampling run that
+     * counts the samples in which all of the variables have their values.
+     */
+    public double getJointMarginal(int[] variables, int[] values) {
+        if (variables.length != values.length) {
+            throw new IllegalArgumentException("Values must match variables.");
+        }
+
+        Estimate estimate = sample(variables, values);
+        return estimate.total > 0 ? estimate.query / estimate.total : Double.NaN;
+    }
+
+    public double[] calculatePriorMarginals(int nodeIndex) {
+        Evidence evidence = getEvidence();
+        Estimate estimate = this.estimate;
+        setEvidence(Evidence.tautology(evidence.getVariableSource()));
+
+        double[] marginals = calculateUpdatedMarginals(nodeIndex);
+
+        setEvidence(evidence);
+        this.estimate = estimate;
+        return marginals;
+    }
+
+    public double[] calculateUpdatedMarginals(int nodeIndex) {
+        double[] marginals = new double[evidence.getNumCategories(nodeIndex)];
+
+        for (int i = 0; i < getBayesIm().getNumColumns(nodeIndex); i++) {
+            marginals[i] = getMarginal(nodeIndex, i);
+        }
+
+        return marginals;
+    }
+
+    /**
+     * @return the effective sample size of the last sampling run for the
+     * current evidence, or 0 if there has been none.
+     */
+    public double getEffectiveSampleSize() {
+        return estimate == null ? 0 : estimate.ess;
+    }
+
+    /**
+     * @return the number of samples (for Gibbs sampling, sweeps after burn-in)
+     * drawn in the last sampling run for the current evidence.
+     */
+    public long getNumSamples() {
+        return estimate == null ? 0 : estimate.numSamples;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public void setMethod(Method method) {
+        if (method == null) throw new NullPointerException();
+        this.method = method;
+        this.estimate = null;
+    }
+
+    public double getTargetEss() {
+        return targetEss;
+    }
+
+    /**
+     * Sampling stops once the effective sample size reaches this. Default 10000.
+     */
+    public void setTargetEss(double targetEss) {
+        if (!(targetEss > 0)) {
+            throw new IllegalArgumentException("Target effective sample size must be positive: " + targetEss);
+        }
+
+        this.targetEss = targetEss;
+        this.estimate = null;
+    }
+
+    public long getMaxSamples() {
+        return maxSamples;
+    }
+
+    /**
+     * Sampling stops once about this many samples are drawn, whatever the
+     * effective sample size. Default 1,000,000.
+     */
+    public void setMaxSamples(long maxSamples) {
+        if (maxSamples < 1) {
+            throw new IllegalArgumentException("Max samples must be at least 1: " + maxSamples);
+        }
+
+        this.maxSamples = maxSamples;
+        this.estimate = null;
+    }
+
+    public int getNumChains() {
+        return numChains;
+    }
+
+    /**
+     * The number of Gibbs chains, or of likelihood weighting batches per round,
+     * sampled in parallel. Default 8. At least two are needed to estimate the
+     * effective sample size of Gibbs sampling.
+     */
+    public void setNumChains(int numChains) {
+        if (numChains < 1) {
+            throw new IllegalArgumentException("Number of chains must be at least 1: " + numChains);
+        }
+
+        this.numChains = numChains;
+        this.estimate = null;
+    }
+
+    public int getBurnIn() {
+        return burnIn;
+    }
+
+    /**
+     * The number of sweeps each Gibbs chain makes before it is counted. Default 1000.
+     */
+    public void setBurnIn(int burnIn) {
+        if (burnIn < 0) {
+            throw new IllegalArgumentException("Burn-in must be non-negative: " + burnIn);
+        }
+
+        this.burnIn = burnIn;
+        this.estimate = null;
+    }
+
+    /**
+     * Prints out the most recent marginal.
+     */
+    public String toString() {
+        return "Sampling updater (" + method + "), evidence = " + evidence;
+    }
+
+    //==============================PRIVATE METHODS=======================//
+
+    private Estimate estimate() {
+        if (estimate == null) {
+            estimate = sample(null, null);
+        }
+
+        return estimate;
+    }
+
+    // Samples in rounds until the effective sample size reaches the target or
+    // the maximum number of samples is drawn.
+    private Estimate sample(int[] queryVariables, int[] queryValues) {
+        Model model = new Model(manipulatedBayesIm, evidence.getProposition());
+        Proposition condition = new Proposition(manipulatedBayesIm, evidence.getProposition());
+
+        RandomStream random = RandomUtil.getInstance().nextStream();
+        final Chain[] chains = new Chain[numChains];
+
+        for (int i = 0; i < numChains; i++) {
+            chains[i] = new Chain(model, random.stream(i), queryVariables, queryValues);
+        }
+
+        if (!condition.existsCombination()) {
+            return combine(chains);
+        }
+
+        class RoundTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private RoundTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 1) {
+                    for (int i = from; i < to; i++) {
+                        round(chains[i]);
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    RoundTask left = new RoundTask(from, mid);
+                    RoundTask right = new RoundTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        if (method == Method.GIBBS) {
+            for (Chain chain : chains) {
+                if (!chain.initialize()) return combine(chains);
+            }
+        }
+
+        Estimate estimate;
+
+        do {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new RoundTask(0, numChains));
+            estimate = combine(chains);
+        } while (estimate.ess < targetEss && estimate.numSamples < maxSamples
+                && !Thread.currentThread().isInterrupted());
+
+        return estimate;
+    }
+
+    private void round(Chain chain) {
+        if (method == Method.GIBBS && chain.numSamples == 0) {
+            for (int i = 0; i < burnIn; i++) chain.sweep(false);
+        }
+
+        for (int s = 0; s < ROUND_SIZE; s++) {
+            if (method == Method.GIBBS) {
+                chain.sweep(true);
+            } else {
+                chain.weightedSample();
+            }
+        }
+    }
+
+    // Adds up the chains' counts, in chain order.
+    private Estimate combine(Chain[] chains) {
+        int numNodes = manipulatedBayesIm.getNumNodes();
+        Estimate estimate = new Estimate();
+        estimate.counts = new double[numNodes][];
+
+        for (int v = 0; v < numNodes; v++) {
+            estimate.counts[v] = new double[chains[0].counts[v].length];
+        }
+
+        double sumSquares = 0.0;
+
+        for (Chain chain : chains) {
+            for (int v = 0; v < numNodes; v++) {
+                double[] counts = chain.counts[v];
+                for (int i = 0; i < counts.length; i++) estimate.counts[v][i] += counts[i];
+            }
+
+            estimate.total += chain.total;
+            estimate.query += chain.query;
+            estimate.numSamples += chain.numSamples;
+            sumSquares += chain.sumSquares;
+        }
+
+        if (estimate.total == 0) {
+            estimate.ess = 0;
+        } else if (method == Method.LIKELIHOOD_WEIGHTING) {
+            estimate.ess = estimate.total * estimate.total / sumSquares;
+        } else {
+            estimate.ess = gibbsEss(chains);
+        }
+
+        return estimate;
+    }
+
+    private double gibbsEss(Chain[] chains) {
+        int m = chains.length;
+        double numSamples = 0;
+        for (Chain chain : chains) numSamples += chain.numSamples;
+        if (m < 2) return numSamples;
+
+        double ess = numSamples;
+        double[] p = new double[m];
+
+        for (int v = 0; v < manipulatedBayesIm.getNumNodes(); v++) {
+            int numCols = manipulatedBayesIm.getNumColumns(v);
+
+            for (int k = 0; k < numCols; k++) {
+                double mean = 0.0;
+
+                for (int c = 0; c < m; c++) {
+                    double[] counts = chains[c].counts[v];
+                    double count = 0.0;
+                    for (int i = k; i < counts.length; i += numCols) count += counts[i];
+                    p[c] = count / chains[c].total;
+                    mean += p[c] / m;
+                }
+
+                double var = 0.0;
+                for (int c = 0; c < m; c++) var += (p[c] - mean) * (p[c] - mean) / (m - 1);
+
+                if (var > 0 && mean > 0 && mean < 1) {
+                    ess = Math.min(ess, mean * (1 - mean) / (var / m));
+                }
+            }
+        }
+
+        return ess;
+    }
+
+    private BayesIm createdUpdatedBayesIm(BayesPm updatedBayesPm) {
+        return new MlBayesIm(updatedBayesPm, bayesIm, MlBayesIm.MANUAL);
+    }
+
+    private BayesPm createUpdatedBayesPm(Dag updatedGraph) {
+        return new BayesPm(updatedGraph, bayesIm.getBayesPm());
+    }
+
+    private Dag createManipulatedGraph(Graph graph) {
+        Dag updatedGraph = new Dag(graph);
+
+        // alters graph for manipulated evidenceItems
+        for (int i = 0; i < evidence.getNumNodes(); ++i) {
+            if (evidence.isManipulated(i)) {
+                Node node = evidence.getNode(i);
+                node = updatedGraph.getNode(node.getName());
+                List<Node> parents = updatedGraph.getParents(node);
+
+                for (Node parent : parents) {
+                    updatedGraph.removeEdge(node, parent);
+                }
+            }
+        }
+
+        return updatedGraph;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (bayesIm == null) {
+            throw new NullPointerException();
+        }
+
+        if (evidence == null) {
+            throw new NullPointerException();
+        }
+
+        if (method == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    //==============================CLASSES===============================//
+
+    // Weighted counts of each row and column of each table, added up over chains.
+    private static final class Estimate {
+        double[][] counts;
+        double total;
+        double query;
+        long numSamples;
+        double ess;
+    }
+
+    // The manipulated IM's tables in flat arrays, with the evidence.
+    private static final class Model {
+        final int numNodes;
+        final int[] dims;
+        final int[][] parents;
+        final int[][] multipliers;
+        final double[][] probs;
+        final int[] order;
+        final int[][] children;
+        final int[][] childMultipliers;
+        final boolean[][] allowed;
+        final boolean[] restricted;
+        final int[] fixed;
+        final int maxDim;
+
+        Model(BayesIm im, Proposition proposition) {
+            proposition = new Proposition(im, proposition);
+            numNodes = im.getNumNodes();
+            dims = new int[numNodes];
+            parents = new int[numNodes][];
+            multipliers = new int[numNodes][];
+            probs = new double[numNodes][];
+            allowed = new boolean[numNodes][];
+            restricted = new boolean[numNodes];
+            fixed = new int[numNodes];
+            int maxDim = 0;
+
+            for (int v = 0; v < numNodes; v++) {
+                dims[v] = im.getNumColumns(v);
+                maxDim = Math.max(maxDim, dims[v]);
+                parents[v] = im.getParents(v);
+                multipliers[v] = new int[parents[v].length];
+                int multiplier = 1;
+
+                for (int k = parents[v].length - 1; k >= 0; k--) {
+                    multipliers[v][k] = multiplier;
+                    multiplier *= im.getNumColumns(parents[v][k]);
+                }
+
+                int numRows = im.getNumRows(v);
+                probs[v] = new double[numRows * dims[v]];
+
+                for (int row = 0; row < numRows; row++) {
+                    for (int col = 0; col < dims[v]; col++) {
+                        double p = im.getProbability(v, row, col);
+
+                        if (Double.isNaN(p)) {
+                            throw new IllegalStateException("Some probability " +
+                                    "values in the BayesIm are not filled in; " +
+                                    "cannot sample to do approximate updating.");
+                        }
+
+                        probs[v][row * dims[v] + col] = p;
+                    }
+                }
+
+                allowed[v] = new boolean[dims[v]];
+                int numAllowed = 0;
+                fixed[v] = -1;
+
+                for (int j = 0; j < dims[v]; j++) {
+                    allowed[v][j] = proposition.isAllowed(v, j);
+
+                    if (allowed[v][j]) {
+                        numAllowed++;
+                        fixed[v] = j;
+                    } else {
+                        restricted[v] = true;
+                    }
+                }
+
+                if (numAllowed != 1) fixed[v] = -1;
+            }
+
+            this.maxDim = maxDim;
+
+            List<Node> ordering = im.getDag().getCausalOrdering();
+            order = new int[numNodes];
+
+            for (int i = 0; i < numNodes; i++) {
+                order[i] = im.getNodeIndex(ordering.get(i));
+            }
+
+            int[] numChildren = new int[numNodes];
+
+            for (int v = 0; v < numNodes; v++) {
+                for (int p : parents[v]) numChildren[p]++;
+            }
+
+            children = new int[numNodes][];
+            childMultipliers = new int[numNodes][];
+
+            for (int v = 0; v < numNodes; v++) {
+                children[v] = new int[numChildren[v]];
+                childMultipliers[v] = new int[numChildren[v]];
+                numChildren[v] = 0;
+            }
+
+            for (int c = 0; c < numNodes; c++) {
+                for (int k = 0; k < parents[c].length; k++) {
+                    int p = parents[c][k];
+                    children[p][numChildren[p]] = c;
+                    childMultipliers[p][numChildren[p]++] = multipliers[c][k];
+                }
+            }
+        }
+    }
+
+    // One Gibbs chain, or one stream of likelihood weighting samples, with its
+    // own random stream, state and counts. Nothing is allocated per sample.
+    private static final class Chain {
+        final Model model;
+        final RandomStream random;
+        final int[] queryVariables;
+        final int[] queryValues;
+        final int[] state;
+        final int[] rows;
+        final double[] weights;
+        final double[][] counts;
+        double total;
+        double sumSquares;
+        double query;
+        long numSamples;
+
+        Chain(Model model, RandomStream random, int[] queryVariables, int[] queryValues) {
+            this.model = model;
+            this.random = random;
+            this.queryVariables = queryVariables;
+            this.queryValues = queryValues;
+            this.state = new int[model.numNodes];
+            this.rows = new int[model.numNodes];
+            this.weights = new double[model.maxDim];
+            this.counts = new double[model.numNodes][];
+
+            for (int v = 0; v < model.numNodes; v++) {
+                counts[v] = new double[model.probs[v].length];
+            }
+        }
+
+        // Draws a sample in causal order, each variable restricted to its
+        // allowed categories, and counts it with the probability of those
+        // categories as its weight.
+        void weightedSample() {
+            double w = forwardSample();
+            numSamples++;
+            if (w > 0) count(w);
+        }
+
+        // Starts the chain from a forward sample of positive probability.
+        boolean initialize() {
+            for (int attempt = 0; attempt < 1000; attempt++) {
+                if (forwardSample() > 0) return true;
+            }
+
+            return false;
+        }
+
+        // Resamples each variable not fixed by the evidence given its Markov
+        // blanket, counting the state after the sweep if asked.
+        void sweep(boolean count) {
+            Model model = this.model;
+
+            for (int v = 0; v < model.numNodes; v++) {
+                if (model.fixed[v] != -1) continue;
+
+                int dim = model.dims[v];
+                int base = rows[v] * dim;
+                int old = state[v];
+                int[] children = model.children[v];
+                int[] childMultipliers = model.childMultipliers[v];
+                double sum = 0.0;
+
+                for (int k = 0; k < dim; k++) {
+                    double p = 0.0;
+
+                    if (model.allowed[v][k]) {
+                        p = model.probs[v][base + k];
+
+                        for (int i = 0; i < children.length && p > 0; i++) {
+                            int c = children[i];
+                            int row = rows[c] + (k - old) * childMultipliers[i];
+                            p *= model.probs[c][row * model.dims[c] + state[c]];
+                        }
+                    }
+
+                    weights[k] = p;
+                    sum += p;
+                }
+
+                int k = draw(weights, dim, sum);
+                if (k == -1) continue;
+
+                state[v] = k;
+
+                for (int i = 0; i < children.length; i++) {
+                    rows[children[i]] += (k - old) * childMultipliers[i];
+                }
+            }
+
+            if (count) {
+                numSamples++;
+                count(1.0);
+            }
+        }
+
+        // Samples the state in causal order and returns its weight, 0 if some
+        // variable has no allowed category of positive probability.
+        private double forwardSample() {
+            Model model = this.model;
+            double w = 1.0;
+
+            for (int v : model.order) {
+                int row = 0;
+                int[] parents = model.parents[v];
+                int[] multipliers = model.multipliers[v];
+
+                for (int k = 0; k < parents.length; k++) {
+                    row += state[parents[k]] * multipliers[k];
+                }
+
+                rows[v] = row;
+                int dim = model.dims[v];
+                int base = row * dim;
+                double sum = 0.0;
+
+                for (int k = 0; k < dim; k++) {
+                    double p = model.allowed[v][k] ? model.probs[v][base + k] : 0.0;
+                    weights[k] = p;
+                    sum += p;
+                }
+
+                int k = draw(weights, dim, sum);
+                if (k == -1) return 0.0;
+
+                state[v] = k;
+                if (model.restricted[v]) w *= sum;
+            }
+
+            return w;
+        }
+
+        private int draw(double[] weights, int dim, double sum) {
+            if (!(sum > 0)) return -1;
+
+            double cutoff = random.nextDouble() * sum;
+            double cumulative = 0.0;
+            int last = -1;
+
+            for (int k = 0; k < dim; k++) {
+                if (weights[k] <= 0) continue;
+                cumulative += weights[k];
+                last = k;
+                if (cumulative > cutoff) return k;
+            }
+
+            return last;
+        }
+
+        private void count(double w) {
+            for (int v = 0; v < state.length; v++) {
+                counts[v][rows[v] * model.dims[v] + state[v]] += w;
+            }
+
+            total += w;
+            sumSquares += w * w;
+
+            if (queryVariables != null) {
+                for (int i = 0; i < queryVariables.length; i++) {
+                    if (state[queryVariables[i]] != queryValues[i]) return;
+                }
+
+                query += w;
+            }
+        }
+    }
+}
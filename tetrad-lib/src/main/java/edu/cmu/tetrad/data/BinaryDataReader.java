@@ -0,0 +1,213 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Loads data sets saved by BinaryDataWriter (see there for the format). The
+ * columns of an uncompressed file are mapped into memory and the data set is
+ * backed by a read-only MappedDataBox; a compressed file is inflated into a
+ * VerticalDoubleDataBox, VerticalIntDataBox or MixedDataBox, depending on the
+ * types of its variables.
+ */
+public final class BinaryDataReader {
+
+    private BinaryDataReader() {
+    }
+
+    /**
+     * Loads a data set from a binary data file.
+     *
+     * @param file The file, as written by BinaryDataWriter.
+     * @return The data set.
+     * @throws IOException If the file cannot be read or is not a binary data file.
+     */
+    public static DataSet readData(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            ByteBuffer preamble = ByteBuffer.allocate(16);
+            readFully(channel, preamble);
+
+            if (preamble.getInt() != BinaryDataWriter.MAGIC) {
+                throw new IOException("Not a binary data file: " + file);
+            }
+
+            int version = preamble.getInt();
+
+            if (version > BinaryDataWriter.VERSION) {
+                throw new IOException("Unsupported binary data file version " + version + ": " + file);
+            }
+
+            boolean compressed = (preamble.getInt() & BinaryDataWriter.COMPRESSED) != 0;
+            ByteBuffer headerBytes = ByteBuffer.allocate(preamble.getInt());
+            readFully(channel, headerBytes);
+
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes.array()));
+            String name = header.readUTF();
+            int numRows = header.readInt();
+            int numCols = header.readInt();
+
+            List<Node> variables = new ArrayList<>();
+
+            for (int j = 0; j < numCols; j++) {
+                byte type = header.readByte();
+                String variableName = header.readUTF();
+
+                if (type == BinaryDataWriter.CONTINUOUS) {
+                    variables.add(new ContinuousVariable(variableName));
+                } else if (type == BinaryDataWriter.DISCRETE) {
+                    List<String> categories = new ArrayList<>();
+                    int numCategories = header.readInt();
+
+                    for (int k = 0; k < numCategories; k++) {
+                        categories.add(header.readUTF());
+                    }
+
+                    variables.add(new DiscreteVariable(variableName, categories));
+                } else {
+                    throw new IOException("Unknown column type " + type + " in " + file);
+                }
+            }
+
+            DataBox box = compressed
+                    ? inflate(channel, variables, numRows)
+                    : map(channel, variables, numRows, file);
+
+            BoxDataSet dataSet = new BoxDataSet(box, variables);
+            if (!name.isEmpty()) dataSet.setName(name);
+            return dataSet;
+        }
+    }
+
+    // Maps each column of the payload, which starts at the channel's position.
+    private static DataBox map(FileChannel channel, List<Node> variables, int numRows, File file) throws IOException {
+        DoubleBuffer[] continuousData = new DoubleBuffer[variables.size()];
+        IntBuffer[] discreteData = new IntBuffer[variables.size()];
+        long offset = channel.position();
+
+        for (int j = 0; j < variables.size(); j++) {
+            boolean discrete = variables.get(j) instanceof DiscreteVariable;
+            long size = (long) numRows * (discrete ? 4 : 8);
+
+            if (offset + size > channel.size()) {
+                throw new IOException("Binary data file is truncated: " + file);
+            }
+
+            ByteBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+
+            if (discrete) {
+                discreteData[j] = column.asIntBuffer();
+            } else {
+                continuousData[j] = column.asDoubleBuffer();
+            }
+
+            offset += size;
+        }
+
+        return new MappedDataBox(variables, numRows, continuousData, discreteData);
+    }
+
+    // Inflates the payload, which starts at the channel's position, onto the heap.
+    private static DataBox inflate(FileChannel channel, List<Node> variables, int numRows) throws IOException {
+        double[][] continuousData = new double[variables.size()][];
+        int[][] discreteData = new int[variables.size()][];
+        boolean allContinuous = true;
+        boolean allDiscrete = true;
+
+        Inflater inflater = new Inflater();
+
+        try {
+            InputStream in = new InflaterInputStream(Channels.newInputStream(channel), inflater, BinaryDataWriter.CHUNK);
+            ReadableByteChannel payload = Channels.newChannel(in);
+            ByteBuffer buffer = ByteBuffer.allocate(BinaryDataWriter.CHUNK);
+            buffer.flip();
+
+            for (int j = 0; j < variables.size(); j++) {
+                if (variables.get(j) instanceof DiscreteVariable) {
+                    allContinuous = false;
+                    discreteData[j] = new int[numRows];
+
+                    for (int i = 0; i < numRows; i++) {
+                        if (buffer.remaining() < 4) refill(payload, buffer, 4);
+                        discreteData[j][i] = buffer.getInt();
+                    }
+                } else {
+                    allDiscrete = false;
+                    continuousData[j] = new double[numRows];
+
+                    for (int i = 0; i < numRows; i++) {
+                        if (buffer.remaining() < 8) refill(payload, buffer, 8);
+                        continuousData[j][i] = buffer.getDouble();
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+
+        if (variables.isEmpty()) {
+            return new VerticalDoubleDataBox(numRows, 0);
+        } else if (allContinuous) {
+            return new VerticalDoubleDataBox(continuousData);
+        } else if (allDiscrete) {
+            return new VerticalIntDataBox(discreteData);
+        } else {
+            return new MixedDataBox(variables, numRows, continuousData, discreteData);
+        }
+    }
+
+    // Reads until the buffer holds at least the given number of bytes.
+    private static void refill(ReadableByteChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        buffer.compact();
+
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Binary data file is truncated.");
+            }
+        }
+
+        buffer.flip();
+    }
+
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Binary data file is truncated.");
+            }
+        }
+
+        buffer.flip();
+    }
+}
@@ -0,0 +1,171 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Saves data sets in a compact binary format that BinaryDataReader can read
+ * back without parsing. A file consists of
+ * <ul>
+ * <li>a preamble of four ints: a magic number, the format version, flags (bit
+ * 0 set if the payload is compressed) and the length in bytes of the header;</li>
+ * <li>the header: the name of the data set, the number of rows and columns, and
+ * for each column its type (0 continuous, 1 discrete), the variable name and,
+ * for discrete variables, the number of categories and their names;</li>
+ * <li>the payload, column by column: numRows doubles for a continuous column,
+ * numRows ints for a discrete one, with missing values stored as NaN and -99
+ * respectively. If the payload is compressed it is deflated as a whole.</li>
+ * </ul>
+ * All numbers are big-endian, and strings are in modified UTF-8, as written by
+ * DataOutputStream. An uncompressed payload can be memory-mapped by the reader;
+ * a compressed one is smaller but has to be inflated into memory.
+ */
+public final class BinaryDataWriter {
+
+    /**
+     * The first four bytes of every binary data file, "TDS1".
+     */
+    static final int MAGIC = 0x54445331;
+
+    /**
+     * The current version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The flag set if the payload is compressed.
+     */
+    static final int COMPRESSED = 1;
+
+    static final byte CONTINUOUS = 0;
+    static final byte DISCRETE = 1;
+
+    /**
+     * The size of the buffer the payload is written through.
+     */
+    static final int CHUNK = 1 << 16;
+
+    private BinaryDataWriter() {
+    }
+
+    /**
+     * Writes a data set to a binary file, overwriting the file if it exists.
+     * The data set may have continuous and/or discrete columns.
+     *
+     * @param dataSet    The data set to save.
+     * @param file       The file to write to.
+     * @param compressed True if the payload should be compressed.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeData(DataSet dataSet, File file, boolean compressed) throws IOException {
+        List<Node> variables = dataSet.getVariables();
+        int numRows = dataSet.getNumRows();
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+
+        header.writeUTF(dataSet.getName() == null ? "" : dataSet.getName());
+        header.writeInt(numRows);
+        header.writeInt(variables.size());
+
+        for (Node variable : variables) {
+            if (variable instanceof ContinuousVariable) {
+                header.writeByte(CONTINUOUS);
+                header.writeUTF(variable.getName());
+            } else if (variable instanceof DiscreteVariable) {
+                List<String> categories = ((DiscreteVariable) variable).getCategories();
+
+                header.writeByte(DISCRETE);
+                header.writeUTF(variable.getName());
+                header.writeInt(categories.size());
+
+                for (String category : categories) {
+                    header.writeUTF(category);
+                }
+            } else {
+                throw new IllegalArgumentException("Expecting continuous or discrete variables: " + variable);
+            }
+        }
+
+        header.flush();
+
+        Deflater deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+
+        try (OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(file), CHUNK)) {
+            DataOutputStream preamble = new DataOutputStream(fileOut);
+            preamble.writeInt(MAGIC);
+            preamble.writeInt(VERSION);
+            preamble.writeInt(compressed ? COMPRESSED : 0);
+            preamble.writeInt(headerBytes.size());
+            headerBytes.writeTo(preamble);
+            preamble.flush();
+
+            OutputStream payload = compressed ? new DeflaterOutputStream(fileOut, deflater, CHUNK) : fileOut;
+            WritableByteChannel channel = Channels.newChannel(payload);
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+
+            for (int j = 0; j < variables.size(); j++) {
+                boolean discrete = variables.get(j) instanceof DiscreteVariable;
+
+                for (int i = 0; i < numRows; i++) {
+                    if (buffer.remaining() < 8) {
+                        drain(buffer, channel);
+                    }
+
+                    if (discrete) {
+                        buffer.putInt(dataSet.getInt(i, j));
+                    } else {
+                        buffer.putDouble(dataSet.getDouble(i, j));
+                    }
+                }
+            }
+
+            drain(buffer, channel);
+
+            if (compressed) {
+                ((DeflaterOutputStream) payload).finish();
+            }
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+}
@@ -232,6 +232,8 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
             }
         }
 
+        materialize();
+
         try {
             setIntPrivate(row, column, value);
         } catch (Exception e) {
@@ -255,6 +257,8 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
      * @param column The index of the variable.
      */
     public final void setDouble(int row, int column, double value) {
+        materialize();
+
         try {
             dataBox.set(row, column, value);
         } catch (Exception e) {
@@ -438,6 +442,7 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
         DiscreteVariable _to = (DiscreteVariable) to;
 
         int col = variables.indexOf(_from);
+        materialize();
 
         List<String> oldCategories = _from.getCategories();
         List<String> newCategories = _to.getCategories();
@@ -1269,6 +1274,17 @@ public final class BoxDataSet implements DataSet, TetradSerializable {
     }
 
     //===============================PRIVATE METHODS=====================//
+
+    /**
+     * Copies a read-only MappedDataBox or LaggedDataBox onto the heap, so that
+     * it can be changed. Called before the first change; does nothing after that.
+     */
+    private void materialize() {
+        if (dataBox instanceof MappedDataBox || dataBox instanceof LaggedDataBox) {
+            dataBox = dataBox.copy();
+        }
+    }
+
     private void setIntPrivate(int row, int col, int value) {
         if (value == -99) {
             dataBox.set(row, col, null);
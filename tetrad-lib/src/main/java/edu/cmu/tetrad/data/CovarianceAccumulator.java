@@ -0,0 +1,624 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Accumulates the covariance matrix of continuous data, which may be added all at once or
+ * in chunks of rows as it arrives; every covariance matrix Tetrad computes from data is
+ * computed here. Missing values (NaN) are handled pairwise: the covariance of two
+ * variables is over the rows where both are present, about the means of those rows.
+ * <p>
+ * Each chunk is given by columns (column-major, as VerticalDoubleDataBox keeps data). The
+ * sums of products are symmetric rank-k updates over tiles of TILE variables, cache
+ * blocked: for each block of ROW_BLOCK rows, the columns of a pair of tiles are copied
+ * into contiguous buffers and multiplied two columns by two. The pairs of tiles, and for
+ * narrow data the blocks of rows, are done in parallel; how the work is divided depends
+ * only on the shape of the data, so the results do not depend on the number of threads.
+ * <p>
+ * Values are shifted by the means of the first rows seen for each variable, which keeps
+ * the one-pass sums accurate. For very wide data, setSinglePrecision(true) multiplies in
+ * float within each block of rows, halving the memory traffic, and adds the blocks in
+ * double.
+ */
+public final class CovarianceAccumulator {
+
+    /**
+     * The number of variables in a tile.
+     */
+    public static final int TILE = 64;
+
+    /**
+     * The number of rows multiplied at once.
+     */
+    public static final int ROW_BLOCK = 256;
+
+    // About this many tasks are made for each chunk, splitting the rows if there are
+    // too few pairs of tiles.
+    private static final int TARGET_TASKS = 32;
+
+    private final int numVars;
+    private boolean singlePrecision = false;
+
+    private final double[] shifts;
+    private final boolean[] shifted;
+    private int sampleSize = 0;
+
+    // Sums over all rows of the shifted values, and of their products (lower triangle),
+    // with missing values taken as zero.
+    private final double[] sums;
+    private final double[][] products;
+
+    // Once a value is missing, for i >= j, the sums of the values of i and of j, and the
+    // counts, over the rows where both are present.
+    private double[][] rowSums;
+    private double[][] columnSums;
+    private double[][] counts;
+
+    /**
+     * @param numVars The number of variables (columns).
+     */
+    public CovarianceAccumulator(int numVars) {
+        if (numVars < 0) throw new IllegalArgumentException("Number of variables must be >= 0: " + numVars);
+
+        this.numVars = numVars;
+        this.shifts = new double[numVars];
+        this.shifted = new boolean[numVars];
+        this.sums = new double[numVars];
+        this.products = new double[numVars][];
+
+        for (int i = 0; i < numVars; i++) {
+            products[i] = new double[i + 1];
+        }
+    }
+
+    /**
+     * @return The covariance matrix of the given columns, over their first numRows rows.
+     */
+    public static TetradMatrix covariance(double[][] columns, int numRows) {
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(columns.length);
+        accumulator.addColumns(columns, numRows);
+        return accumulator.getMatrix();
+    }
+
+    /**
+     * @return The covariance of x and y over their first n values, over the rows where
+     * both are present, about the means of those rows; NaN if there are fewer than two.
+     */
+    public static double covariance(double[] x, double[] y, int n) {
+        double sumX = 0.0;
+        double sumY = 0.0;
+        int count = 0;
+
+        for (int k = 0; k < n; k++) {
+            if (Double.isNaN(x[k]) || Double.isNaN(y[k])) continue;
+            sumX += x[k];
+            sumY += y[k];
+            count++;
+        }
+
+        if (count < 2) return Double.NaN;
+
+        double meanX = sumX / count;
+        double meanY = sumY / count;
+        double d = 0.0;
+
+        for (int k = 0; k < n; k++) {
+            if (Double.isNaN(x[k]) || Double.isNaN(y[k])) continue;
+            d += (x[k] - meanX) * (y[k] - meanY);
+        }
+
+        return d / (count - 1);
+    }
+
+    /**
+     * Adds rows of data, given by column: columns[j][k] is the value of variable j in
+     * row k, for k < numRows. The columns are not modified.
+     */
+    public void addColumns(final double[][] columns, final int numRows) {
+        if (columns.length != numVars) {
+            throw new IllegalArgumentException("Expecting " + numVars + " columns: " + columns.length);
+        }
+
+        for (double[] column : columns) {
+            if (column.length < numRows) {
+                throw new IllegalArgumentException("A column has fewer than " + numRows + " rows.");
+            }
+        }
+
+        if (numRows == 0) return;
+
+        boolean missing = setShifts(columns, numRows);
+
+        if (missing && rowSums == null) {
+            startPairwise();
+        }
+
+        final boolean pairwise = rowSums != null;
+        final int numTiles = (numVars + TILE - 1) / TILE;
+        int numPairs = numTiles * (numTiles + 1) / 2;
+        int numRowBlocks = (numRows + ROW_BLOCK - 1) / ROW_BLOCK;
+        int numSegments = Math.max(1, Math.min(numRowBlocks, (TARGET_TASKS + numPairs - 1) / numPairs));
+        int segmentBlocks = (numRowBlocks + numSegments - 1) / numSegments;
+
+        final List<TileProduct> products = new ArrayList<>();
+
+        for (int ti = 0; ti < numTiles; ti++) {
+            for (int tj = 0; tj <= ti; tj++) {
+                for (int s = 0; s < numSegments; s++) {
+                    int from = s * segmentBlocks * ROW_BLOCK;
+                    int to = Math.min(numRows, (s + 1) * segmentBlocks * ROW_BLOCK);
+                    if (from < to) products.add(new TileProduct(ti, tj, from, to, pairwise));
+                }
+            }
+        }
+
+        class ProductTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private ProductTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 1) {
+                    for (int t = from; t < to; t++) {
+                        products.get(t).compute(columns);
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    ProductTask left = new ProductTask(from, mid);
+                    ProductTask right = new ProductTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        if (products.size() > 1) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new ProductTask(0, products.size()));
+        } else {
+            for (TileProduct product : products) product.compute(columns);
+        }
+
+        for (TileProduct product : products) {
+            product.addTo(this);
+        }
+
+        if (!pairwise) {
+            for (int j = 0; j < numVars; j++) {
+                double[] column = columns[j];
+                double shift = shifts[j];
+                double sum = 0.0;
+                for (int k = 0; k < numRows; k++) sum += column[k] - shift;
+                sums[j] += sum;
+            }
+        }
+
+        sampleSize += numRows;
+    }
+
+    /**
+     * Adds the rows of the given matrix, one row per row of data.
+     */
+    public void addRows(TetradMatrix rows) {
+        double[][] columns = new double[rows.columns()][];
+
+        for (int j = 0; j < columns.length; j++) {
+            columns[j] = rows.getColumn(j).toArray();
+        }
+
+        addColumns(columns, rows.rows());
+    }
+
+    /**
+     * @return The covariances so far, for i >= j, as rows of the lower triangle: entry
+     * [i][j] is the covariance of variables i and j, or NaN if fewer than two rows have
+     * both.
+     */
+    public double[][] getLowerTriangle() {
+        double[][] covariances = new double[numVars][];
+
+        for (int i = 0; i < numVars; i++) {
+            covariances[i] = new double[i + 1];
+
+            for (int j = 0; j <= i; j++) {
+                covariances[i][j] = getCovariance(i, j);
+            }
+        }
+
+        return covariances;
+    }
+
+    /**
+     * @return The covariance matrix so far.
+     */
+    public TetradMatrix getMatrix() {
+        TetradMatrix matrix = new TetradMatrix(numVars, numVars);
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = 0; j <= i; j++) {
+                double c = getCovariance(i, j);
+                matrix.set(i, j, c);
+                matrix.set(j, i, c);
+            }
+        }
+
+        return matrix;
+    }
+
+    /**
+     * @return The covariance of variables i and j so far.
+     */
+    public double getCovariance(int i, int j) {
+        if (i < j) return getCovariance(j, i);
+
+        double n;
+        double sumI;
+        double sumJ;
+
+        if (rowSums != null) {
+            n = counts[i][j];
+            sumI = rowSums[i][j];
+            sumJ = columnSums[i][j];
+        } else {
+            n = sampleSize;
+            sumI = sums[i];
+            sumJ = sums[j];
+        }
+
+        if (n < 2) return Double.NaN;
+
+        return (products[i][j] - sumI * sumJ / n) / (n - 1);
+    }
+
+    /**
+     * @return The number of rows added so far.
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public int getNumVars() {
+        return numVars;
+    }
+
+    /**
+     * @return True if a value has been missing in the rows added so far.
+     */
+    public boolean isPairwise() {
+        return rowSums != null;
+    }
+
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * True if products should be summed in float within each block of rows, for very
+     * wide data; false (the default) for double throughout.
+     */
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    // Shifts the variables not yet shifted by their means in this chunk, if they have
+    // values in it; returns true if a value in the chunk is missing.
+    private boolean setShifts(double[][] columns, int numRows) {
+        boolean missing = false;
+
+        for (int j = 0; j < numVars; j++) {
+            double[] column = columns[j];
+            double sum = 0.0;
+            int count = 0;
+
+            for (int k = 0; k < numRows; k++) {
+                if (Double.isNaN(column[k])) {
+                    missing = true;
+                } else {
+                    sum += column[k];
+                    count++;
+                }
+            }
+
+            if (!shifted[j] && count > 0) {
+                shifts[j] = sum / count;
+                shifted[j] = true;
+            }
+        }
+
+        return missing;
+    }
+
+    // Starts keeping sums and counts by pair, from the totals so far.
+    private void startPairwise() {
+        rowSums = new double[numVars][];
+        columnSums = new double[numVars][];
+        counts = new double[numVars][];
+
+        for (int i = 0; i < numVars; i++) {
+            rowSums[i] = new double[i + 1];
+            columnSums[i] = new double[i + 1];
+            counts[i] = new double[i + 1];
+
+            for (int j = 0; j <= i; j++) {
+                rowSums[i][j] = sums[i];
+                columnSums[i][j] = sums[j];
+                counts[i][j] = sampleSize;
+            }
+        }
+    }
+
+    // The sums of products of the variables of one tile with those of another (not after
+    // it), over a range of rows.
+    private final class TileProduct {
+        private final int rowOffset;
+        private final int columnOffset;
+        private final int numRowVars;
+        private final int numColumnVars;
+        private final int from;
+        private final int to;
+        private final boolean pairwise;
+        private final boolean diagonal;
+
+        // Padded to even numbers of variables; entry [x * width + y].
+        private final int width;
+        private double[] products;
+        private double[] rowSums;
+        private double[] columnSums;
+        private double[] counts;
+
+        private TileProduct(int ti, int tj, int from, int to, boolean pairwise) {
+            this.rowOffset = ti * TILE;
+            this.columnOffset = tj * TILE;
+            this.numRowVars = Math.min(TILE, numVars - rowOffset);
+            this.numColumnVars = Math.min(TILE, numVars - columnOffset);
+            this.from = from;
+            this.to = to;
+            this.pairwise = pairwise;
+            this.diagonal = ti == tj;
+            this.width = numColumnVars + numColumnVars % 2;
+        }
+
+        private void compute(double[][] columns) {
+            int height = numRowVars + numRowVars % 2;
+
+            products = new double[height * width];
+
+            if (pairwise) {
+                rowSums = new double[height * width];
+                columnSums = new double[height * width];
+                counts = new double[height * width];
+            }
+
+            if (singlePrecision) {
+                computeFloat(columns, height);
+            } else {
+                computeDouble(columns, height);
+            }
+        }
+
+        private void computeDouble(double[][] columns, int height) {
+            double[] rowValues = new double[height * ROW_BLOCK];
+            double[] rowMask = pairwise ? new double[height * ROW_BLOCK] : null;
+            double[] columnValues = diagonal ? rowValues : new double[width * ROW_BLOCK];
+            double[] columnMask = diagonal ? rowMask : pairwise ? new double[width * ROW_BLOCK] : null;
+
+            for (int start = from; start < to; start += ROW_BLOCK) {
+                int rows = Math.min(ROW_BLOCK, to - start);
+
+                pack(columns, rowOffset, numRowVars, height, start, rows, rowValues, rowMask);
+
+                if (!diagonal) {
+                    pack(columns, columnOffset, numColumnVars, width, start, rows, columnValues, columnMask);
+                }
+
+                multiply(rowValues, height, columnValues, width, rows, products, diagonal);
+
+                if (pairwise) {
+                    multiply(rowValues, height, columnMask, width, rows, rowSums, diagonal);
+                    multiply(rowMask, height, columnValues, width, rows, columnSums, diagonal);
+                    multiply(rowMask, height, columnMask, width, rows, counts, diagonal);
+                }
+            }
+        }
+
+        private void computeFloat(double[][] columns, int height) {
+            float[] rowValues = new float[height * ROW_BLOCK];
+            float[] rowMask = pairwise ? new float[height * ROW_BLOCK] : null;
+            float[] columnValues = diagonal ? rowValues : new float[width * ROW_BLOCK];
+            float[] columnMask = diagonal ? rowMask : pairwise ? new float[width * ROW_BLOCK] : null;
+
+            for (int start = from; start < to; start += ROW_BLOCK) {
+                int rows = Math.min(ROW_BLOCK, to - start);
+
+                pack(columns, rowOffset, numRowVars, height, start, rows, rowValues, rowMask);
+
+                if (!diagonal) {
+                    pack(columns, columnOffset, numColumnVars, width, start, rows, columnValues, columnMask);
+                }
+
+                multiply(rowValues, height, columnValues, width, rows, products, diagonal);
+
+                if (pairwise) {
+                    multiply(rowValues, height, columnMask, width, rows, rowSums, diagonal);
+                    multiply(rowMask, height, columnValues, width, rows, columnSums, diagonal);
+                    multiply(rowMask, height, columnMask, width, rows, counts, diagonal);
+                }
+            }
+        }
+
+        // Copies the shifted values of count variables from offset, for the given rows,
+        // into values[c * rows + r], with zero for missing values and for the padding,
+        // and if mask is not null, one or zero into mask as values are present or not.
+        private void pack(double[][] columns, int offset, int count, int padded, int start, int rows,
+                          double[] values, double[] mask) {
+            for (int c = 0; c < padded; c++) {
+                int base = c * rows;
+
+                if (c >= count) {
+                    for (int r = 0; r < rows; r++) values[base + r] = 0.0;
+                    if (mask != null) for (int r = 0; r < rows; r++) mask[base + r] = 0.0;
+                    continue;
+                }
+
+                double[] column = columns[offset + c];
+                double shift = shifts[offset + c];
+
+                for (int r = 0; r < rows; r++) {
+                    double v = column[start + r];
+                    boolean present = !Double.isNaN(v);
+                    values[base + r] = present ? v - shift : 0.0;
+                    if (mask != null) mask[base + r] = present ? 1.0 : 0.0;
+                }
+            }
+        }
+
+        private void pack(double[][] columns, int offset, int count, int padded, int start, int rows,
+                          float[] values, float[] mask) {
+            for (int c = 0; c < padded; c++) {
+                int base = c * rows;
+
+                if (c >= count) {
+                    for (int r = 0; r < rows; r++) values[base + r] = 0f;
+                    if (mask != null) for (int r = 0; r < rows; r++) mask[base + r] = 0f;
+                    continue;
+                }
+
+                double[] column = columns[offset + c];
+                double shift = shifts[offset + c];
+
+                for (int r = 0; r < rows; r++) {
+                    double v = column[start + r];
+                    boolean present = !Double.isNaN(v);
+                    values[base + r] = present ? (float) (v - shift) : 0f;
+                    if (mask != null) mask[base + r] = present ? 1f : 0f;
+                }
+            }
+        }
+
+        private void addTo(CovarianceAccumulator accumulator) {
+            for (int x = 0; x < numRowVars; x++) {
+                int i = rowOffset + x;
+
+                for (int y = 0; y < numColumnVars; y++) {
+                    int j = columnOffset + y;
+                    if (j > i) break;
+
+                    int cell = x * width + y;
+                    accumulator.products[i][j] += products[cell];
+
+                    if (pairwise) {
+                        accumulator.rowSums[i][j] += rowSums[cell];
+                        accumulator.columnSums[i][j] += columnSums[cell];
+                        accumulator.counts[i][j] += counts[cell];
+                    }
+                }
+            }
+        }
+    }
+
+    // out[x * nb + y] += sum over r of a[x * rows + r] * b[y * rows + r], for even na and
+    // nb, two by two; if lower, skipping the pairs of pairs wholly above the diagonal.
+    private static void multiply(double[] a, int na, double[] b, int nb, int rows, double[] out,
+                                 boolean lower) {
+        for (int x = 0; x < na; x += 2) {
+            int a0 = x * rows;
+            int a1 = a0 + rows;
+
+            for (int y = 0; y < nb; y += 2) {
+                if (lower && y > x) break;
+
+                int b0 = y * rows;
+                int b1 = b0 + rows;
+                double s00 = 0.0, s01 = 0.0, s10 = 0.0, s11 = 0.0;
+
+                for (int r = 0; r < rows; r++) {
+                    double u0 = a[a0 + r];
+                    double u1 = a[a1 + r];
+                    double v0 = b[b0 + r];
+                    double v1 = b[b1 + r];
+                    s00 += u0 * v0;
+                    s01 += u0 * v1;
+                    s10 += u1 * v0;
+                    s11 += u1 * v1;
+                }
+
+                out[x * nb + y] += s00;
+                out[x * nb + y + 1] += s01;
+                out[(x + 1) * nb + y] += s10;
+                out[(x + 1) * nb + y + 1] += s11;
+            }
+        }
+    }
+
+    private static void multiply(float[] a, int na, float[] b, int nb, int rows, double[] out,
+                                 boolean lower) {
+        for (int x = 0; x < na; x += 2) {
+            int a0 = x * rows;
+            int a1 = a0 + rows;
+
+            for (int y = 0; y < nb; y += 2) {
+                if (lower && y > x) break;
+
+                int b0 = y * rows;
+                int b1 = b0 + rows;
+                float s00 = 0f, s01 = 0f, s10 = 0f, s11 = 0f;
+
+                for (int r = 0; r < rows; r++) {
+                    float u0 = a[a0 + r];
+                    float u1 = a[a1 + r];
+                    float v0 = b[b0 + r];
+                    float v1 = b[b1 + r];
+                    s00 += u0 * v0;
+                    s01 += u0 * v1;
+                    s10 += u1 * v0;
+                    s11 += u1 * v1;
+                }
+
+                out[x * nb + y] += s00;
+                out[x * nb + y + 1] += s01;
+                out[(x + 1) * nb + y] += s10;
+                out[(x + 1) * nb + y + 1] += s11;
+            }
+        }
+    }
+}
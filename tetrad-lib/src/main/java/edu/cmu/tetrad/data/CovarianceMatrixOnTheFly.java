@@ -101,6 +101,9 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
 
     private double[] variances;
 
+    // True if a value is missing, in which case covariances are computed about the means
+    // of the rows where both variables are present, as CovarianceAccumulator does.
+    private boolean missingValues = false;
 
     //=============================CONSTRUCTORS=========================//
 
@@ -252,6 +255,10 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
 
                         variances[i] = v;
 
+                        if (count < sampleSize) {
+                            missingValues = true;
+                        }
+
                         if (v == 0) {
                             System.out.println("Zero variance! " + variables.get(i));
                         }
@@ -450,10 +457,14 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
             return variances[i];
         }
 
-        double d = 0.0D;
-
         double[] v1 = vectors[i];
         double[] v2 = vectors[j];
+
+        if (missingValues) {
+            return CovarianceAccumulator.covariance(v1, v2, sampleSize);
+        }
+
+        double d = 0.0D;
         int count = 0;
 
         for (int k = 0; k < sampleSize; k++) {
@@ -520,15 +531,7 @@ public class CovarianceMatrixOnTheFly implements ICovarianceMatrix {
      * @return a copy of the covariance matrix.
      */
     public final TetradMatrix getMatrix() {
-        TetradMatrix matrix = new TetradMatrix(getDimension(), getDimension());
-
-        for (int i = 0; i < getDimension(); i++) {
-            for (int j = 0; j < getDimension(); j++) {
-                matrix.set(i, j, getValue(i, j));
-            }
-        }
-
-        return matrix;
+        return CovarianceAccumulator.covariance(vectors, sampleSize);
     }
 
     public final TetradMatrix getMatrix(int[] rows) {
@@ -27,7 +27,6 @@ import edu.cmu.tetrad.util.*;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.linear.BlockRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.stat.correlation.Covariance;
 
 import java.rmi.MarshalledObject;
 import java.text.DecimalFormat;
@@ -1053,8 +1052,7 @@ public final class DataUtils {
     }
 
     public static TetradMatrix cov2(TetradMatrix data) {
-        RealMatrix covarianceMatrix = new Covariance(data.getRealMatrix()).getCovarianceMatrix();
-        return new TetradMatrix(covarianceMatrix, covarianceMatrix.getRowDimension(), covarianceMatrix.getColumnDimension());
+        return cov(data);
     }
 
     public static TetradVector means(TetradMatrix data) {
@@ -1155,38 +1153,14 @@ public final class DataUtils {
 //        return prod.scalarMult(1.0 / (data.rows() - 1));
     }
 
+    /**
+     * @return The covariance matrix of the columns of the given data, which is not
+     * modified, with missing values handled pairwise. See CovarianceAccumulator.
+     */
     public static TetradMatrix cov(TetradMatrix data) {
-
-
-        for (int j = 0; j < data.columns(); j++) {
-            double sum = 0.0;
-
-            for (int i = 0; i < data.rows(); i++) {
-                sum += data.get(i, j);
-            }
-
-            double mean = sum / data.rows();
-
-            for (int i = 0; i < data.rows(); i++) {
-                data.set(i, j, data.get(i, j) - mean);
-            }
-        }
-
-        RealMatrix q = data.getRealMatrix();
-
-        RealMatrix q1 = MatrixUtils.transposeWithoutCopy(q);
-        RealMatrix q2 = times(q1, q);
-        TetradMatrix prod = new TetradMatrix(q2, q.getColumnDimension(), q.getColumnDimension());
-
-        double factor = 1.0 / (data.rows() - 1);
-
-        for (int i = 0; i < prod.rows(); i++) {
-            for (int j = 0; j < prod.columns(); j++) {
-                prod.set(i, j, prod.get(i, j) * factor);
-            }
-        }
-
-        return prod;
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(data.columns());
+        accumulator.addRows(data);
+        return accumulator.getMatrix();
     }
 
     public static void simpleTest() {
@@ -1837,6 +1811,8 @@ public final class DataUtils {
 
         if (dataModel instanceof ICovarianceMatrix) {
             return (ICovarianceMatrix) dataModel;
+        } else if (LaggedCovarianceMatrix.isLaggedView(dataModel)) {
+            return new LaggedCovarianceMatrix((DataSet) dataModel);
         } else if (dataModel instanceof DataSet) {
             return new CovarianceMatrix((DataSet) dataModel);
         } else {
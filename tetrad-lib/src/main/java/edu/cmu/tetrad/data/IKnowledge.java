@@ -116,6 +116,12 @@ public interface IKnowledge extends TetradSerializable {
 
     int isInWhichTier(Node node); // added by DMalinsky for tsFCI 4/20/16
 
+    /**
+     * @return the knowledge compiled for the given variables, for searches that check it
+     * in their inner loops. See KnowledgeIndex.
+     */
+    KnowledgeIndex getIndex(List<Node> variables);
+
     public List<KnowledgeEdge> getListOfRequiredEdges();
 
     public List<KnowledgeEdge> getListOfExplicitlyRequiredEdges();
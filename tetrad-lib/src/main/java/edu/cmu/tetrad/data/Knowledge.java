@@ -1178,4 +1178,10 @@ public final class Knowledge implements TetradSerializable, IKnowledge {
         return tierMap.get(node.getName());
     } // added by DMalinsky for tsFCI on 4/20/16
 
+    /**
+     * @return the knowledge compiled for the given variables.
+     */
+    public KnowledgeIndex getIndex(List<Node> variables) {
+        return KnowledgeIndex.of(this, variables);
+    }
 }
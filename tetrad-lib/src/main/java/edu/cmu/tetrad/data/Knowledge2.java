@@ -67,6 +67,11 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
 
     private Map<String, MyNode> namesToVars = new HashMap<>();
 
+    // The rules compiled for all of the variables, for isForbidden and the like, and the
+    // last index made for getIndex. Both are dropped when anything changes.
+    private transient volatile KnowledgeIndex compiled;
+    private transient volatile KnowledgeIndex lastIndex;
+
     // Wraps a variable name so that it has object identity. For speed.
     public static class MyNode implements Comparable, TetradSerializable {
 
@@ -136,19 +141,25 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
     }
 
     /**
-     * Makes a shallow copy.
+     * Makes a deep copy. The tier rules hold the tiers themselves, so each set is
+     * copied once, and shared by the copied tiers and rules as by the originals.
      */
     private Knowledge2(Knowledge2 knowledge) {
         this.namesToVars = new HashMap<>(knowledge.namesToVars);
         this.myNodes = new HashSet<>(knowledge.myNodes);
 
-        this.forbiddenRulesSpecs = new ArrayList<>(knowledge.forbiddenRulesSpecs);
-        this.requiredRulesSpecs = new ArrayList<>(knowledge.requiredRulesSpecs);
+        Map<Set<MyNode>, Set<MyNode>> copies = new IdentityHashMap<>();
+        this.tierSpecs = new ArrayList<>();
+
+        for (Set<MyNode> tier : knowledge.tierSpecs) {
+            this.tierSpecs.add(copy(tier, copies));
+        }
+
+        this.forbiddenRulesSpecs = copyRules(knowledge.forbiddenRulesSpecs, copies);
+        this.requiredRulesSpecs = copyRules(knowledge.requiredRulesSpecs, copies);
         this.knowledgeGroupRules = new HashMap<>();
-        this.tierSpecs = new ArrayList<>(knowledge.tierSpecs);
 
         this.defaultToKnowledgeLayout = knowledge.defaultToKnowledgeLayout;
-
     }
 
     /**
@@ -189,6 +200,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
                 tierSpecs.get(tier).add(s);
             }
         }
+
+        changed();
     }
 
     /**
@@ -233,6 +246,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         requiredRulesSpecs.remove(old);
 
         this.knowledgeGroups.remove(index);
+        changed();
     }
 
     /**
@@ -250,6 +264,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         } else if (group.getType() == KnowledgeGroup.REQUIRED) {
             requiredRulesSpecs.add(o);
         }
+
+        changed();
     }
 
     /**
@@ -269,6 +285,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         }
 
         knowledgeGroups.set(index, group);
+        changed();
     }
 
     /**
@@ -406,38 +423,20 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      * Determines whether the edge var1 --> var2 is forbidden.
      */
     public final boolean isForbidden(String var1, String var2) {
-        for (OrderedPair<Set<MyNode>> rule : forbiddenRulesSpecs) {
-            if (rule.getFirst().contains(getVar(var1))) {
-                if (rule.getSecond().contains(getVar(var2))) {
-                    if (!var1.equals(var2)) {
-                        return true;
-                    }
-                }
-            }
-        }
-
-        if (isForbiddenByTiers(var1, var2)) {
-            return false;
-        }
-
-        return false;
+        KnowledgeIndex index = compiled();
+        int i = index.indexOf(var1);
+        int j = index.indexOf(var2);
+        return i != -1 && j != -1 && index.isForbidden(i, j);
     }
 
     /**
      * Determines whether the edge var1 --> var2 is required..
      */
     public final boolean isRequired(String var1, String var2) {
-        for (OrderedPair<Set<MyNode>> rule : requiredRulesSpecs) {
-            if (rule.getFirst().contains(getVar(var1))) {
-                if (rule.getSecond().contains(getVar(var2))) {
-                    if (!var1.equals(var2)) {
-                        return true;
-                    }
-                }
-            }
-        }
-
-        return false;
+        KnowledgeIndex index = compiled();
+        int i = index.indexOf(var1);
+        int j = index.indexOf(var2);
+        return i != -1 && j != -1 && index.isRequired(i, j);
     }
 
     /**
@@ -726,6 +725,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         if (!forbiddenRulesSpecs.contains(o)) {
             forbiddenRulesSpecs.add(o);
         }
+
+        changed();
     }
 
     /**
@@ -742,6 +743,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         OrderedPair<Set<MyNode>> o = new OrderedPair<>(f1, f2);
 
         forbiddenRulesSpecs.remove(o);
+        changed();
     }
 
     /**
@@ -778,6 +780,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         if (!requiredRulesSpecs.contains(o)) { // Added this line.
             requiredRulesSpecs.add(o);
         }  // Add this line.
+
+        changed();
     }
 
     /**
@@ -793,6 +797,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         OrderedPair<Set<MyNode>> o = new OrderedPair<>(f1, f2);
 
         requiredRulesSpecs.remove(o);
+        changed();
     }
 
     /**
@@ -802,6 +807,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         for (Set<MyNode> tier : tierSpecs) {
             tier.remove(getVar(spec));
         }
+
+        changed();
     }
 
     /**
@@ -818,6 +825,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         } else {
             forbiddenRulesSpecs.remove(o);
         }
+
+        changed();
     }
 
     /**
@@ -845,6 +854,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
             for (int j = 0; j < i; j++) {
                 forbiddenRulesSpecs.add(new OrderedPair<>(tierSpecs.get(i), tierSpecs.get(j)));
             }
+
+            changed();
         }
     }
 
@@ -878,6 +889,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         this.forbiddenRulesSpecs = new ArrayList<>();
         this.requiredRulesSpecs = new ArrayList<>();
         this.tierSpecs = new ArrayList<>();
+        changed();
     }
 
     /**
@@ -957,6 +969,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         Set<MyNode> _tier = tierSpecs.get(tier);
         if (_tier != null) {
             _tier.clear();
+            changed();
         }
 
         for (String var : vars) {
@@ -972,6 +985,7 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
             MyNode e = new MyNode(varName);
             myNodes.add(e);
             namesToVars.put(varName, e);
+            changed();
         }
     }
 
@@ -998,6 +1012,8 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
         for (Set<MyNode> tier : tierSpecs) {
             tier.remove(MyNode);
         }
+
+        changed();
     }
 
     /**
@@ -1013,6 +1029,28 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
     }
 
     //=====================================PRIVATE METHODS============================//
+    private static Set<MyNode> copy(Set<MyNode> set, Map<Set<MyNode>, Set<MyNode>> copies) {
+        Set<MyNode> copy = copies.get(set);
+
+        if (copy == null) {
+            copy = new LinkedHashSet<>(set);
+            copies.put(set, copy);
+        }
+
+        return copy;
+    }
+
+    private static List<OrderedPair<Set<MyNode>>> copyRules(List<OrderedPair<Set<MyNode>>> rules,
+                                                            Map<Set<MyNode>, Set<MyNode>> copies) {
+        List<OrderedPair<Set<MyNode>>> copy = new ArrayList<>();
+
+        for (OrderedPair<Set<MyNode>> rule : rules) {
+            copy.add(new OrderedPair<>(copy(rule.getFirst(), copies), copy(rule.getSecond(), copies)));
+        }
+
+        return copy;
+    }
+
     private OrderedPair<Set<MyNode>> getGroupRule(KnowledgeGroup group) {
         Set<String> from = group.getFromVariables();
         Set<String> to = group.getToVariables();
@@ -1105,17 +1143,135 @@ public final class Knowledge2 implements TetradSerializable, IKnowledge {
      */
     //@Override
     public int isInWhichTier(Node node) {
-        for (int i = 0; i < tierSpecs.size(); i++) {
-            Set<MyNode> tier = tierSpecs.get(i);
+        KnowledgeIndex index = compiled();
+        int i = index.indexOf(node.getName());
+        return i == -1 ? -1 : index.getTier(i);
+    } // added by DMalinsky for tsFCI on 4/20/16
 
-            for (MyNode myNode : tier) {
-                if (myNode.getName().equals(node.getName())) {
-                    return i;
+    /**
+     * @return the rules compiled for the given variables. The last index made is kept
+     * until the knowledge changes.
+     */
+    public KnowledgeIndex getIndex(List<Node> variables) {
+        List<String> names = new ArrayList<>();
+
+        for (Node node : variables) {
+            names.add(node.getName());
+        }
+
+        KnowledgeIndex index = lastIndex;
+
+        if (index == null || !index.getVariables().equals(names)) {
+            index = compile(names);
+            lastIndex = index;
+        }
+
+        return index;
+    }
+
+    private KnowledgeIndex compiled() {
+        KnowledgeIndex index = compiled;
+
+        if (index == null) {
+            index = compile(new ArrayList<>(namesToVars.keySet()));
+            compiled = index;
+        }
+
+        return index;
+    }
+
+    private void changed() {
+        compiled = null;
+        lastIndex = null;
+    }
+
+    // Numbers the variables with the given names and expands the rules over them. The
+    // rules between tiers are kept as rules between tier ranks, except for variables that
+    // are in more than one tier.
+    private KnowledgeIndex compile(List<String> names) {
+        KnowledgeIndex index = new KnowledgeIndex(this, names, tierSpecs.size());
+        Map<MyNode, Integer> indices = new HashMap<>();
+
+        for (int i = 0; i < names.size(); i++) {
+            MyNode node = namesToVars.get(names.get(i));
+            if (node != null) indices.put(node, i);
+        }
+
+        Map<Set<MyNode>, Integer> tiers = new IdentityHashMap<>();
+
+        for (int t = 0; t < tierSpecs.size(); t++) {
+            tiers.put(tierSpecs.get(t), t);
+
+            for (MyNode node : tierSpecs.get(t)) {
+                Integer i = indices.get(node);
+                if (i != null) index.addToTier(i, t);
+            }
+        }
+
+        List<MyNode> severalTiers = new ArrayList<>();
+
+        for (MyNode node : indices.keySet()) {
+            if (index.isInSeveralTiers(indices.get(node))) {
+                severalTiers.add(node);
+            }
+        }
+
+        for (OrderedPair<Set<MyNode>> rule : forbiddenRulesSpecs) {
+            Integer tier1 = tiers.get(rule.getFirst());
+            Integer tier2 = tiers.get(rule.getSecond());
+
+            if (tier1 != null && tier2 != null) {
+                index.forbidTiers(tier1, tier2);
+
+                if (!severalTiers.isEmpty()) {
+                    expandSeveralTiers(index, indices, rule, severalTiers);
                 }
+            } else {
+                expand(index, indices, rule, true);
             }
         }
 
-        return -1;
-    } // added by DMalinsky for tsFCI on 4/20/16
+        for (OrderedPair<Set<MyNode>> rule : requiredRulesSpecs) {
+            expand(index, indices, rule, false);
+        }
+
+        return index;
+    }
+
+    private void expand(KnowledgeIndex index, Map<MyNode, Integer> indices,
+                        OrderedPair<Set<MyNode>> rule, boolean forbidden) {
+        for (MyNode node1 : rule.getFirst()) {
+            Integer i = indices.get(node1);
+            if (i == null) continue;
+
+            for (MyNode node2 : rule.getSecond()) {
+                Integer j = indices.get(node2);
+                if (j == null || j.equals(i)) continue;
+
+                if (forbidden) {
+                    index.forbid(i, j);
+                } else {
+                    index.require(i, j);
+                }
+            }
+        }
+    }
+
+    // Expands a rule between tiers for just the pairs with a variable in several tiers.
+    private void expandSeveralTiers(KnowledgeIndex index, Map<MyNode, Integer> indices,
+                                    OrderedPair<Set<MyNode>> rule, List<MyNode> severalTiers) {
+        for (MyNode node1 : rule.getFirst()) {
+            Integer i = indices.get(node1);
+            if (i == null) continue;
+
+            Collection<MyNode> second = index.isInSeveralTiers(i) ? rule.getSecond() : severalTiers;
+
+            for (MyNode node2 : second) {
+                Integer j = indices.get(node2);
+                if (j == null || j.equals(i) || !rule.getSecond().contains(node2)) continue;
+                index.forbid(i, j);
+            }
+        }
+    }
 
 }
@@ -0,0 +1,224 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.*;
+
+/**
+ * Knowledge compiled for a list of variables, for searches that check it in their inner
+ * loops. The variables are numbered in the order of the list; forbidden and required
+ * edges between them are looked up by number, tiers by rank and other rules in one bit
+ * set per variable.
+ * <p>
+ * An index is a snapshot of the knowledge when it was made. Get a new one from
+ * IKnowledge.getIndex after the knowledge has been edited.
+ */
+public final class KnowledgeIndex {
+
+    private final IKnowledge knowledge;
+    private final List<String> variables;
+    private final Map<String, Integer> indices;
+
+    // The first tier of each variable, or -1.
+    private final int[] tiers;
+
+    // The tier of each variable in just one tier, by whose rank its tier rules are judged,
+    // or -1; the tier rules of a variable in several tiers are put in the bit sets.
+    private final int[] ranks;
+
+    // Whether the tier rules forbid edges from the first tier to the second.
+    private final boolean[][] tierForbidden;
+
+    private final BitSet[] forbidden;
+    private final BitSet[] required;
+    private boolean empty = true;
+
+    KnowledgeIndex(IKnowledge knowledge, List<String> variables, int numTiers) {
+        this.knowledge = knowledge;
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+        this.indices = new HashMap<>();
+
+        for (int i = 0; i < variables.size(); i++) {
+            indices.put(variables.get(i), i);
+        }
+
+        this.tiers = new int[variables.size()];
+        this.ranks = new int[variables.size()];
+        Arrays.fill(tiers, -1);
+        Arrays.fill(ranks, -1);
+        this.tierForbidden = new boolean[numTiers][numTiers];
+        this.forbidden = new BitSet[variables.size()];
+        this.required = new BitSet[variables.size()];
+    }
+
+    /**
+     * Compiles any knowledge by asking it about each ordered pair of the variables.
+     */
+    public static KnowledgeIndex of(IKnowledge knowledge, List<Node> variables) {
+        KnowledgeIndex index = new KnowledgeIndex(knowledge, names(variables), 0);
+
+        if (knowledge.isEmpty()) {
+            return index;
+        }
+
+        for (int i = 0; i < variables.size(); i++) {
+            String x = variables.get(i).getName();
+
+            for (int j = 0; j < variables.size(); j++) {
+                if (i == j) continue;
+                String y = variables.get(j).getName();
+
+                if (knowledge.isForbidden(x, y)) index.forbid(i, j);
+                if (knowledge.isRequired(x, y)) index.require(i, j);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * @return the names of the variables, in the order they are numbered.
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return the number of the variable with the given name, or -1 if it is not one of them.
+     */
+    public int indexOf(String name) {
+        Integer index = indices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return true if the edge from the i'th variable to the j'th is forbidden.
+     */
+    public boolean isForbidden(int i, int j) {
+        if (i == j) return false;
+
+        int rank1 = ranks[i];
+        int rank2 = ranks[j];
+
+        if (rank1 != -1 && rank2 != -1 && tierForbidden[rank1][rank2]) {
+            return true;
+        }
+
+        return forbidden[i] != null && forbidden[i].get(j);
+    }
+
+    /**
+     * @return true if the edge from the i'th variable to the j'th is required.
+     */
+    public boolean isRequired(int i, int j) {
+        return i != j && required[i] != null && required[i].get(j);
+    }
+
+    /**
+     * @return true if the edge x --> y is forbidden. Nodes that are not among the
+     * variables are looked up in the knowledge.
+     */
+    public boolean isForbidden(Node x, Node y) {
+        int i = indexOf(x.getName());
+        int j = indexOf(y.getName());
+
+        if (i == -1 || j == -1) {
+            return knowledge.isForbidden(x.getName(), y.getName());
+        }
+
+        return isForbidden(i, j);
+    }
+
+    /**
+     * @return true if the edge x --> y is required. Nodes that are not among the
+     * variables are looked up in the knowledge.
+     */
+    public boolean isRequired(Node x, Node y) {
+        int i = indexOf(x.getName());
+        int j = indexOf(y.getName());
+
+        if (i == -1 || j == -1) {
+            return knowledge.isRequired(x.getName(), y.getName());
+        }
+
+        return isRequired(i, j);
+    }
+
+    /**
+     * @return the first tier the i'th variable is in, or -1 if it is in none.
+     */
+    public int getTier(int i) {
+        return tiers[i];
+    }
+
+    /**
+     * @return true if no edge among the variables is forbidden or required.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    //==============================PACKAGE-PRIVATE METHODS=========================//
+
+    void addToTier(int i, int tier) {
+        if (tiers[i] == -1) {
+            tiers[i] = tier;
+            ranks[i] = tier;
+        } else if (tiers[i] != tier) {
+            ranks[i] = -1;
+        }
+    }
+
+    boolean isInSeveralTiers(int i) {
+        return tiers[i] != -1 && ranks[i] == -1;
+    }
+
+    void forbidTiers(int tier1, int tier2) {
+        tierForbidden[tier1][tier2] = true;
+        empty = false;
+    }
+
+    void forbid(int i, int j) {
+        if (forbidden[i] == null) forbidden[i] = new BitSet(variables.size());
+        forbidden[i].set(j);
+        empty = false;
+    }
+
+    void require(int i, int j) {
+        if (required[i] == null) required[i] = new BitSet(variables.size());
+        required[i].set(j);
+        empty = false;
+    }
+
+    private static List<String> names(List<Node> variables) {
+        List<String> names = new ArrayList<>();
+
+        for (Node node : variables) {
+            names.add(node.getName());
+        }
+
+        return names;
+    }
+}
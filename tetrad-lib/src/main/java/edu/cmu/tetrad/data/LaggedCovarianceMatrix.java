@@ -0,0 +1,655 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.NumberFormatUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.text.NumberFormat;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.*;
+
+/**
+ * Covariances over a lagged view of a continuous time series (see
+ * LaggedDataBox and TimeSeriesUtils.createLagDataView), computed from the
+ * unlagged series on demand, so that neither the lagged data nor the full
+ * covariance matrix is ever materialized.
+ * <p>
+ * In stationary mode (the default) the covariance of X at lag a and Y at lag b
+ * depends only on a - b, and is estimated once from the whole series as an
+ * autocovariance at that offset and cached, so the (numLags + 1)^2 blocks of the
+ * matrix share numLags + 1 distinct blocks. The autocovariances use the full
+ * series means and a common divisor, which keeps the block-Toeplitz matrix
+ * positive semidefinite. In exact mode each entry is the ordinary sample
+ * covariance of the two columns of the lagged view, as would be computed from
+ * TimeSeriesUtils.createLagData; these are not cached.
+ */
+public class LaggedCovarianceMatrix implements ICovarianceMatrix {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The variables (in order) for this covariance matrix.
+     *
+     * @serial Cannot be null.
+     */
+    private List<Node> variables;
+
+    /**
+     * The columns of the unlagged series. These are not modified.
+     */
+    private final double[][] vectors;
+
+    /**
+     * The maximum lag.
+     */
+    private final int numLags;
+
+    /**
+     * Whether covariances are estimated assuming stationarity.
+     */
+    private final boolean stationary;
+
+    /**
+     * Means of the columns of the unlagged series (stationary mode), or of
+     * each column of the lagged view, indexed like the variables (exact mode).
+     */
+    private final double[] means;
+
+    /**
+     * The size of the sample, the number of rows of the lagged view.
+     *
+     * @serial Range > 0.
+     */
+    private int sampleSize;
+
+    /**
+     * The name of the covariance matrix.
+     *
+     * @serial May be null.
+     */
+    private String name;
+
+    /**
+     * The list of selected variables.
+     *
+     * @serial Cannot be null.
+     */
+    private Set<Node> selectedVariables = new HashSet<>();
+
+    /**
+     * The knowledge for this data.
+     *
+     * @serial Cannot be null.
+     */
+    private IKnowledge knowledge = new Knowledge2();
+
+    /**
+     * Cached autocovariances, indexed by offset, then by the two columns of the
+     * unlagged series. The block for an offset is computed in full on first use
+     * and only then published, so a block that is seen is complete.
+     */
+    private transient AtomicReferenceArray<double[][]> autocovariances;
+
+    //=============================CONSTRUCTORS=========================//
+
+    /**
+     * Constructs stationary covariances for the given lagged view.
+     *
+     * @param lagView A data set backed by a LaggedDataBox over continuous data,
+     *                as returned by TimeSeriesUtils.createLagDataView.
+     */
+    public LaggedCovarianceMatrix(DataSet lagView) {
+        this(lagView, true);
+    }
+
+    /**
+     * Constructs covariances for the given lagged view.
+     *
+     * @param lagView    A data set backed by a LaggedDataBox over continuous data,
+     *                   as returned by TimeSeriesUtils.createLagDataView.
+     * @param stationary True if covariances between lags should be estimated as
+     *                   autocovariances of the whole series and cached.
+     */
+    public LaggedCovarianceMatrix(DataSet lagView, boolean stationary) {
+        if (!isLaggedView(lagView)) {
+            throw new IllegalArgumentException("Expecting a lagged view of a time series.");
+        }
+
+        if (!lagView.isContinuous()) {
+            throw new IllegalArgumentException("Not a continuous data set.");
+        }
+
+        LaggedDataBox box = (LaggedDataBox) ((BoxDataSet) lagView).getDataBox();
+        DataBox base = box.getBase();
+
+        this.variables = Collections.unmodifiableList(lagView.getVariables());
+        this.numLags = box.getNumLags();
+        this.stationary = stationary;
+        this.sampleSize = lagView.getNumRows();
+        this.knowledge = lagView.getKnowledge().copy();
+        this.name = lagView.getName();
+
+        if (base instanceof VerticalDoubleDataBox) {
+            this.vectors = ((VerticalDoubleDataBox) base).getVariableVectors();
+        } else {
+            this.vectors = new double[base.numCols()][base.numRows()];
+
+            for (int j = 0; j < base.numCols(); j++) {
+                for (int i = 0; i < base.numRows(); i++) {
+                    Number value = base.get(i, j);
+                    vectors[j][i] = value == null ? Double.NaN : value.doubleValue();
+                }
+            }
+        }
+
+        if (stationary) {
+            this.means = new double[vectors.length];
+
+            for (int j = 0; j < vectors.length; j++) {
+                means[j] = mean(vectors[j], 0, vectors[j].length);
+            }
+        } else {
+            this.means = new double[variables.size()];
+
+            for (int k = 0; k < variables.size(); k++) {
+                means[k] = mean(vectors[box.getBaseColumn(k)], box.getBaseRow(0, k), sampleSize);
+            }
+        }
+
+        this.autocovariances = new AtomicReferenceArray<>(numLags + 1);
+    }
+
+    /**
+     * @return true if the given data set is a lagged view, that is, a BoxDataSet
+     * backed by a LaggedDataBox.
+     */
+    public static boolean isLaggedView(DataModel dataModel) {
+        return dataModel instanceof BoxDataSet && ((BoxDataSet) dataModel).getDataBox() instanceof LaggedDataBox;
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static ICovarianceMatrix serializableInstance() {
+        return new LaggedCovarianceMatrix(LaggedDataBox.serializableInstance());
+    }
+
+    //============================PUBLIC METHODS=========================//
+
+    /**
+     * @return the value of element (i,j) in the matrix
+     */
+    public final double getValue(int i, int j) {
+        int dataSize = vectors.length;
+        int lagI = i / dataSize;
+        int lagJ = j / dataSize;
+        int colI = i % dataSize;
+        int colJ = j % dataSize;
+
+        if (!stationary) {
+            return exactCovariance(i, j, lagI, lagJ, colI, colJ);
+        }
+
+        // X at lag a is X(t - a), so X_i at lag a and X_j at lag b pair X_i(s) with X_j(s + a - b).
+        if (lagI >= lagJ) {
+            return autocovariance(colI, colJ, lagI - lagJ);
+        } else {
+            return autocovariance(colJ, colI, lagJ - lagI);
+        }
+    }
+
+    /**
+     * @return true if covariances are estimated assuming stationarity.
+     */
+    public boolean isStationary() {
+        return stationary;
+    }
+
+    /**
+     * @return the maximum lag.
+     */
+    public int getNumLags() {
+        return numLags;
+    }
+
+    /**
+     * @return the list of variables (unmodifiable).
+     */
+    public final List<Node> getVariables() {
+        return this.variables;
+    }
+
+    /**
+     * @return the variable names, in order.
+     */
+    public final List<String> getVariableNames() {
+        List<String> names = new ArrayList<>();
+
+        for (Node variable : getVariables()) {
+            names.add(variable.getName());
+        }
+
+        return names;
+    }
+
+    /**
+     * @return the variable name at the given index.
+     */
+    public final String getVariableName(int index) {
+        if (index >= getVariables().size()) {
+            throw new IllegalArgumentException("Index out of range: " + index);
+        }
+
+        return getVariables().get(index).getName();
+    }
+
+    /**
+     * @return the dimension of the covariance matrix.
+     */
+    public final int getDimension() {
+        return variables.size();
+    }
+
+    /**
+     * The size of the sample used to calculated this covariance matrix.
+     *
+     * @return The sample size (> 0).
+     */
+    public final int getSampleSize() {
+        return this.sampleSize;
+    }
+
+    /**
+     * Gets the name of the covariance matrix.
+     */
+    public final String getName() {
+        return this.name;
+    }
+
+    /**
+     * Sets the name of the covariance matrix.
+     */
+    public final void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the knowledge associated with this data.
+     */
+    public final IKnowledge getKnowledge() {
+        return this.knowledge.copy();
+    }
+
+    /**
+     * Associates knowledge with this data.
+     */
+    public final void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        this.knowledge = knowledge.copy();
+    }
+
+    /**
+     * @return a submatrix of the covariance matrix with variables in the
+     * given order.
+     */
+    public final ICovarianceMatrix getSubmatrix(int[] indices) {
+        List<Node> submatrixVars = new ArrayList<>();
+
+        for (int index : indices) {
+            submatrixVars.add(variables.get(index));
+        }
+
+        return new CovarianceMatrix(submatrixVars, getSelection(indices, indices), getSampleSize());
+    }
+
+    public final ICovarianceMatrix getSubmatrix(List<String> submatrixVarNames) {
+        return getSubmatrix(submatrixVarNames.toArray(new String[0]));
+    }
+
+    /**
+     * @return a submatrix of this matrix, with variables in the given
+     * order.
+     */
+    public final ICovarianceMatrix getSubmatrix(String[] submatrixVarNames) {
+        List<String> names = getVariableNames();
+        int[] indices = new int[submatrixVarNames.length];
+
+        for (int i = 0; i < submatrixVarNames.length; i++) {
+            indices[i] = names.indexOf(submatrixVarNames[i]);
+
+            if (indices[i] == -1) {
+                throw new IllegalArgumentException("Variable " + submatrixVarNames[i] + " not found.");
+            }
+        }
+
+        return getSubmatrix(indices);
+    }
+
+    public void setMatrix(TetradMatrix matrix) {
+        throw new UnsupportedOperationException("Lagged covariances are computed from the data.");
+    }
+
+    public final void setSampleSize(int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be > 0.");
+        }
+
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * @return the size of the square matrix.
+     */
+    public final int getSize() {
+        return getVariables().size();
+    }
+
+    /**
+     * @return a copy of the covariance matrix.
+     */
+    public final TetradMatrix getMatrix() {
+        int[] all = new int[getDimension()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        return getSelection(all, all);
+    }
+
+    public final void select(Node variable) {
+        if (variables.contains(variable)) {
+            selectedVariables.add(variable);
+        }
+    }
+
+    public final void clearSelection() {
+        selectedVariables.clear();
+    }
+
+    public final boolean isSelected(Node variable) {
+        if (variable == null) {
+            throw new NullPointerException("Null variable. Try again.");
+        }
+
+        return selectedVariables.contains(variable);
+    }
+
+    public final List<String> getSelectedVariableNames() {
+        List<String> selectedVariableNames = new LinkedList<>();
+
+        for (Node variable : selectedVariables) {
+            selectedVariableNames.add(variable.getName());
+        }
+
+        return selectedVariableNames;
+    }
+
+    /**
+     * Prints out the matrix
+     */
+    public final String toString() {
+        NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
+
+        StringBuilder buf = new StringBuilder();
+
+        int numVars = getVariableNames().size();
+        buf.append(getSampleSize()).append("\n");
+
+        for (int i = 0; i < numVars; i++) {
+            buf.append(getVariableName(i)).append("\t");
+        }
+
+        buf.append("\n");
+
+        for (int j = 0; j < numVars; j++) {
+            for (int i = 0; i <= j; i++) {
+                buf.append(nf.format(getValue(i, j))).append("\t");
+            }
+            buf.append("\n");
+        }
+
+        return buf.toString();
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return true;
+    }
+
+    @Override
+    public boolean isDiscrete() {
+        return false;
+    }
+
+    @Override
+    public boolean isMixed() {
+        return false;
+    }
+
+    public Node getVariable(String name) {
+        for (Node variable : getVariables()) {
+            if (name.equals(variable.getName())) {
+                return variable;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return a copy sharing the underlying series and cached autocovariances,
+     * which are never modified.
+     */
+    @Override
+    public DataModel copy() {
+        LaggedCovarianceMatrix copy = new LaggedCovarianceMatrix(this);
+        copy.selectedVariables = new HashSet<>(selectedVariables);
+        return copy;
+    }
+
+    @Override
+    public void setValue(int i, int j, double v) {
+        throw new UnsupportedOperationException("Lagged covariances are computed from the data.");
+    }
+
+    @Override
+    public void removeVariables(List<String> remaining) {
+        throw new UnsupportedOperationException("Lagged covariances are computed from the data.");
+    }
+
+    public void setVariables(List<Node> variables) {
+        if (variables.size() != this.variables.size()) throw new IllegalArgumentException("Wrong # of variables.");
+        this.variables = variables;
+    }
+
+    @Override
+    public TetradMatrix getSelection(int[] rows, int[] cols) {
+        TetradMatrix m = new TetradMatrix(rows.length, cols.length);
+
+        if (Arrays.equals(rows, cols)) {
+            for (int i = 0; i < rows.length; i++) {
+                for (int j = i; j < cols.length; j++) {
+                    double value = getValue(rows[i], cols[j]);
+                    m.set(i, j, value);
+                    m.set(j, i, value);
+                }
+            }
+        } else {
+            for (int i = 0; i < rows.length; i++) {
+                for (int j = 0; j < cols.length; j++) {
+                    m.set(i, j, getValue(rows[i], cols[j]));
+                }
+            }
+        }
+
+        return m;
+    }
+
+    //========================PRIVATE METHODS============================//
+
+    private LaggedCovarianceMatrix(LaggedCovarianceMatrix matrix) {
+        this.variables = matrix.variables;
+        this.vectors = matrix.vectors;
+        this.numLags = matrix.numLags;
+        this.stationary = matrix.stationary;
+        this.means = matrix.means;
+        this.sampleSize = matrix.sampleSize;
+        this.name = matrix.name;
+        this.knowledge = matrix.knowledge.copy();
+        this.autocovariances = matrix.autocovariances;
+    }
+
+    /**
+     * The covariance of X_i(s) and X_j(s + offset) over the whole series,
+     * cached.
+     */
+    private double autocovariance(int i, int j, int offset) {
+        double[][] block = autocovariances.get(offset);
+
+        if (block == null) {
+            synchronized (autocovariances) {
+                block = autocovariances.get(offset);
+
+                if (block == null) {
+                    block = autocovarianceBlock(offset);
+                    autocovariances.set(offset, block);
+                }
+            }
+        }
+
+        return block[i][j];
+    }
+
+    /**
+     * The covariances of X_i(s) and X_j(s + offset) over the whole series, for
+     * all columns i and j of the unlagged series. Missing values are skipped
+     * pairwise.
+     */
+    private double[][] autocovarianceBlock(int offset) {
+        double[][] block = new double[vectors.length][vectors.length];
+
+        for (int i = 0; i < vectors.length; i++) {
+            for (int j = offset == 0 ? i : 0; j < vectors.length; j++) {
+                double[] v1 = vectors[i];
+                double[] v2 = vectors[j];
+                double mean1 = means[i];
+                double mean2 = means[j];
+                int n = v1.length - offset;
+
+                double d = 0.0;
+                int count = 0;
+
+                for (int s = 0; s < n; s++) {
+                    double x = v1[s];
+                    double y = v2[s + offset];
+                    if (Double.isNaN(x) || Double.isNaN(y)) continue;
+                    d += (x - mean1) * (y - mean2);
+                    count++;
+                }
+
+                // Dividing by (count + offset - 1) rather than (count - 1) keeps the
+                // divisor the same for every offset when nothing is missing.
+                block[i][j] = d / (count + offset - 1);
+
+                if (offset == 0) {
+                    block[j][i] = block[i][j];
+                }
+            }
+        }
+
+        return block;
+    }
+
+    /**
+     * The sample covariance of columns i and j of the lagged view. Missing
+     * values are skipped pairwise.
+     */
+    private double exactCovariance(int i, int j, int lagI, int lagJ, int colI, int colJ) {
+        double[] v1 = vectors[colI];
+        double[] v2 = vectors[colJ];
+        int offset1 = numLags - lagI;
+        int offset2 = numLags - lagJ;
+        double mean1 = means[i];
+        double mean2 = means[j];
+
+        double d = 0.0;
+        int count = 0;
+
+        for (int r = 0; r < sampleSize; r++) {
+            double x = v1[r + offset1];
+            double y = v2[r + offset2];
+            if (Double.isNaN(x) || Double.isNaN(y)) continue;
+            d += (x - mean1) * (y - mean2);
+            count++;
+        }
+
+        return d / (count - 1);
+    }
+
+    private static double mean(double[] v, int from, int length) {
+        double sum = 0.0;
+        int count = 0;
+
+        for (int r = from; r < from + length; r++) {
+            if (Double.isNaN(v[r])) continue;
+            sum += v[r];
+            count++;
+        }
+
+        return sum / count;
+    }
+
+    /**
+     * Adds semantic checks to the default deserialization method. This method
+     * must have the standard signature for a readObject method, and the body of
+     * the method must begin with "s.defaultReadObject();". Other than that, any
+     * semantic checks can be specified and do not need to stay the same from
+     * version to version. A readObject method of this form may be added to any
+     * class, even if Tetrad sessions were previously saved out using a version
+     * of the class that didn't include it. (That's what the
+     * "s.defaultReadObject();" is for. See J. Bloch, Effective Java, for help.
+     *
+     * @throws java.io.IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        if (getVariables() == null) {
+            throw new NullPointerException();
+        }
+
+        if (knowledge == null) {
+            throw new NullPointerException();
+        }
+
+        if (selectedVariables == null) {
+            selectedVariables = new HashSet<>();
+        }
+
+        autocovariances = new AtomicReferenceArray<>(numLags + 1);
+    }
+}
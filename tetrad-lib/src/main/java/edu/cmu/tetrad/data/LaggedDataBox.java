@@ -0,0 +1,234 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only view of a time series as lagged data. Column col + lag * numCols
+ * of the view holds column col of the underlying series shifted back by lag
+ * steps, and the view has numLags fewer rows than the series, exactly as in
+ * TimeSeriesUtils.createLagData, but values are looked up in the underlying box
+ * by index arithmetic rather than copied. The view cannot be modified; copy()
+ * materializes it, and BoxDataSet does so itself before the first change.
+ */
+public class LaggedDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The unlagged time series.
+     */
+    private final DataBox base;
+
+    /**
+     * The lagged variables, used only to decide how the view is materialized.
+     */
+    private final List<Node> variables;
+
+    /**
+     * The maximum lag.
+     */
+    private final int numLags;
+
+    /**
+     * The number of columns in the unlagged series.
+     */
+    private final int dataSize;
+
+    /**
+     * @param base      The unlagged time series, with rows in time order.
+     * @param variables The lagged variables, numCols * (numLags + 1) of them, lag-major.
+     * @param numLags   The maximum lag, >= 0 and less than the number of rows of base.
+     */
+    public LaggedDataBox(DataBox base, List<Node> variables, int numLags) {
+        if (base == null) throw new NullPointerException("Base data box is null.");
+
+        if (numLags < 0 || numLags >= base.numRows()) {
+            throw new IllegalArgumentException("Number of lags must be in [0, " + base.numRows() + "): " + numLags);
+        }
+
+        if (variables.size() != base.numCols() * (numLags + 1)) {
+            throw new IllegalArgumentException("Expecting " + base.numCols() * (numLags + 1)
+                    + " lagged variables: " + variables.size());
+        }
+
+        this.base = base;
+        this.variables = new ArrayList<>(variables);
+        this.numLags = numLags;
+        this.dataSize = base.numCols();
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X"));
+        variables.add(new ContinuousVariable("X:1"));
+        return new BoxDataSet(new LaggedDataBox(new VerticalDoubleDataBox(4, 1), variables, 1), variables);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return base.numRows() - numLags;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return dataSize * (numLags + 1);
+    }
+
+    /**
+     * Lagged views are read-only.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    public void set(int row, int col, Number value) {
+        throw new UnsupportedOperationException("A lagged view is read-only; copy it first.");
+    }
+
+    /**
+     * @return the value of column col % numCols of the underlying series, at
+     * row row + numLags - lag, where lag = col / numCols.
+     */
+    public Number get(int row, int col) {
+        return base.get(getBaseRow(row, col), getBaseColumn(col));
+    }
+
+    /**
+     * @return the unlagged time series underlying this view.
+     */
+    public DataBox getBase() {
+        return base;
+    }
+
+    /**
+     * @return the maximum lag of this view.
+     */
+    public int getNumLags() {
+        return numLags;
+    }
+
+    /**
+     * @return the lag of the given column of the view.
+     */
+    public int getLag(int col) {
+        return col / dataSize;
+    }
+
+    /**
+     * @return the column of the underlying series that the given column of the
+     * view is a lag of.
+     */
+    public int getBaseColumn(int col) {
+        return col % dataSize;
+    }
+
+    /**
+     * @return the row of the underlying series holding the given row of the
+     * given column of the view.
+     */
+    public int getBaseRow(int row, int col) {
+        return row + numLags - col / dataSize;
+    }
+
+    /**
+     * @return a materialized copy of the view.
+     */
+    public DataBox copy() {
+        int[] rows = new int[numRows()];
+        int[] cols = new int[numCols()];
+
+        for (int i = 0; i < numRows(); i++) rows[i] = i;
+        for (int j = 0; j < numCols(); j++) cols[j] = j;
+
+        return viewSelection(rows, cols);
+    }
+
+    /**
+     * @return a writable box of the same dimensions, with all values missing.
+     */
+    public DataBox like() {
+        for (Node variable : variables) {
+            if (!(variable instanceof ContinuousVariable)) {
+                return new MixedDataBox(variables, numRows());
+            }
+        }
+
+        return new VerticalDoubleDataBox(numRows(), numCols());
+    }
+
+    /**
+     * @return the given rows and columns of the view, materialized into a
+     * VerticalDoubleDataBox if all selected variables are continuous and a
+     * MixedDataBox otherwise.
+     */
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        List<Node> selected = new ArrayList<>();
+        boolean continuous = true;
+
+        for (int col : cols) {
+            Node variable = variables.get(col);
+            selected.add(variable);
+            if (!(variable instanceof ContinuousVariable)) continuous = false;
+        }
+
+        if (continuous) {
+            double[][] data = new double[cols.length][rows.length];
+
+            for (int j = 0; j < cols.length; j++) {
+                for (int i = 0; i < rows.length; i++) {
+                    Number value = get(rows[i], cols[j]);
+                    data[j][i] = value == null ? Double.NaN : value.doubleValue();
+                }
+            }
+
+            return new VerticalDoubleDataBox(data);
+        }
+
+        MixedDataBox box = new MixedDataBox(selected, rows.length);
+
+        for (int j = 0; j < cols.length; j++) {
+            boolean discrete = selected.get(j) instanceof DiscreteVariable;
+
+            for (int i = 0; i < rows.length; i++) {
+                Number value = get(rows[i], cols[j]);
+
+                if (value == null) {
+                    value = discrete ? DiscreteVariable.MISSING_VALUE : Double.NaN;
+                }
+
+                box.set(i, j, value);
+            }
+        }
+
+        return box;
+    }
+}
@@ -0,0 +1,230 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.data;
+
+import edu.cmu.tetrad.graph.Node;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only data box whose columns are buffers, as a rule regions of a binary
+ * data file mapped into memory by BinaryDataReader, so that a large data set
+ * can be used without first being copied onto the heap. Continuous columns are
+ * double buffers, with missing values NaN, and discrete columns int buffers,
+ * with missing values -99. The box cannot be modified; copy() materializes it,
+ * and BoxDataSet does so itself on the first set. Serializing the box writes a
+ * materialized copy.
+ */
+public class MappedDataBox implements DataBox {
+    static final long serialVersionUID = 23L;
+
+    /**
+     * The variables of the columns.
+     */
+    private final List<Node> variables;
+
+    /**
+     * The number of rows.
+     */
+    private final int numRows;
+
+    /**
+     * The continuous columns, null for discrete columns.
+     */
+    private final transient DoubleBuffer[] continuousData;
+
+    /**
+     * The discrete columns, null for continuous columns.
+     */
+    private final transient IntBuffer[] discreteData;
+
+    /**
+     * @param variables      The variables of the columns.
+     * @param numRows        The number of rows; every buffer must hold at least this many values.
+     * @param continuousData For each column, its values if the variable is continuous, null otherwise.
+     * @param discreteData   For each column, its values if the variable is discrete, null otherwise.
+     */
+    public MappedDataBox(List<Node> variables, int numRows, DoubleBuffer[] continuousData, IntBuffer[] discreteData) {
+        if (variables == null) throw new NullPointerException("Variables list is null.");
+
+        if (numRows < 0) {
+            throw new IllegalArgumentException("Number of rows cannot be negative: " + numRows);
+        }
+
+        if (continuousData.length != variables.size() || discreteData.length != variables.size()) {
+            throw new IllegalArgumentException("Expecting one buffer per variable.");
+        }
+
+        for (int j = 0; j < variables.size(); j++) {
+            Node variable = variables.get(j);
+
+            if (variable instanceof ContinuousVariable) {
+                if (continuousData[j] == null || continuousData[j].limit() < numRows) {
+                    throw new IllegalArgumentException("Expecting " + numRows + " doubles for " + variable);
+                }
+            } else if (variable instanceof DiscreteVariable) {
+                if (discreteData[j] == null || discreteData[j].limit() < numRows) {
+                    throw new IllegalArgumentException("Expecting " + numRows + " ints for " + variable);
+                }
+            } else {
+                throw new IllegalArgumentException("Expecting continuous or discrete variables: " + variable);
+            }
+        }
+
+        this.variables = new ArrayList<>(variables);
+        this.numRows = numRows;
+        this.continuousData = continuousData;
+        this.discreteData = discreteData;
+    }
+
+    /**
+     * Generates a simple exemplar of this class to test serialization.
+     */
+    public static BoxDataSet serializableInstance() {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X"));
+        DoubleBuffer[] continuousData = {DoubleBuffer.wrap(new double[4])};
+        return new BoxDataSet(new MappedDataBox(variables, 4, continuousData, new IntBuffer[1]), variables);
+    }
+
+    /**
+     * @return the number of rows in this data box.
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns in this data box.
+     */
+    public int numCols() {
+        return variables.size();
+    }
+
+    /**
+     * Mapped data boxes are read-only.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    public void set(int row, int col, Number value) {
+        throw new UnsupportedOperationException("A mapped data box is read-only; copy it first.");
+    }
+
+    /**
+     * @return the value at the given row and column, a Double for a continuous
+     * column and an Integer for a discrete one, or null if a discrete value is
+     * missing.
+     */
+    public Number get(int row, int col) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException("Row out of range: " + row);
+        }
+
+        if (continuousData[col] != null) {
+            return continuousData[col].get(row);
+        }
+
+        int value = discreteData[col].get(row);
+        return value == DiscreteVariable.MISSING_VALUE ? null : value;
+    }
+
+    /**
+     * @return a materialized copy of this box.
+     */
+    public DataBox copy() {
+        int[] rows = new int[numRows()];
+        int[] cols = new int[numCols()];
+
+        for (int i = 0; i < numRows(); i++) rows[i] = i;
+        for (int j = 0; j < numCols(); j++) cols[j] = j;
+
+        return viewSelection(rows, cols);
+    }
+
+    /**
+     * @return a writable box of the same dimensions, with all values missing.
+     */
+    public DataBox like() {
+        if (isAll(ContinuousVariable.class, variables)) {
+            return new VerticalDoubleDataBox(numRows, numCols());
+        } else if (isAll(DiscreteVariable.class, variables)) {
+            return new VerticalIntDataBox(numRows, numCols());
+        } else {
+            return new MixedDataBox(variables, numRows);
+        }
+    }
+
+    /**
+     * @return the given rows and columns, materialized into a
+     * VerticalDoubleDataBox if all selected variables are continuous, a
+     * VerticalIntDataBox if they are all discrete and a MixedDataBox otherwise.
+     */
+    @Override
+    public DataBox viewSelection(int[] rows, int[] cols) {
+        List<Node> selected = new ArrayList<>();
+        double[][] continuous = new double[cols.length][];
+        int[][] discrete = new int[cols.length][];
+
+        for (int j = 0; j < cols.length; j++) {
+            selected.add(variables.get(cols[j]));
+
+            if (continuousData[cols[j]] != null) {
+                DoubleBuffer column = continuousData[cols[j]];
+                continuous[j] = new double[rows.length];
+                for (int i = 0; i < rows.length; i++) continuous[j][i] = column.get(rows[i]);
+            } else {
+                IntBuffer column = discreteData[cols[j]];
+                discrete[j] = new int[rows.length];
+                for (int i = 0; i < rows.length; i++) discrete[j][i] = column.get(rows[i]);
+            }
+        }
+
+        if (cols.length == 0) {
+            return new VerticalDoubleDataBox(rows.length, 0);
+        } else if (isAll(ContinuousVariable.class, selected)) {
+            return new VerticalDoubleDataBox(continuous);
+        } else if (isAll(DiscreteVariable.class, selected)) {
+            return new VerticalIntDataBox(discrete);
+        } else {
+            return new MixedDataBox(selected, rows.length, continuous, discrete);
+        }
+    }
+
+    private static boolean isAll(Class<? extends Node> type, List<Node> variables) {
+        for (Node variable : variables) {
+            if (!type.isInstance(variable)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Serializes a materialized copy in place of the buffers.
+     */
+    private Object writeReplace() {
+        return copy();
+    }
+}
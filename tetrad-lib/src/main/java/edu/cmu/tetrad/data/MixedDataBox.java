@@ -148,7 +148,7 @@ public class MixedDataBox implements DataBox {
 
     /**
      * Sets the value at the given row/column to the given Number value. The
-     * value used is number.doubleValue().
+     * value used is number.doubleValue(); null sets the value missing.
      *
      * @param row
      * @param col
@@ -156,6 +156,10 @@ public class MixedDataBox implements DataBox {
      */
     @Override
     public void set(int row, int col, Number value) {
+        if (value == null) {
+            value = continuousData[col] != null ? Double.NaN : -99;
+        }
+
         if (continuousData[col] != null) {
             continuousData[col][row] = value.doubleValue();
         } else if (discreteData[col] != null) {
@@ -0,0 +1,181 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.graph;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Loads graphs saved by BinaryGraphWriter (see there for the format). Records
+ * are read one at a time from a buffered stream, inflating as they go if the
+ * file is compressed, and added to an EdgeListGraph.
+ */
+public final class BinaryGraphReader {
+
+    private BinaryGraphReader() {
+    }
+
+    /**
+     * @return True if the given file starts with the magic number of a binary
+     * graph file.
+     */
+    public static boolean isBinaryGraph(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 4 && in.readInt() == BinaryGraphWriter.MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads a graph from a binary graph file.
+     *
+     * @param file The file, as written by BinaryGraphWriter.
+     * @return The graph.
+     * @throws IOException If the file cannot be read or is not a binary graph file.
+     */
+    public static Graph readGraph(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return readGraph(in);
+        }
+    }
+
+    /**
+     * Reads a graph in binary form from the given stream, which is not closed.
+     *
+     * @param in The stream, positioned at the start of a graph written by
+     *           BinaryGraphWriter.
+     * @return The graph.
+     * @throws IOException If the stream cannot be read or does not hold a binary graph.
+     */
+    public static Graph readGraph(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BinaryGraphWriter.CHUNK);
+        DataInputStream preamble = new DataInputStream(buffered);
+
+        if (preamble.readInt() != BinaryGraphWriter.MAGIC) {
+            throw new IOException("Not a binary graph file");
+        }
+
+        int version = preamble.readInt();
+
+        if (version > BinaryGraphWriter.VERSION) {
+            throw new IOException("Unsupported binary graph file version " + version);
+        }
+
+        boolean compressed = (preamble.readInt() & BinaryGraphWriter.COMPRESSED) != 0;
+        Inflater inflater = compressed ? new Inflater() : null;
+
+        try {
+            DataInputStream data = new DataInputStream(compressed
+                    ? new BufferedInputStream(new InflaterInputStream(buffered, inflater, BinaryGraphWriter.CHUNK),
+                    BinaryGraphWriter.CHUNK)
+                    : buffered);
+
+            int numNodes = data.readInt();
+            List<Node> nodes = new ArrayList<>(numNodes);
+
+            for (int i = 0; i < numNodes; i++) {
+                GraphNode node = new GraphNode(data.readUTF());
+                node.setNodeType(nodeType(data.readByte()));
+                node.setCenter(data.readInt(), data.readInt());
+                nodes.add(node);
+            }
+
+            Graph graph = new EdgeListGraph(nodes);
+            int numEdges = data.readInt();
+
+            for (int i = 0; i < numEdges; i++) {
+                Node node1 = node(nodes, data.readInt());
+                Node node2 = node(nodes, data.readInt());
+                Edge edge = new Edge(node1, node2, endpoint(data.readByte()), endpoint(data.readByte()));
+                int flags = data.readByte();
+
+                edge.setBold((flags & BinaryGraphWriter.BOLD) != 0);
+
+                int numProperties = data.readUnsignedByte();
+
+                for (int j = 0; j < numProperties; j++) {
+                    edge.addProperty(Edge.Property.values()[data.readUnsignedByte()]);
+                }
+
+                int numProbabilities = data.readUnsignedByte();
+
+                for (int j = 0; j < numProbabilities; j++) {
+                    EdgeTypeProbability.EdgeType type = EdgeTypeProbability.EdgeType.values()[data.readUnsignedByte()];
+                    edge.addEdgeTypeProbability(new EdgeTypeProbability(type, data.readDouble()));
+                }
+
+                graph.addEdge(edge);
+
+                if ((flags & BinaryGraphWriter.HIGHLIGHTED) != 0) {
+                    graph.setHighlighted(edge, true);
+                }
+            }
+
+            for (int k = 0; k < 3; k++) {
+                int numTriples = data.readInt();
+
+                for (int i = 0; i < numTriples; i++) {
+                    Node x = node(nodes, data.readInt());
+                    Node y = node(nodes, data.readInt());
+                    Node z = node(nodes, data.readInt());
+
+                    if (k == 0) graph.addAmbiguousTriple(x, y, z);
+                    else if (k == 1) graph.addUnderlineTriple(x, y, z);
+                    else graph.addDottedUnderlineTriple(x, y, z);
+                }
+            }
+
+            int flags = data.readByte();
+            graph.setPattern((flags & BinaryGraphWriter.PATTERN) != 0);
+            graph.setPag((flags & BinaryGraphWriter.PAG) != 0);
+
+            return graph;
+        } catch (EOFException e) {
+            throw new IOException("Binary graph is truncated", e);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Binary graph is corrupt", e);
+        } finally {
+            if (inflater != null) inflater.end();
+        }
+    }
+
+    private static Node node(List<Node> nodes, int index) throws IOException {
+        if (index < 0 || index >= nodes.size()) {
+            throw new IOException("Node index out of range: " + index);
+        }
+
+        return nodes.get(index);
+    }
+
+    private static Endpoint endpoint(int code) {
+        return Endpoint.TYPES[code];
+    }
+
+    private static NodeType nodeType(int code) {
+        return BinaryGraphWriter.NODE_TYPES[code];
+    }
+}
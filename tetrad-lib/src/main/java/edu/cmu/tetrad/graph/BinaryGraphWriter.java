@@ -0,0 +1,228 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.graph;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Saves graphs in a compact binary format that BinaryGraphReader can read back
+ * without parsing, one record at a time. A file consists of
+ * <ul>
+ * <li>a preamble of three ints: a magic number, the format version and flags
+ * (bit 0 set if the body is compressed);</li>
+ * <li>the node table: the number of nodes and for each node its name, its type
+ * (a byte, in the order of NODE_TYPES) and its center x and y;</li>
+ * <li>the edge list: the number of edges and for each edge the indices of its
+ * two nodes in the node table, its two endpoints (bytes, in the order of
+ * Endpoint.TYPES), a byte of flags (bit 0 highlighted, bit 1 bold), the number
+ * of its properties followed by their ordinals, and the number of its edge type
+ * probabilities followed by the ordinal of each edge type and its probability;</li>
+ * <li>the ambiguous, underline and dotted underline triples, each as a count
+ * followed by node indices, three per triple;</li>
+ * <li>a byte of graph flags: bit 0 set for a pattern, bit 1 for a PAG.</li>
+ * </ul>
+ * All numbers are big-endian, and strings are in modified UTF-8, as written by
+ * DataOutputStream. If the body is compressed, everything after the preamble is
+ * deflated. Nothing is buffered beyond a fixed-size output buffer, so very large
+ * graphs can be written with little memory beyond the graph itself.
+ */
+public final class BinaryGraphWriter {
+
+    /**
+     * The first four bytes of every binary graph file, "TGR1".
+     */
+    static final int MAGIC = 0x54475231;
+
+    /**
+     * The current version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The flag set if the body is compressed.
+     */
+    static final int COMPRESSED = 1;
+
+    static final int HIGHLIGHTED = 1;
+    static final int BOLD = 2;
+
+    static final int PATTERN = 1;
+    static final int PAG = 2;
+
+    /**
+     * The node types, in the order in which they are coded.
+     */
+    static final NodeType[] NODE_TYPES = {NodeType.MEASURED, NodeType.LATENT, NodeType.ERROR,
+            NodeType.SESSION, NodeType.RANDOMIZE, NodeType.LOCK, NodeType.NO_TYPE};
+
+    /**
+     * The size of the buffer the file is written through.
+     */
+    static final int CHUNK = 1 << 16;
+
+    private BinaryGraphWriter() {
+    }
+
+    /**
+     * Writes a graph to a binary file, overwriting the file if it exists.
+     *
+     * @param graph      The graph to save.
+     * @param file       The file to write to.
+     * @param compressed True if the body should be compressed.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeGraph(Graph graph, File file, boolean compressed) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            writeGraph(graph, out, compressed);
+        }
+    }
+
+    /**
+     * Writes a graph in binary form to the given stream, which is flushed but not
+     * closed.
+     *
+     * @param graph      The graph to save.
+     * @param out        The stream to write to.
+     * @param compressed True if the body should be compressed.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void writeGraph(Graph graph, OutputStream out, boolean compressed) throws IOException {
+        if (graph == null) throw new NullPointerException("Graph may not be null.");
+
+        BufferedOutputStream buffered = new BufferedOutputStream(out, CHUNK);
+        DataOutputStream preamble = new DataOutputStream(buffered);
+        preamble.writeInt(MAGIC);
+        preamble.writeInt(VERSION);
+        preamble.writeInt(compressed ? COMPRESSED : 0);
+        preamble.flush();
+
+        Deflater deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+
+        try {
+            OutputStream body = compressed ? new DeflaterOutputStream(buffered, deflater, CHUNK) : buffered;
+            DataOutputStream data = new DataOutputStream(body);
+
+            List<Node> nodes = graph.getNodes();
+            Map<Node, Integer> indices = new HashMap<>(2 * nodes.size());
+
+            data.writeInt(nodes.size());
+
+            for (Node node : nodes) {
+                indices.put(node, indices.size());
+                data.writeUTF(node.getName());
+                data.writeByte(nodeTypeCode(node.getNodeType()));
+                data.writeInt(node.getCenterX());
+                data.writeInt(node.getCenterY());
+            }
+
+            Set<Edge> edges = graph.getEdges();
+            data.writeInt(edges.size());
+
+            for (Edge edge : edges) {
+                data.writeInt(index(indices, edge.getNode1()));
+                data.writeInt(index(indices, edge.getNode2()));
+                data.writeByte(endpointCode(edge.getEndpoint1()));
+                data.writeByte(endpointCode(edge.getEndpoint2()));
+                data.writeByte((graph.isHighlighted(edge) ? HIGHLIGHTED : 0) | (edge.isBold() ? BOLD : 0));
+
+                List<Edge.Property> properties = edge.getProperties();
+                data.writeByte(properties.size());
+
+                for (Edge.Property property : properties) {
+                    data.writeByte(property.ordinal());
+                }
+
+                List<EdgeTypeProbability> probabilities = edge.getEdgeTypeProbabilities();
+
+                if (probabilities.size() > 255) {
+                    throw new IllegalArgumentException("Too many edge type probabilities: " + edge);
+                }
+
+                data.writeByte(probabilities.size());
+
+                for (EdgeTypeProbability probability : probabilities) {
+                    data.writeByte(probability.getEdgeType().ordinal());
+                    data.writeDouble(probability.getProbability());
+                }
+            }
+
+            writeTriples(data, indices, graph.getAmbiguousTriples());
+            writeTriples(data, indices, graph.getUnderLines());
+            writeTriples(data, indices, graph.getDottedUnderlines());
+
+            data.writeByte((graph.isPattern() ? PATTERN : 0) | (graph.isPag() ? PAG : 0));
+            data.flush();
+
+            if (compressed) {
+                ((DeflaterOutputStream) body).finish();
+            }
+
+            buffered.flush();
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    private static void writeTriples(DataOutputStream data, Map<Node, Integer> indices,
+                                     Set<Triple> triples) throws IOException {
+        data.writeInt(triples.size());
+
+        for (Triple triple : triples) {
+            data.writeInt(index(indices, triple.getX()));
+            data.writeInt(index(indices, triple.getY()));
+            data.writeInt(index(indices, triple.getZ()));
+        }
+    }
+
+    private static int index(Map<Node, Integer> indices, Node node) {
+        Integer index = indices.get(node);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Node not in the graph: " + node);
+        }
+
+        return index;
+    }
+
+    private static int endpointCode(Endpoint endpoint) {
+        for (int i = 0; i < Endpoint.TYPES.length; i++) {
+            if (Endpoint.TYPES[i] == endpoint) return i;
+        }
+
+        throw new IllegalArgumentException("Unexpected endpoint: " + endpoint);
+    }
+
+    private static int nodeTypeCode(NodeType type) {
+        for (int i = 0; i < NODE_TYPES.length; i++) {
+            if (NODE_TYPES[i] == type) return i;
+        }
+
+        throw new IllegalArgumentException("Unexpected node type: " + type);
+    }
+}
@@ -184,8 +184,14 @@ public class EdgeListGraph implements Graph, TripleClassifier {
 //            }
 //        }
 
-        for (Object variable : nodes) {
-            if (!addNode((Node) variable)) {
+        // Duplicates are skipped using a set rather than the list check in addNode, which
+        // would make this quadratic in the number of nodes.
+        Set<Node> added = new HashSet<>();
+
+        for (Node variable : nodes) {
+            if (!added.add(variable)) continue;
+
+            if (!addNewNode(variable)) {
                 throw new IllegalArgumentException();
             }
         }
@@ -1229,7 +1235,11 @@ public class EdgeListGraph implements Graph, TripleClassifier {
      */
     public boolean addNode(Node node) {
         if (nodes.contains(node)) return true;
+        return addNewNode(node);
+    }
 
+    // Adds a node not already in the node list.
+    private boolean addNewNode(Node node) {
         if (node == null) {
             throw new NullPointerException();
         }
@@ -40,6 +40,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -2456,7 +2457,8 @@ public final class GraphUtils {
             if (xml) {
                 out.print(graphToXml(graph));
             } else {
-                out.println(graph);
+                writeGraphTxt(graph, out);
+                out.println();
             }
             out.close();
         } catch (IOException e1) {
@@ -2466,6 +2468,9 @@ public final class GraphUtils {
         return out;
     }
 
+    /**
+     * Loads a graph saved in XML, or in the binary format of BinaryGraphWriter.
+     */
     public static Graph loadGraph(File file) {
 //        if (!file.getNode().endsWith(".xml")) {
 //            throw new IllegalArgumentException("Not an XML file.");
@@ -2475,6 +2480,10 @@ public final class GraphUtils {
         Graph graph;
 
         try {
+            if (BinaryGraphReader.isBinaryGraph(file)) {
+                return BinaryGraphReader.readGraph(file);
+            }
+
             root = getRootElement(file);
             graph = parseGraphXml(root, null);
         } catch (ParsingException e1) {
@@ -2516,129 +2525,173 @@ public final class GraphUtils {
         return readerToGraphTxt(new CharArrayReader(graphString.toCharArray()));
     }
 
+    /**
+     * Reads a graph in the text format written by graphToText, one line at a time, so
+     * that only the graph itself is held in memory. Edge type probabilities may be given
+     * for any subset of the edge types, and the ambiguous, underline and dotted underline
+     * triples are read if present.
+     */
     public static Graph readerToGraphTxt(Reader reader) throws IOException {
         BufferedReader in = new BufferedReader(reader);
+        String line;
 
-        while (!in.readLine().trim().equals("Graph Nodes:")) ;
+        while ((line = in.readLine()) != null && !line.trim().equals("Graph Nodes:")) ;
 
-        String line;
-        Graph graph = new EdgeListGraph();
+        if (line == null) {
+            throw new IllegalArgumentException("Expecting a line 'Graph Nodes:'.");
+        }
 
-        while (!(line = in.readLine().trim()).equals("")) {
-            String[] tokens = line.split(",");
+        List<Node> nodes = new ArrayList<>();
+        Map<String, Node> names = new HashMap<>();
 
-            for (String token : tokens) {
-                graph.addNode(new GraphNode(token));
+        while ((line = in.readLine()) != null && !(line = line.trim()).equals("")) {
+            for (String token : line.split(",")) {
+                Node node = new GraphNode(token);
+                nodes.add(node);
+                names.put(token, node);
             }
         }
 
-        while (!in.readLine().trim().equals("Graph Edges:")) ;
+        Graph graph = new EdgeListGraph(nodes);
+
+        while ((line = in.readLine()) != null && !line.trim().equals("Graph Edges:")) ;
+
+        if (line == null) {
+            throw new IllegalArgumentException("Expecting a line 'Graph Edges:'.");
+        }
+
+        while ((line = in.readLine()) != null && !(line = line.trim()).equals("")) {
+            graph.addEdge(parseEdgeLine(line, names));
+        }
+
+        int section = -1;
 
         while ((line = in.readLine()) != null) {
             line = line.trim();
-            if (line.equals("")) {
-                break;
-            }
 
-            System.out.println(line);
+            if (line.startsWith("Ambiguous triples")) {
+                section = 0;
+            } else if (line.startsWith("Underline triples")) {
+                section = 1;
+            } else if (line.startsWith("Dotted underline triples")) {
+                section = 2;
+            } else if (line.startsWith("<") && line.endsWith(">") && section != -1) {
+                String[] tokens = line.substring(1, line.length() - 1).split(",\\s*");
+
+                if (tokens.length != 3) {
+                    throw new IllegalArgumentException("Expecting a triple: " + line);
+                }
 
-            String[] tokens = line.split("\\s+");
+                Node x = node(names, tokens[0], line);
+                Node y = node(names, tokens[1], line);
+                Node z = node(names, tokens[2], line);
 
-            String from = tokens[1];
+                if (section == 0) graph.addAmbiguousTriple(x, y, z);
+                else if (section == 1) graph.addUnderlineTriple(x, y, z);
+                else graph.addDottedUnderlineTriple(x, y, z);
+            }
+        }
 
-            line = line.substring(line.indexOf(from) + from.length()).trim();
-            tokens = line.split("\\s+");
+        return graph;
+    }
 
-            String edge = tokens[0];
+    // Parses an edge line such as "3. X1 --> X2 [no edge]:0.2000[-->]:0.8000 dd".
+    private static Edge parseEdgeLine(String line, Map<String, Node> names) {
+        String[] tokens = line.split("\\s+", 5);
 
-            line = line.substring(line.indexOf(edge) + edge.length()).trim();
-            tokens = line.split("\\s+");
+        if (tokens.length < 4 || tokens[2].length() != 3) {
+            throw new IllegalArgumentException("Expecting an edge: " + line);
+        }
 
-            String to = tokens[0];
-            line = line.substring(line.indexOf(to) + to.length()).trim();
+        Node from = node(names, tokens[1], line);
+        Node to = node(names, tokens[3], line);
+        String edge = tokens[2];
 
-            Node _from = graph.getNode(from);
-            Node _to = graph.getNode(to);
+        Edge _edge = new Edge(from, to, endpoint(edge.charAt(0), '<', line), endpoint(edge.charAt(2), '>', line));
 
-            char end1 = edge.charAt(0);
-            char end2 = edge.charAt(2);
+        String rest = tokens.length == 5 ? tokens[4] : "";
 
-            Endpoint _end1, _end2;
+        //Bootstrapping
+        while (rest.startsWith("[")) {
+            int close = rest.indexOf("]:");
 
-            if (end1 == '<') {
-                _end1 = Endpoint.ARROW;
-            } else if (end1 == 'o') {
-                _end1 = Endpoint.CIRCLE;
-            } else if (end1 == '-') {
-                _end1 = Endpoint.TAIL;
-            } else {
-                throw new IllegalArgumentException();
+            if (close == -1) {
+                throw new IllegalArgumentException("Expecting [edge type]:probability: " + line);
             }
 
-            if (end2 == '>') {
-                _end2 = Endpoint.ARROW;
-            } else if (end2 == 'o') {
-                _end2 = Endpoint.CIRCLE;
-            } else if (end2 == '-') {
-                _end2 = Endpoint.TAIL;
-            } else {
-                throw new IllegalArgumentException();
-            }
+            int end = close + 2;
 
-            Edge _edge = new Edge(_from, _to, _end1, _end2);
+            while (end < rest.length() && rest.charAt(end) != '[' && !Character.isWhitespace(rest.charAt(end))) {
+                end++;
+            }
 
-            //Bootstrapping
-            if (line.indexOf("[no edge]") > -1) {
+            EdgeType type = edgeType(rest.substring(1, close), line);
+            double probability = Double.parseDouble(rest.substring(close + 2, end));
+            _edge.addEdgeTypeProbability(new EdgeTypeProbability(type, probability));
 
-                String bootstrap_format = "[no edge]:0.0000[-->]:0.0000[<--]:0.0000[o->]:0.0000[<-o]:0.0000[o-o]:0.0000[<->]:0.0000[---]:0.0000";
-                String bootstraps = line.substring(0, bootstrap_format.length());
-                line = line.substring(bootstrap_format.length()).trim();
-                double nil = Double.parseDouble(bootstraps.substring(10, 16));
-                double ta = Double.parseDouble(bootstraps.substring(22, 28));
-                double at = Double.parseDouble(bootstraps.substring(34, 40));
-                double ca = Double.parseDouble(bootstraps.substring(46, 52));
-                double ac = Double.parseDouble(bootstraps.substring(58, 64));
-                double cc = Double.parseDouble(bootstraps.substring(70, 76));
-                double aa = Double.parseDouble(bootstraps.substring(82, 88));
-                double tt = Double.parseDouble(bootstraps.substring(94, 100));
+            rest = rest.substring(end).trim();
+        }
 
-                _edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.nil, nil));
-                _edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.ta, ta));
-                _edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.at, at));
-                _edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.ca, ca));
-                _edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.ac, ac));
-                _edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.cc, cc));
-                _edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.aa, aa));
-                _edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.tt, tt));
+        if (rest.length() > 0) {
+            for (String property : rest.split("\\s+")) {
+                _edge.addProperty(Edge.Property.valueOf(property));
             }
+        }
 
-            if (line.length() > 0) {
-                tokens = line.split("\\s+");
+        return _edge;
+    }
 
-                for (int i = 0; i < tokens.length; i++) {
-                    _edge.addProperty(Edge.Property.valueOf(tokens[i]));
-                }
-            }
+    private static Node node(Map<String, Node> names, String name, String line) {
+        Node node = names.get(name);
 
-            graph.addEdge(_edge);
+        if (node == null) {
+            throw new IllegalArgumentException("Unknown node " + name + ": " + line);
         }
 
-        return graph;
+        return node;
     }
 
-    public static Graph readerToGraphJson(Reader reader) throws IOException {
-        BufferedReader in = new BufferedReader(reader);
-
-        String json = "";
-        String line;
-
-        while ((line = in.readLine()) != null) {
-            json += line.trim();
+    private static Endpoint endpoint(char c, char arrow, String line) {
+        if (c == arrow) {
+            return Endpoint.ARROW;
+        } else if (c == 'o') {
+            return Endpoint.CIRCLE;
+        } else if (c == '-') {
+            return Endpoint.TAIL;
+        } else {
+            throw new IllegalArgumentException("Unexpected endpoint '" + c + "': " + line);
         }
+    }
 
-        Graph graph = JsonUtils.parseJSONObjectToTetradGraph(json);
+    private static EdgeType edgeType(String type, String line) {
+        switch (type) {
+            case "no edge":
+                return EdgeType.nil;
+            case "-->":
+                return EdgeType.ta;
+            case "<--":
+                return EdgeType.at;
+            case "o->":
+                return EdgeType.ca;
+            case "<-o":
+                return EdgeType.ac;
+            case "o-o":
+                return EdgeType.cc;
+            case "<->":
+                return EdgeType.aa;
+            case "---":
+                return EdgeType.tt;
+            default:
+                throw new IllegalArgumentException("Unexpected edge type [" + type + "]: " + line);
+        }
+    }
 
-        return graph;
+    /**
+     * Reads a graph in the JSON format written by JsonUtils.writeGraphJson (or by Gson),
+     * without first reading the whole text into memory.
+     */
+    public static Graph readerToGraphJson(Reader reader) throws IOException {
+        return JsonUtils.readGraphJson(reader);
     }
 
     public static HashMap<String, PointXy> grabLayout(List<Node> nodes) {
@@ -3909,31 +3962,83 @@ public final class GraphUtils {
     }
 
     public static String graphToText(Graph graph) {
+        StringWriter out = new StringWriter();
+
+        try {
+            writeGraphTxt(graph, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Writes the text of graphToText to the given writer, one line at a time, without
+     * building it in memory first.
+     */
+    public static void writeGraphTxt(Graph graph, Writer out) throws IOException {
         // add edge properties relating to edge coloring of PAGs
         if (graph.isPag()) {
             addPagColoring(graph);
         }
 
-        Formatter fmt = new Formatter();
-        fmt.format("%s%n%n", graphNodesToText(graph, "Graph Nodes:", ','));
-        fmt.format("%s", graphEdgesToText(graph, "Graph Edges:"));
+        String nl = System.lineSeparator();
 
-        Set<Triple> ambiguousTriples = graph.getAmbiguousTriples();
-        if (!ambiguousTriples.isEmpty()) {
-            fmt.format("%n%n%s", triplesToText(ambiguousTriples, "Ambiguous triples (i.e. list of triples for which there is ambiguous data about whether they are colliders or not):"));
-        }
+        out.write("Graph Nodes:");
+        out.write(nl);
 
-        Set<Triple> underLineTriples = graph.getUnderLines();
-        if (!underLineTriples.isEmpty()) {
-            fmt.format("%n%n%s", triplesToText(underLineTriples, "Underline triples:"));
+        List<Node> nodes = graph.getNodes();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i > 0) out.write(',');
+            out.write(nodes.get(i).getName());
         }
 
-        Set<Triple> dottedUnderLineTriples = graph.getDottedUnderlines();
-        if (!dottedUnderLineTriples.isEmpty()) {
-            fmt.format("%n%n%s", triplesToText(dottedUnderLineTriples, "Dotted underline triples:"));
+        out.write(nl);
+        out.write(nl);
+        out.write("Graph Edges:");
+        out.write(nl);
+
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        Edges.sortEdges(edges);
+
+        StringBuilder buf = new StringBuilder();
+
+        for (int i = 0; i < edges.size(); i++) {
+            Edge edge = edges.get(i);
+
+            buf.setLength(0);
+            buf.append(i + 1).append(". ").append(edge);
+
+            for (Edge.Property property : edge.getProperties()) {
+                buf.append(' ').append(property);
+            }
+
+            buf.append('\n');
+            out.write(buf.toString());
         }
 
-        return fmt.toString();
+        writeTriplesTxt(graph.getAmbiguousTriples(), "Ambiguous triples (i.e. list of triples for which there is ambiguous data about whether they are colliders or not):", out);
+        writeTriplesTxt(graph.getUnderLines(), "Underline triples:", out);
+        writeTriplesTxt(graph.getDottedUnderlines(), "Dotted underline triples:", out);
+
+        out.flush();
+    }
+
+    private static void writeTriplesTxt(Set<Triple> triples, String title, Writer out) throws IOException {
+        if (triples.isEmpty()) return;
+
+        String nl = System.lineSeparator();
+
+        out.write(nl);
+        out.write(nl);
+        out.write(title);
+
+        for (Triple triple : triples) {
+            out.write(nl);
+            out.write(triple.toString());
+        }
     }
 
     public static String graphNodesToText(Graph graph, String title, char delimiter) {
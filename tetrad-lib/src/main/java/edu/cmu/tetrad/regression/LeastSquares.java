@@ -0,0 +1,339 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.regression;
+
+import edu.cmu.tetrad.util.MatrixKernel;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ordinary least squares on the columns of a data set, for callers that regress many
+ * targets on the same regressors. The centered regressors are factored by Cholesky once
+ * for each set of regressors, and the factor is cached by the sorted indices of the
+ * regressors, so a later regression on the same set, in any order, reuses it; all of
+ * the targets of a call are then solved against it at once. Coefficients, standard
+ * errors and residuals are written into arrays the caller supplies, so that they can be
+ * reused from one call to the next.
+ * <p>
+ * Every model has an intercept, which comes first among the coefficients, followed by
+ * the coefficients of the regressors in the order given. A singular set of regressors
+ * throws a SingularMatrixException, as TetradMatrix.inverse does. Any number of threads
+ * may use one instance.
+ */
+public final class LeastSquares {
+
+    /**
+     * The most factors kept; the cache is cleared when it would grow past this.
+     */
+    public static final int MAX_FACTORS = 10000;
+
+    private final double[][] columns;
+    private final int[] rows;
+    private final Map<List<Integer>, Factor> factors = new ConcurrentHashMap<>();
+
+    /**
+     * @param columns The data, by variable and then by row. Not copied, so it must not
+     *                be changed while this is in use.
+     * @param rows    The rows to regress over.
+     */
+    public LeastSquares(double[][] columns, int[] rows) {
+        if (columns == null) throw new NullPointerException("Columns may not be null.");
+        if (rows == null) throw new NullPointerException("Rows may not be null.");
+        this.columns = columns;
+        this.rows = Arrays.copyOf(rows, rows.length);
+    }
+
+    /**
+     * Regresses over the first numRows rows of the columns.
+     */
+    public LeastSquares(double[][] columns, int numRows) {
+        this(columns, allRows(numRows));
+    }
+
+    /**
+     * @return The number of rows regressed over.
+     */
+    public int getSampleSize() {
+        return rows.length;
+    }
+
+    /**
+     * @return The factor for the given regressors, from the cache if it has been computed.
+     * @throws org.apache.commons.math3.linear.SingularMatrixException if the regressors
+     *                                                                 are collinear.
+     */
+    public Factor getFactor(int[] regressors) {
+        List<Integer> key = key(regressors);
+        Factor factor = factors.get(key);
+
+        if (factor == null) {
+            int k = key.size();
+            int[] sorted = new int[k];
+            double[] means = new double[k];
+
+            for (int i = 0; i < k; i++) {
+                sorted[i] = key.get(i);
+                means[i] = mean(columns[sorted[i]]);
+            }
+
+            factor = new Factor(sorted, means, gram(sorted, means));
+
+            if (factors.size() >= MAX_FACTORS) {
+                factors.clear();
+            }
+
+            factors.put(key, factor);
+        }
+
+        return factor;
+    }
+
+    /**
+     * Regresses each of the targets on the regressors. For the t'th target,
+     * coefficients[t] is set to the intercept followed by the coefficients of the
+     * regressors, standardErrors[t] to their standard errors, residuals[t] to the
+     * residual in each row, and rss[t] to the residual sum of squares. Any of the
+     * buffers may be null if it is not wanted; the rows of those given must be at least
+     * as long as needed.
+     *
+     * @throws org.apache.commons.math3.linear.SingularMatrixException if the regressors
+     *                                                                 are collinear.
+     */
+    public void regress(int[] targets, int[] regressors, double[][] coefficients,
+                        double[][] standardErrors, double[][] residuals, double[] rss) {
+        Factor factor = getFactor(regressors);
+
+        int n = rows.length;
+        int k = factor.size();
+        int m = targets.length;
+
+        double[] targetMeans = new double[m];
+        double[][] b = new double[m][k];
+        double[] x = new double[k];
+
+        for (int t = 0; t < m; t++) {
+            targetMeans[t] = mean(columns[targets[t]]);
+        }
+
+        // X'y for every target in one pass over the rows, then a solve for each.
+        for (int r = 0; r < n; r++) {
+            factor.center(columns, rows[r], x);
+
+            for (int t = 0; t < m; t++) {
+                double y = columns[targets[t]][rows[r]] - targetMeans[t];
+                double[] bt = b[t];
+                for (int j = 0; j < k; j++) bt[j] += x[j] * y;
+            }
+        }
+
+        for (int t = 0; t < m; t++) {
+            factor.solve(b[t]);
+        }
+
+        double[] sumSquares = new double[m];
+
+        for (int r = 0; r < n; r++) {
+            factor.center(columns, rows[r], x);
+
+            for (int t = 0; t < m; t++) {
+                double e = columns[targets[t]][rows[r]] - targetMeans[t];
+                double[] bt = b[t];
+                for (int j = 0; j < k; j++) e -= bt[j] * x[j];
+
+                sumSquares[t] += e * e;
+                if (residuals != null) residuals[t][r] = e;
+            }
+        }
+
+        int[] positions = new int[regressors.length];
+
+        for (int i = 0; i < regressors.length; i++) {
+            positions[i] = factor.indexOf(regressors[i]);
+        }
+
+        for (int t = 0; t < m; t++) {
+            if (rss != null) rss[t] = sumSquares[t];
+
+            if (coefficients != null) {
+                double intercept = targetMeans[t];
+
+                for (int j = 0; j < k; j++) {
+                    intercept -= b[t][j] * factor.means[j];
+                }
+
+                coefficients[t][0] = intercept;
+
+                for (int i = 0; i < regressors.length; i++) {
+                    coefficients[t][i + 1] = b[t][positions[i]];
+                }
+            }
+
+            if (standardErrors != null) {
+                double variance = sumSquares[t] / (n - k - 1);
+                standardErrors[t][0] = Math.sqrt(variance * factor.interceptVariance(n));
+
+                for (int i = 0; i < regressors.length; i++) {
+                    standardErrors[t][i + 1] = Math.sqrt(variance * factor.getInverse(positions[i], positions[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * The Cholesky factor and inverse of the cross products of a set of regressors
+     * (centered, when they come from data), with the regressors in ascending order.
+     */
+    public static final class Factor {
+        private final int[] regressors;
+        private final double[] means;
+        private final double[] cholesky;
+        private final double[] inverse;
+
+        /**
+         * @param regressors The regressors, ascending.
+         * @param means      Their means, or null if the cross products are not centered.
+         * @param gram       Their cross products, row-major; overwritten.
+         */
+        Factor(int[] regressors, double[] means, double[] gram) {
+            int k = regressors.length;
+            this.regressors = regressors;
+            this.means = means;
+            this.cholesky = Arrays.copyOf(gram, gram.length);
+            this.inverse = new double[k * k];
+
+            MatrixKernel.choleskyDecompose(cholesky, k);
+            MatrixKernel.invertSymmetric(gram, k, inverse);
+        }
+
+        /**
+         * @return The number of regressors.
+         */
+        public int size() {
+            return regressors.length;
+        }
+
+        /**
+         * @return The regressors, ascending.
+         */
+        public int[] getRegressors() {
+            return Arrays.copyOf(regressors, regressors.length);
+        }
+
+        /**
+         * @return The position of the given variable among the regressors, or a negative
+         * number if it is not one of them.
+         */
+        public int indexOf(int variable) {
+            return Arrays.binarySearch(regressors, variable);
+        }
+
+        /**
+         * @return The (i, j) entry of the inverse of the cross products.
+         */
+        public double getInverse(int i, int j) {
+            return inverse[i * regressors.length + j];
+        }
+
+        /**
+         * Solves the normal equations in place; b holds the cross products of the
+         * regressors with the target, and is replaced by the coefficients.
+         */
+        public void solve(double[] b) {
+            MatrixKernel.choleskySolve(cholesky, regressors.length, b);
+        }
+
+        // The variance of the intercept, for unit error variance: 1 / n + m' (X'X)^-1 m.
+        private double interceptVariance(int n) {
+            int k = regressors.length;
+            double variance = 1.0 / n;
+
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    variance += means[i] * inverse[i * k + j] * means[j];
+                }
+            }
+
+            return variance;
+        }
+
+        private void center(double[][] columns, int row, double[] x) {
+            for (int j = 0; j < regressors.length; j++) {
+                x[j] = columns[regressors[j]][row] - means[j];
+            }
+        }
+    }
+
+    //=============================PACKAGE-PRIVATE==============================//
+
+    /**
+     * @return The given indices, sorted, as a cache key.
+     */
+    static List<Integer> key(int[] indices) {
+        List<Integer> key = new ArrayList<>(indices.length);
+        for (int index : indices) key.add(index);
+        Collections.sort(key);
+        return key;
+    }
+
+    //=================================PRIVATE==================================//
+
+    private double mean(double[] column) {
+        double sum = 0.0;
+        for (int row : rows) sum += column[row];
+        return sum / rows.length;
+    }
+
+    // The cross products of the centered regressors, row-major.
+    private double[] gram(int[] regressors, double[] means) {
+        int k = regressors.length;
+        double[] gram = new double[k * k];
+        double[] x = new double[k];
+
+        for (int row : rows) {
+            for (int j = 0; j < k; j++) {
+                x[j] = columns[regressors[j]][row] - means[j];
+            }
+
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j <= i; j++) {
+                    gram[i * k + j] += x[i] * x[j];
+                }
+            }
+        }
+
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < i; j++) {
+                gram[j * k + i] = gram[i * k + j];
+            }
+        }
+
+        return gram;
+    }
+
+    private static int[] allRows(int numRows) {
+        int[] rows = new int[numRows];
+        for (int i = 0; i < numRows; i++) rows[i] = i;
+        return rows;
+    }
+}
@@ -0,0 +1,374 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.regression;
+
+import edu.cmu.tetrad.util.MatrixKernel;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+import java.util.Arrays;
+
+/**
+ * Fits binary and multinomial logistic regressions by Newton's method (iteratively
+ * reweighted least squares), for the logistic and multinomial likelihood tests and
+ * scores, which fit many small models. The regressors are read in place from columns of
+ * the data (column-major), for a given list of rows, with an intercept first; nothing is
+ * copied. The Newton systems are solved by Cholesky in MatrixKernel.
+ * <p>
+ * A fit may be started from the coefficients of another, usually a smaller model whose
+ * regressors are a subset, with zero for the new regressors; a nested model then
+ * typically converges in two or three steps. An optional ridge penalty, ridge / 2 times
+ * the sum of squared coefficients (intercepts included), keeps fits finite for
+ * separable data.
+ * <p>
+ * Categories of the target are 0, ..., numCategories - 1; category 0 is the reference,
+ * and coefficients are given category by category for 1, ..., numCategories - 1, each
+ * intercept first.
+ */
+public final class LogisticIrls {
+
+    /**
+     * The maximum number of Newton steps.
+     */
+    public static final int MAX_ITERATIONS = 50;
+
+    /**
+     * Fitting stops when a step changes the log likelihood by less than this, relative
+     * to its size.
+     */
+    public static final double TOLERANCE = 1e-10;
+
+    // Exponents above this are not taken.
+    private static final double MAX_EXPONENT = 700.0;
+
+    /**
+     * A fitted model.
+     */
+    public static final class Fit {
+        private final double[] coefficients;
+        private final double logLikelihood;
+        private final double[] hessian;
+        private final int iterations;
+        private final boolean converged;
+
+        private Fit(double[] coefficients, double logLikelihood, double[] hessian, int iterations,
+                    boolean converged) {
+            this.coefficients = coefficients;
+            this.logLikelihood = logLikelihood;
+            this.hessian = hessian;
+            this.iterations = iterations;
+            this.converged = converged;
+        }
+
+        /**
+         * @return The coefficients, for each category but the first, intercept first.
+         */
+        public double[] getCoefficients() {
+            return coefficients;
+        }
+
+        /**
+         * @return The log likelihood of the data under the fitted model, not counting the
+         * ridge penalty.
+         */
+        public double getLogLikelihood() {
+            return logLikelihood;
+        }
+
+        /**
+         * @return The covariance matrix of the coefficients (the inverse of the observed
+         * information), row-major, or null if the information is singular.
+         */
+        public double[] getCovariance() {
+            int d = coefficients.length;
+            double[] information = Arrays.copyOf(hessian, hessian.length);
+            double[] inverse = new double[d * d];
+
+            try {
+                MatrixKernel.invertSymmetric(information, d, inverse);
+            } catch (SingularMatrixException e) {
+                return null;
+            }
+
+            return inverse;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * @return False if the fit stopped at MAX_ITERATIONS or at a singular system,
+         * usually because the data are separable and no penalty was given.
+         */
+        public boolean isConverged() {
+            return converged;
+        }
+    }
+
+    private LogisticIrls() {
+    }
+
+    /**
+     * Fits a binary logistic regression.
+     *
+     * @param columns    The data, by column.
+     * @param regressors The columns of the regressors.
+     * @param target     The target, 0 or 1, by row of the data.
+     * @param rows       The rows to fit, or null for all of them.
+     * @param start      The coefficients to start from, intercept first, or null to start
+     *                   from the intercept-only fit.
+     * @param ridge      The ridge penalty; zero for none.
+     */
+    public static Fit binary(double[][] columns, int[] regressors, int[] target, int[] rows,
+                             double[] start, double ridge) {
+        return multinomial(columns, regressors, target, 2, rows, start, ridge);
+    }
+
+    /**
+     * Fits a multinomial logistic regression.
+     *
+     * @param columns       The data, by column.
+     * @param regressors    The columns of the regressors.
+     * @param target        The target, 0 to numCategories - 1, by row of the data.
+     * @param numCategories The number of categories of the target, at least 2.
+     * @param rows          The rows to fit, or null for all of them.
+     * @param start         The coefficients to start from (see the class comment), or null
+     *                      to start from the intercept-only fit.
+     * @param ridge         The ridge penalty; zero for none.
+     */
+    public static Fit multinomial(double[][] columns, int[] regressors, int[] target, int numCategories,
+                                  int[] rows, double[] start, double ridge) {
+        if (numCategories < 2) {
+            throw new IllegalArgumentException("Need at least two categories: " + numCategories);
+        }
+
+        if (ridge < 0) {
+            throw new IllegalArgumentException("Ridge penalty must be >= 0: " + ridge);
+        }
+
+        int p = regressors.length + 1;
+        int k = numCategories - 1;
+        int d = k * p;
+        int n = rows == null ? target.length : rows.length;
+
+        double[][] x = new double[p][];
+        for (int j = 1; j < p; j++) x[j] = columns[regressors[j - 1]];
+
+        double[] beta;
+
+        if (start != null) {
+            if (start.length != d) {
+                throw new IllegalArgumentException("Expecting " + d + " starting coefficients: " + start.length);
+            }
+
+            beta = Arrays.copyOf(start, d);
+        } else {
+            beta = interceptOnly(target, rows, n, numCategories, p);
+        }
+
+        double[] gradient = new double[d];
+        double[] hessian = new double[d * d];
+        double[] factor = new double[d * d];
+        double[] trial = new double[d];
+        double[] row = new double[p];
+        double[] eta = new double[k];
+        double[] probabilities = new double[k];
+
+        double objective = evaluate(x, target, rows, n, p, k, beta, ridge, gradient, hessian, row, eta, probabilities);
+        int iterations = 0;
+        boolean converged = false;
+
+        while (iterations < MAX_ITERATIONS) {
+            iterations++;
+
+            System.arraycopy(hessian, 0, factor, 0, d * d);
+            double[] step = Arrays.copyOf(gradient, d);
+
+            try {
+                MatrixKernel.choleskyDecompose(factor, d);
+            } catch (SingularMatrixException e) {
+                break;
+            }
+
+            MatrixKernel.choleskySolve(factor, d, step);
+
+            // Halve the step until the (penalized) likelihood does not decrease.
+            double scale = 1.0;
+            double next = Double.NEGATIVE_INFINITY;
+
+            for (int halving = 0; halving < 30; halving++) {
+                for (int c = 0; c < d; c++) trial[c] = beta[c] + scale * step[c];
+                next = evaluate(x, target, rows, n, p, k, trial, ridge, null, null, row, eta, probabilities);
+                if (next >= objective - TOLERANCE * Math.abs(objective)) break;
+                scale /= 2;
+            }
+
+            if (!(next >= objective - TOLERANCE * Math.abs(objective))) {
+                converged = true;
+                break;
+            }
+
+            double change = next - objective;
+            System.arraycopy(trial, 0, beta, 0, d);
+            objective = evaluate(x, target, rows, n, p, k, beta, ridge, gradient, hessian, row, eta, probabilities);
+
+            if (Math.abs(change) <= TOLERANCE * (Math.abs(objective) + 1.0)) {
+                converged = true;
+                break;
+            }
+        }
+
+        double logLikelihood = objective + ridge / 2.0 * sumOfSquares(beta);
+
+        return new Fit(beta, logLikelihood, hessian, iterations, converged);
+    }
+
+    /**
+     * @return The log likelihood of the data under the best model with only intercepts.
+     */
+    public static double interceptOnlyLogLikelihood(int[] target, int numCategories, int[] rows) {
+        int n = rows == null ? target.length : rows.length;
+        int[] counts = counts(target, rows, n, numCategories);
+        double logLikelihood = 0.0;
+
+        for (int count : counts) {
+            if (count > 0) logLikelihood += count * Math.log(count / (double) n);
+        }
+
+        return logLikelihood;
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    // The intercepts of the intercept-only fit, zero for categories that do not occur.
+    private static double[] interceptOnly(int[] target, int[] rows, int n, int numCategories, int p) {
+        int[] counts = counts(target, rows, n, numCategories);
+        double[] beta = new double[(numCategories - 1) * p];
+
+        for (int c = 1; c < numCategories; c++) {
+            if (counts[c] > 0 && counts[0] > 0) {
+                beta[(c - 1) * p] = Math.log(counts[c] / (double) counts[0]);
+            }
+        }
+
+        return beta;
+    }
+
+    private static int[] counts(int[] target, int[] rows, int n, int numCategories) {
+        int[] counts = new int[numCategories];
+
+        for (int i = 0; i < n; i++) {
+            int y = target[rows == null ? i : rows[i]];
+
+            if (y < 0 || y >= numCategories) {
+                throw new IllegalArgumentException("Target value out of range: " + y);
+            }
+
+            counts[y]++;
+        }
+
+        return counts;
+    }
+
+    // The penalized log likelihood at beta, and if gradient is not null, its gradient and
+    // the negative of its Hessian (the information).
+    private static double evaluate(double[][] x, int[] target, int[] rows, int n, int p, int k,
+                                   double[] beta, double ridge, double[] gradient, double[] hessian,
+                                   double[] row, double[] eta, double[] probabilities) {
+        int d = k * p;
+        double logLikelihood = 0.0;
+
+        if (gradient != null) {
+            Arrays.fill(gradient, 0.0);
+            Arrays.fill(hessian, 0.0);
+        }
+
+        row[0] = 1.0;
+
+        for (int i = 0; i < n; i++) {
+            int r = rows == null ? i : rows[i];
+            for (int j = 1; j < p; j++) row[j] = x[j][r];
+
+            // Log probabilities, relative to the reference category, shifted for safety.
+            double max = 0.0;
+
+            for (int c = 0; c < k; c++) {
+                double e = 0.0;
+                int base = c * p;
+                for (int j = 0; j < p; j++) e += beta[base + j] * row[j];
+                eta[c] = e;
+                if (e > max) max = e;
+            }
+
+            double sum = Math.exp(Math.max(-max, -MAX_EXPONENT));
+
+            for (int c = 0; c < k; c++) {
+                probabilities[c] = Math.exp(Math.max(eta[c] - max, -MAX_EXPONENT));
+                sum += probabilities[c];
+            }
+
+            for (int c = 0; c < k; c++) probabilities[c] /= sum;
+
+            int y = target[r];
+            logLikelihood += (y == 0 ? -max : eta[y - 1] - max) - Math.log(sum);
+
+            if (gradient == null) continue;
+
+            for (int c = 0; c < k; c++) {
+                double residual = (y == c + 1 ? 1.0 : 0.0) - probabilities[c];
+                int base = c * p;
+                for (int j = 0; j < p; j++) gradient[base + j] += residual * row[j];
+
+                // The lower triangle of the information, block (c, c2) for c2 <= c.
+                for (int c2 = 0; c2 <= c; c2++) {
+                    double w = c == c2 ? probabilities[c] * (1.0 - probabilities[c])
+                            : -probabilities[c] * probabilities[c2];
+                    if (w == 0.0) continue;
+
+                    for (int j = 0; j < p; j++) {
+                        int hRow = (base + j) * d + c2 * p;
+                        double wj = w * row[j];
+                        int last = c2 == c ? j : p - 1;
+                        for (int j2 = 0; j2 <= last; j2++) hessian[hRow + j2] += wj * row[j2];
+                    }
+                }
+            }
+        }
+
+        if (gradient != null) {
+            for (int a = 0; a < d; a++) {
+                gradient[a] -= ridge * beta[a];
+                hessian[a * d + a] += ridge;
+                for (int b = 0; b < a; b++) hessian[b * d + a] = hessian[a * d + b];
+            }
+        }
+
+        return logLikelihood - ridge / 2.0 * sumOfSquares(beta);
+    }
+
+    private static double sumOfSquares(double[] beta) {
+        double sum = 0.0;
+        for (double b : beta) sum += b * b;
+        return sum;
+    }
+}
@@ -69,6 +69,11 @@ public class LogisticRegression implements TetradSerializable {
 
     private int[] rows;
 
+    /**
+     * Columns used as targets, as ints, filled in as needed.
+     */
+    private transient int[][] targetCols;
+
     /**
      * A mixed data set. The targets of regresson must be binary. Regressors must be continuous or binary.
      * Other variables don't matter.
@@ -91,6 +96,15 @@ public class LogisticRegression implements TetradSerializable {
      * x must be binary; regressors must be continuous or binary.
      */
     public Result regress(DiscreteVariable x, List<Node> regressors) {
+        return regress(x, regressors, null);
+    }
+
+    /**
+     * As regress(x, regressors), but starting from the coefficients of an earlier result
+     * for x, usually for a subset of the regressors; regressors not in it start at zero.
+     * Nested models, as in likelihood ratio tests, then take only a step or two.
+     */
+    public Result regress(DiscreteVariable x, List<Node> regressors, Result start) {
         if (!binary(x)) {
             throw new IllegalArgumentException("Target must be binary.");
         }
@@ -101,23 +115,13 @@ public class LogisticRegression implements TetradSerializable {
             }
         }
 
-        double[][] _regressors = new double[regressors.size()][getRows().length];
+        int[] columns = new int[regressors.size()];
 
         for (int j = 0; j < regressors.size(); j++) {
-            int col = dataSet.getColumn(regressors.get(j));
-            double[] dataCol = dataCols[col];
-
-            for (int i = 0; i < getRows().length; i++) {
-                _regressors[j][i] = dataCol[getRows()[i]];
-            }
+            columns[j] = dataSet.getColumn(regressors.get(j));
         }
 
-        int[] target = new int[getRows().length];
-        int col = dataSet.getColumn(dataSet.getVariable(x.getName()));
-
-        for (int i = 0; i < getRows().length; i++) {
-            target[i] = dataSet.getInt(getRows()[i], col);
-        }
+        int[] target = getTarget(dataSet.getColumn(dataSet.getVariable(x.getName())));
 
         List<String> regressorNames = new ArrayList<>();
 
@@ -125,195 +129,100 @@ public class LogisticRegression implements TetradSerializable {
             regressorNames.add(node.getName());
         }
 
-        return regress(target, x.getName(), _regressors, regressorNames);
+        double[] coefficients = null;
+
+        if (start != null) {
+            coefficients = new double[columns.length + 1];
+            coefficients[0] = start.getIntercept();
+
+            for (int j = 0; j < columns.length; j++) {
+                int index = start.getRegressorNames().indexOf(regressorNames.get(j));
+                if (index != -1) coefficients[j + 1] = start.getCoefs()[index + 1];
+            }
+        }
+
+        return regress(target, x.getName(), columns, regressorNames, coefficients);
     }
 
     private boolean binary(Node x) {
         return x instanceof DiscreteVariable && ((DiscreteVariable) x).getNumCategories() == 2;
     }
 
+    // The values of the given column as ints, for a target.
+    private int[] getTarget(int column) {
+        if (targetCols == null) {
+            targetCols = new int[dataCols.length][];
+        }
+
+        if (targetCols[column] == null) {
+            double[] dataCol = dataCols[column];
+            int[] target = new int[dataCol.length];
+            for (int i = 0; i < target.length; i++) target[i] = (int) dataCol[i];
+            targetCols[column] = target;
+        }
+
+        return targetCols[column];
+    }
+
     /**
-     * Regresses the single-column target onto the regressors which have been
-     * previously set, generating a regression result.
+     * Regresses the target, by row of the data, onto the given columns of the data, for
+     * the rows that have been set, generating a regression result.
      * <p>
      * The target must be a two-valued variable with values 0 and 1.
      * <p>
-     * This implements an iterative search.
+     * This fits the model by iteratively reweighted least squares; see LogisticIrls.
      */
-    private Result regress(int[] target, String targetName, double[][] regressors, List<String> regressorNames) {
-
-        double[][] x;
-        double[] c1;
-
-        int numRegressors = regressors.length;
-        int numCases = target.length;
-
-        // make a new matrix x with all the columns of regressors
-        // but with first column all 1.0's.
-        x = new double[numRegressors + 1][];
-        c1 = new double[numCases];
-
-        x[0] = c1;
-
-        System.arraycopy(regressors, 0, x, 1, numRegressors);
-
-        for (int i = 0; i < numCases; i++) {
-            x[0][i] = 1.0;
-            c1[i] = 1.0;
-        }
+    private Result regress(int[] target, String targetName, int[] columns, List<String> regressorNames,
+                           double[] start) {
+        int numRegressors = columns.length;
+        int[] rows = getRows();
+        int numCases = rows.length;
 
         double[] xMeans = new double[numRegressors + 1];
         double[] xStdDevs = new double[numRegressors + 1];
 
-        double[] y0 = new double[numCases];
-        double[] y1 = new double[numCases];
-        for (int i = 0; i < numCases; i++) {
-            y0[i] = 0;
-            y1[i] = 0;
-        }
-
         int ny0 = 0;
         int ny1 = 0;
-        int nc = 0;
 
         for (int i = 0; i < numCases; i++) {
-            if (target[i] == 0.0) {
-                y0[i] = 1;
+            if (target[rows[i]] == 0) {
                 ny0++;
             } else {
-                y1[i] = 1;
                 ny1++;
             }
-            nc += y0[i] + y1[i];
-            for (int j = 1; j <= numRegressors; j++) {
-                xMeans[j] += (y0[i] + y1[i]) * x[j][i];
-                xStdDevs[j] += (y0[i] + y1[i]) * x[j][i] * x[j][i];
-            }
         }
 
         for (int j = 1; j <= numRegressors; j++) {
-            xMeans[j] /= nc;
-            xStdDevs[j] /= nc;
-            xStdDevs[j] = Math.sqrt(Math.abs(xStdDevs[j] - xMeans[j] * xMeans[j]));
-        }
-        xMeans[0] = 0.0;
-        xStdDevs[0] = 1.0;
+            double[] dataCol = dataCols[columns[j - 1]];
+            double sum = 0.0;
+            double sumSquares = 0.0;
 
-        for (int i = 0; i < nc; i++) {
-            for (int j = 1; j <= numRegressors; j++) {
-                x[j][i] = (x[j][i] - xMeans[j]) / xStdDevs[j];
+            for (int row : rows) {
+                sum += dataCol[row];
+                sumSquares += dataCol[row] * dataCol[row];
             }
-        }
 
-        //report = report + ("Iteration history...\n");
-
-        double[] par = new double[numRegressors + 1];
-        double[] parStdErr = new double[numRegressors + 1];
-        double[] coefficients;
-
-        par[0] = Math.log((double) ny1 / (double) ny0);
-        for (int j = 1; j <= numRegressors; j++) {
-            par[j] = 0.0;
+            xMeans[j] = sum / numCases;
+            xStdDevs[j] = Math.sqrt(Math.abs(sumSquares / numCases - xMeans[j] * xMeans[j]));
         }
 
-        double[][] arr = new double[numRegressors + 1][numRegressors + 2];
-
-        double lnV;
-        double ln1mV;
-
-        double llP = 2e+10;
-        double ll = 1e+10;
-        double llN = 0.0;
-
-        while (Math.abs(llP - ll) > 1e-7) {   /// 1e-7
-
-            llP = ll;
-            ll = 0.0;
-
-            for (int j = 0; j <= numRegressors; j++) {
-                for (int k = j; k <= numRegressors + 1; k++) {
-                    arr[j][k] = 0.0;
-                }
-            }
-
-            for (int i = 0; i < nc; i++) {
-                double q;
-                double v = par[0];
-
-                for (int j = 1; j <= numRegressors; j++) {
-                    v += par[j] * x[j][i];
-                }
-
-                if (v > 15.0) {
-                    lnV = -Math.exp(-v);
-                    ln1mV = -v;
-                    q = Math.exp(-v);
-                    v = Math.exp(lnV);
-                } else {
-                    if (v < -15.0) {
-                        lnV = v;
-                        ln1mV = -Math.exp(v);
-                        q = Math.exp(v);
-                        v = Math.exp(lnV);
-                    } else {
-                        v = 1.0 / (1 + Math.exp(-v));
-                        lnV = Math.log(v);
-                        ln1mV = Math.log(1.0 - v);
-                        q = v * (1.0 - v);
-                    }
-                }
-
-                ll = ll - 2.0 * y1[i] * lnV - 2.0 * y0[i] * ln1mV;
-
-                for (int j = 0; j <= numRegressors; j++) {
-                    double xij = x[j][i];
-                    arr[j][numRegressors + 1] +=
-                            xij * (y1[i] * (1.0 - v) + y0[i] * (-v));
-
-                    for (int k = j; k <= numRegressors; k++) {
-                        arr[j][k] += xij * x[k][i] * q * (y0[i] + y1[i]);
-                    }
-                }
-            }
-
-            if (llP == 1e+10) {
-                llN = ll;
-            }
+        xMeans[0] = 0.0;
+        xStdDevs[0] = 1.0;
 
-            for (int j = 1; j <= numRegressors; j++) {
-                for (int k = 0; k < j; k++) {
-                    arr[j][k] = arr[k][j];
-                }
-            }
+        LogisticIrls.Fit fit = LogisticIrls.binary(dataCols, columns, target, rows, start, 0.0);
 
-            for (int i = 0; i <= numRegressors; i++) {
-                double s = arr[i][i];
-                arr[i][i] = 1.0;
-                for (int k = 0; k <= numRegressors + 1; k++) {
-                    arr[i][k] = arr[i][k] / s;
-                }
-
-                for (int j = 0; j <= numRegressors; j++) {
-                    if (i != j) {
-                        s = arr[j][i];
-                        arr[j][i] = 0.0;
-                        for (int k = 0; k <= numRegressors + 1; k++) {
-                            arr[j][k] = arr[j][k] - s * arr[i][k];
-                        }
-                    }
-                }
-            }
+        double[] par = fit.getCoefficients();
+        double[] covariance = fit.getCovariance();
+        double[] parStdErr = new double[numRegressors + 1];
 
-            for (int j = 0; j <= numRegressors; j++) {
-                par[j] += arr[j][numRegressors + 1];
-            }
+        for (int j = 0; j <= numRegressors; j++) {
+            parStdErr[j] = covariance == null ? Double.NaN
+                    : Math.sqrt(covariance[j * (numRegressors + 1) + j]);
         }
 
-        //report = report + (" (Converged) \n");
-
-//        EdgeListGraph outgraph = new EdgeListGraph();
-//        Node targNode = new GraphNode(targetName);
-//        outgraph.addNode(targNode);
+        // -2 log likelihoods, of the model and of the intercept-only model.
+        double ll = -2.0 * fit.getLogLikelihood();
+        double llN = -2.0 * LogisticIrls.interceptOnlyLogLikelihood(target, 2, rows);
 
         double chiSq = llN - ll;
 
@@ -323,9 +232,6 @@ public class LogisticRegression implements TetradSerializable {
         double[] zScores = new double[numRegressors + 1];
 
         for (int j = 1; j <= numRegressors; j++) {
-            par[j] = par[j] / xStdDevs[j];
-            parStdErr[j] = Math.sqrt(arr[j][j]) / xStdDevs[j];
-            par[0] = par[0] - par[j] * xMeans[j];
             double zScore = par[j] / parStdErr[j];
             double prob = norm(Math.abs(zScore));
 
@@ -333,17 +239,14 @@ public class LogisticRegression implements TetradSerializable {
             zScores[j] = zScore;
         }
 
-        parStdErr[0] = Math.sqrt(arr[0][0]);
         double zScore = par[0] / parStdErr[0];
         pValues[0] = norm(zScore);
         zScores[0] = zScore;
 
         double intercept = par[0];
 
-        coefficients = par;
-
         return new Result(targetName,
-                regressorNames, xMeans, xStdDevs, numRegressors, ny0, ny1, coefficients,
+                regressorNames, xMeans, xStdDevs, numRegressors, ny0, ny1, par,
                 parStdErr, pValues, intercept, ll, sigMarker, chiSq, alpha
         );
     }
@@ -25,11 +25,12 @@ import edu.cmu.tetrad.data.CorrelationMatrix;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ProbUtils;
-import edu.cmu.tetrad.util.TetradMatrix;
 import edu.cmu.tetrad.util.TetradVector;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implements a regression model from correlations--that is, from a correlation
@@ -70,6 +71,12 @@ public class RegressionCovariance implements Regression {
      */
     private Graph graph = null;
 
+    /**
+     * The factors of the correlations of the regressor sets regressed on so far, by the
+     * sorted indices of the regressors.
+     */
+    private final Map<List<Integer>, LeastSquares.Factor> factors = new ConcurrentHashMap<>();
+
     //=========================CONSTRUCTORS===========================//
 
     /**
@@ -155,8 +162,6 @@ public class RegressionCovariance implements Regression {
      * @return the regression plane.
      */
     public RegressionResult regress(Node target, List<Node> regressors) {
-        TetradMatrix allCorrelations = correlations.getMatrix();
-
         List<Node> variables = correlations.getVariables();
 
         int yIndex = variables.indexOf(target);
@@ -171,17 +176,38 @@ public class RegressionCovariance implements Regression {
             }
         }
 
-        TetradMatrix rX = allCorrelations.getSelection(xIndices, xIndices);
-        TetradMatrix rY = allCorrelations.getSelection(xIndices, new int[]{yIndex});
+        LeastSquares.Factor factor = getFactor(xIndices);
+        int[] sorted = factor.getRegressors();
 
-        TetradMatrix bStar = rX.inverse().times(rY);
+        // The standardized coefficients, with the regressors in ascending order.
+        double[] bStar = new double[sorted.length];
 
-        TetradVector b = new TetradVector(bStar.rows() + 1);
+        for (int i = 0; i < sorted.length; i++) {
+            bStar[i] = correlations.getValue(sorted[i], yIndex);
+        }
+
+        factor.solve(bStar);
+
+        // r2 = rY' rX^-1 rY, which is 1 - 1 / (r^-1)[0][0] for the correlation matrix r of
+        // the target and the regressors.
+        double r2 = 0.0;
+
+        for (int i = 0; i < sorted.length; i++) {
+            r2 += correlations.getValue(sorted[i], yIndex) * bStar[i];
+        }
+
+        int[] positions = new int[xIndices.length];
+
+        for (int i = 0; i < xIndices.length; i++) {
+            positions[i] = factor.indexOf(xIndices[i]);
+        }
+
+        TetradVector b = new TetradVector(xIndices.length + 1);
 
         for (int k = 1; k < b.size(); k++) {
             double sdY = sd.get(yIndex);
             double sdK = sd.get(xIndices[k - 1]);
-            b.set(k, bStar.get(k - 1, 0) * (sdY / sdK));
+            b.set(k, bStar[positions[k - 1]] * (sdY / sdK));
         }
 
         b.set(0, Double.NaN);
@@ -196,37 +222,23 @@ public class RegressionCovariance implements Regression {
             b.set(0, b0);
         }
 
-        int[] allIndices = new int[1 + regressors.size()];
-        allIndices[0] = yIndex;
-
-        for (int i = 1; i < allIndices.length; i++) {
-            allIndices[i] = variables.indexOf(regressors.get(i - 1));
-        }
-
-        TetradMatrix r = allCorrelations.getSelection(allIndices, allIndices);
-        TetradMatrix rInv = r.inverse();
-
         int n = correlations.getSampleSize();
         int k = regressors.size() + 1;
 
-        double vY = rInv.get(0, 0);
-        double r2 = 1.0 - (1.0 / vY);
         double tss = n * sd.get(yIndex) * sd.get(yIndex); // Book says n - 1.
         double rss = tss * (1.0 - r2);
         double seY = Math.sqrt(rss / (double) (n - k));
 
-        TetradVector sqErr = new TetradVector(allIndices.length);
-        TetradVector t = new TetradVector(allIndices.length);
-        TetradVector p = new TetradVector(allIndices.length);
+        TetradVector sqErr = new TetradVector(k);
+        TetradVector t = new TetradVector(k);
+        TetradVector p = new TetradVector(k);
 
         sqErr.set(0, Double.NaN);
         t.set(0, Double.NaN);
         p.set(0, Double.NaN);
 
-        TetradMatrix rxInv = rX.inverse();
-
         for (int i = 0; i < regressors.size(); i++) {
-            double _r2 = 1.0 - (1.0 / rxInv.get(i, i));
+            double _r2 = 1.0 - (1.0 / factor.getInverse(positions[i], positions[i]));
             double _tss = n * sd.get(xIndices[i]) * sd.get(xIndices[i]);
             double _se = seY / Math.sqrt(_tss * (1.0 - _r2));
 
@@ -239,7 +251,7 @@ public class RegressionCovariance implements Regression {
         }
 
         // Graph
-        this.graph = createGraph(target, allIndices, regressors, p);
+        this.graph = createGraph(target, k, regressors, p);
 
         String[] vNames = createVarNamesArray(regressors);
         double[] bArray = b.toArray();
@@ -271,11 +283,41 @@ public class RegressionCovariance implements Regression {
         return new String[regressors.size()];
     }
 
-    private Graph createGraph(Node target, int[] allIndices, List<Node> regressors, TetradVector p) {
+    // The factor of the correlations of the given regressors, cached by the sorted regressors.
+    private LeastSquares.Factor getFactor(int[] regressors) {
+        List<Integer> key = LeastSquares.key(regressors);
+        LeastSquares.Factor factor = factors.get(key);
+
+        if (factor == null) {
+            int k = key.size();
+            int[] sorted = new int[k];
+            double[] gram = new double[k * k];
+
+            for (int i = 0; i < k; i++) sorted[i] = key.get(i);
+
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    gram[i * k + j] = correlations.getValue(sorted[i], sorted[j]);
+                }
+            }
+
+            factor = new LeastSquares.Factor(sorted, null, gram);
+
+            if (factors.size() >= LeastSquares.MAX_FACTORS) {
+                factors.clear();
+            }
+
+            factors.put(key, factor);
+        }
+
+        return factor;
+    }
+
+    private Graph createGraph(Node target, int numCoefficients, List<Node> regressors, TetradVector p) {
         Graph graph = new EdgeListGraph();
         graph.addNode(target);
 
-        for (int i = 0; i < allIndices.length; i++) {
+        for (int i = 0; i < numCoefficients; i++) {
             String variableName = (i > 0) ? regressors.get(i - 1).getName() : "const";
 
             //Add a node and edge to the output graph for significant predictors:
@@ -21,7 +21,10 @@
 
 package edu.cmu.tetrad.regression;
 
+import edu.cmu.tetrad.data.BoxDataSet;
+import edu.cmu.tetrad.data.DataBox;
 import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.VerticalDoubleDataBox;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ProbUtils;
 import edu.cmu.tetrad.util.TetradMatrix;
@@ -29,10 +32,14 @@ import edu.cmu.tetrad.util.TetradVector;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Implements a regression model from tabular continuous data.
+ * Implements a regression model from tabular continuous data. The regressions are done
+ * by LeastSquares, which factors each set of regressors once, so regressing several
+ * targets on the same regressors, one at a time or together with residuals(), is
+ * cheaper than regressing the first.
  *
  * @author Joseph Ramsey
  */
@@ -44,9 +51,9 @@ public class RegressionDataset implements Regression {
 //    private NumberFormat nf = NumberFormatUtil.getInstance().getNumberFormat();
 
     /**
-     * The data set.
+     * The data, by variable and then by row.
      */
-    private TetradMatrix data;
+    private double[][] columns;
 
     /**
      * The variables.
@@ -67,6 +74,11 @@ public class RegressionDataset implements Regression {
     private int[] rows;
     private TetradVector res2;
 
+    /**
+     * Does the regressions over the rows; replaced when the rows are.
+     */
+    private LeastSquares leastSquares;
+
     //============================CONSTRUCTORS==========================//
 
     /**
@@ -76,17 +88,32 @@ public class RegressionDataset implements Regression {
      *             are continuous.
      */
     public RegressionDataset(DataSet data) {
-        this.data = data.getDoubleData();
+        if (data instanceof BoxDataSet) {
+            DataBox box = ((BoxDataSet) data).getDataBox();
+
+            // Copied, since the factors cached for the regressions must not go stale.
+            if (box instanceof VerticalDoubleDataBox) {
+                double[][] vectors = ((VerticalDoubleDataBox) box).getVariableVectors();
+                this.columns = new double[vectors.length][];
+
+                for (int i = 0; i < vectors.length; i++) {
+                    this.columns[i] = Arrays.copyOf(vectors[i], vectors[i].length);
+                }
+            }
+        }
+
+        if (this.columns == null) {
+            this.columns = data.getDoubleData().transpose().toArray();
+        }
+
         this.variables = data.getVariables();
-        setRows(new int[data.getNumRows()]);
-        for (int i = 0; i < getRows().length; i++) getRows()[i] = i;
+        setRows(allRows(data.getNumRows()));
     }
 
     public RegressionDataset(TetradMatrix data, List<Node> variables) {
-        this.data = data;
+        this.columns = data.transpose().toArray();
         this.variables = variables;
-        setRows(new int[data.rows()]);
-        for (int i = 0; i < getRows().length; i++) getRows()[i] = i;
+        setRows(allRows(data.rows()));
     }
 
 
@@ -120,104 +147,78 @@ public class RegressionDataset implements Regression {
         int n = getRows().length;
         int k = regressors.size() + 1;
 
-        int _target = variables.indexOf(target);
-        int[] _regressors = new int[regressors.size()];
+        int _target = indexOf(target);
+        int[] _regressors = indicesOf(regressors);
 
-        for (int i = 0; i < regressors.size(); i++) {
-            _regressors[i] = variables.indexOf(regressors.get(i));
-            if (_regressors[i] == -1) {
-                System.out.println();
-            }
+        if (regressors.isEmpty()) {
+            return regressOnNothing(target, _target);
         }
 
-        if (_target == -1) {
-            System.out.println();
-        }
+        double[][] b = new double[1][k];
+        double[][] se = new double[1][k];
+        double[][] res = new double[1][n];
+        double[] rss = new double[1];
 
-        TetradMatrix y = data.getSelection(getRows(), new int[]{_target}).copy();
-        TetradMatrix xSub = data.getSelection(getRows(), _regressors);
+        leastSquares.regress(new int[]{_target}, _regressors, b, se, res, rss);
 
-        TetradMatrix x;
+        TetradVector _res = new TetradVector(res[0]);
+        TetradVector _yHat = new TetradVector(n);
 
-        if (regressors.size() > 0) {
-            x = new TetradMatrix(xSub.rows(), xSub.columns() + 1);
+        double[] y = columns[_target];
 
-            for (int i = 0; i < x.rows(); i++) {
-                for (int j = 0; j < x.columns(); j++) {
-                    if (j == 0) {
-                        x.set(i, j, 1);
-                    } else {
-                        x.set(i, j, xSub.get(i, j - 1));
-                    }
-                }
-            }
-        } else {
-            x = new TetradMatrix(xSub.rows(), xSub.columns());
-
-            for (int i = 0; i < x.rows(); i++) {
-                for (int j = 0; j < x.columns(); j++) {
-                    x.set(i, j, xSub.get(i, j));
-                }
-            }
+        for (int i = 0; i < n; i++) {
+            _yHat.set(i, y[getRows()[i]] - res[0][i]);
         }
 
-        TetradMatrix xT = x.transpose();
-        TetradMatrix xTx = xT.times(x);
-        TetradMatrix xTxInv = xTx.inverse();
-        TetradMatrix xTy = xT.times(y);
-        TetradMatrix b = xTxInv.times(xTy);
-
-        TetradMatrix yHat = x.times(b);
-        if (yHat.columns() == 0) yHat = y.like();
-
-        TetradMatrix res = y.minus(yHat); //  y.copy().assign(yHat, PlusMult.plusMult(-1));
-
-        TetradVector _yHat = yHat.getColumn(0);
-        TetradVector _res = res.getColumn(0);
-
-        TetradMatrix b2 = b.copy();
-        TetradMatrix yHat2 = x.times(b2);
-        if (yHat.columns() == 0) yHat2 = y.like();
-
-        TetradMatrix res2 = y.minus(yHat2); //  y.copy().assign(yHat, PlusMult.plusMult(-1));
-        this.res2 = res2.getColumn(0);
+        this.res2 = _res;
 
-        double rss = rss(x, y, b);
-        double se = Math.sqrt(rss / (n - k));
         double tss = tss(y);
-        double r2 = 1.0 - (rss / tss);
+        double r2 = 1.0 - (rss[0] / tss);
 
-        TetradVector sqErr = new TetradVector(x.columns());
-        TetradVector t = new TetradVector(x.columns());
-        TetradVector p = new TetradVector(x.columns());
+        double[] tArray = new double[k];
+        double[] pArray = new double[k];
 
-        for (int i = 0; i < x.columns(); i++) {
-            double _s = se * se * xTxInv.get(i, i);
-            double _se = Math.sqrt(_s);
-            double _t = b.get(i, 0) / _se;
+        for (int i = 0; i < k; i++) {
+            double _t = b[0][i] / se[0][i];
             double _p = 2 * (1.0 - ProbUtils.tCdf(Math.abs(_t), n - k));
 
-            sqErr.set(i, _se);
-            t.set(i, _t);
-            p.set(i, _p);
+            tArray[i] = _t;
+            pArray[i] = _p;
         }
 
-        this.graph = createOutputGraph(target.getName(), x, regressors, p);
+        this.graph = createOutputGraph(target.getName(), k, regressors, pArray);
 
-        String[] vNames = new String[regressors.size()];
+        return new RegressionResult(false, names(regressors), n,
+                b[0], tArray, pArray, se[0], r2, rss[0], alpha, _yHat, _res);
+    }
 
-        for (int i = 0; i < regressors.size(); i++) {
-            vNames[i] = regressors.get(i).getName();
-        }
+    /**
+     * Regresses each of the targets on the same regressors, which are factored only
+     * once.
+     *
+     * @param targets    The target variables.
+     * @param regressors The regressor variables.
+     * @return The residuals of each target, in the order of the targets, by row.
+     */
+    public double[][] residuals(List<Node> targets, List<Node> regressors) {
+        int n = getRows().length;
+        int[] _targets = indicesOf(targets);
+        double[][] residuals = new double[targets.size()][n];
 
-        double[] bArray = b.columns() == 0 ? new double[0] : b.getColumn(0).toArray();
-        double[] tArray = t.toArray();
-        double[] pArray = p.toArray();
-        double[] seArray = sqErr.toArray();
+        if (regressors.isEmpty()) {
+
+            // As from regress, with no regressors the residuals are the data.
+            for (int t = 0; t < _targets.length; t++) {
+                for (int i = 0; i < n; i++) {
+                    residuals[t][i] = columns[_targets[t]][getRows()[i]];
+                }
+            }
 
+            return residuals;
+        }
 
-        return new RegressionResult(regressors.size() == 0, vNames, n,
-                bArray, tArray, pArray, seArray, r2, rss, alpha, _yHat, _res);
+        leastSquares.regress(_targets, indicesOf(regressors), null, null, residuals, null);
+        return residuals;
     }
 
     public static RegressionResult regress(double[] target, double[][] regressors) {
@@ -290,19 +291,74 @@ public class RegressionDataset implements Regression {
 
     //=======================PRIVATE METHODS================================//
 
-    private Graph createOutputGraph(String target, TetradMatrix x,
-                                    List<Node> regressors, TetradVector p) {
+    // With no regressors there is no intercept either; the residuals are the data.
+    private RegressionResult regressOnNothing(Node target, int _target) {
+        int n = getRows().length;
+        double[] y = columns[_target];
+
+        TetradVector _res = new TetradVector(n);
+        double rss = 0.0;
+
+        for (int i = 0; i < n; i++) {
+            double d = y[getRows()[i]];
+            _res.set(i, d);
+            rss += d * d;
+        }
+
+        this.res2 = _res;
+
+        double r2 = 1.0 - (rss / tss(y));
+        double[] none = new double[0];
+
+        this.graph = createOutputGraph(target.getName(), 0, Collections.<Node>emptyList(), none);
+
+        return new RegressionResult(true, new String[0], n,
+                none, none, none, none, r2, rss, alpha, new TetradVector(n), _res);
+    }
+
+    private int indexOf(Node node) {
+        int index = variables.indexOf(node);
+
+        if (index == -1) {
+            throw new IllegalArgumentException("Not one of the variables: " + node);
+        }
+
+        return index;
+    }
+
+    private int[] indicesOf(List<Node> nodes) {
+        int[] indices = new int[nodes.size()];
+
+        for (int i = 0; i < nodes.size(); i++) {
+            indices[i] = indexOf(nodes.get(i));
+        }
+
+        return indices;
+    }
+
+    private String[] names(List<Node> nodes) {
+        String[] names = new String[nodes.size()];
+
+        for (int i = 0; i < nodes.size(); i++) {
+            names[i] = nodes.get(i).getName();
+        }
+
+        return names;
+    }
+
+    private Graph createOutputGraph(String target, int numColumns,
+                                    List<Node> regressors, double[] p) {
         // Create output graph.
         Node targetNode = new GraphNode(target);
 
         Graph graph = new EdgeListGraph();
         graph.addNode(targetNode);
 
-        for (int i = 0; i < x.columns(); i++) {
+        for (int i = 0; i < numColumns; i++) {
             String variableName = (i > 0) ? regressors.get(i - 1).getName() : "const";
 
             //Add a node and edge to the output graph for significant predictors:
-            if (p.get(i) < alpha) {
+            if (p[i] < alpha) {
                 Node predictorNode = new GraphNode(variableName);
                 graph.addNode(predictorNode);
                 Edge newEdge = new Edge(predictorNode, targetNode,
@@ -370,6 +426,26 @@ public class RegressionDataset implements Regression {
         return rss;
     }
 
+    // The total sum of squares of the column over the rows.
+    private double tss(double[] y) {
+        double mean = 0.0;
+
+        for (int row : getRows()) {
+            mean += y[row];
+        }
+
+        mean /= getRows().length;
+
+        double ssm = 0.0;
+
+        for (int row : getRows()) {
+            double d = mean - y[row];
+            ssm += d * d;
+        }
+
+        return ssm;
+    }
+
     private static double tss(TetradMatrix y) {
         // first calculate the mean
         double mean = 0.0;
@@ -399,6 +475,13 @@ public class RegressionDataset implements Regression {
 
     public void setRows(int[] rows) {
         this.rows = rows;
+        this.leastSquares = new LeastSquares(columns, rows);
+    }
+
+    private static int[] allRows(int numRows) {
+        int[] rows = new int[numRows];
+        for (int i = 0; i < numRows; i++) rows[i] = i;
+        return rows;
     }
 
     public TetradVector getResidualsWithoutFirstRegressor() {
@@ -0,0 +1,303 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.TetradLogger;
+
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Finds the Markov blankets of all variables (or of a list of targets), running the
+ * searches for the targets in parallel on the shared pool, and merges them into an
+ * undirected graph over the variables, as a start for local-to-global structure
+ * learning or for feature selection.
+ * <p>
+ * The searches for the different targets share one cache of independence facts (see
+ * CachingIndependenceTest) or local scores (see CachingScore), so what one target's
+ * search has tested is not tested again for another. Each target gets its own search
+ * object, so MbSearch implementations need not be thread-safe.
+ * <p>
+ * Blanket membership should be symmetric but need not come out that way from
+ * separate searches. In the merged graph, x and y are adjacent if each is in the
+ * other's blanket, or with symmetric set to false, if either is in the other's.
+ */
+public final class AllTargetsMb {
+
+    /**
+     * Finds the Markov blanket of a single target. Called from several threads at once.
+     */
+    public interface TargetSearch {
+        List<Node> findMb(Node target);
+    }
+
+    /**
+     * Makes a new MbSearch (IAMB, MMMB, HITON-MB, MBFS...) for the given shared test.
+     */
+    public interface MbSearchFactory {
+        MbSearch create(IndependenceTest test);
+    }
+
+    /**
+     * Makes a new FgesMb for the given shared score.
+     */
+    public interface FgesMbFactory {
+        FgesMb create(Score score);
+    }
+
+    private final List<Node> variables;
+    private final TargetSearch search;
+    private List<Node> targets;
+    private boolean symmetric = true;
+    private boolean parallel = true;
+    private Map<Node, List<Node>> mbs;
+    private long elapsedTime;
+    private final TetradLogger logger = TetradLogger.getInstance();
+
+    /**
+     * @param variables The variables; by default each is a target.
+     * @param search    Finds the blanket of one target.
+     */
+    public AllTargetsMb(List<Node> variables, TargetSearch search) {
+        if (variables == null) throw new NullPointerException("Variables may not be null.");
+        if (search == null) throw new NullPointerException("Search may not be null.");
+        this.variables = new ArrayList<>(variables);
+        this.targets = this.variables;
+        this.search = search;
+    }
+
+    /**
+     * Searches with a new MbSearch from the factory for each target, all sharing a
+     * cached copy of the given test. Facts not yet cached are tested one at a time on
+     * the test; to test them in parallel, give a supplier of tests instead.
+     */
+    public static AllTargetsMb forTest(IndependenceTest test, final MbSearchFactory factory) {
+        if (factory == null) throw new NullPointerException("Factory may not be null.");
+        final IndependenceTest cached = test instanceof CachingIndependenceTest
+                ? test : new CachingIndependenceTest(test);
+
+        return new AllTargetsMb(test.getVariables(), new TargetSearch() {
+            public List<Node> findMb(Node target) {
+                return factory.create(cached).findMb(target.getName());
+            }
+        });
+    }
+
+    /**
+     * Searches with a new MbSearch from the factory for each target, all sharing one
+     * cache of the facts tested by the tests from the supplier, one for each thread,
+     * so that the facts needed by different targets are tested in parallel.
+     */
+    public static AllTargetsMb forTest(Supplier<? extends IndependenceTest> tests,
+                                       final MbSearchFactory factory) {
+        if (factory == null) throw new NullPointerException("Factory may not be null.");
+        final IndependenceTest cached = new CachingIndependenceTest(tests);
+
+        return new AllTargetsMb(cached.getVariables(), new TargetSearch() {
+            public List<Node> findMb(Node target) {
+                return factory.create(cached).findMb(target.getName());
+            }
+        });
+    }
+
+    /**
+     * Searches with a new FgesMb from the factory for each target, all sharing a
+     * cached copy of the given score, which must be safe to call from several threads
+     * at once, as for FGES.
+     */
+    public static AllTargetsMb forScore(Score score, final FgesMbFactory factory) {
+        if (factory == null) throw new NullPointerException("Factory may not be null.");
+        final Score cached = score instanceof CachingScore ? score : new CachingScore(score);
+
+        return new AllTargetsMb(score.getVariables(), new TargetSearch() {
+            public List<Node> findMb(Node target) {
+                List<Node> mb = factory.create(cached).search(target).getNodes();
+                mb.remove(target);
+                return mb;
+            }
+        });
+    }
+
+    /**
+     * Finds the blanket of each target, in parallel.
+     *
+     * @return The blankets, by target, in the order of the targets.
+     */
+    public Map<Node, List<Node>> findMbs() {
+        long start = System.currentTimeMillis();
+
+        final List<Node> targets = this.targets;
+        final List<List<Node>> found = new ArrayList<>(Collections.<List<Node>>nCopies(targets.size(), null));
+
+        class MbTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private MbTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 1) {
+                    for (int i = from; i < to; i++) {
+                        if (Thread.currentThread().isInterrupted()) break;
+                        found.set(i, new ArrayList<>(search.findMb(targets.get(i))));
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    MbTask left = new MbTask(from, mid);
+                    MbTask right = new MbTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        if (parallel) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new MbTask(0, targets.size()));
+        } else {
+            for (int i = 0; i < targets.size(); i++) {
+                if (Thread.currentThread().isInterrupted()) break;
+                found.set(i, new ArrayList<>(search.findMb(targets.get(i))));
+            }
+        }
+
+        Map<Node, List<Node>> mbs = new LinkedHashMap<>();
+
+        for (int i = 0; i < targets.size(); i++) {
+            if (found.get(i) == null) continue;
+            mbs.put(targets.get(i), found.get(i));
+        }
+
+        this.mbs = mbs;
+        this.elapsedTime = System.currentTimeMillis() - start;
+        logger.log("info", "Markov blankets for " + mbs.size() + " targets found in "
+                + elapsedTime / 1000.0 + " s");
+
+        return mbs;
+    }
+
+    /**
+     * Finds the blankets of the targets and merges them into an undirected graph over
+     * the variables. With symmetric true (the default), x --- y if each is in the
+     * other's blanket; pairs where only one is a target are then judged by that one
+     * alone. With symmetric false, x --- y if either is in the other's blanket.
+     */
+    public Graph search() {
+        Map<Node, List<Node>> mbs = findMbs();
+        Map<Node, Set<Node>> sets = new HashMap<>();
+
+        for (Node target : mbs.keySet()) {
+            sets.put(target, new HashSet<>(mbs.get(target)));
+        }
+
+        Graph graph = new EdgeListGraph(variables);
+
+        for (Node x : mbs.keySet()) {
+            for (Node y : mbs.get(x)) {
+                if (x == y || graph.isAdjacentTo(x, y)) continue;
+
+                Set<Node> mbY = sets.get(y);
+
+                if (!symmetric || mbY == null || mbY.contains(x)) {
+                    graph.addUndirectedEdge(x, y);
+                }
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * @return The blankets found by the last search, by target.
+     */
+    public Map<Node, List<Node>> getMbs() {
+        return mbs;
+    }
+
+    public List<Node> getTargets() {
+        return new ArrayList<>(targets);
+    }
+
+    /**
+     * Sets the targets, which must be among the variables; by default all are.
+     */
+    public void setTargets(List<Node> targets) {
+        if (targets == null) throw new NullPointerException("Targets may not be null.");
+
+        Set<Node> variables = new HashSet<>(this.variables);
+
+        for (Node target : targets) {
+            if (!variables.contains(target)) {
+                throw new IllegalArgumentException("Target is not one of the variables: " + target);
+            }
+        }
+
+        this.targets = new ArrayList<>(targets);
+    }
+
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    /**
+     * True (the default) if x and y are adjacent in the merged graph only if each is in
+     * the other's blanket; false if it is enough for either to be.
+     */
+    public void setSymmetric(boolean symmetric) {
+        this.symmetric = symmetric;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * True (the default) if the targets should be searched in
+     * parallel; false if one at a time, still sharing the cache.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return The time the last search took, in milliseconds.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+}
@@ -23,6 +23,7 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.SearchMetrics;
 import org.apache.commons.math3.special.Gamma;
 
 import java.util.List;
@@ -40,6 +41,9 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
     private int[] numCategories;
 
+    // Counts the scores computed, for the metrics current when this score was constructed.
+    private final SearchMetrics metrics = SearchMetrics.current();
+
     public BDeuScore(DataSet dataSet) {
         if (dataSet == null) {
             throw new NullPointerException("Data was not provided.");
@@ -86,6 +90,7 @@ public class BDeuScore implements LocalDiscreteScore, IBDeuScore, Score {
 
     @Override
     public double localScore(int node, int parents[]) {
+        metrics.count(SearchMetrics.SCORES);
 
         // Number of categories for node.
         int c = numCategories[node];
@@ -0,0 +1,342 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.SearchMetrics;
+import edu.cmu.tetrad.util.TetradMatrix;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Wraps an independence test with a cache of its results that may be shared by
+ * searches running in several threads at once. Facts are cached by unordered pair
+ * x, y and set z, so each is tested once however many searches ask for it.
+ * <p>
+ * Each fact not yet cached is tested by the first thread to ask for it, while other
+ * threads asking for the same fact wait for that result; different facts are tested
+ * at the same time. Since tests report p-values through getPValue after the call, a
+ * single wrapped test can only test one fact at a time, so to test in parallel give
+ * a supplier of tests instead, from which each thread gets its own. getPValue and
+ * getScore here return the values for the last fact looked up by the calling
+ * thread. Changing alpha clears the cache; it should not be changed while searching.
+ */
+public final class CachingIndependenceTest implements IndependenceTest {
+
+    private final IndependenceTest test;
+    private final ThreadLocal<IndependenceTest> tests;
+    private final Map<Node, Integer> indices = new HashMap<>();
+    private final ConcurrentMap<Fact, FutureTask<Result>> cache = new ConcurrentHashMap<>();
+    private final ThreadLocal<Result> last = new ThreadLocal<>();
+    private final SearchMetrics metrics = SearchMetrics.current();
+    private volatile double alpha;
+
+    /**
+     * Wraps a single test, which tests one fact at a time.
+     */
+    public CachingIndependenceTest(IndependenceTest test) {
+        if (test == null) throw new NullPointerException("Test may not be null.");
+        this.test = test;
+        this.tests = null;
+        this.alpha = test.getAlpha();
+
+        for (Node node : test.getVariables()) {
+            indices.put(node, indices.size());
+        }
+    }
+
+    /**
+     * Wraps the tests made by the given supplier, one for each thread that tests a
+     * fact, so that different facts may be tested in parallel. The tests must be over
+     * the same variables.
+     */
+    public CachingIndependenceTest(final Supplier<? extends IndependenceTest> tests) {
+        if (tests == null) throw new NullPointerException("Tests may not be null.");
+        this.test = tests.get();
+        if (test == null) throw new NullPointerException("Test may not be null.");
+        this.alpha = test.getAlpha();
+
+        for (Node node : test.getVariables()) {
+            indices.put(node, indices.size());
+        }
+
+        final IndependenceTest first = test;
+
+        this.tests = new ThreadLocal<IndependenceTest>() {
+            private final AtomicBoolean firstUsed = new AtomicBoolean();
+
+            @Override
+            protected IndependenceTest initialValue() {
+                if (firstUsed.compareAndSet(false, true)) return first;
+
+                IndependenceTest copy = tests.get();
+
+                if (!copy.getVariables().equals(first.getVariables())) {
+                    throw new IllegalArgumentException("The supplied tests must be over the same variables.");
+                }
+
+                return copy;
+            }
+        };
+    }
+
+    /**
+     * @return The wrapped test.
+     */
+    public IndependenceTest getTest() {
+        return test;
+    }
+
+    /**
+     * @return The number of distinct facts cached so far.
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public boolean isIndependent(final Node x, final Node y, final List<Node> z) {
+        Fact fact = fact(x, y, z);
+        FutureTask<Result> task = cache.get(fact);
+
+        if (task == null) {
+            FutureTask<Result> created = new FutureTask<>(new Callable<Result>() {
+                public Result call() {
+                    return test(x, y, z);
+                }
+            });
+
+            task = cache.putIfAbsent(fact, created);
+
+            if (task == null) {
+                task = created;
+                task.run();
+            } else {
+                metrics.count(SearchMetrics.CACHE_HITS);
+            }
+        } else {
+            metrics.count(SearchMetrics.CACHE_HITS);
+        }
+
+        Result result = result(fact, task);
+        last.set(result);
+        return result.independent;
+    }
+
+    public boolean isIndependent(Node x, Node y, Node... z) {
+        return isIndependent(x, y, Arrays.asList(z));
+    }
+
+    public boolean isDependent(Node x, Node y, List<Node> z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public boolean isDependent(Node x, Node y, Node... z) {
+        return !isIndependent(x, y, z);
+    }
+
+    public double getPValue() {
+        Result result = last.get();
+        return result == null ? Double.NaN : result.pValue;
+    }
+
+    public double getScore() {
+        Result result = last.get();
+        return result == null ? Double.NaN : result.score;
+    }
+
+    public IndependenceTest indTestSubset(List<Node> vars) {
+        return test.indTestSubset(vars);
+    }
+
+    public List<Node> getVariables() {
+        return test.getVariables();
+    }
+
+    public Node getVariable(String name) {
+        return test.getVariable(name);
+    }
+
+    public List<String> getVariableNames() {
+        return test.getVariableNames();
+    }
+
+    public boolean determines(List<Node> z, Node y) {
+        if (tests == null) {
+            synchronized (test) {
+                return test.determines(z, y);
+            }
+        }
+
+        return localTest().determines(z, y);
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public void setAlpha(double alpha) {
+        this.alpha = alpha;
+
+        if (tests == null) {
+            synchronized (test) {
+                test.setAlpha(alpha);
+            }
+        }
+
+        cache.clear();
+    }
+
+    public DataModel getData() {
+        return test.getData();
+    }
+
+    public ICovarianceMatrix getCov() {
+        return test.getCov();
+    }
+
+    public List<DataSet> getDataSets() {
+        return test.getDataSets();
+    }
+
+    public int getSampleSize() {
+        return test.getSampleSize();
+    }
+
+    public List<TetradMatrix> getCovMatrices() {
+        return test.getCovMatrices();
+    }
+
+    public String toString() {
+        return test.toString();
+    }
+
+    // Tests a fact not yet cached, on the calling thread's test if there is one for
+    // each thread, otherwise on the single test, locked so that its p-value is read
+    // for this fact.
+    private Result test(Node x, Node y, List<Node> z) {
+        if (tests == null) {
+            synchronized (test) {
+                return result(test, x, y, z);
+            }
+        }
+
+        return result(localTest(), x, y, z);
+    }
+
+    private IndependenceTest localTest() {
+        IndependenceTest test = tests.get();
+        if (test.getAlpha() != alpha) test.setAlpha(alpha);
+        return test;
+    }
+
+    private static Result result(IndependenceTest test, Node x, Node y, List<Node> z) {
+        boolean independent = test.isIndependent(x, y, z);
+        return new Result(independent, test.getPValue(), score(test));
+    }
+
+    // Waits for the fact to be tested, if another thread is testing it. If the test
+    // failed the fact is dropped from the cache, so that it may be tested again.
+    private Result result(Fact fact, FutureTask<Result> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a test.", e);
+        } catch (ExecutionException e) {
+            cache.remove(fact, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // Not every test has a score.
+    private static double score(IndependenceTest test) {
+        try {
+            return test.getScore();
+        } catch (UnsupportedOperationException e) {
+            return Double.NaN;
+        }
+    }
+
+    // x _||_ y | z, with x and y in either order and z as a sorted set of indices.
+    private Fact fact(Node x, Node y, List<Node> z) {
+        int[] key = new int[z.size() + 2];
+        key[0] = Math.min(index(x), index(y));
+        key[1] = Math.max(index(x), index(y));
+
+        for (int i = 0; i < z.size(); i++) {
+            key[i + 2] = index(z.get(i));
+        }
+
+        Arrays.sort(key, 2, key.length);
+        return new Fact(key);
+    }
+
+    private int index(Node node) {
+        Integer index = indices.get(node);
+
+        if (index == null) {
+            throw new IllegalArgumentException("Not a variable of the test: " + node);
+        }
+
+        return index;
+    }
+
+    private static final class Fact {
+        private final int[] key;
+        private final int hash;
+
+        Fact(int[] key) {
+            this.key = key;
+            this.hash = Arrays.hashCode(key);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Fact && Arrays.equals(key, ((Fact) o).key);
+        }
+    }
+
+    private static final class Result {
+        private final boolean independent;
+        private final double pValue;
+        private final double score;
+
+        Result(boolean independent, double pValue, double score) {
+            this.independent = independent;
+            this.pValue = pValue;
+            this.score = score;
+        }
+    }
+}
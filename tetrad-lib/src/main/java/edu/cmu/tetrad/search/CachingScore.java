@@ -0,0 +1,185 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.SearchMetrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Wraps a score with a cache of its local scores that may be shared by searches
+ * running in several threads at once, so that each local score is computed once
+ * however many searches ask for it. Parents are cached as sets, in any order. The
+ * wrapped score is called concurrently, as FGES calls it, so it must be safe for
+ * that. Each method of Score is cached separately, since a score may compute
+ * them differently.
+ */
+public final class CachingScore implements Score {
+
+    // The methods of Score, which may differ in how they compute equivalent values, are
+    // cached separately.
+    private static final int SCORE = 0;
+    private static final int DIFF = 1;
+    private static final int DIFF_NO_Z = 2;
+    private static final int ONE_PARENT = 3;
+    private static final int NO_PARENTS = 4;
+
+    private static final int[] NONE = new int[0];
+
+    private final Score score;
+    private final ConcurrentMap<Key, Double> cache = new ConcurrentHashMap<>();
+    private final SearchMetrics metrics = SearchMetrics.current();
+
+    public CachingScore(Score score) {
+        if (score == null) throw new NullPointerException("Score may not be null.");
+        this.score = score;
+    }
+
+    /**
+     * @return The wrapped score.
+     */
+    public Score getScore() {
+        return score;
+    }
+
+    /**
+     * @return The number of distinct local scores and score differences cached so far.
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public double localScore(final int node, final int... parents) {
+        return cached(key(SCORE, node, -1, parents), new DoubleSupplier() {
+            public double getAsDouble() {
+                return score.localScore(node, parents);
+            }
+        });
+    }
+
+    public double localScoreDiff(final int x, final int y, final int[] z) {
+        return cached(key(DIFF, x, y, z), new DoubleSupplier() {
+            public double getAsDouble() {
+                return score.localScoreDiff(x, y, z);
+            }
+        });
+    }
+
+    public double localScoreDiff(final int x, final int y) {
+        return cached(key(DIFF_NO_Z, x, y, NONE), new DoubleSupplier() {
+            public double getAsDouble() {
+                return score.localScoreDiff(x, y);
+            }
+        });
+    }
+
+    public double localScore(final int node, final int parent) {
+        return cached(key(ONE_PARENT, node, parent, NONE), new DoubleSupplier() {
+            public double getAsDouble() {
+                return score.localScore(node, parent);
+            }
+        });
+    }
+
+    public double localScore(final int node) {
+        return cached(key(NO_PARENTS, node, -1, NONE), new DoubleSupplier() {
+            public double getAsDouble() {
+                return score.localScore(node);
+            }
+        });
+    }
+
+    public List<Node> getVariables() {
+        return score.getVariables();
+    }
+
+    public boolean isEffectEdge(double bump) {
+        return score.isEffectEdge(bump);
+    }
+
+    public int getSampleSize() {
+        return score.getSampleSize();
+    }
+
+    public Node getVariable(String targetName) {
+        return score.getVariable(targetName);
+    }
+
+    public int getMaxDegree() {
+        return score.getMaxDegree();
+    }
+
+    public boolean determines(List<Node> z, Node y) {
+        return score.determines(z, y);
+    }
+
+    public String toString() {
+        return score.toString();
+    }
+
+    private double cached(Key key, DoubleSupplier compute) {
+        Double value = cache.get(key);
+
+        if (value == null) {
+            value = compute.getAsDouble();
+            cache.putIfAbsent(key, value);
+        } else {
+            metrics.count(SearchMetrics.CACHE_HITS);
+        }
+
+        return value;
+    }
+
+    private static Key key(int type, int x, int y, int[] set) {
+        int[] key = new int[set.length + 3];
+        key[0] = type;
+        key[1] = x;
+        key[2] = y;
+        System.arraycopy(set, 0, key, 3, set.length);
+        Arrays.sort(key, 3, key.length);
+        return new Key(key);
+    }
+
+    private static final class Key {
+        private final int[] key;
+        private final int hash;
+
+        Key(int[] key) {
+            this.key = key;
+            this.hash = Arrays.hashCode(key);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(key, ((Key) o).key);
+        }
+    }
+}
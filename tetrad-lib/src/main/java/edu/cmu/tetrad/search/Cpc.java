@@ -303,12 +303,9 @@ public final class Cpc implements GraphSearch {
         SearchGraphUtils.pcOrientbk(knowledge, graph, nodes);
         orientUnshieldedTriples(knowledge);
 //            orientUnshieldedTriplesConcurrent(knowledge, getIndependenceTest(), getMaxIndegree());
-        MeekRules meekRules = new MeekRules();
-
-        meekRules.setAggressivelyPreventCycles(this.aggressivelyPreventCycles);
-        meekRules.setKnowledge(knowledge);
-
-        meekRules.orientImplied(graph);
+        MeekPropagator propagator = new MeekPropagator();
+        propagator.setKnowledge(knowledge);
+        propagator.orientImplied(graph);
 
         // Remove ambiguities whose status have been determined.
         Set<Triple> ambiguities = graph.getAmbiguousTriples();
@@ -242,10 +242,9 @@ public class DagToPattern {
         SearchGraphUtils.pcOrientbk(knowledge, graph, measured);
         SearchGraphUtils.orientCollidersUsingSepsets(this.sepsets, knowledge, graph, verbose, true);
 
-        MeekRules rules = new MeekRules();
-        rules.setAggressivelyPreventCycles(this.aggressivelyPreventCycles);
-        rules.setKnowledge(knowledge);
-        rules.orientImplied(graph);
+        MeekPropagator propagator = new MeekPropagator();
+        propagator.setKnowledge(knowledge);
+        propagator.orientImplied(graph);
 
         this.logger.log("graph", "\nReturning this graph: " + graph);
 
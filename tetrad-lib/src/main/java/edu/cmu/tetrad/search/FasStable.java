@@ -25,6 +25,7 @@ import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.SearchMetrics;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.io.PrintStream;
@@ -117,6 +118,11 @@ public class FasStable implements IFas {
      */
     private boolean verbose = false;
 
+    /**
+     * Times each depth of the search.
+     */
+    private SearchMetrics metrics = SearchMetrics.current();
+
     private PrintStream out = System.out;
 
     //==========================CONSTRUCTORS=============================//
@@ -169,6 +175,7 @@ public class FasStable implements IFas {
 
         for (int d = 0; d <= _depth; d++) {
             boolean more;
+            long start = System.nanoTime();
 
             if (d == 0) {
                 more = searchAtDepth0(nodes, test, adjacencies);
@@ -176,6 +183,8 @@ public class FasStable implements IFas {
                 more = searchAtDepth(nodes, test, adjacencies, d);
             }
 
+            metrics.time(SearchMetrics.skeletonDepth(d), System.nanoTime() - start);
+
             if (!more) {
                 break;
             }
@@ -221,6 +230,7 @@ public class FasStable implements IFas {
 
         for (int d = 0; d <= _depth; d++) {
             boolean more;
+            long start = System.nanoTime();
 
             if (d == 0) {
                 more = searchAtDepth0(nodes, test, adjacencies);
@@ -228,6 +238,8 @@ public class FasStable implements IFas {
                 more = searchAtDepth(nodes, test, adjacencies, d);
             }
 
+            metrics.time(SearchMetrics.skeletonDepth(d), System.nanoTime() - start);
+
             if (!more) {
                 break;
             }
@@ -494,6 +506,14 @@ public class FasStable implements IFas {
         this.verbose = verbose;
     }
 
+    /**
+     * Sets the metrics this search reports into; by default those current when it was constructed.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        if (metrics == null) throw new NullPointerException("Metrics may not be null.");
+        this.metrics = metrics;
+    }
+
     @Override
     public boolean isAggressivelyPreventCycles() {
         return false;
@@ -92,6 +92,11 @@ public class FasStableConcurrent implements IFas {
      */
     private boolean verbose = false;
 
+    /**
+     * Times each depth of the search.
+     */
+    private SearchMetrics metrics = SearchMetrics.current();
+
     // The concurrency pool.
     private ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
 
@@ -162,6 +167,7 @@ public class FasStableConcurrent implements IFas {
 
         for (int d = 0; d <= _depth; d++) {
             boolean more;
+            long start = System.nanoTime();
 
             if (d == 0) {
                 more = searchAtDepth0(nodes, test, adjacencies);
@@ -169,6 +175,8 @@ public class FasStableConcurrent implements IFas {
                 more = searchAtDepth(nodes, test, adjacencies, d);
             }
 
+            metrics.time(SearchMetrics.skeletonDepth(d), System.nanoTime() - start);
+
             if (!more) {
                 break;
             }
@@ -581,6 +589,14 @@ public class FasStableConcurrent implements IFas {
         this.verbose = verbose;
     }
 
+    /**
+     * Sets the metrics this search reports into; by default those current when it was constructed.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        if (metrics == null) throw new NullPointerException("Metrics may not be null.");
+        this.metrics = metrics;
+    }
+
     @Override
     public int getNumFalseDependenceJudgments() {
         return 0;
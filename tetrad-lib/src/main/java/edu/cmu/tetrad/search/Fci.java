@@ -29,11 +29,14 @@ import edu.cmu.tetrad.graph.Edge;
 import edu.cmu.tetrad.graph.Endpoint;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.SearchMetrics;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RecursiveTask;
 
 
 /**
@@ -108,6 +111,16 @@ public final class Fci implements GraphSearch {
      * True iff verbose output should be printed.
      */
     private boolean verbose = false;
+
+    /**
+     * Times the skeleton, possible-D-SEP and final orientation phases.
+     */
+    private SearchMetrics metrics = SearchMetrics.current();
+
+    /**
+     * True if the possible-D-SEP sepsets and the path searches of the final orientation should be found in parallel.
+     */
+    private boolean parallel = false;
     private Graph truePag;
     private ConcurrentMap<Node, Integer> hashIndices;
     private ICovarianceMatrix covarianceMatrix;
@@ -183,7 +196,9 @@ public final class Fci implements GraphSearch {
     }
 
     public Graph search() {
-        return search(new Fas(initialGraph, getIndependenceTest()));
+        Fas fas = new Fas(initialGraph, getIndependenceTest());
+        fas.setMetrics(metrics);
+        return search(fas);
     }
 
     public void setInitialGraph(Graph initialGraph) {
@@ -197,8 +212,10 @@ public final class Fci implements GraphSearch {
         fas.setKnowledge(getKnowledge());
         fas.setDepth(depth);
         fas.setVerbose(verbose);
+        long start = System.nanoTime();
         this.graph = fas.search();
         this.sepsets = fas.getSepsets();
+        metrics.time(SearchMetrics.SKELETON, System.nanoTime() - start);
 
         graph.reorientAllWith(Endpoint.CIRCLE);
 
@@ -208,20 +225,20 @@ public final class Fci implements GraphSearch {
         // The original FCI, with or without JiJi Zhang's orientation rules
         //        // Optional step: Possible Dsep. (Needed for correctness but very time consuming.)
         if (isPossibleDsepSearchDone()) {
+            start = System.nanoTime();
 //            long time1 = System.currentTimeMillis();
             new FciOrient(new SepsetsSet(this.sepsets, independenceTest)).ruleR0(graph);
 
-            for (Edge edge : new ArrayList<>(graph.getEdges())) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
-
-                Node x = edge.getNode1();
-                Node y = edge.getNode2();
+            List<Edge> edges = new ArrayList<>(graph.getEdges());
+            List<List<Node>> found = possibleDsepSepsets(sp, edges);
 
-                List<Node> sepset = sp.getSepset(x, y);
+            for (int i = 0; i < edges.size(); i++) {
+                List<Node> sepset = found.get(i);
 
                 if (sepset != null) {
+                    Node x = edges.get(i).getNode1();
+                    Node y = edges.get(i).getNode2();
+
                     graph.removeEdge(x, y);
                     sepsets.set(x, y, sepset);
 
@@ -250,6 +267,7 @@ public final class Fci implements GraphSearch {
 
             // Reorient all edges as o-o.
             graph.reorientAllWith(Endpoint.CIRCLE);
+            metrics.time(SearchMetrics.POSSIBLE_DSEP, System.nanoTime() - start);
         }
 
         // Step CI C (Zhang's step F3.)
@@ -265,9 +283,17 @@ public final class Fci implements GraphSearch {
 
         fciOrient.setCompleteRuleSetUsed(completeRuleSetUsed);
         fciOrient.setMaxPathLength(maxPathLength);
+        fciOrient.setParallel(parallel);
         fciOrient.setKnowledge(knowledge);
+        fciOrient.setMetrics(metrics);
+
+        start = System.nanoTime();
         fciOrient.ruleR0(graph);
+        metrics.time(SearchMetrics.COLLIDERS, System.nanoTime() - start);
+
+        start = System.nanoTime();
         fciOrient.doFinalOrientation(graph);
+        metrics.time(SearchMetrics.FINAL_ORIENTATION, System.nanoTime() - start);
         graph.setPag(true);
         return graph;
     }
@@ -276,6 +302,66 @@ public final class Fci implements GraphSearch {
         return this.sepsets;
     }
 
+    // Finds the possible-D-SEP sepsets of the edges, in parallel if parallel is set, all against the graph as it is
+    // before any of them is removed, so the result does not depend on the order of the edges.
+    private List<List<Node>> possibleDsepSepsets(final SepsetProducer sp, final List<Edge> edges) {
+        final List<List<Node>> found = new ArrayList<>(Collections.<List<Node>>nCopies(edges.size(), null));
+
+        if (!parallel) {
+            for (int i = 0; i < edges.size(); i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                Edge edge = edges.get(i);
+                found.set(i, sp.getSepset(edge.getNode1(), edge.getNode2()));
+            }
+
+            return found;
+        }
+
+        class Task extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+            private final int chunk = 20;
+
+            private Task(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            break;
+                        }
+
+                        Edge edge = edges.get(i);
+                        found.set(i, sp.getSepset(edge.getNode1(), edge.getNode2()));
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    Task left = new Task(from, mid);
+                    Task right = new Task(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new Task(0, edges.size()));
+        return found;
+    }
+
     public IKnowledge getKnowledge() {
         return knowledge;
     }
@@ -319,6 +405,19 @@ public final class Fci implements GraphSearch {
         return maxPathLength == Integer.MAX_VALUE ? -1 : maxPathLength;
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallel True if the possible-D-SEP sepsets and the path searches of the final orientation should be
+     *                 found in parallel. False by default; the independence test must be safe to call from several
+     *                 threads to turn this on.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * @param maxPathLength the maximum length of any discriminating path, or -1 if unlimited.
      */
@@ -341,6 +440,22 @@ public final class Fci implements GraphSearch {
         this.verbose = verbose;
     }
 
+    /**
+     * @return the metrics this search reports into; by default those current when it was constructed.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics this search reports into. The default adjacency search is
+     * given them as well.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        if (metrics == null) throw new NullPointerException("Metrics may not be null.");
+        this.metrics = metrics;
+    }
+
     /**
      * The independence test.
      */
@@ -27,9 +27,12 @@ import edu.cmu.tetrad.graph.Endpoint;
 import edu.cmu.tetrad.graph.Graph;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.SearchMetrics;
 import edu.cmu.tetrad.util.TetradLogger;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Extends Erin Korber's implementation of the Fast Causal Inference algorithm
@@ -42,6 +45,15 @@ import java.util.*;
  * doFinalOrientation() with methods for Zhang's rules R5-R10 which implements
  * the augmented search. (By a remark of Zhang's, the rule applications can be
  * staged in this way.)
+ * <p>
+ * The searches for discriminating paths (R4) and for the paths of R8-R10 are
+ * done for all candidate triples or pairs at once against a copy of the graph
+ * (see PagPaths); the orientations found are then made in order, each if the
+ * edge is still unoriented there. With setParallel(true) the searches are run
+ * in parallel; the discriminating path searches then call the SepsetProducer,
+ * and so the independence test, from several threads, which must be safe. Rule by rule this is a
+ * different order of orientation than one at a time, but it is repeated to a
+ * fixed point in the same way.
  *
  * @author Erin Korber, June 2004
  * @author Alex Smith, December 2008
@@ -71,8 +83,8 @@ public final class FciOrient {
     private boolean possibleDsepSearchDone = true;
 
     /**
-     * The maximum length for any discriminating path. -1 if unlimited;
-     * otherwise, a positive integer.
+     * The maximum length for any discriminating path or uncovered potentially
+     * directed path. -1 if unlimited; otherwise, a positive integer.
      */
     private int maxPathLength = -1;
 
@@ -93,6 +105,16 @@ public final class FciOrient {
     private Graph dag;
     private boolean skipDiscriminatingPathRule;
 
+    /**
+     * True if the path searches should be run in parallel.
+     */
+    private boolean parallel = false;
+
+    /**
+     * Times the discriminating path rule and rules R5-R10.
+     */
+    private SearchMetrics metrics = SearchMetrics.current();
+
     //============================CONSTRUCTORS============================//
     /**
      * Constructs a new FCI search for the given independence test and
@@ -308,6 +330,8 @@ public final class FciOrient {
         }
 
         if (isCompleteRuleSetUsed()) {
+            long start = System.nanoTime();
+
             // Now, by a remark on page 100 of Zhang's dissertation, we apply rule
             // R5 once.
             ruleR5(graph);
@@ -337,6 +361,7 @@ public final class FciOrient {
                 rulesR8R9R10(graph);
             }
 
+            metrics.time(SearchMetrics.COMPLETE_RULE_SET, System.nanoTime() - start);
         }
     }
 
@@ -736,9 +761,10 @@ public final class FciOrient {
             return;
         }
 
-        List<Node> nodes = graph.getNodes();
+        long start = System.nanoTime();
+        final List<Node[]> triples = new ArrayList<>();
 
-        for (Node b : nodes) {
+        for (Node b : graph.getNodes()) {
             if (Thread.currentThread().isInterrupted()) {
                 break;
             }
@@ -749,27 +775,253 @@ public final class FciOrient {
             List<Node> possC = graph.getNodesInTo(b, Endpoint.CIRCLE);
 
             for (Node a : possA) {
+                for (Node c : possC) {
+                    if (!graph.isParentOf(a, c)) {
+                        continue;
+                    }
+
+                    if (graph.getEndpoint(b, c) != Endpoint.ARROW) {
+                        continue;
+                    }
+
+                    triples.add(new Node[]{a, b, c});
+                }
+            }
+        }
+
+        if (dag != null) {
+            for (Node[] triple : triples) {
                 if (Thread.currentThread().isInterrupted()) {
                     break;
                 }
 
-                for (Node c : possC) {
-                    if (Thread.currentThread().isInterrupted()) {
-                        break;
+                ddpOrient(triple[0], triple[1], triple[2], graph);
+            }
+        } else {
+            final PagPaths paths = new PagPaths(graph);
+            final Ddp[] found = new Ddp[triples.size()];
+
+            forEach(triples.size(), new Body() {
+                public void apply(int i) {
+                    Node[] triple = triples.get(i);
+                    found[i] = findDdp(triple[0], triple[1], triple[2], paths, graph);
+                }
+            });
+
+            for (int i = 0; i < triples.size(); i++) {
+                if (found[i] != null) {
+                    Node[] triple = triples.get(i);
+                    orientDdp(found[i], triple[0], triple[1], triple[2], graph);
+                }
+            }
+        }
+
+        metrics.time(SearchMetrics.DISCRIMINATING_PATHS, System.nanoTime() - start);
+    }
+
+    // The orientation a discriminating path calls for.
+    private static class Ddp {
+        private final Node d;
+        private final boolean collider;
+
+        private Ddp(Node d, boolean collider) {
+            this.d = d;
+            this.collider = collider;
+        }
+    }
+
+    /**
+     * Searches back from a for a discriminating path for b, as ddpOrient does,
+     * but in the given copy of the graph and without orienting; returns the
+     * orientation called for, or null if none is found.
+     */
+    private Ddp findDdp(Node _a, Node _b, Node _c, PagPaths paths, Graph graph) {
+        int a = paths.index(_a);
+        int b = paths.index(_b);
+        int c = paths.index(_c);
+        int n = paths.getNodes().size();
+
+        int[] previous = new int[n];
+        int[] length = new int[n];
+        boolean[] visited = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+
+        Arrays.fill(previous, -1);
+        queue[tail++] = a;
+        visited[a] = true;
+        visited[b] = true;
+        previous[a] = b;
+        length[a] = 1;
+
+        while (head < tail) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            int t = queue[head++];
+
+            if (maxPathLength != -1 && length[t] >= maxPathLength) {
+                continue;
+            }
+
+            // Each d *-> t must make t a collider with the node before it, p *-> t.
+            if (paths.getEndpoint(previous[t], t) != Endpoint.ARROW) {
+                continue;
+            }
+
+            for (int d : paths.adjacent(t)) {
+                if (visited[d] || paths.getEndpoint(d, t) != Endpoint.ARROW) continue;
+
+                previous[d] = t;
+
+                if (!paths.isAdjacent(d, c)) {
+                    List<Node> path = new ArrayList<>();
+
+                    for (int q = t; q != -1; q = previous[q]) {
+                        path.add(paths.node(q));
                     }
 
-                    if (!graph.isParentOf(a, c)) {
-                        continue;
+                    Node _d = paths.node(d);
+                    Boolean collider = ddpCollider(_d, _a, _b, _c, path, graph);
+
+                    if (collider != null) {
+                        return new Ddp(_d, collider);
                     }
+                }
 
-                    if (graph.getEndpoint(b, c) != Endpoint.ARROW) {
-                        continue;
+                // d --> c
+                if (paths.getEndpoint(c, d) == Endpoint.TAIL && paths.getEndpoint(d, c) == Endpoint.ARROW) {
+                    queue[tail++] = d;
+                    visited[d] = true;
+                    length[d] = length[t] + 1;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Decides, as doDdpOrientation does, whether b is a collider on the
+     * discriminating path from d; null if it cannot be decided.
+     */
+    private Boolean ddpCollider(Node d, Node a, Node b, Node c, List<Node> path, Graph graph) {
+        boolean ind = getSepsets().isIndependent(d, c, path);
+
+        List<Node> path2 = new ArrayList<>(path);
+        path2.remove(b);
+
+        boolean ind2 = getSepsets().isIndependent(d, c, path2);
+
+        if (!ind && !ind2) {
+            List<Node> sepset = getSepsets().getSepset(d, c);
+
+            if (sepset == null) {
+                return null;
+            }
+
+            ind = sepset.contains(b);
+        }
+
+        if (ind) {
+            return false;
+        }
+
+        if (!isArrowpointAllowed(a, b, graph) || !isArrowpointAllowed(c, b, graph)) {
+            return null;
+        }
+
+        return true;
+    }
+
+    // Makes the orientation found for the discriminating path, if b o-* c is still unoriented at b.
+    private void orientDdp(Ddp ddp, Node a, Node b, Node c, Graph graph) {
+        if (graph.getEndpoint(c, b) != Endpoint.CIRCLE) {
+            return;
+        }
+
+        if (!ddp.collider) {
+            graph.setEndpoint(c, b, Endpoint.TAIL);
+
+            if (verbose) {
+                logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("Definite discriminating path d = " + ddp.d, graph.getEdge(b, c)));
+                out.println(SearchLogUtils.edgeOrientedMsg("Definite discriminating path d = " + ddp.d, graph.getEdge(b, c)));
+            }
+        } else {
+            if (!isArrowpointAllowed(a, b, graph) || !isArrowpointAllowed(c, b, graph)) {
+                return;
+            }
+
+            graph.setEndpoint(a, b, Endpoint.ARROW);
+            graph.setEndpoint(c, b, Endpoint.ARROW);
+
+            if (verbose) {
+                logger.log("impliedOrientations", SearchLogUtils.colliderOrientedMsg("Definite discriminating path.. d = " + ddp.d, a, b, c));
+                out.println(SearchLogUtils.colliderOrientedMsg("Definite discriminating path.. d = " + ddp.d, a, b, c));
+            }
+        }
+
+        changeFlag = true;
+    }
+
+    private interface Body {
+        void apply(int i);
+    }
+
+    // Applies the body to 0, ..., n - 1, on the shared pool if parallel is set.
+    private void forEach(int n, final Body body) {
+        if (!parallel) {
+            for (int i = 0; i < n; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                body.apply(i);
+            }
+
+            return;
+        }
+
+        class Task extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+            private final int chunk = 20;
+
+            private Task(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            break;
+                        }
+
+                        body.apply(i);
                     }
 
-                    ddpOrient(a, b, c, graph);
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    Task left = new Task(from, mid);
+                    Task right = new Task(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
                 }
             }
         }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new Task(0, n));
     }
 
     /**
@@ -1089,36 +1341,47 @@ public final class FciOrient {
      * Ao->C in the graph.
      */
     public void rulesR8R9R10(Graph graph) {
-        List<Node> nodes = graph.getNodes();
+        final List<Node[]> pairs = new ArrayList<>();
 
-        for (Node c : nodes) {
-            if (Thread.currentThread().isInterrupted()) {
-                break;
+        for (Node c : graph.getNodes()) {
+            for (Node a : graph.getNodesInTo(c, Endpoint.ARROW)) {
+                if (graph.getEndpoint(c, a) == Endpoint.CIRCLE) {
+                    // We know Ao->C.
+                    pairs.add(new Node[]{a, c});
+                }
             }
+        }
 
-            List<Node> intoCArrows = graph.getNodesInTo(c, Endpoint.ARROW);
+        final PagPaths paths = new PagPaths(graph);
+        final String[] found = new String[pairs.size()];
 
-            for (Node a : intoCArrows) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+        forEach(pairs.size(), new Body() {
+            public void apply(int i) {
+                int a = paths.index(pairs.get(i)[0]);
+                int c = paths.index(pairs.get(i)[1]);
 
-                if (!(graph.getEndpoint(c, a) == Endpoint.CIRCLE)) {
-                    continue;
+                // Try each of R8, R9, R10 in that order, stopping ASAP.
+                if (ruleR8(a, c, paths)) {
+                    found[i] = "R8";
+                } else if (ruleR9(a, c, paths)) {
+                    found[i] = "R9";
+                } else if (ruleR10(a, c, paths)) {
+                    found[i] = "R10";
                 }
-                // We know Ao->C.
+            }
+        });
 
-                // Try each of R8, R9, R10 in that order, stopping ASAP.
-                if (!ruleR8(a, c, graph)) {
-                    boolean b = ruleR9(a, c, graph);
+        for (int i = 0; i < pairs.size(); i++) {
+            Node a = pairs.get(i)[0];
+            Node c = pairs.get(i)[1];
 
-                    if (!b) {
-                        ruleR10(a, c, graph);
-                    }
-                }
+            if (found[i] != null && graph.getEndpoint(c, a) == Endpoint.CIRCLE) {
+                logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg(found[i], graph.getEdge(c, a)));
+
+                graph.setEndpoint(c, a, Endpoint.TAIL);
+                changeFlag = true;
             }
         }
-
     }
 
     /**
@@ -1256,45 +1519,30 @@ public final class FciOrient {
      * Tries to apply Zhang's rule R8 to a pair of nodes A and C which are
      * assumed to be such that Ao->C.
      * <p>
-     * MAY HAVE WEIRD EFFECTS ON ARBITRARY NODE PAIRS.
-     * <p>
      * R8: If Ao->C and A-->B-->C or A--oB-->C, then A-->C.
      *
-     * @param a The node A.
-     * @param c The node C.
-     * @return Whether or not R8 was successfully applied.
+     * @return Whether or not R8 applies.
      */
-    private boolean ruleR8(Node a, Node c, Graph graph) {
-        List<Node> intoCArrows = graph.getNodesInTo(c, Endpoint.ARROW);
-
-        for (Node b : intoCArrows) {
-            // We have B*->C.
-            if (!graph.isAdjacentTo(a, b)) {
-                continue;
-            }
-            if (!graph.isAdjacentTo(b, c)) {
+    private boolean ruleR8(int a, int c, PagPaths paths) {
+        for (int b : paths.adjacent(c)) {
+            if (b == a || !paths.isAdjacent(a, b)) {
                 continue;
             }
 
-            // We have A*-*B*->C.
-            if (!(graph.getEndpoint(b, a) == Endpoint.TAIL)) {
-                continue;
-            }
-            if (!(graph.getEndpoint(c, b) == Endpoint.TAIL)) {
+            // We have A*-*B-->C.
+            if (paths.getEndpoint(b, c) != Endpoint.ARROW || paths.getEndpoint(c, b) != Endpoint.TAIL) {
                 continue;
             }
-            // We have A--*B-->C.
 
-            if (graph.getEndpoint(a, b) == Endpoint.TAIL) {
+            // We have A--*B-->C.
+            if (paths.getEndpoint(b, a) != Endpoint.TAIL) {
                 continue;
             }
-            // We have A-->B-->C or A--oB-->C: R8 applies!
 
-            logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("R8", graph.getEdge(c, a)));
-
-            graph.setEndpoint(c, a, Endpoint.TAIL);
-            changeFlag = true;
-            return true;
+            // We have A-->B-->C or A--oB-->C: R8 applies!
+            if (paths.getEndpoint(a, b) != Endpoint.TAIL) {
+                return true;
+            }
         }
 
         return false;
@@ -1304,33 +1552,20 @@ public final class FciOrient {
      * Tries to apply Zhang's rule R9 to a pair of nodes A and C which are
      * assumed to be such that Ao->C.
      * <p>
-     * MAY HAVE WEIRD EFFECTS ON ARBITRARY NODE PAIRS.
-     * <p>
      * R9: If Ao->C and there is an uncovered p.d. path u=<A,B,..,C> such that
      * C,B nonadjacent, then A-->C.
      *
-     * @param a The node A.
-     * @param c The node C.
-     * @return Whether or not R9 was succesfully applied.
+     * @return Whether or not R9 applies.
      */
-    private boolean ruleR9(Node a, Node c, Graph graph) {
-        List<List<Node>> ucPdPsToC = getUcPdPaths(a, c, graph);
-
-        for (List<Node> u : ucPdPsToC) {
-            Node b = u.get(1);
-            if (graph.isAdjacentTo(b, c)) {
-                continue;
-            }
-            if (b == c) {
+    private boolean ruleR9(int a, int c, PagPaths paths) {
+        for (int b : paths.adjacent(a)) {
+            if (b == c || paths.isAdjacent(b, c)) {
                 continue;
             }
-            // We know u is as required: R9 applies!
 
-            logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("R9", graph.getEdge(c, a)));
-
-            graph.setEndpoint(c, a, Endpoint.TAIL);
-            changeFlag = true;
-            return true;
+            if (paths.existsUncoveredPdPath(a, b, c, maxPathLength)) {
+                return true;
+            }
         }
 
         return false;
@@ -1340,75 +1575,44 @@ public final class FciOrient {
      * Tries to apply Zhang's rule R10 to a pair of nodes A and C which are
      * assumed to be such that Ao->C.
      * <p>
-     * MAY HAVE WEIRD EFFECTS ON ARBITRARY NODE PAIRS.
-     * <p>
      * R10: If Ao->C, B-->C<--D, there is an uncovered p.d. path u1=<A,M,...,B>
      * and an uncovered p.d. path u2=
      * <A,N,...,D> with M != N and M,N nonadjacent then A-->C.
      *
-     * @param a The node A.
-     * @param c The node C.
-     * @return Whether or not R10 was successfully applied.
+     * @return Whether or not R10 applies.
      */
-    private boolean ruleR10(Node a, Node c, Graph graph) {
-        List<Node> intoCArrows = graph.getNodesInTo(c, Endpoint.ARROW);
-
-        for (Node b : intoCArrows) {
-            if (Thread.currentThread().isInterrupted()) {
-                break;
-            }
+    private boolean ruleR10(int a, int c, PagPaths paths) {
+        List<Integer> into = new ArrayList<>();
 
-            if (b == a) {
-                continue;
-            }
-
-            if (!(graph.getEndpoint(c, b) == Endpoint.TAIL)) {
-                continue;
+        // B-->C
+        for (int b : paths.adjacent(c)) {
+            if (b != a && paths.getEndpoint(b, c) == Endpoint.ARROW && paths.getEndpoint(c, b) == Endpoint.TAIL) {
+                into.add(b);
             }
-            // We know Ao->C and B-->C.
-
-            for (Node d : intoCArrows) {
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
+        }
 
-                if (d == a || d == b) {
-                    continue;
-                }
+        if (into.size() < 2) {
+            return false;
+        }
 
-                if (!(graph.getEndpoint(d, c) == Endpoint.TAIL)) {
-                    continue;
-                }
-                // We know Ao->C and B-->C<--D.
+        // The second nodes of the uncovered p.d. paths from A to each B.
+        Map<Integer, BitSet> second = new HashMap<>();
 
-                List<List<Node>> ucPdPsToB = getUcPdPaths(a, b, graph);
-                List<List<Node>> ucPdPsToD = getUcPdPaths(a, d, graph);
-                for (List<Node> u1 : ucPdPsToB) {
-                    if (Thread.currentThread().isInterrupted()) {
-                        break;
-                    }
+        for (int b : into) {
+            second.put(b, paths.getUncoveredPdSecondNodes(a, b, maxPathLength));
+        }
 
-                    Node m = u1.get(1);
-                    for (List<Node> u2 : ucPdPsToD) {
-                        if (Thread.currentThread().isInterrupted()) {
-                            break;
-                        }
+        for (int i = 0; i < into.size(); i++) {
+            BitSet u1 = second.get(into.get(i));
 
-                        Node n = u2.get(1);
+            for (int j = i + 1; j < into.size(); j++) {
+                BitSet u2 = second.get(into.get(j));
 
-                        if (m.equals(n)) {
-                            continue;
+                for (int m = u1.nextSetBit(0); m >= 0; m = u1.nextSetBit(m + 1)) {
+                    for (int n = u2.nextSetBit(0); n >= 0; n = u2.nextSetBit(n + 1)) {
+                        if (m != n && !paths.isAdjacent(m, n)) {
+                            return true;
                         }
-                        if (graph.isAdjacentTo(m, n)) {
-                            continue;
-                        }
-                        // We know B,D,u1,u2 as required: R10 applies!
-
-                        logger.log("impliedOrientations", SearchLogUtils.edgeOrientedMsg("R10", graph.getEdge(c, a)));
-
-                        graph.setEndpoint(c, a, Endpoint.TAIL);
-                        changeFlag = true;
-                        return true;
                     }
                 }
             }
@@ -1529,8 +1733,9 @@ public final class FciOrient {
     }
 
     /**
-     * @param maxPathLength the maximum length of any discriminating path, or -1
-     * if unlimited.
+     * @param maxPathLength the maximum length of any discriminating path, or of
+     * the uncovered potentially directed paths of R9 and R10, or -1 if
+     * unlimited.
      */
     public void setMaxPathLength(int maxPathLength) {
         if (maxPathLength < -1) {
@@ -1540,6 +1745,20 @@ public final class FciOrient {
         this.maxPathLength = maxPathLength;
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallel True if the searches for discriminating paths and for the
+     * paths of R8-R10 should be run in parallel. False by default, since the
+     * discriminating path searches call the SepsetProducer, and so the
+     * independence test, which must then be safe to call from several threads.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * True iff verbose output should be printed.
      */
@@ -1585,4 +1804,16 @@ public final class FciOrient {
         this.out = out;
     }
 
+    /**
+     * @return the metrics this reports into; by default those current when it was constructed.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(SearchMetrics metrics) {
+        if (metrics == null) throw new NullPointerException("Metrics may not be null.");
+        this.metrics = metrics;
+    }
+
 }
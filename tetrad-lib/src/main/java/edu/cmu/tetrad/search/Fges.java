@@ -24,6 +24,7 @@ import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
 import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.SearchMetrics;
 import edu.cmu.tetrad.util.TaskManager;
 import edu.cmu.tetrad.util.TetradLogger;
 import java.io.PrintStream;
@@ -67,6 +68,11 @@ public final class Fges implements GraphSearch, GraphScorer {
      */
     private IKnowledge knowledge = new Knowledge2();
 
+    /**
+     * The knowledge compiled for the variables, at the start of the search.
+     */
+    private KnowledgeIndex knowledgeIndex;
+
     /**
      * List of variables in the data set, in order.
      */
@@ -124,6 +130,14 @@ public final class Fges implements GraphSearch, GraphScorer {
      */
     private boolean verbose = false;
 
+    /**
+     * Counts edge insertions and deletions and times the forward, backward and Meek phases.
+     */
+    private SearchMetrics metrics = SearchMetrics.current();
+
+    // Applies the Meek rules after each insert or delete, keeping its node numbering between calls.
+    private final MeekPropagator propagator = new MeekPropagator();
+
     // Potential arrows sorted by bump high to low. The first one is a candidate for adding to the graph.
     private SortedSet<Arrow> sortedArrows = null;
 
@@ -223,6 +237,9 @@ public final class Fges implements GraphSearch, GraphScorer {
     public Graph search() {
         topGraphs.clear();
 
+        // The knowledge may have been edited since it was set.
+        knowledgeIndex = knowledge.getIndex(variables);
+
         lookupArrows = new ConcurrentHashMap<>();
         final List<Node> nodes = new ArrayList<>(variables);
         graph = new EdgeListGraphSingleConnections(nodes);
@@ -300,6 +317,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             throw new NullPointerException();
         }
         this.knowledge = knowledge;
+        this.knowledgeIndex = knowledge.getIndex(variables);
     }
 
     public long getElapsedTime() {
@@ -382,6 +400,21 @@ public final class Fges implements GraphSearch, GraphScorer {
         this.verbose = verbose;
     }
 
+    /**
+     * @return the metrics this search reports into; by default those current when it was constructed.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics this search reports into.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        if (metrics == null) throw new NullPointerException("Metrics may not be null.");
+        this.metrics = metrics;
+    }
+
     /**
      * Sets the output stream that output (except for log output) should be sent
      * to. By detault System.out.
@@ -534,6 +567,7 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
 
         buildIndexing(totalScore.getVariables());
+        this.knowledgeIndex = knowledge.getIndex(variables);
 
         this.maxDegree = score.getMaxDegree();
     }
@@ -569,11 +603,13 @@ public final class Fges implements GraphSearch, GraphScorer {
                 Node y = nodes.get(i);
                 neighbors.put(y, emptySet);
 
-                for (int j = i + 1; j < nodes.size() && !Thread.currentThread().isInterrupted(); j++) {
-                    Node x = nodes.get(j);
+                for (Node x : laterCandidates(i, nodes)) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
 
                     if (existsKnowledge()) {
-                        if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                        if (knowledgeIndex.isForbidden(x, y) && knowledgeIndex.isForbidden(y, x)) {
                             continue;
                         }
 
@@ -595,10 +631,6 @@ public final class Fges implements GraphSearch, GraphScorer {
                         bump = bump > bump2 ? bump : bump2;
                     }
 
-                    if (boundGraph != null && !boundGraph.isAdjacentTo(x, y)) {
-                        continue;
-                    }
-
                     if (bump > 0) {
                         final Edge edge = Edges.undirectedEdge(x, y);
                         effectEdgesGraph.addEdge(edge);
@@ -615,6 +647,34 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
     }
 
+    // The nodes after the i'th that may become adjacent to it, in order: all of them, or if there is a
+    // bound graph just its neighbors there, so that a sparse bound graph keeps this step sparse.
+    private List<Node> laterCandidates(int i, List<Node> nodes) {
+        if (boundGraph == null) {
+            return nodes.subList(i + 1, nodes.size());
+        }
+
+        Node y = nodes.get(i);
+        int k = hashIndices.get(y);
+        List<Node> candidates = new ArrayList<>();
+
+        for (Node x : boundGraph.getAdjacentNodes(y)) {
+            Integer j = hashIndices.get(x);
+
+            if (j != null && j > k && x.getNodeType() == NodeType.MEASURED) {
+                candidates.add(x);
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<Node>() {
+            public int compare(Node o1, Node o2) {
+                return Integer.compare(hashIndices.get(o1), hashIndices.get(o2));
+            }
+        });
+
+        return candidates;
+    }
+
     private void initializeForwardEdgesFromEmptyGraph(final List<Node> nodes) {
 //        if (verbose) {
 //            System.out.println("heuristicSpeedup = true");
@@ -761,7 +821,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                             }
 
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                if (knowledgeIndex.isForbidden(x, y) && knowledgeIndex.isForbidden(y, x)) {
                                     continue;
                                 }
 
@@ -870,7 +930,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                             }
 
                             if (existsKnowledge()) {
-                                if (getKnowledge().isForbidden(x.getName(), y.getName()) && getKnowledge().isForbidden(y.getName(), x.getName())) {
+                                if (knowledgeIndex.isForbidden(x, y) && knowledgeIndex.isForbidden(y, x)) {
                                     continue;
                                 }
 
@@ -911,6 +971,8 @@ public final class Fges implements GraphSearch, GraphScorer {
             TetradLogger.getInstance().log("info", "** FORWARD EQUIVALENCE SEARCH");
         }
 
+        long start = System.nanoTime();
+
         int maxDegree = this.maxDegree == -1 ? 1000 : this.maxDegree;
 
         while (!sortedArrows.isEmpty()) {
@@ -971,6 +1033,8 @@ public final class Fges implements GraphSearch, GraphScorer {
             storeGraph();
             reevaluateForward(toProcess, arrow);
         }
+
+        metrics.time(SearchMetrics.FORWARD, System.nanoTime() - start);
     }
 
     private void bes() {
@@ -978,6 +1042,8 @@ public final class Fges implements GraphSearch, GraphScorer {
             TetradLogger.getInstance().log("info", "** BACKWARD EQUIVALENCE SEARCH");
         }
 
+        long start = System.nanoTime();
+
         sortedArrows = new ConcurrentSkipListSet<>();
         lookupArrows = new ConcurrentHashMap<>();
         neighbors = new ConcurrentHashMap<>();
@@ -1048,6 +1114,8 @@ public final class Fges implements GraphSearch, GraphScorer {
             reevaluateBackward(toProcess);
         }
 
+        metrics.time(SearchMetrics.BACKWARD, System.nanoTime() - start);
+
 //        meekOrientRestricted(getVariables(), getKnowledge());
     }
 
@@ -1071,7 +1139,7 @@ public final class Fges implements GraphSearch, GraphScorer {
 
     // Returns true if knowledge is not empty.
     private boolean existsKnowledge() {
-        return !knowledge.isEmpty();
+        return !knowledgeIndex.isEmpty();
     }
 
     // Initiaizes the sorted arrows lists for the backward search.
@@ -1081,7 +1149,7 @@ public final class Fges implements GraphSearch, GraphScorer {
             Node y = edge.getNode2();
 
             if (existsKnowledge()) {
-                if (!getKnowledge().noEdgeRequired(x.getName(), y.getName())) {
+                if ((knowledgeIndex.isRequired(x, y) || knowledgeIndex.isRequired(y, x))) {
                     continue;
                 }
             }
@@ -1207,7 +1275,7 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
 
         if (existsKnowledge()) {
-            if (getKnowledge().isForbidden(a.getName(), b.getName())) {
+            if (knowledgeIndex.isForbidden(a, b)) {
                 return;
             }
         }
@@ -1346,7 +1414,7 @@ public final class Fges implements GraphSearch, GraphScorer {
     // Calculates the arrows for the removal in the backward direction.
     private void calculateArrowsBackward(Node a, Node b) {
         if (existsKnowledge()) {
-            if (!getKnowledge().noEdgeRequired(a.getName(), b.getName())) {
+            if ((knowledgeIndex.isRequired(a, b) || knowledgeIndex.isRequired(b, a))) {
                 return;
             }
         }
@@ -1538,6 +1606,7 @@ public final class Fges implements GraphSearch, GraphScorer {
         }
 
         graph.addDirectedEdge(x, y);
+        metrics.count(SearchMetrics.EDGES_ADDED);
 
         if (verbose) {
             String label = trueGraph != null && trueEdge != null ? "*" : "";
@@ -1598,6 +1667,7 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         graph.removeEdge(oldxy);
         removedEdges.add(Edges.undirectedEdge(x, y));
+        metrics.count(SearchMetrics.EDGES_REMOVED);
 
 //        if (verbose) {
         int numEdges = graph.getNumEdges();
@@ -1655,12 +1725,12 @@ public final class Fges implements GraphSearch, GraphScorer {
         boolean violatesKnowledge = false;
 
         if (existsKnowledge()) {
-            if (knowledge.isForbidden(x.getName(), y.getName())) {
+            if (knowledgeIndex.isForbidden(x, y)) {
                 violatesKnowledge = true;
             }
 
             for (Node t : T) {
-                if (knowledge.isForbidden(t.getName(), y.getName())) {
+                if (knowledgeIndex.isForbidden(t, y)) {
                     violatesKnowledge = true;
                 }
             }
@@ -1678,11 +1748,11 @@ public final class Fges implements GraphSearch, GraphScorer {
 
         if (existsKnowledge()) {
             for (Node h : H) {
-                if (knowledge.isForbidden(x.getName(), h.getName())) {
+                if (knowledgeIndex.isForbidden(x, h)) {
                     violatesKnowledge = true;
                 }
 
-                if (knowledge.isForbidden(y.getName(), h.getName())) {
+                if (knowledgeIndex.isForbidden(y, h)) {
                     violatesKnowledge = true;
                 }
             }
@@ -1740,7 +1810,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                     }
                 }
 
-                if (!graph.isChildOf(nodeA, nodeB) && getKnowledge().isForbidden(nodeA.getName(), nodeB.getName())) {
+                if (!graph.isChildOf(nodeA, nodeB) && knowledgeIndex.isForbidden(nodeA, nodeB)) {
                     if (!graph.isAncestorOf(nodeA, nodeB)) {
                         graph.removeEdges(nodeA, nodeB);
                         graph.addDirectedEdge(nodeB, nodeA);
@@ -1767,7 +1837,7 @@ public final class Fges implements GraphSearch, GraphScorer {
                         }
                     }
                 }
-                if (!graph.isChildOf(nodeA, nodeB) && getKnowledge().isForbidden(nodeA.getName(), nodeB.getName())) {
+                if (!graph.isChildOf(nodeA, nodeB) && knowledgeIndex.isForbidden(nodeA, nodeB)) {
                     if (!graph.isAncestorOf(nodeA, nodeB)) {
                         graph.removeEdges(nodeA, nodeB);
                         graph.addDirectedEdge(nodeB, nodeA);
@@ -1786,7 +1856,7 @@ public final class Fges implements GraphSearch, GraphScorer {
     // forbidden.
     private boolean validSetByKnowledge(Node y, Set<Node> subset) {
         for (Node node : subset) {
-            if (getKnowledge().isForbidden(node.getName(), y.getName())) {
+            if (knowledgeIndex.isForbidden(node, y)) {
                 return false;
             }
         }
@@ -1906,19 +1976,18 @@ public final class Fges implements GraphSearch, GraphScorer {
 
     // Runs Meek rules on just the changed adj.
     private Set<Node> meekOrientRestricted(List<Node> nodes, IKnowledge knowledge) {
-        MeekRules rules = new MeekRules();
-        rules.setKnowledge(knowledge);
-        rules.setUndirectUnforcedEdges(true);
-        rules.orientImplied(graph, nodes);
-        return rules.getVisited();
+        long start = System.nanoTime();
+        propagator.setKnowledge(knowledge);
+        propagator.setUndirectUnforcedEdges(true);
+        propagator.orientImplied(graph, nodes);
+        metrics.time(SearchMetrics.MEEK, System.nanoTime() - start);
+        return propagator.getVisited();
     }
 
     private void orientNodeAway(Node node) {
-        MeekRules rules = new MeekRules();
-        rules.setKnowledge(knowledge);
-//        rules.setUndirectUnforcedEdges(true);
-        rules.orientImplied(graph, Collections.singletonList(node));
-//        return rules.getVisited();
+        propagator.setKnowledge(knowledge);
+        propagator.setUndirectUnforcedEdges(false);
+        propagator.orientImplied(graph, Collections.singletonList(node));
 
     }
 
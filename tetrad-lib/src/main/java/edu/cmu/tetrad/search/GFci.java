@@ -23,6 +23,7 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.SearchMetrics;
 import edu.cmu.tetrad.util.TetradLogger;
 import java.io.PrintStream;
 import java.util.Iterator;
@@ -62,6 +63,14 @@ public final class GFci implements GraphSearch {
     // True iff verbose output should be printed.
     private boolean verbose = false;
 
+    // True if the path searches of the final orientation should be run in parallel.
+    private boolean parallel = false;
+
+    /**
+     * Times the skeleton, collider and final orientation phases; FGES reports its own phases into these as well.
+     */
+    private SearchMetrics metrics = SearchMetrics.current();
+
     // The covariance matrix beign searched over. Assumes continuous data.
     ICovarianceMatrix covarianceMatrix;
 
@@ -108,9 +117,12 @@ public final class GFci implements GraphSearch {
         fges.setFaithfulnessAssumed(faithfulnessAssumed);
         fges.setMaxDegree(maxDegree);
         fges.setOut(out);
+        fges.setMetrics(metrics);
         graph = fges.search();
         Graph fgesGraph = new EdgeListGraphSingleConnections(graph);
 
+        long start = System.nanoTime();
+
         sepsets = new SepsetsGreedy(fgesGraph, independenceTest, null, maxDegree);
 
         for (Node b : nodes) {
@@ -143,7 +155,11 @@ public final class GFci implements GraphSearch {
             }
         }
 
+        metrics.time(SearchMetrics.SKELETON, System.nanoTime() - start);
+
+        start = System.nanoTime();
         modifiedR0(fgesGraph);
+        metrics.time(SearchMetrics.COLLIDERS, System.nanoTime() - start);
 
         FciOrient fciOrient = new FciOrient(sepsets);
         fciOrient.setVerbose(verbose);
@@ -151,7 +167,11 @@ public final class GFci implements GraphSearch {
         fciOrient.setKnowledge(getKnowledge());
         fciOrient.setCompleteRuleSetUsed(completeRuleSetUsed);
         fciOrient.setMaxPathLength(maxPathLength);
+        fciOrient.setParallel(parallel);
+        fciOrient.setMetrics(metrics);
+        start = System.nanoTime();
         fciOrient.doFinalOrientation(graph);
+        metrics.time(SearchMetrics.FINAL_ORIENTATION, System.nanoTime() - start);
 
         GraphUtils.replaceNodes(graph, independenceTest.getVariables());
 
@@ -262,6 +282,19 @@ public final class GFci implements GraphSearch {
         return maxPathLength;
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallel True if the path searches of the final orientation should
+     * be run in parallel. False by default; the independence test must be safe
+     * to call from several threads to turn this on.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * @param maxPathLength the maximum length of any discriminating path, or -1
      * if unlimited.
@@ -285,6 +318,21 @@ public final class GFci implements GraphSearch {
         this.verbose = verbose;
     }
 
+    /**
+     * @return the metrics this search reports into; by default those current when it was constructed.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics this search reports into. They are passed on to FGES.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        if (metrics == null) throw new NullPointerException("Metrics may not be null.");
+        this.metrics = metrics;
+    }
+
     /**
      * The independence test.
      */
@@ -28,6 +28,11 @@ import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import cern.colt.matrix.linalg.Algebra;
 import cern.jet.math.Mult;
 import cern.jet.math.PlusMult;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A translation from Tibshirani's 2008 Fortran implementation of glasso.
@@ -93,6 +98,21 @@ public class Glasso {
      */
     private double thr = 1.0e-4;
 
+    /**
+     * True if the problem should first be split into the connected components of the graph with an edge i---j
+     * whenever |ss(i, j)| > rho(i, j). The solution is block diagonal over these components (Witten, Friedman and
+     * Simon 2011; Mazumder and Hastie 2012), so the screening is exact; the blocks are solved independently and in
+     * parallel. Not used for the approximate (ia) algorithm. False by default.
+     */
+    private boolean blockScreening = false;
+
+    /**
+     * Initial covariance and inverse covariance estimates for a warm start (is = true), usually the solution
+     * for a larger rho. Null for a cold start.
+     */
+    private DoubleMatrix2D ww0 = null;
+    private DoubleMatrix2D wwi0 = null;
+
     /**
      * Return value of the algorithm.
      */
@@ -151,13 +171,202 @@ public class Glasso {
     }
 
     public Result search() {
+        if (isBlockScreening() && !isIa()) {
+            return searchBlocks();
+        }
+
+        return searchFull();
+    }
+
+    /**
+     * Solves for a non-increasing sequence of penalties (rho the same for all elements), warm starting each solve
+     * from the solution for the previous rho. With block screening on, the blocks only merge as rho decreases, so
+     * each block is warm started from the previous (block diagonal) solution restricted to it.
+     *
+     * @param rhos the penalties, non-increasing.
+     * @return one result per penalty, in the same order.
+     */
+    public List<Result> searchPath(double[] rhos) {
+        for (int k = 1; k < rhos.length; k++) {
+            if (rhos[k] > rhos[k - 1]) {
+                throw new IllegalArgumentException("Rho path must be non-increasing: " + rhos[k - 1] + " then " + rhos[k]);
+            }
+        }
+
+        Rho _rho = this.rho;
+        boolean _is = this.is;
+        List<Result> results = new ArrayList<>();
+        Result previous = null;
+
+        try {
+            for (double r : rhos) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                setRhoAllEqual(r);
+
+                if (previous != null) {
+                    setWarmStart(previous.getWw(), previous.getWwi());
+                }
+
+                previous = search();
+                results.add(previous);
+            }
+        } finally {
+            this.rho = _rho;
+            this.is = _is;
+            this.ww0 = null;
+            this.wwi0 = null;
+        }
+
+        return results;
+    }
+
+    /**
+     * Splits the problem into the connected components of the thresholded covariance matrix and solves each
+     * component separately, in parallel. Variables in singleton components get the diagonal solution.
+     */
+    private Result searchBlocks() {
+        final int n = getN();
+        final DoubleMatrix2D ss = getSs();
+        final Rho rho = getRho();
+        final boolean pen = isIpen();
+        final boolean warmStart = isIs() && ww0 != null && wwi0 != null;
+
+        final List<int[]> blocks = blocks(n, ss, rho);
+
+        final DoubleMatrix2D ww = new DenseDoubleMatrix2D(n, n);
+        final DoubleMatrix2D wwi = new DenseDoubleMatrix2D(n, n);
+        final Result[] results = new Result[blocks.size()];
+
+        class BlockAction extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            private BlockAction(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= 1) {
+                    for (int b = from; b < to; b++) {
+                        final int[] block = blocks.get(b);
+
+                        if (block.length == 1) {
+                            int j = block[0];
+                            double w = pen ? ss.get(j, j) + rho.get(j, j) : ss.get(j, j);
+                            ww.set(j, j, w);
+                            wwi.set(j, j, 1.0 / Math.max(w, 1.0e-7));
+                            continue;
+                        }
+
+                        Glasso glasso = new Glasso(ss.viewSelection(block, block).copy());
+                        glasso.setMaxit(getMaxit());
+                        glasso.setItr(isItr());
+                        glasso.setIpen(pen);
+                        glasso.setThr(getThr());
+                        glasso.rho = new Rho() {
+                            public double get(int i, int j) {
+                                return rho.get(block[i], block[j]);
+                            }
+                        };
+
+                        if (warmStart) {
+                            glasso.setWarmStart(ww0.viewSelection(block, block).copy(),
+                                    wwi0.viewSelection(block, block).copy());
+                        }
+
+                        Result result = glasso.searchFull();
+                        results[b] = result;
+
+                        // Blocks are disjoint, so these writes don't collide.
+                        for (int i = 0; i < block.length; i++) {
+                            for (int j = 0; j < block.length; j++) {
+                                ww.set(block[i], block[j], result.getWw().get(i, j));
+                                wwi.set(block[i], block[j], result.getWwi().get(i, j));
+                            }
+                        }
+                    }
+                } else {
+                    final int mid = (to + from) / 2;
+                    invokeAll(new BlockAction(from, mid), new BlockAction(mid, to));
+                }
+            }
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new BlockAction(0, blocks.size()));
+
+        int niter = 0;
+        double del = Double.NaN;
+
+        for (Result result : results) {
+            if (result == null) continue;
+            niter = Math.max(niter, result.getNiter());
+            if (!Double.isNaN(result.getDel())) del = Double.isNaN(del) ? result.getDel() : Math.max(del, result.getDel());
+        }
+
+        return new Result(ww, wwi, niter, del);
+    }
+
+    /**
+     * The connected components of the graph over 0..n-1 with an edge i---j iff |ss(i, j)| > rho(i, j), each as a
+     * sorted array of indices.
+     */
+    private static List<int[]> blocks(int n, DoubleMatrix2D ss, Rho rho) {
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) parent[i] = i;
+
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (Math.abs(ss.getQuick(i, j)) > rho.get(i, j)) {
+                    int a = find(parent, i);
+                    int b = find(parent, j);
+                    if (a != b) parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++) sizes[find(parent, i)]++;
+
+        int[][] members = new int[n][];
+        int[] counts = new int[n];
+        List<int[]> blocks = new ArrayList<>();
+
+        for (int i = 0; i < n; i++) {
+            int root = find(parent, i);
+
+            if (members[root] == null) {
+                members[root] = new int[sizes[root]];
+                blocks.add(members[root]);
+            }
+
+            members[root][counts[root]++] = i;
+        }
+
+        return blocks;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    private Result searchFull() {
         int niter = 0;
         double eps = 1.0e-7;
         int n = getN();
         DoubleMatrix2D ss = getSs();
 
         boolean approximateAlgorithm = isIa();
-        boolean warmStart = isIs();
+        boolean warmStart = isIs() && ww0 != null && wwi0 != null;
         boolean itr = isItr();
         boolean pen = isIpen();
         double thr = getThr();
@@ -223,6 +432,8 @@ public class Glasso {
         if (approximateAlgorithm) {
             if (!warmStart) {
                 zero(wwi);
+            } else {
+                wwi.assign(wwi0);
             }
 
             for (int m = 0; m < n; m++) {
@@ -272,6 +483,9 @@ public class Glasso {
                 zero(xs);
             }
         } else {
+            ww.assign(ww0);
+            wwi.assign(wwi0);
+
             for (int j = 0; j < n; j++) {
                 double xjj = -wwi.get(j, j);
 //                System.out.println("xjj = " + xjj);
@@ -314,7 +528,7 @@ public class Glasso {
 //                System.out.println(x);
 //                System.out.println();
 
-                ws = ww.viewColumn(m);
+                ws = ww.viewColumn(m).copy();
 
                 // This sets up vv, s, and ro--i.e., W.11, s.12, and r.12.
                 setup(m, n, ss, rho, ww, vv, s, ro);
@@ -347,7 +561,7 @@ public class Glasso {
             }
 
             niter = niter + 1;
-            if (niter < getMaxit()) break;
+            if (niter >= getMaxit()) break;
             if (dlx < shr) break;
         }
 
@@ -469,14 +683,12 @@ public class Glasso {
 
         for (int j = 0; j < n; j++) {
             if (x.get(j) == 0.0) continue;
-            l = l + 1;
             m[l] = j;
+            z.set(l, x.get(j));
+            l = l + 1;
         }
 
         if (l < (int) (fac * n)) {
-            int[] indices = new int[l];
-            for (int i = 0; i < indices.length; i++) indices[i] = i;
-
             if (it == 1) {
                 for (int j = 0; j < n; j++) {
                     if (Thread.currentThread().isInterrupted()) {
@@ -486,8 +698,7 @@ public class Glasso {
                     double dotProduct = 0.0;
 
                     for (int i = 0; i < l; i++) {
-//                        dotProduct += vv.get(m[i], j) * z.get(j);
-                        dotProduct += vv.get(m[i], j) * x.get(m[j]);
+                        dotProduct += vv.get(j, m[i]) * z.get(i);
                     }
 
                     s.set(j, dotProduct);
@@ -501,7 +712,7 @@ public class Glasso {
                     double dotProduct = 0.0;
 
                     for (int i = 0; i < l; i++) {
-                        dotProduct += vv.get(m[i], j) * x.get(m[j]);
+                        dotProduct += vv.get(m[i], j) * z.get(i);
                     }
 
                     s.set(j, s.get(j) - dotProduct);
@@ -703,6 +914,30 @@ public class Glasso {
         this.thr = thr;
     }
 
+    public boolean isBlockScreening() {
+        return blockScreening;
+    }
+
+    public void setBlockScreening(boolean blockScreening) {
+        this.blockScreening = blockScreening;
+    }
+
+    /**
+     * Sets the initial estimates for a warm start and turns the warm start flag (is) on.
+     *
+     * @param ww  initial covariance estimate, n x n.
+     * @param wwi initial inverse covariance estimate, n x n.
+     */
+    public void setWarmStart(DoubleMatrix2D ww, DoubleMatrix2D wwi) {
+        if (!(ww.rows() == n && ww.columns() == n && wwi.rows() == n && wwi.columns() == n)) {
+            throw new IllegalArgumentException("Warm start matrices must be square of dimension n.");
+        }
+
+        this.ww0 = ww;
+        this.wwi0 = wwi;
+        this.is = true;
+    }
+
 }
 
 
@@ -88,6 +88,9 @@ public final class IndTestFisherZ implements IndependenceTest {
     private double rho;
     private NormalDistribution normal = new NormalDistribution(0, 1);
 
+    // Counts the tests done, for the metrics current when this test was constructed.
+    private final SearchMetrics metrics = SearchMetrics.current();
+
     //==========================CONSTRUCTORS=============================//
 
     /**
@@ -106,7 +109,12 @@ public final class IndTestFisherZ implements IndependenceTest {
             throw new IllegalArgumentException("Alpha mut be in [0, 1]");
         }
 
-        this.covMatrix = new CovarianceMatrixOnTheFly(dataSet);
+        if (LaggedCovarianceMatrix.isLaggedView(dataSet)) {
+            this.covMatrix = new LaggedCovarianceMatrix(dataSet);
+        } else {
+            this.covMatrix = new CovarianceMatrixOnTheFly(dataSet);
+        }
+
         List<Node> nodes = covMatrix.getVariables();
 
         this.variables = Collections.unmodifiableList(nodes);
@@ -184,6 +192,7 @@ public final class IndTestFisherZ implements IndependenceTest {
      * @throws RuntimeException if a matrix singularity is encountered.
      */
     public boolean isIndependent(Node x, Node y, List<Node> z) {
+        metrics.count(SearchMetrics.INDEPENDENCE_TESTS);
         int n = sampleSize();
         double r;
 
@@ -216,6 +225,12 @@ public final class IndTestFisherZ implements IndependenceTest {
             indices[0] = indexMap.get(x);
             indices[1] = indexMap.get(y);
             for (int i = 0; i < z.size(); i++) indices[i + 2] = indexMap.get(z.get(i));
+
+            if (indices.length <= MatrixKernel.MAX_SIZE) {
+                return MatrixKernel.partialCorrelation(covMatrix, indices[0], indices[1],
+                        Arrays.copyOfRange(indices, 2, indices.length));
+            }
+
             TetradMatrix submatrix = covMatrix.getSubmatrix(indices).getMatrix();
             return StatUtils.partialCorrelation(submatrix);
         }
@@ -24,7 +24,6 @@ package edu.cmu.tetrad.search;
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.GraphUtils;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.regression.Regression;
 import edu.cmu.tetrad.regression.RegressionDataset;
 import edu.cmu.tetrad.regression.RegressionResult;
 import edu.cmu.tetrad.util.RandomUtil;
@@ -49,7 +48,7 @@ public final class IndTestFisherZConcatenateResiduals implements IndependenceTes
      */
     private List<Node> variables;
 
-    private ArrayList<Regression> regressions;
+    private ArrayList<RegressionDataset> regressions;
 
     private List<DataSet> dataSets;
 
@@ -119,8 +118,9 @@ public final class IndTestFisherZConcatenateResiduals implements IndependenceTes
         z = GraphUtils.replaceNodes(z, variables);
 
         // Calculate the residual of x and y conditional on z for each data set and concatenate them.
-        double[] residualsX = residuals(x, z);
-        double[] residualsY = residuals(y, z);
+        double[][] residuals = residuals(x, y, z);
+        double[] residualsX = residuals[0];
+        double[] residualsY = residuals[1];
 
         List<Double> residualsXFiltered = new ArrayList<>();
         List<Double> residualsYFiltered = new ArrayList<>();
@@ -182,10 +182,11 @@ public final class IndTestFisherZConcatenateResiduals implements IndependenceTes
     }
 
 
-    private double[] residuals(Node node, List<Node> parents) {
-        List<Double> _residuals = new ArrayList<>();
-
-        Node target = dataSets.get(0).getVariable(node.getName());
+    // The residuals of x and of y on the parents in each data set, centered and concatenated.
+    private double[][] residuals(Node x, Node y, List<Node> parents) {
+        List<Node> targets = new ArrayList<>();
+        targets.add(dataSets.get(0).getVariable(x.getName()));
+        targets.add(dataSets.get(0).getVariable(y.getName()));
 
         List<Node> regressors = new ArrayList<>();
 
@@ -194,29 +195,30 @@ public final class IndTestFisherZConcatenateResiduals implements IndependenceTes
             regressors.add(variable);
         }
 
+        int n = 0;
 
-        for (int m = 0; m < dataSets.size(); m++) {
-            RegressionResult result = regressions.get(m).regress(target, regressors);
-            double[] residualsSingleDataset = result.getResiduals().toArray();
+        for (DataSet dataSet : dataSets) {
+            n += dataSet.getNumRows();
+        }
 
-            double mean = StatUtils.mean(residualsSingleDataset);
-            for (int i2 = 0; i2 < residualsSingleDataset.length; i2++) {
-                residualsSingleDataset[i2] = residualsSingleDataset[i2] - mean;
-            }
+        double[][] _residuals = new double[2][n];
+        int offset = 0;
 
-            for (double d : residualsSingleDataset) {
-                _residuals.add(d);
-            }
-        }
+        for (int m = 0; m < dataSets.size(); m++) {
+            double[][] residualsSingleDataset = regressions.get(m).residuals(targets, regressors);
 
-        double[] _f = new double[_residuals.size()];
+            for (int t = 0; t < 2; t++) {
+                double mean = StatUtils.mean(residualsSingleDataset[t]);
 
+                for (int i2 = 0; i2 < residualsSingleDataset[t].length; i2++) {
+                    _residuals[t][offset + i2] = residualsSingleDataset[t][i2] - mean;
+                }
+            }
 
-        for (int k = 0; k < _residuals.size(); k++) {
-            _f[k] = _residuals.get(k);
+            offset += residualsSingleDataset[0].length;
         }
 
-        return _f;
+        return _residuals;
     }
 
     private Node getVariable(List<Node> variables, String name) {
@@ -99,11 +99,13 @@ public class IndTestMNLRLRT implements IndependenceTest {
         double lik_1;
         double dof_1;
 
+        // The likelihoods given z alone are cached by the likelihood and shared with
+        // other tests of x or y given z.
         lik_0 = likelihood.getLik(_y, list0) - likelihood.getLik(_y, list2);
-        dof_0 = likelihood.getLik(_y, list0) - likelihood.getLik(_y, list2);
+        dof_0 = likelihood.getDoF(_y, list0) - likelihood.getDoF(_y, list2);
 
         lik_1 = likelihood.getLik(_x, list1) - likelihood.getLik(_x, list2);
-        dof_1 = likelihood.getLik(_x, list1) - likelihood.getLik(_x, list2);
+        dof_1 = likelihood.getDoF(_x, list1) - likelihood.getDoF(_x, list2);
 
 
         if (dof_0 <= 0) { dof_0 = 1; }
@@ -56,8 +56,20 @@ public class IndTestMVPLRT implements IndependenceTest {
     private double pValue = Double.NaN;
 
     public IndTestMVPLRT(DataSet data, double alpha, int fDegree, boolean discretize) {
-        this.data = data;
-        this.likelihood= new MVPLikelihood(data, -1, fDegree, discretize);
+        this(new MVPLikelihood(data, -1, fDegree, discretize), alpha);
+    }
+
+    /**
+     * Tests with the given likelihood, which caches its results and may be shared with an
+     * MVPScore.
+     */
+    public IndTestMVPLRT(MVPLikelihood likelihood, double alpha) {
+        if (likelihood == null) {
+            throw new NullPointerException();
+        }
+
+        this.data = likelihood.getDataSet();
+        this.likelihood = likelihood;
 
         nodesHash = new HashedMap<>();
 
@@ -104,10 +116,10 @@ public class IndTestMVPLRT implements IndependenceTest {
         double dof_1;
 
         lik_0 = likelihood.getLik(_y, list0) - likelihood.getLik(_y, list2);
-        dof_0 = likelihood.getLik(_y, list0) - likelihood.getLik(_y, list2);
+        dof_0 = likelihood.getDoF(_y, list0) - likelihood.getDoF(_y, list2);
 
         lik_1 = likelihood.getLik(_x, list1) - likelihood.getLik(_x, list2);
-        dof_1 = likelihood.getLik(_x, list1) - likelihood.getLik(_x, list2);
+        dof_1 = likelihood.getDoF(_x, list1) - likelihood.getDoF(_x, list2);
 
 
         if (dof_0 <= 0) { dof_0 = 1; }
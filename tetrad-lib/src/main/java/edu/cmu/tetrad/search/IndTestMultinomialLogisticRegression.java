@@ -36,6 +36,7 @@ import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Performs a test of conditional independence X _||_ Y | Z1...Zn where all searchVariables are either continuous or discrete.
@@ -58,6 +59,11 @@ public class IndTestMultinomialLogisticRegression implements IndependenceTest {
     private RegressionDataset regression;
     private boolean verbose = false;
 
+    // Fitted models without y, by target and (unordered) conditioning set, to be reused
+    // for other y's and as starting points for the models with y.
+    private final Map<List<String>, LogisticRegression.Result> nullModels = new ConcurrentHashMap<>();
+    private static final int MAX_NULL_MODELS = 100000;
+
     public IndTestMultinomialLogisticRegression(DataSet data, double alpha) {
         this.searchVariables = data.getVariables();
         this.originalData = data.copy();
@@ -173,7 +179,7 @@ public class IndTestMultinomialLogisticRegression implements IndependenceTest {
                 regressors0.addAll(variablesPerNode.get(_z));
             }
 
-            LogisticRegression.Result result0 = logisticRegression.regress((DiscreteVariable) _x, regressors0);
+            LogisticRegression.Result result0 = getNullModel((DiscreteVariable) _x, regressors0);
 
             // With y.
             List<Node> regressors1 = new ArrayList<>();
@@ -183,7 +189,7 @@ public class IndTestMultinomialLogisticRegression implements IndependenceTest {
                 regressors1.addAll(variablesPerNode.get(_z));
             }
 
-            LogisticRegression.Result result1 = logisticRegression.regress((DiscreteVariable) _x, regressors1);
+            LogisticRegression.Result result1 = logisticRegression.regress((DiscreteVariable) _x, regressors1, result0);
 
             // Returns -2 LL
             double ll0 = result0.getLogLikelihood();
@@ -218,6 +224,32 @@ public class IndTestMultinomialLogisticRegression implements IndependenceTest {
         return indep;
     }
 
+    // The model for x given the regressors, from the cache if it has been fit.
+    private LogisticRegression.Result getNullModel(DiscreteVariable x, List<Node> regressors) {
+        List<String> key = new ArrayList<>();
+
+        for (Node node : regressors) {
+            key.add(node.getName());
+        }
+
+        Collections.sort(key);
+        key.add(0, x.getName());
+
+        LogisticRegression.Result result = nullModels.get(key);
+
+        if (result == null) {
+            result = logisticRegression.regress(x, regressors);
+
+            if (nullModels.size() >= MAX_NULL_MODELS) {
+                nullModels.clear();
+            }
+
+            nullModels.put(key, result);
+        }
+
+        return result;
+    }
+
     int[] _rows = null;
 
     // This takes an inordinate amount of time. -jdramsey 20150929
@@ -29,7 +29,6 @@ import cern.jet.math.Functions;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.regression.Regression;
 import edu.cmu.tetrad.regression.RegressionDataset;
 import edu.cmu.tetrad.regression.RegressionResult;
 import edu.cmu.tetrad.util.NumberFormatUtil;
@@ -90,6 +89,11 @@ public final class IndTestRegression implements IndependenceTest {
     private DataSet dataSet;
     private boolean verbose = false;
 
+    /**
+     * Shared by the tests, so the factors of regressor sets are reused from one test to the next.
+     */
+    private final RegressionDataset regression;
+
     //==========================CONSTRUCTORS=============================//
 
     /**
@@ -107,6 +111,7 @@ public final class IndTestRegression implements IndependenceTest {
         this.dataSet = dataSet;
         this.data = new DenseDoubleMatrix2D(dataSet.getDoubleData().toArray());
         this.variables = Collections.unmodifiableList(dataSet.getVariables());
+        this.regression = new RegressionDataset(dataSet);
         setAlpha(alpha);
     }
 
@@ -176,7 +181,6 @@ public final class IndTestRegression implements IndependenceTest {
             regressors.add(dataSet.getVariable(zVar.getName()));
         }
 
-        Regression regression = new RegressionDataset(dataSet);
         RegressionResult result = null;
 
         try {
@@ -97,7 +97,11 @@ public class LingamPattern {
 
         TetradLogger.getInstance().log("info", "Making list of all dags in pattern...");
 
-        List<Graph> dags = SearchGraphUtils.getAllGraphsByDirectingUndirectedEdges(_pattern);
+        // Graphs that are not patterns, for instance with bidirected edges made undirected,
+        // have every orientation of their undirected edges scored, as before.
+        List<Graph> dags = MarkovEquivalenceClass.isPattern(_pattern)
+                ? SearchGraphUtils.getDagsInPatternMeek(_pattern, getKnowledge())
+                : SearchGraphUtils.getAllGraphsByDirectingUndirectedEdges(_pattern);
 
         TetradLogger.getInstance().log("normalityTests", "Anderson Darling P value for Variables\n");
         NumberFormat nf = new DecimalFormat("0.0000");
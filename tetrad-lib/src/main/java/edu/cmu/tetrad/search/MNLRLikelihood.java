@@ -21,20 +21,18 @@
 
 package edu.cmu.tetrad.search;
 
-import de.bwaldvogel.liblinear.*;
 import edu.cmu.tetrad.data.ContinuousVariable;
 import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.DiscreteVariable;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.regression.LogisticRegression;
+import edu.cmu.tetrad.regression.LogisticIrls;
 import edu.cmu.tetrad.util.TetradLogger;
 import edu.cmu.tetrad.util.TetradMatrix;
 import edu.cmu.tetrad.util.TetradVector;
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 
-import java.io.OutputStream;
-import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -69,12 +67,14 @@ public class MNLRLikelihood {
     // Structure Prior
     private double structurePrior;
 
-    private PrintStream original = System.out;
+    // Likelihoods, by child and (unordered) parents; the tests and scores ask for the
+    // same ones many times.
+    private final Map<List<Integer>, Double> liks = new ConcurrentHashMap<>();
+    private static final int MAX_LIKS = 100000;
 
-    private PrintStream nullout = new PrintStream(new OutputStream() { public void write(int b) {
-        //DO NOTHING
-    }
-    });
+    // The ridge penalty for multinomial fits, as for the L2-regularized logistic
+    // regressions (C = 1) used before.
+    private static final double RIDGE = 1.0;
 
     public MNLRLikelihood(DataSet dataSet, double structurePrior, int fDegree) {
 
@@ -150,6 +150,27 @@ public class MNLRLikelihood {
     }
 
     public double getLik(int child_index, int[] parents) {
+        List<Integer> key = new ArrayList<>();
+        for (int parent : parents) key.add(parent);
+        Collections.sort(key);
+        key.add(0, child_index);
+
+        Double lik = liks.get(key);
+
+        if (lik == null) {
+            lik = computeLik(child_index, parents);
+
+            if (liks.size() >= MAX_LIKS) {
+                liks.clear();
+            }
+
+            liks.put(key, lik);
+        }
+
+        return lik;
+    }
+
+    private double computeLik(int child_index, int[] parents) {
 
         double lik = 0;
         Node c = variables.get(child_index);
@@ -195,32 +216,35 @@ public class MNLRLikelihood {
 
                 int degree = fDegree;
                 if (fDegree < 1) { degree = (int) Math.floor(Math.log(r)); }
-                TetradMatrix subset = new TetradMatrix(r, p * degree + 1);
+                double[][] features = new double[p * degree][r];
                 for (int i = 0; i < r; i++) {
-                    subset.set(i, p * degree, 1);
                     for (int j = 0; j < p; j++) {
                         for (int d = 0; d < degree; d++) {
-                            subset.set(i, p * d + j, Math.pow((continuousData[continuousCols[j]][cell.get(i)] - mean[j]) / var[j], d + 1));
+                            features[p * d + j][i] = Math.pow((continuousData[continuousCols[j]][cell.get(i)] - mean[j]) / var[j], d + 1);
                         }
                     }
                 }
 
                 if (c instanceof ContinuousVariable) {
+                    TetradMatrix subset = new TetradMatrix(r, p * degree + 1);
+                    for (int i = 0; i < r; i++) {
+                        subset.set(i, p * degree, 1);
+                        for (int j = 0; j < p * degree; j++) {
+                            subset.set(i, j, features[j][i]);
+                        }
+                    }
+
                     TetradVector target = new TetradVector(r);
                     for (int i = 0; i < r; i++) {
                         target.set(i, continuousData[child_index][cell.get(i)]);
                     }
                     lik += multipleRegression(target, subset);
                 } else {
-                    ArrayList<Integer> temp = new ArrayList<>();
-                    TetradMatrix target = new TetradMatrix(r, ((DiscreteVariable) c).getNumCategories());
+                    int[] target = new int[r];
                     for (int i = 0; i < r; i++) {
-                        for (int j = 0; j < ((DiscreteVariable) c).getNumCategories(); j++) {
-                            target.set(i, j, -1);
-                        }
-                        target.set(i, discreteData[child_index][cell.get(i)], 1);
+                        target[i] = discreteData[child_index][cell.get(i)];
                     }
-                    lik += MultinomialLogisticRegression(target, subset);
+                    lik += multinomialLogisticRegression(target, ((DiscreteVariable) c).getNumCategories(), features);
                 }
             }
         }
@@ -288,52 +312,13 @@ public class MNLRLikelihood {
 
     }
 
-    private double MultinomialLogisticRegression(TetradMatrix targets, TetradMatrix subset) {
-
-        Problem problem = new Problem();
-        problem.l = targets.rows(); // number of training examples
-        problem.n = subset.columns(); // number of features
-        problem.x = new FeatureNode[problem.l][problem.n]; // feature nodes
-        problem.bias = 0;
-        for (int i = 0; i < problem.l; i ++) {
-            for (int j = 0; j < problem.n; j++) {
-                problem.x[i][j] = new FeatureNode(j+1, subset.get(i,j));
-            }
-        }
-        SolverType solver = SolverType.L2R_LR; // -s 0
-        double C = 1.0;    // cost of constraints violation
-        double eps = 1e-4; // stopping criteria
-        Parameter parameter = new Parameter(solver, C, eps);
-        ArrayList<Model> models = new ArrayList<>();
-        double lik = 0;
-        double num;
-        double den;
-
-        for (int i = 0; i < targets.columns(); i++) {
-            System.setOut(nullout);
-            problem.y = targets.getColumn(i).toArray(); // target values
-            models.add(i, Linear.train(problem, parameter));
-            System.setOut(original);
-        }
-
-        for (int j = 0; j < problem.l; j++) {
-            num = 0;
-            den = 0;
-            for (int i = 0; i < targets.columns(); i++) {
-                double[] p = new double[models.get(i).getNrClass()];
-                Linear.predictProbability(models.get(i), problem.x[j], p);
-                if (targets.get(j,i) == 1) {
-                    num = p[0];
-                    den += p[0];
-                } else if (p.length > 1) {
-                    den += p[0];
-                }
-            }
-            lik += Math.log(num/den);
-        }
-
-        return lik;
-
+    // The log likelihood of the target given the features (and an intercept), by
+    // penalized multinomial logistic regression.
+    private double multinomialLogisticRegression(int[] target, int numCategories, double[][] features) {
+        int[] regressors = new int[features.length];
+        for (int j = 0; j < regressors.length; j++) regressors[j] = j;
+        return LogisticIrls.multinomial(features, regressors, target, numCategories, null, null, RIDGE)
+                .getLogLikelihood();
     }
 
 }
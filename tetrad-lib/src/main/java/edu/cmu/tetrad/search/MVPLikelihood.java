@@ -23,15 +23,11 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.data.*;
 import edu.cmu.tetrad.graph.Node;
-import edu.cmu.tetrad.util.TetradMatrix;
-import edu.cmu.tetrad.util.TetradVector;
-import edu.cmu.tetrad.util.dist.Discrete;
+import edu.cmu.tetrad.util.MatrixKernel;
+import org.apache.commons.math3.linear.SingularMatrixException;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static edu.cmu.tetrad.data.Discretizer.discretize;
 import static edu.cmu.tetrad.data.Discretizer.getEqualFrequencyBreakPoints;
@@ -39,6 +35,14 @@ import static edu.cmu.tetrad.data.Discretizer.getEqualFrequencyBreakPoints;
 
 /**
  * Calculates Mixed Variables Polynomial likelihood.
+ * <p>
+ * The polynomial basis columns of each continuous variable are computed once, as powers
+ * of the variable standardized over all rows, and shared by every family; within a cell
+ * of the discrete parents they span the same space as powers of the variable standardized
+ * within the cell, so the fits are the same. Regressions are solved from their normal
+ * equations by Cholesky (see MatrixKernel), without forming the design matrix.
+ * Likelihoods are cached by child and (unordered) parents. An instance may be used from
+ * several threads at once, and may be shared by an MVPScore and an IndTestMVPLRT.
  *
  * @author Bryan Andrews
  */
@@ -83,6 +87,13 @@ public class MVPLikelihood {
     // Number of categories to use to discretize continuous mixedVariables.
     private int numCategoriesToDiscretize = 3;
 
+    // Polynomial basis columns, by variable and power - 1, computed as needed.
+    private final double[][][] basis;
+
+    // Likelihoods, by child and sorted parents.
+    private final Map<List<Integer>, Double> liks = new ConcurrentHashMap<>();
+    private static final int MAX_LIKS = 100000;
+
     public MVPLikelihood(DataSet dataSet, double structurePrior, int fDegree, boolean discretize) {
 
         if (dataSet == null) {
@@ -120,6 +131,8 @@ public class MVPLikelihood {
             nodesHash.put(v, j);
         }
 
+        basis = new double[dataSet.getNumColumns()][][];
+
         if (discretize) {
             this.discreteDataSet = useErsatzVariables();
             this.discreteVariables = discreteDataSet.getVariables();
@@ -138,101 +151,32 @@ public class MVPLikelihood {
 
     }
 
-    private double multipleRegression(TetradVector Y, TetradMatrix X) {
-
-        int n = X.rows();
-        TetradVector r;
-        if (X.columns() >= n) {
-            TetradVector ones = new TetradVector(n);
-            for (int i = 0; i < n; i++) ones.set(i, 1);
-            r = ones.scalarMult(ones.dotProduct(Y) / (double) n).minus(Y);
-        } else {
-            try {
-                TetradMatrix Xt = X.transpose();
-                TetradMatrix XtX = Xt.times(X);
-                r = X.times(XtX.inverse().times(Xt.times(Y))).minus(Y);
-            } catch (Exception e) {
-                TetradVector ones = new TetradVector(n);
-                for (int i = 0; i < n; i++) ones.set(i, 1);
-                r = ones.scalarMult(ones.dotProduct(Y) / (double) n).minus(Y);
-            }
-        }
-
-        double sigma2 = r.dotProduct(r) / n;
-        double lik;
-
-        if(sigma2 < 0) {
-            TetradVector ones = new TetradVector(n);
-            for (int i = 0; i < n; i++) ones.set(i,1);
-            r = ones.scalarMult(ones.dotProduct(Y)/(double)Math.max(n,2)).minus(Y);
-            sigma2 = r.dotProduct(r) / n;
-            lik = -(n / 2) * (Math.log(2 * Math.PI) + Math.log(sigma2) + 1);
-        } else if (sigma2 == 0) {
-            lik = 0;
-        } else {
-            lik = -(n / 2) * (Math.log(2 * Math.PI) + Math.log(sigma2) + 1);
-        }
-
-
-        if(Double.isInfinite(lik) || Double.isNaN(lik)) {
-            System.out.println(lik);
-        }
-
-        return lik;
-    }
-
-    private double approxMultinomialRegression(TetradMatrix Y, TetradMatrix X) {
+    /**
+     * @return The log likelihood of the child given the parents, from the cache if it has
+     * been computed.
+     */
+    public double getLik(int child_index, int[] parents) {
+        List<Integer> key = new ArrayList<>();
+        for (int parent : parents) key.add(parent);
+        Collections.sort(key);
+        key.add(0, child_index);
 
-        int n = X.rows();
-        int d = Y.columns();
-        double lik = 0.0;
-        TetradMatrix P;
+        Double lik = liks.get(key);
 
+        if (lik == null) {
+            lik = computeLik(child_index, parents);
 
-        if(d >= n || X.columns() >= n) {
-            TetradMatrix ones = new TetradMatrix(n, 1);
-            for (int i = 0; i < n; i++) ones.set(i, 0, 1);
-            P = ones.times(ones.transpose().times(Y).scalarMult(1 / (double) n));
-        } else {
-            try {
-                TetradMatrix Xt = X.transpose();
-                TetradMatrix XtX = Xt.times(X);
-                P = X.times(XtX.inverse().times(Xt.times(Y)));
-            } catch (Exception e) {
-                TetradMatrix ones = new TetradMatrix(n, 1);
-                for (int i = 0; i < n; i++) ones.set(i, 0, 1);
-                P = ones.times(ones.transpose().times(Y).scalarMult(1 / (double) n));
+            if (liks.size() >= MAX_LIKS) {
+                liks.clear();
             }
 
-            for (int i = 0; i < n; i++) {
-                double min = 1;
-                double center = 1 / (double) d;
-                double bound = 1 / (double) n;
-                for (int j = 0; j < d; j++) {
-                    min = Math.min(min, P.get(i, j));
-                }
-                if (X.columns() > 1 && min < bound) {
-                    min = (bound - center) / (min - center);
-                    for (int j = 0; j < d; j++) {
-                        P.set(i, j, min * P.get(i, j) + center * (1 - min));
-                    }
-                }
-            }
-        }
-
-        for (int i = 0; i < n; i++) {
-            lik += Math.log(P.getRow(i).dotProduct(Y.getRow(i)));
-        }
-
-        if(Double.isInfinite(lik) || Double.isNaN(lik)) {
-            System.out.println(lik);
+            liks.put(key, lik);
         }
 
         return lik;
     }
 
-
-    public double getLik(int child_index, int[] parents) {
+    private double computeLik(int child_index, int[] parents) {
 
         double lik = 0;
         Node c = variables.get(child_index);
@@ -257,66 +201,262 @@ public class MVPLikelihood {
 
         int p = continuous_parents.size();
 
-        List<List<Integer>> cells = adTree.getCellLeaves(discrete_parents);
+        List<List<Integer>> cells = getCells(discrete_parents);
 
         int[] continuousCols = new int[p];
         for (int j = 0; j < p; j++) continuousCols[j] = nodesHash.get(continuous_parents.get(j));
 
         for (List<Integer> cell : cells) {
-//            for (int[] cell : cells) {
-                int r = cell.size();
-//                int r = cell.length;
-                if (r > 1) {
-
-                double[] mean = new double[p];
-                double[] var = new double[p];
-                for (int i = 0; i < p; i++) {
-                    for (int j = 0; j < r; j++) {
-                        mean[i] += continuousData[continuousCols[i]][cell.get(j)];
-                        var[i] += Math.pow(continuousData[continuousCols[i]][cell.get(j)], 2);
-                    }
-                    mean[i] /= r;
-                    var[i] /= r;
-                    var[i] -= Math.pow(mean[i], 2);
-                    var[i] = Math.sqrt(var[i]);
+            int r = cell.size();
 
-                    if (Double.isNaN(var[i])) {
-                        System.out.println(var[i]);
-                    }
-                }
+            if (r > 1) {
+                int[] rows = new int[r];
+                for (int i = 0; i < r; i++) rows[i] = cell.get(i);
 
                 int degree = fDegree;
                 if (fDegree < 1) { degree = (int) Math.floor(Math.log(r)); }
-                TetradMatrix subset = new TetradMatrix(r, p * degree + 1);
-                for (int i = 0; i < r; i++) {
-                    subset.set(i, p * degree, 1);
-                    for (int j = 0; j < p; j++) {
-                        for (int d = 0; d < degree; d++) {
-                            subset.set(i, p * d + j, Math.pow((continuousData[continuousCols[j]][cell.get(i)] - mean[j]) / var[j], d + 1));
-                        }
+
+                // The basis columns, by power and then variable, as in the design.
+                double[][] features = new double[p * degree][];
+                for (int j = 0; j < p; j++) {
+                    for (int d = 0; d < degree; d++) {
+                        features[p * d + j] = getBasis(continuousCols[j], d + 1);
                     }
                 }
 
                 if (c instanceof ContinuousVariable) {
-                    TetradVector target = new TetradVector(r);
-                    for (int i = 0; i < r; i++) {
-                        target.set(i, continuousData[child_index][cell.get(i)]);
-//                        target.set(i, continuousData[child_index][cell[i]]);
-                    }
-                    lik += multipleRegression(target, subset);
+                    lik += multipleRegression(continuousData[child_index], features, rows);
                 } else {
-                    TetradMatrix target = new TetradMatrix(r, ((DiscreteVariable) c).getNumCategories());
-                    for (int i = 0; i < r; i++) {
-                        target.set(i, discreteData[child_index][cell.get(i)], 1);
+                    lik += approxMultinomialRegression(discreteData[child_index],
+                            ((DiscreteVariable) c).getNumCategories(), features, rows);
+                }
+            }
+        }
+
+        return lik;
+    }
+
+    // The Gaussian log likelihood of the regression of y onto the features and an
+    // intercept, over the given rows.
+    private double multipleRegression(double[] y, double[][] features, int[] rows) {
+        int n = rows.length;
+        int q = features.length + 1;
+        double[] b = null;
+
+        if (q < n) {
+            b = new double[q];
+            double[] xtx = normalEquations(features, rows, b, y);
+            b = solve(xtx, q, b);
+        }
+
+        double rss = 0.0;
+
+        if (b == null) {
+            double mean = 0.0;
+            for (int row : rows) mean += y[row];
+            mean /= n;
+
+            for (int row : rows) rss += (y[row] - mean) * (y[row] - mean);
+        } else {
+            for (int row : rows) {
+                double fitted = b[q - 1];
+                for (int j = 0; j < q - 1; j++) fitted += b[j] * features[j][row];
+                double residual = y[row] - fitted;
+                rss += residual * residual;
+            }
+        }
+
+        double sigma2 = rss / n;
+        double lik;
+
+        if (sigma2 == 0) {
+            lik = 0;
+        } else {
+            lik = -(n / 2) * (Math.log(2 * Math.PI) + Math.log(sigma2) + 1);
+        }
+
+        if(Double.isInfinite(lik) || Double.isNaN(lik)) {
+            System.out.println(lik);
+        }
+
+        return lik;
+    }
+
+    // The log likelihood of the categories of y given linear probability models for each
+    // category (least squares on the features and an intercept), pulled in toward uniform
+    // where a probability falls below 1 / n, over the given rows.
+    private double approxMultinomialRegression(int[] y, int numCategories, double[][] features, int[] rows) {
+        int n = rows.length;
+        int q = features.length + 1;
+        int d = numCategories;
+        double lik = 0.0;
+
+        double[] means = new double[d];
+        for (int row : rows) means[y[row]] += 1.0 / n;
+
+        if (d >= n || q >= n) {
+            for (int row : rows) {
+                lik += Math.log(means[y[row]]);
+            }
+        } else {
+
+            // The coefficients for each category, by regressor and then category.
+            double[] xty = new double[q * d];
+            double[] xtx = normalEquations(features, rows, xty, y);
+            double[] b = solve(xtx, q, xty, d);
+
+            double[] probabilities = new double[d];
+            double center = 1 / (double) d;
+            double bound = 1 / (double) n;
+
+            for (int row : rows) {
+                if (b == null) {
+                    System.arraycopy(means, 0, probabilities, 0, d);
+                } else {
+                    for (int k = 0; k < d; k++) probabilities[k] = b[(q - 1) * d + k];
+
+                    for (int j = 0; j < q - 1; j++) {
+                        double x = features[j][row];
+                        for (int k = 0; k < d; k++) probabilities[k] += b[j * d + k] * x;
                     }
-                    lik += approxMultinomialRegression(target, subset);
                 }
+
+                double min = 1;
+                for (int k = 0; k < d; k++) {
+                    min = Math.min(min, probabilities[k]);
+                }
+
+                double probability = probabilities[y[row]];
+
+                if (q > 1 && min < bound) {
+                    min = (bound - center) / (min - center);
+                    probability = min * probability + center * (1 - min);
+                }
+
+                lik += Math.log(probability);
             }
         }
 
+        if(Double.isInfinite(lik) || Double.isNaN(lik)) {
+            System.out.println(lik);
+        }
+
         return lik;
     }
 
+    // X'X for the design of the features and an intercept (last), over the rows,
+    // row-major; sets xty to X'y.
+    private double[] normalEquations(double[][] features, int[] rows, double[] xty, double[] y) {
+        int q = features.length + 1;
+        double[] xtx = new double[q * q];
+        double[] x = new double[q];
+        x[q - 1] = 1.0;
+
+        for (int row : rows) {
+            for (int j = 0; j < q - 1; j++) x[j] = features[j][row];
+            double value = y[row];
+
+            for (int j = 0; j < q; j++) {
+                double xj = x[j];
+                xty[j] += xj * value;
+                int base = j * q;
+                for (int k = 0; k <= j; k++) xtx[base + k] += xj * x[k];
+            }
+        }
+
+        return xtx;
+    }
+
+    // As above, with X'Y for the indicators of the categories of y, by regressor and
+    // then category.
+    private double[] normalEquations(double[][] features, int[] rows, double[] xty, int[] y) {
+        int q = features.length + 1;
+        int d = xty.length / q;
+        double[] xtx = new double[q * q];
+        double[] x = new double[q];
+        x[q - 1] = 1.0;
+
+        for (int row : rows) {
+            for (int j = 0; j < q - 1; j++) x[j] = features[j][row];
+            int category = y[row];
+
+            for (int j = 0; j < q; j++) {
+                double xj = x[j];
+                xty[j * d + category] += xj;
+                int base = j * q;
+                for (int k = 0; k <= j; k++) xtx[base + k] += xj * x[k];
+            }
+        }
+
+        return xtx;
+    }
+
+    // Solves (X'X) b = X'y in place in xty, or returns null if X'X is singular.
+    private double[] solve(double[] xtx, int q, double[] xty) {
+        return solve(xtx, q, xty, 1);
+    }
+
+    // Solves (X'X) B = X'Y for d right-hand sides, X'Y by regressor and then column, in
+    // place; null if X'X is singular.
+    private double[] solve(double[] xtx, int q, double[] xty, int d) {
+        try {
+            MatrixKernel.choleskyDecompose(xtx, q);
+        } catch (SingularMatrixException e) {
+            return null;
+        }
+
+        double[] column = new double[q];
+
+        for (int k = 0; k < d; k++) {
+            for (int j = 0; j < q; j++) column[j] = xty[j * d + k];
+            MatrixKernel.choleskySolve(xtx, q, column);
+            for (int j = 0; j < q; j++) xty[j * d + k] = column[j];
+        }
+
+        return xty;
+    }
+
+    // The given power of the column, standardized over all rows.
+    private double[] getBasis(int column, int power) {
+        synchronized (basis) {
+            if (basis[column] == null || basis[column].length < power) {
+                double[][] powers = new double[Math.max(power, 2)][];
+                if (basis[column] != null) System.arraycopy(basis[column], 0, powers, 0, basis[column].length);
+                basis[column] = powers;
+            }
+
+            if (basis[column][power - 1] == null) {
+                double[] data = continuousData[column];
+                int n = data.length;
+                double mean = 0.0;
+                double sumSquares = 0.0;
+
+                for (double v : data) {
+                    mean += v;
+                    sumSquares += v * v;
+                }
+
+                mean /= n;
+                double sd = Math.sqrt(sumSquares / n - mean * mean);
+                if (!(sd > 0)) sd = 1.0;
+
+                double[] values = new double[n];
+                for (int i = 0; i < n; i++) values[i] = Math.pow((data[i] - mean) / sd, power);
+                basis[column][power - 1] = values;
+            }
+
+            return basis[column][power - 1];
+        }
+    }
+
+    // The cells of the discrete variables; the tree builds itself as it is used, so
+    // this is synchronized.
+    private List<List<Integer>> getCells(List<DiscreteVariable> discrete_parents) {
+        synchronized (adTree) {
+            return adTree.getCellLeaves(discrete_parents);
+        }
+    }
+
     public double getDoF(int child_index, int[] parents) {
 
         double dof = 0;
@@ -342,7 +482,7 @@ public class MVPLikelihood {
 
         int p = continuous_parents.size();
 
-        List<List<Integer>> cells = adTree.getCellLeaves(discrete_parents);
+        List<List<Integer>> cells = getCells(discrete_parents);
 
         int[] continuousCols = new int[p];
         for (int j = 0; j < p; j++) continuousCols[j] = nodesHash.get(continuous_parents.get(j));
@@ -364,6 +504,10 @@ public class MVPLikelihood {
         return dof;
     }
 
+    public DataSet getDataSet() {
+        return dataSet;
+    }
+
     public double getStructurePrior(int k) {
 
         if (structurePrior < 0) { return getEBICprior(); }
@@ -56,6 +56,25 @@ public class MVPScore implements Score {
         this.logn = Math.log(dataSet.getNumRows());
     }
 
+    /**
+     * Scores with the given likelihood, which caches its results and may be shared with
+     * an IndTestMVPLRT.
+     */
+    public MVPScore(MVPLikelihood likelihood) {
+        if (likelihood == null) {
+            throw new NullPointerException();
+        }
+
+        this.dataSet = likelihood.getDataSet();
+        this.variables = dataSet.getVariables();
+        this.likelihood = likelihood;
+        this.logn = Math.log(dataSet.getNumRows());
+    }
+
+    public MVPLikelihood getLikelihood() {
+        return likelihood;
+    }
+
     public double localScore(int i, int... parents) {
 
         double lik = likelihood.getLik(i, parents);
@@ -0,0 +1,841 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.*;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * The DAGs in a pattern (that is, in the Markov equivalence class the pattern represents),
+ * counted without being listed and listed without copying graphs.
+ * <p>
+ * Nodes are numbered in the order of pattern.getNodes(), and the pattern is stored as
+ * sorted neighbor arrays with one mark per edge end. The undirected part of a pattern
+ * consists of chordal components whose orientations are independent, so the size of the
+ * class is the product over the components of their numbers of acyclic orientations
+ * without new colliders. These are counted with the clique-picking recursion of Wienöbst,
+ * Bannach and Liśkiewicz (2021), "Polynomial-time algorithms for counting and sampling
+ * Markov equivalent DAGs": for each maximal clique C of a clique tree, the orderings of C
+ * that no clique nearer the root could also start with, times the counts of the chordal
+ * components left once C is made a source and Meek's rules have been applied; counts of
+ * components are memoized.
+ * <p>
+ * The DAGs are listed by a Cursor, which orients one undirected edge at a time in a single
+ * mutable copy of the pattern, applies Meek's rules incrementally from the endpoints of the
+ * edge, and backtracks over an undo trail. Because Meek's rules are complete, every edge
+ * left undirected can still be oriented either way, so every branch ends in a DAG of the
+ * class and no DAG is reached twice.
+ */
+public class MarkovEquivalenceClass implements Iterable<Graph> {
+
+    private static final byte UNDIRECTED = 0;
+    private static final byte OUT = 1;
+    private static final byte IN = 2;
+
+    /**
+     * The nodes of the pattern, in index order.
+     */
+    private final List<Node> nodes;
+
+    /**
+     * For each node, the indices of its neighbors, sorted.
+     */
+    private final int[][] neighbors;
+
+    /**
+     * For each node and neighbor, the mark at the node: OUT if the edge points away from it,
+     * IN if into it, UNDIRECTED otherwise. Closed under Meek's rules.
+     */
+    private final byte[][] marks;
+
+    /**
+     * The number of DAGs in the pattern, once counted.
+     */
+    private BigInteger count;
+
+    /**
+     * Memoized counts of the chordal components met while counting, by vertex set.
+     */
+    private Map<BitSet, BigInteger> counts;
+
+    private BigInteger[] factorials;
+
+    /**
+     * @param pattern A pattern: a graph of directed and undirected edges whose undirected
+     *                components are chordal. It is closed under Meek's rules if it is not
+     *                already.
+     * @throws IllegalArgumentException if the graph is not a pattern.
+     */
+    public MarkovEquivalenceClass(Graph pattern) {
+        if (pattern == null) throw new NullPointerException("Pattern is null.");
+
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(pattern.getNodes()));
+
+        Map<Node, Integer> indices = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) indices.put(nodes.get(i), i);
+
+        int n = nodes.size();
+        this.neighbors = new int[n][];
+        this.marks = new byte[n][];
+
+        for (int i = 0; i < n; i++) {
+            List<Node> adjacent = pattern.getAdjacentNodes(nodes.get(i));
+            neighbors[i] = new int[adjacent.size()];
+
+            for (int k = 0; k < adjacent.size(); k++) {
+                neighbors[i][k] = indices.get(adjacent.get(k));
+            }
+
+            Arrays.sort(neighbors[i]);
+            marks[i] = new byte[neighbors[i].length];
+
+            for (int k = 1; k < neighbors[i].length; k++) {
+                if (neighbors[i][k] == neighbors[i][k - 1]) {
+                    throw new IllegalArgumentException("Expecting a pattern, with at most one edge between "
+                            + "two nodes: " + nodes.get(i) + " and " + nodes.get(neighbors[i][k]));
+                }
+            }
+        }
+
+        for (Edge edge : pattern.getEdges()) {
+            int x = indices.get(edge.getNode1());
+            int y = indices.get(edge.getNode2());
+
+            if (Edges.isDirectedEdge(edge)) {
+                if (edge.pointsTowards(edge.getNode2())) {
+                    direct(x, y);
+                } else {
+                    direct(y, x);
+                }
+            } else if (!Edges.isUndirectedEdge(edge)) {
+                throw new IllegalArgumentException("Expecting a pattern, with only directed and undirected "
+                        + "edges: " + edge);
+            }
+        }
+
+        Pdag pdag = new Pdag(neighbors, marks);
+        pdag.propagateAll();
+
+        if (!isChordal()) {
+            throw new IllegalArgumentException("The undirected part of the graph is not chordal, so it is "
+                    + "not a pattern.");
+        }
+    }
+
+    /**
+     * @return True if the graph is a pattern: the pattern of the DAGs it is taken to
+     * represent, closed under Meek's rules with only compelled edges directed.
+     */
+    public static boolean isPattern(Graph graph) {
+        MarkovEquivalenceClass dags;
+
+        try {
+            dags = new MarkovEquivalenceClass(graph);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        Cursor cursor = dags.cursor();
+        if (!cursor.next()) return false;
+
+        Graph dag = cursor.getDag();
+        return !dag.existsDirectedCycle() && SearchGraphUtils.patternForDag(dag).equals(graph);
+    }
+
+    /**
+     * @return The nodes of the pattern; node indices used by cursors are indices into this list.
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The number of DAGs in the pattern.
+     */
+    public BigInteger count() {
+        if (count == null) {
+            counts = new HashMap<>();
+            factorials = new BigInteger[]{BigInteger.ONE};
+
+            BigInteger product = BigInteger.ONE;
+
+            for (int[] component : undirectedComponents(neighbors, marks, new boolean[nodes.size()])) {
+                product = product.multiply(count(component));
+            }
+
+            counts = null;
+            count = product;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return A new cursor over the DAGs in the pattern, positioned before the first.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * @return The DAGs in the pattern, generated one at a time, each a new graph.
+     */
+    @Override
+    public Iterator<Graph> iterator() {
+        final Cursor cursor = cursor();
+
+        return new Iterator<Graph>() {
+            private boolean advanced = false;
+            private boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (!advanced) {
+                    hasNext = cursor.next();
+                    advanced = true;
+                }
+
+                return hasNext;
+            }
+
+            @Override
+            public Graph next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                advanced = false;
+                return cursor.getDag();
+            }
+        };
+    }
+
+    /**
+     * @return Some DAG in the pattern.
+     */
+    public Graph getDag() {
+        Cursor cursor = cursor();
+        cursor.next();
+        return cursor.getDag();
+    }
+
+    /**
+     * Steps through the DAGs in the pattern in one mutable graph; the current DAG can be
+     * read through isParent and getParents without allocating, or copied with getDag.
+     */
+    public final class Cursor {
+        private final Pdag pdag;
+
+        // The decisions made so far: the edge oriented (by node and neighbor position), the
+        // length of the trail before it was oriented, and whether it has been tried both ways.
+        private final int[] edgeNode;
+        private final int[] edgePosition;
+        private final int[] trailLength;
+        private final boolean[] reversed;
+        private int depth = 0;
+
+        private boolean started = false;
+        private boolean done = false;
+
+        private Cursor() {
+            byte[][] _marks = new byte[marks.length][];
+            int numEdges = 0;
+
+            for (int i = 0; i < marks.length; i++) {
+                _marks[i] = marks[i].clone();
+                numEdges += marks[i].length;
+            }
+
+            this.pdag = new Pdag(neighbors, _marks);
+            this.edgeNode = new int[numEdges / 2];
+            this.edgePosition = new int[numEdges / 2];
+            this.trailLength = new int[numEdges / 2];
+            this.reversed = new boolean[numEdges / 2];
+        }
+
+        /**
+         * Moves to the next DAG.
+         *
+         * @return False if there are no more DAGs.
+         */
+        public boolean next() {
+            if (done) return false;
+
+            if (!started) {
+                started = true;
+                descend(0, 0);
+                return true;
+            }
+
+            while (depth > 0) {
+                int d = depth - 1;
+                pdag.undo(trailLength[d]);
+
+                if (!reversed[d]) {
+                    reversed[d] = true;
+                    int x = edgeNode[d];
+                    pdag.orient(neighbors[x][edgePosition[d]], x);
+                    pdag.propagate();
+                    descend(x, edgePosition[d]);
+                    return true;
+                }
+
+                depth--;
+            }
+
+            done = true;
+            return false;
+        }
+
+        /**
+         * @return True if x is a parent of y in the current DAG.
+         */
+        public boolean isParent(int x, int y) {
+            checkCurrent();
+            int k = Arrays.binarySearch(neighbors[x], y);
+            return k >= 0 && pdag.marks[x][k] == OUT;
+        }
+
+        /**
+         * Puts the parents of y in the current DAG into the given array, which must be long
+         * enough to hold all of the neighbors of y.
+         *
+         * @return The number of parents.
+         */
+        public int getParents(int y, int[] parents) {
+            checkCurrent();
+            int numParents = 0;
+
+            for (int k = 0; k < neighbors[y].length; k++) {
+                if (pdag.marks[y][k] == IN) parents[numParents++] = neighbors[y][k];
+            }
+
+            return numParents;
+        }
+
+        /**
+         * @return A copy of the current DAG, over the nodes of the pattern.
+         */
+        public Graph getDag() {
+            checkCurrent();
+            Graph dag = new EdgeListGraph(nodes);
+
+            for (int x = 0; x < neighbors.length; x++) {
+                for (int k = 0; k < neighbors[x].length; k++) {
+                    if (pdag.marks[x][k] == OUT) {
+                        dag.addDirectedEdge(nodes.get(x), nodes.get(neighbors[x][k]));
+                    }
+                }
+            }
+
+            return dag;
+        }
+
+        // Orients undirected edges, scanning from the given edge on, until none are left.
+        private void descend(int x, int position) {
+            for (; x < neighbors.length; x++, position = 0) {
+                for (; position < neighbors[x].length; position++) {
+                    if (pdag.marks[x][position] != UNDIRECTED) continue;
+
+                    edgeNode[depth] = x;
+                    edgePosition[depth] = position;
+                    trailLength[depth] = pdag.trailLength();
+                    reversed[depth] = false;
+                    depth++;
+
+                    pdag.orient(x, neighbors[x][position]);
+                    pdag.propagate();
+                }
+            }
+        }
+
+        private void checkCurrent() {
+            if (!started || done) throw new IllegalStateException("The cursor is not at a DAG.");
+        }
+    }
+
+    //==============================PRIVATE METHODS==============================//
+
+    // The number of acyclic orientations without new colliders of the connected chordal
+    // subgraph of the undirected part of the pattern over the given nodes.
+    private BigInteger count(int[] component) {
+        int m = component.length;
+        if (m <= 2) return BigInteger.valueOf(m);
+
+        BitSet key = new BitSet();
+        for (int v : component) key.set(v);
+
+        BigInteger memo = counts.get(key);
+        if (memo != null) return memo;
+
+        int[][] local = localUndirectedGraph(component);
+        List<BitSet> cliques = maximalCliques(local);
+
+        BigInteger sum;
+
+        if (cliques.size() == 1) {
+            sum = factorial(m);
+        } else {
+            int[] parent = cliqueTree(cliques);
+            sum = BigInteger.ZERO;
+
+            for (int c = 0; c < cliques.size(); c++) {
+                BitSet clique = cliques.get(c);
+
+                // The separators on the path to the root that lie in this clique.
+                List<BitSet> separators = new ArrayList<>();
+
+                for (int a = c; parent[a] != -1; a = parent[a]) {
+                    BitSet separator = (BitSet) cliques.get(a).clone();
+                    separator.and(cliques.get(parent[a]));
+
+                    BitSet outside = (BitSet) separator.clone();
+                    outside.andNot(clique);
+
+                    if (outside.isEmpty() && !separators.contains(separator)) {
+                        separators.add(separator);
+                    }
+                }
+
+                BigInteger orderings = orderingsAvoiding(clique, separators);
+                if (orderings.signum() == 0) continue;
+
+                sum = sum.add(orderings.multiply(countWithSource(component, local, clique)));
+            }
+        }
+
+        counts.put(key, sum);
+        return sum;
+    }
+
+    // The product of the counts of the chordal components left when the given clique of the
+    // local graph is made a source and Meek's rules are applied.
+    private BigInteger countWithSource(int[] component, int[][] local, BitSet clique) {
+        byte[][] _marks = new byte[local.length][];
+        for (int i = 0; i < local.length; i++) _marks[i] = new byte[local[i].length];
+
+        Pdag pdag = new Pdag(local, _marks);
+
+        for (int x = clique.nextSetBit(0); x >= 0; x = clique.nextSetBit(x + 1)) {
+            for (int y : local[x]) {
+                if (!clique.get(y) || y > x) pdag.orient(x, y);
+            }
+        }
+
+        pdag.propagate();
+
+        BigInteger product = BigInteger.ONE;
+
+        for (int[] sub : undirectedComponents(local, _marks, new boolean[local.length])) {
+            int[] global = new int[sub.length];
+            for (int i = 0; i < sub.length; i++) global[i] = component[sub[i]];
+            Arrays.sort(global);
+            product = product.multiply(count(global));
+        }
+
+        return product;
+    }
+
+    // The number of orderings of the clique none of which begins with one of the given
+    // separators (all subsets of the clique). An ordering whose shortest such beginning is S
+    // is an ordering of S avoiding the smaller separators within S, followed by any ordering
+    // of the rest.
+    private BigInteger orderingsAvoiding(BitSet clique, List<BitSet> separators) {
+        separators.sort(Comparator.comparingInt(BitSet::cardinality));
+        BigInteger[] avoiding = new BigInteger[separators.size()];
+
+        for (int i = 0; i < separators.size(); i++) {
+            avoiding[i] = orderingsAvoiding(separators.get(i), separators, avoiding, i);
+        }
+
+        return orderingsAvoiding(clique, separators, avoiding, separators.size());
+    }
+
+    private BigInteger orderingsAvoiding(BitSet set, List<BitSet> separators, BigInteger[] avoiding, int n) {
+        int size = set.cardinality();
+        BigInteger total = factorial(size);
+
+        for (int j = 0; j < n; j++) {
+            BitSet separator = separators.get(j);
+            if (separator.cardinality() >= size) continue;
+
+            BitSet outside = (BitSet) separator.clone();
+            outside.andNot(set);
+
+            if (outside.isEmpty()) {
+                total = total.subtract(factorial(size - separator.cardinality()).multiply(avoiding[j]));
+            }
+        }
+
+        return total;
+    }
+
+    // The undirected edges among the given nodes, renumbered 0..m-1 in the given order.
+    private int[][] localUndirectedGraph(int[] component) {
+        Map<Integer, Integer> local = new HashMap<>();
+        for (int i = 0; i < component.length; i++) local.put(component[i], i);
+
+        int[][] graph = new int[component.length][];
+
+        for (int i = 0; i < component.length; i++) {
+            int x = component[i];
+            int[] adjacent = new int[neighbors[x].length];
+            int numAdjacent = 0;
+
+            for (int k = 0; k < neighbors[x].length; k++) {
+                Integer y = local.get(neighbors[x][k]);
+                if (y != null && marks[x][k] == UNDIRECTED) adjacent[numAdjacent++] = y;
+            }
+
+            graph[i] = Arrays.copyOf(adjacent, numAdjacent);
+            Arrays.sort(graph[i]);
+        }
+
+        return graph;
+    }
+
+    // The maximal cliques of a connected chordal graph, from a maximum cardinality search:
+    // each node with the nodes visited before it that it is adjacent to forms a clique, and
+    // the clique is maximal unless the next node sees more of the visited nodes.
+    private static List<BitSet> maximalCliques(int[][] graph) {
+        int m = graph.length;
+        int[] order = maximumCardinalityOrder(graph);
+        int[] rank = new int[m];
+        for (int i = 0; i < m; i++) rank[order[i]] = i;
+
+        BitSet[] earlier = new BitSet[m];
+
+        for (int i = 0; i < m; i++) {
+            int v = order[i];
+            earlier[i] = new BitSet(m);
+
+            for (int w : graph[v]) {
+                if (rank[w] < i) earlier[i].set(w);
+            }
+        }
+
+        List<BitSet> cliques = new ArrayList<>();
+
+        for (int i = 0; i < m; i++) {
+            if (i == m - 1 || earlier[i + 1].cardinality() <= earlier[i].cardinality()) {
+                BitSet clique = (BitSet) earlier[i].clone();
+                clique.set(order[i]);
+                cliques.add(clique);
+            }
+        }
+
+        return cliques;
+    }
+
+    // A maximum weight spanning tree of the clique intersection graph, as parent indices,
+    // rooted at clique 0.
+    private static int[] cliqueTree(List<BitSet> cliques) {
+        int k = cliques.size();
+        int[] parent = new int[k];
+        int[] weight = new int[k];
+        boolean[] inTree = new boolean[k];
+
+        Arrays.fill(parent, -1);
+        Arrays.fill(weight, -1);
+        weight[0] = 0;
+
+        for (int step = 0; step < k; step++) {
+            int best = -1;
+
+            for (int c = 0; c < k; c++) {
+                if (!inTree[c] && (best == -1 || weight[c] > weight[best])) best = c;
+            }
+
+            inTree[best] = true;
+
+            for (int c = 0; c < k; c++) {
+                if (inTree[c]) continue;
+
+                BitSet intersection = (BitSet) cliques.get(best).clone();
+                intersection.and(cliques.get(c));
+
+                if (intersection.cardinality() > weight[c]) {
+                    weight[c] = intersection.cardinality();
+                    parent[c] = best;
+                }
+            }
+        }
+
+        return parent;
+    }
+
+    // Orders the nodes so that each sees as many of the nodes before it as possible.
+    private static int[] maximumCardinalityOrder(int[][] graph) {
+        int m = graph.length;
+        int[] order = new int[m];
+        int[] seen = new int[m];
+        boolean[] visited = new boolean[m];
+
+        for (int i = 0; i < m; i++) {
+            int best = -1;
+
+            for (int v = 0; v < m; v++) {
+                if (!visited[v] && (best == -1 || seen[v] > seen[best])) best = v;
+            }
+
+            order[i] = best;
+            visited[best] = true;
+
+            for (int w : graph[best]) seen[w]++;
+        }
+
+        return order;
+    }
+
+    // True if every undirected component of the pattern is chordal: in a maximum
+    // cardinality order, the earlier neighbors of each node other than the latest must be
+    // earlier neighbors of the latest.
+    private boolean isChordal() {
+        for (int[] component : undirectedComponents(neighbors, marks, new boolean[nodes.size()])) {
+            int[][] graph = localUndirectedGraph(component);
+            int m = graph.length;
+            int[] order = maximumCardinalityOrder(graph);
+            int[] rank = new int[m];
+            for (int i = 0; i < m; i++) rank[order[i]] = i;
+
+            for (int v = 0; v < m; v++) {
+                int latest = -1;
+
+                for (int w : graph[v]) {
+                    if (rank[w] < rank[v] && (latest == -1 || rank[w] > rank[latest])) latest = w;
+                }
+
+                if (latest == -1) continue;
+
+                for (int w : graph[v]) {
+                    if (w != latest && rank[w] < rank[v] && Arrays.binarySearch(graph[latest], w) < 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // The connected components of the undirected edges, as sorted node arrays; components
+    // with no undirected edges are skipped.
+    private static List<int[]> undirectedComponents(int[][] neighbors, byte[][] marks, boolean[] visited) {
+        List<int[]> components = new ArrayList<>();
+        int[] stack = new int[neighbors.length];
+
+        for (int start = 0; start < neighbors.length; start++) {
+            if (visited[start]) continue;
+            visited[start] = true;
+
+            int size = 0;
+            int top = 0;
+            stack[top++] = start;
+            List<Integer> component = new ArrayList<>();
+
+            while (top > 0) {
+                int x = stack[--top];
+                component.add(x);
+                size++;
+
+                for (int k = 0; k < neighbors[x].length; k++) {
+                    int y = neighbors[x][k];
+
+                    if (marks[x][k] == UNDIRECTED && !visited[y]) {
+                        visited[y] = true;
+                        stack[top++] = y;
+                    }
+                }
+            }
+
+            if (size > 1) {
+                int[] _component = new int[size];
+                for (int i = 0; i < size; i++) _component[i] = component.get(i);
+                Arrays.sort(_component);
+                components.add(_component);
+            }
+        }
+
+        return components;
+    }
+
+    private BigInteger factorial(int n) {
+        if (n >= factorials.length) {
+            int old = factorials.length;
+            factorials = Arrays.copyOf(factorials, Math.max(n + 1, 2 * old));
+
+            for (int i = old; i < factorials.length; i++) {
+                factorials[i] = factorials[i - 1].multiply(BigInteger.valueOf(i));
+            }
+        }
+
+        return factorials[n];
+    }
+
+    private void direct(int from, int to) {
+        marks[from][Arrays.binarySearch(neighbors[from], to)] = OUT;
+        marks[to][Arrays.binarySearch(neighbors[to], from)] = IN;
+    }
+
+    /**
+     * A partially directed graph over int-indexed nodes, with Meek's rules applied by a
+     * worklist: orienting x-->y queues x, y and the neighbors of x, the nodes at which some
+     * rule may newly apply, and each queued node has its undirected edges checked against
+     * the rules. Orientations are recorded on a trail so that they can be undone.
+     */
+    private static class Pdag {
+        private final int[][] neighbors;
+        private final byte[][] marks;
+
+        private int[] trail = new int[16];
+        private int trailSize = 0;
+
+        private final int[] queue;
+        private final boolean[] queued;
+        private int head = 0;
+        private int size = 0;
+
+        Pdag(int[][] neighbors, byte[][] marks) {
+            this.neighbors = neighbors;
+            this.marks = marks;
+            this.queue = new int[neighbors.length];
+            this.queued = new boolean[neighbors.length];
+        }
+
+        int trailLength() {
+            return trailSize;
+        }
+
+        void orient(int x, int y) {
+            int kx = Arrays.binarySearch(neighbors[x], y);
+            int ky = Arrays.binarySearch(neighbors[y], x);
+
+            marks[x][kx] = OUT;
+            marks[y][ky] = IN;
+
+            if (trailSize + 2 > trail.length) trail = Arrays.copyOf(trail, 2 * trail.length);
+            trail[trailSize++] = x;
+            trail[trailSize++] = kx;
+
+            enqueue(x);
+            enqueue(y);
+            for (int w : neighbors[x]) enqueue(w);
+        }
+
+        void undo(int length) {
+            while (trailSize > length) {
+                int kx = trail[--trailSize];
+                int x = trail[--trailSize];
+                int y = neighbors[x][kx];
+
+                marks[x][kx] = UNDIRECTED;
+                marks[y][Arrays.binarySearch(neighbors[y], x)] = UNDIRECTED;
+            }
+        }
+
+        void propagateAll() {
+            for (int x = 0; x < neighbors.length; x++) enqueue(x);
+            propagate();
+        }
+
+        void propagate() {
+            while (size > 0) {
+                int x = queue[head];
+                head = (head + 1) % queue.length;
+                size--;
+                queued[x] = false;
+
+                for (int k = 0; k < neighbors[x].length; k++) {
+                    if (marks[x][k] != UNDIRECTED) continue;
+                    int y = neighbors[x][k];
+
+                    if (implied(x, y)) {
+                        orient(x, y);
+                    } else if (implied(y, x)) {
+                        orient(y, x);
+                    }
+                }
+            }
+        }
+
+        // True if one of Meek's rules orients the undirected edge x---y as x-->y.
+        private boolean implied(int x, int y) {
+            int[] adjX = neighbors[x];
+            byte[] marksX = marks[x];
+
+            for (int k = 0; k < adjX.length; k++) {
+                int w = adjX[k];
+                if (w == y) continue;
+
+                // R1: w-->x---y, w and y nonadjacent.
+                if (marksX[k] == IN && !adjacent(w, y)) return true;
+
+                // R2: x-->w-->y.
+                if (marksX[k] == OUT && directed(w, y)) return true;
+
+                if (marksX[k] == UNDIRECTED) {
+                    // R3: x---w-->y and x---v-->y, w and v nonadjacent.
+                    if (directed(w, y)) {
+                        for (int j = k + 1; j < adjX.length; j++) {
+                            int v = adjX[j];
+
+                            if (v != y && marksX[j] == UNDIRECTED && directed(v, y) && !adjacent(w, v)) {
+                                return true;
+                            }
+                        }
+                    }
+
+                    // R4: x---w-->v-->y, w and y nonadjacent, x and v adjacent.
+                    if (!adjacent(w, y)) {
+                        int[] adjW = neighbors[w];
+
+                        for (int j = 0; j < adjW.length; j++) {
+                            int v = adjW[j];
+
+                            if (marks[w][j] == OUT && v != x && directed(v, y) && adjacent(x, v)) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        private boolean adjacent(int x, int y) {
+            return Arrays.binarySearch(neighbors[x], y) >= 0;
+        }
+
+        private boolean directed(int x, int y) {
+            int k = Arrays.binarySearch(neighbors[x], y);
+            return k >= 0 && marks[x][k] == OUT;
+        }
+
+        private void enqueue(int x) {
+            if (queued[x]) return;
+            queued[x] = true;
+            queue[(head + size) % queue.length] = x;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.*;
+
+import java.util.*;
+
+/**
+ * Applies Meek's orientation rules (Chris Meek (1995), "Causal inference and causal explanation with background
+ * knowledge") by a worklist, as a faster replacement for MeekRules. Rules R1 to R3 are applied; like MeekRules,
+ * whose R4 never fires, this does not apply R4.
+ * <p>
+ * Nodes are numbered once per graph, and the neighbors of a node are read from the graph into a sorted int array with
+ * one mark per edge end the first time the node is needed in a call, so that the rules are checked by array lookups
+ * rather than through Graph accessors and without enumerating pairs of neighbors. Only nodes at which some rule may
+ * newly apply are queued: the endpoints of each edge oriented or made undirected. Each queued node has its undirected
+ * edges checked against the rules in both directions. Orientations are written to the graph as they are made.
+ * <p>
+ * As in MeekRules, triples the graph marks as ambiguous are not taken as noncolliders, orientations the knowledge
+ * forbids are not made, and, if undirectUnforcedEdges is set, parents of a queued node that are not in an unshielded
+ * collider there are first made undirected again unless oriented earlier in the same call, as Fges needs after an
+ * insert or delete.
+ */
+public class MeekPropagator implements ImpliedOrientation {
+
+    private static final byte UNDIRECTED = 0;
+    private static final byte OUT = 1;
+    private static final byte IN = 2;
+    private static final byte OTHER = 3;
+
+    private IKnowledge knowledge = new Knowledge2();
+    private boolean undirectUnforcedEdges = false;
+    private Set<Node> visited = new HashSet<>();
+
+    // The graph the nodes are numbered for, and the numbering.
+    private Graph graph;
+    private List<Node> nodes;
+    private Map<Node, Integer> indices;
+
+    // For each node loaded in the current call, its sorted neighbors and the marks at it.
+    private int[][] neighbors;
+    private byte[][] marks;
+    private int[] loaded;
+    private int call = 0;
+
+    // The queue of nodes to check.
+    private int[] queue;
+    private boolean[] queued;
+    private int head;
+    private int size;
+
+    // Edges oriented in the current call, by node pair.
+    private Set<Long> oriented = new HashSet<>();
+
+    // Ambiguous triples of the graph, by center, as node pairs.
+    private Map<Integer, Set<Long>> ambiguous = new HashMap<>();
+
+    private int[] buffer = new int[16];
+
+    //======================== Public Methods ========================//
+
+    /**
+     * Adds the orientations implied in the whole graph.
+     */
+    public void orientImplied(Graph graph) {
+        orientImplied(graph, graph.getNodes());
+    }
+
+    /**
+     * Adds the orientations implied at the given nodes and, transitively, at the nodes whose edges change.
+     */
+    public void orientImplied(Graph graph, Collection<Node> start) {
+        setGraph(graph);
+
+        visited = new HashSet<>(start);
+        oriented.clear();
+        call++;
+
+        ambiguous.clear();
+
+        for (Triple triple : graph.getAmbiguousTriples()) {
+            Integer y = indices.get(triple.getY());
+            if (y == null) continue;
+
+            Set<Long> pairs = ambiguous.get(y);
+
+            if (pairs == null) {
+                pairs = new HashSet<>();
+                ambiguous.put(y, pairs);
+            }
+
+            pairs.add(pair(indices.get(triple.getX()), indices.get(triple.getZ())));
+        }
+
+        // As in MeekRules, the starting nodes are all released before any rule is applied.
+        if (undirectUnforcedEdges) {
+            for (Node node : start) {
+                int x = indices.get(node);
+                load(x);
+                undirectUnforcedEdges(x);
+                for (int z : neighbors[x]) enqueue(z);
+            }
+        }
+
+        for (Node node : start) {
+            enqueue(indices.get(node));
+        }
+
+        while (size > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                while (size > 0) queued[dequeue()] = false;
+                break;
+            }
+
+            int x = dequeue();
+            load(x);
+
+            if (undirectUnforcedEdges) {
+                undirectUnforcedEdges(x);
+            }
+
+            for (int k = 0; k < neighbors[x].length; k++) {
+                if (marks[x][k] != UNDIRECTED) continue;
+                int y = neighbors[x][k];
+                load(y);
+
+                if (implied(x, y)) {
+                    orient(x, y);
+                } else if (implied(y, x)) {
+                    orient(y, x);
+                }
+            }
+        }
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) throw new NullPointerException("Knowledge is null.");
+        this.knowledge = knowledge;
+    }
+
+    /**
+     * @return The nodes given to the last call and those whose edges it changed.
+     */
+    public Set<Node> getVisited() {
+        return visited;
+    }
+
+    public boolean isUndirectUnforcedEdges() {
+        return undirectUnforcedEdges;
+    }
+
+    public void setUndirectUnforcedEdges(boolean undirectUnforcedEdges) {
+        this.undirectUnforcedEdges = undirectUnforcedEdges;
+    }
+
+    //============================== Private Methods ===================================//
+
+    // True if one of the rules orients the undirected edge x---y as x-->y.
+    private boolean implied(int x, int y) {
+        if (!isArrowpointAllowed(x, y)) return false;
+
+        int[] adjX = neighbors[x];
+        byte[] marksX = marks[x];
+        int numCandidates = 0;
+
+        for (int k = 0; k < adjX.length; k++) {
+            int w = adjX[k];
+            if (w == y) continue;
+
+            if (marksX[k] == IN) {
+
+                // R1: w-->x---y, w and y nonadjacent.
+                if (!isAdjacent(w, y) && !isAmbiguous(w, x, y)) return true;
+            } else if (marksX[k] == OUT) {
+
+                // R2: x-->w-->y.
+                if (mark(y, w) == IN) return true;
+            } else if (marksX[k] == UNDIRECTED) {
+
+                // R3 candidates: x---w-->y.
+                if (mark(y, w) == IN) {
+                    if (numCandidates == buffer.length) buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                    buffer[numCandidates++] = w;
+                }
+            }
+        }
+
+        // R3: x---w-->y and x---v-->y, w and v nonadjacent.
+        for (int i = 0; i < numCandidates; i++) {
+            int w = buffer[i];
+            load(w);
+
+            for (int j = i + 1; j < numCandidates; j++) {
+                int v = buffer[j];
+
+                if (!isAdjacent(w, v) && !isAmbiguous(w, x, v)) return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Makes undirected the parents of y not in an unshielded collider at y, unless oriented
+    // earlier in this call or fixed by knowledge.
+    private void undirectUnforcedEdges(int y) {
+        int[] adjY = neighbors[y];
+        int numParents = 0;
+
+        for (int k = 0; k < adjY.length; k++) {
+            if (marks[y][k] == IN) {
+                if (numParents == buffer.length) buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                buffer[numParents++] = adjY[k];
+            }
+        }
+
+        int[] parents = Arrays.copyOf(buffer, numParents);
+        boolean changed = false;
+
+        NEXT_PARENT:
+        for (int x : parents) {
+            load(x);
+
+            for (int z : parents) {
+                if (z != x && !isAdjacent(x, z)) {
+                    oriented.add(pair(x, y));
+                    continue NEXT_PARENT;
+                }
+            }
+
+            Node _x = nodes.get(x);
+            Node _y = nodes.get(y);
+
+            boolean mustOrient = knowledge.isRequired(_x.getName(), _y.getName())
+                    || knowledge.isForbidden(_y.getName(), _x.getName());
+
+            if (!oriented.contains(pair(x, y)) && !mustOrient) {
+                setEdge(x, y, Edges.undirectedEdge(_x, _y), UNDIRECTED, UNDIRECTED);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            enqueue(y);
+            for (int z : neighbors[y]) enqueue(z);
+        }
+    }
+
+    private void orient(int x, int y) {
+        setEdge(x, y, Edges.directedEdge(nodes.get(x), nodes.get(y)), OUT, IN);
+        oriented.add(pair(x, y));
+
+        enqueue(x);
+        enqueue(y);
+    }
+
+    // Replaces the edge between x and y, both loaded, in the graph and in the marks.
+    private void setEdge(int x, int y, Edge edge, byte markX, byte markY) {
+        Node _x = nodes.get(x);
+        Node _y = nodes.get(y);
+
+        graph.removeEdge(graph.getEdge(_x, _y));
+        graph.addEdge(edge);
+
+        marks[x][Arrays.binarySearch(neighbors[x], y)] = markX;
+        marks[y][Arrays.binarySearch(neighbors[y], x)] = markY;
+
+        visited.add(_x);
+        visited.add(_y);
+    }
+
+    // Reads the neighbors of x from the graph, if not already read in this call.
+    private void load(int x) {
+        if (loaded[x] == call) return;
+        loaded[x] = call;
+
+        Node node = nodes.get(x);
+        List<Edge> edges = graph.getEdges(node);
+        long[] entries = new long[edges.size()];
+
+        for (int k = 0; k < edges.size(); k++) {
+            Edge edge = edges.get(k);
+            Node other = edge.getDistalNode(node);
+            Endpoint near = edge.getProximalEndpoint(node);
+            Endpoint far = edge.getDistalEndpoint(node);
+
+            byte mark;
+
+            if (near == Endpoint.TAIL && far == Endpoint.ARROW) {
+                mark = OUT;
+            } else if (near == Endpoint.ARROW && far == Endpoint.TAIL) {
+                mark = IN;
+            } else if (near == Endpoint.TAIL && far == Endpoint.TAIL) {
+                mark = UNDIRECTED;
+            } else {
+                mark = OTHER;
+            }
+
+            entries[k] = ((long) indices.get(other) << 2) | mark;
+        }
+
+        Arrays.sort(entries);
+
+        neighbors[x] = new int[entries.length];
+        marks[x] = new byte[entries.length];
+
+        for (int k = 0; k < entries.length; k++) {
+            neighbors[x][k] = (int) (entries[k] >>> 2);
+            marks[x][k] = (byte) (entries[k] & 3);
+        }
+    }
+
+    private boolean isAdjacent(int x, int y) {
+        load(x);
+        return Arrays.binarySearch(neighbors[x], y) >= 0;
+    }
+
+    // The mark at x of the edge between x and y, -1 if they are not adjacent.
+    private int mark(int x, int y) {
+        load(x);
+        int k = Arrays.binarySearch(neighbors[x], y);
+        return k < 0 ? -1 : marks[x][k];
+    }
+
+    private boolean isAmbiguous(int x, int y, int z) {
+        if (ambiguous.isEmpty()) return false;
+        Set<Long> pairs = ambiguous.get(y);
+        return pairs != null && (pairs.contains(pair(x, z)) || pairs.contains(pair(z, x)));
+    }
+
+    private boolean isArrowpointAllowed(int from, int to) {
+        if (knowledge.isEmpty()) return true;
+        String _from = nodes.get(from).getName();
+        String _to = nodes.get(to).getName();
+        return !knowledge.isRequired(_to, _from) && !knowledge.isForbidden(_from, _to);
+    }
+
+    // Numbers the nodes of the graph, keeping the numbering if the graph and its nodes are the same.
+    private void setGraph(Graph graph) {
+        List<Node> graphNodes = graph.getNodes();
+
+        if (graph == this.graph && graphNodes.equals(nodes)) return;
+
+        this.graph = graph;
+        this.nodes = new ArrayList<>(graphNodes);
+        this.indices = new HashMap<>();
+
+        for (int i = 0; i < nodes.size(); i++) indices.put(nodes.get(i), i);
+
+        int n = nodes.size();
+        this.neighbors = new int[n][];
+        this.marks = new byte[n][];
+        this.loaded = new int[n];
+        this.queue = new int[n];
+        this.queued = new boolean[n];
+        this.head = 0;
+        this.size = 0;
+        this.call = 0;
+    }
+
+    private void enqueue(int x) {
+        if (queued[x]) return;
+        queued[x] = true;
+        queue[(head + size) % queue.length] = x;
+        size++;
+    }
+
+    private int dequeue() {
+        int x = queue[head];
+        head = (head + 1) % queue.length;
+        size--;
+        queued[x] = false;
+        return x;
+    }
+
+    private static long pair(int x, int y) {
+        return ((long) x << 32) | y;
+    }
+}
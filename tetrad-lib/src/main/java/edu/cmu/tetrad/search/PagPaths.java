@@ -0,0 +1,221 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Endpoint;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.Node;
+
+import java.util.*;
+
+/**
+ * A read-only, int-indexed copy of a graph for the path searches of the FCI orientation rules: the discriminating
+ * paths of Zhang's rule R4 and the uncovered potentially directed paths of rules R9 and R10.
+ * <p>
+ * Each node has its neighbors as a sorted int array, with the endpoints of each edge at both ends, and its adjacencies
+ * as a bitset. Uncovered potentially directed paths are searched for depth-first, with the nodes on the current path
+ * kept in an array and a bitset rather than by listing every path, stopping at the first found. This is not a
+ * bounded breadth-first reachability: since the nodes of a path may not repeat, the search is exponential in the
+ * worst case, and only maxPathLength bounds it. Lookups may be made from any number of threads, so that the searches
+ * for all candidate triples or pairs may be done in parallel.
+ */
+public final class PagPaths {
+
+    // Endpoints are kept as their positions in Endpoint.TYPES.
+    private static final byte TAIL = 0;
+    private static final byte ARROW = 1;
+
+    private final List<Node> nodes;
+    private final Map<Node, Integer> indices = new HashMap<>();
+    private final int[][] adjacent;
+    private final BitSet[] adjacencies;
+
+    // near[x][k] is the endpoint at x of the edge from x to adjacent[x][k]; far[x][k] is its endpoint there.
+    private final byte[][] near;
+    private final byte[][] far;
+
+    /**
+     * Copies the given graph. Where two nodes have more than one edge between them only one is used.
+     */
+    public PagPaths(Graph graph) {
+        this.nodes = new ArrayList<>(graph.getNodes());
+
+        for (int i = 0; i < nodes.size(); i++) indices.put(nodes.get(i), i);
+
+        int n = nodes.size();
+        this.adjacent = new int[n][];
+        this.adjacencies = new BitSet[n];
+        this.near = new byte[n][];
+        this.far = new byte[n][];
+
+        for (int x = 0; x < n; x++) {
+            Node node = nodes.get(x);
+            TreeMap<Integer, Edge> edges = new TreeMap<>();
+
+            for (Edge edge : graph.getEdges(node)) {
+                Integer y = indices.get(edge.getDistalNode(node));
+                if (y != null && y != x && !edges.containsKey(y)) edges.put(y, edge);
+            }
+
+            adjacent[x] = new int[edges.size()];
+            near[x] = new byte[edges.size()];
+            far[x] = new byte[edges.size()];
+            adjacencies[x] = new BitSet(n);
+
+            int k = 0;
+
+            for (Map.Entry<Integer, Edge> entry : edges.entrySet()) {
+                Edge edge = entry.getValue();
+                adjacent[x][k] = entry.getKey();
+                near[x][k] = code(edge.getProximalEndpoint(node));
+                far[x][k] = code(edge.getDistalEndpoint(node));
+                adjacencies[x].set(entry.getKey());
+                k++;
+            }
+        }
+    }
+
+    /**
+     * @return The nodes of the graph, in the order of their indices.
+     */
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @return The index of the given node, or -1 if it is not in the graph.
+     */
+    public int index(Node node) {
+        Integer index = indices.get(node);
+        return index == null ? -1 : index;
+    }
+
+    public Node node(int index) {
+        return nodes.get(index);
+    }
+
+    // The indices of the nodes adjacent to x, in order; not to be modified.
+    int[] adjacent(int x) {
+        return adjacent[x];
+    }
+
+    public boolean isAdjacent(int x, int y) {
+        return adjacencies[x].get(y);
+    }
+
+    /**
+     * @return The endpoint at y of the edge between x and y, as Graph.getEndpoint(x, y), or null if they are not
+     * adjacent.
+     */
+    public Endpoint getEndpoint(int x, int y) {
+        int k = Arrays.binarySearch(adjacent[x], y);
+        if (k < 0) return null;
+
+        return Endpoint.TYPES[far[x][k]];
+    }
+
+    /**
+     * @return True if there is an uncovered potentially directed path from a to c whose second node is b, with at
+     * most maxPathLength edges (-1 for unlimited). See Zhang's rule R9. The search is depth-first and may take time
+     * exponential in maxPathLength.
+     */
+    public boolean existsUncoveredPdPath(int a, int b, int c, int maxPathLength) {
+        if (!isPdEdge(a, b)) return false;
+        if (b == c) return true;
+        return uncoveredPdPath(a, b, c, maxPathLength) != null;
+    }
+
+    /**
+     * @return The nodes m for which there is an uncovered potentially directed path from a to c whose second node is
+     * m (m may be c itself), with at most maxPathLength edges (-1 for unlimited). See Zhang's rule R10.
+     */
+    public BitSet getUncoveredPdSecondNodes(int a, int c, int maxPathLength) {
+        BitSet second = new BitSet(nodes.size());
+
+        for (int m : adjacent[a]) {
+            if (existsUncoveredPdPath(a, m, c, maxPathLength)) {
+                second.set(m);
+            }
+        }
+
+        return second;
+    }
+
+    //==============================PRIVATE METHODS==============================//
+
+    // True if the edge from x to y may be directed from x to y: no arrow at x and no tail at y.
+    private boolean isPdEdge(int x, int y) {
+        int k = Arrays.binarySearch(adjacent[x], y);
+        return k >= 0 && near[x][k] != ARROW && far[x][k] != TAIL;
+    }
+
+    // Depth-first search for an uncovered potentially directed path a, b, ..., c, with the nodes on the path kept in
+    // an array and a bitset rather than a list. Returns the path, or null if there is none.
+    private int[] uncoveredPdPath(int a, int b, int c, int maxPathLength) {
+        int limit = maxPathLength == -1 ? nodes.size() : Math.min(maxPathLength, nodes.size());
+        if (limit < 2) return null;
+
+        int[] path = new int[limit + 1];
+        int[] next = new int[limit + 1];
+        BitSet onPath = new BitSet(nodes.size());
+
+        path[0] = a;
+        path[1] = b;
+        onPath.set(a);
+        onPath.set(b);
+        next[1] = 0;
+        int depth = 1;
+
+        while (depth >= 1) {
+            int curr = path[depth];
+
+            if (depth == limit || next[depth] >= adjacent[curr].length) {
+                onPath.clear(curr);
+                depth--;
+                continue;
+            }
+
+            int d = adjacent[curr][next[depth]++];
+
+            if (onPath.get(d)) continue;
+            if (!isPdEdge(curr, d)) continue;
+            if (isAdjacent(path[depth - 1], d)) continue;
+
+            path[++depth] = d;
+
+            if (d == c) {
+                return Arrays.copyOf(path, depth + 1);
+            }
+
+            onPath.set(d);
+            next[depth] = 0;
+        }
+
+        return null;
+    }
+
+    private static byte code(Endpoint endpoint) {
+        return (byte) Arrays.asList(Endpoint.TYPES).indexOf(endpoint);
+    }
+}
@@ -0,0 +1,707 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+
+package edu.cmu.tetrad.search;
+
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.StatUtils;
+import edu.cmu.tetrad.util.TetradLogger;
+
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * FGES for very many variables, by divide and conquer. A cheap screen keeps, for each
+ * variable, the few others most strongly correlated with it, among those whose marginal
+ * correlations with it are significant, giving a sparse graph with neighborhoods in it.
+ * (The screen may instead keep the few whose scores go up the most when it is made their
+ * parent, the first step of FGES, but that scores every pair.) The variables are
+ * cut into cores of at most maxPartitionSize, grown breadth-first along the screen; each
+ * core is searched by FGES together with up to overlap of its most strongly screened
+ * neighbors, in parallel, bounded by the screen. A last FGES over all of the variables,
+ * bounded by the union of the adjacencies the partitions found and the screen edges
+ * between cores, settles the edges, in particular those between cores.
+ * <p>
+ * No single search holds arrows for more than the pairs of one partition or of the
+ * bound, where a single FGES would hold them for every pair of dependent variables. The
+ * price is that only pairs in the screen can be adjacent, so the result may differ from
+ * that of a single FGES. With no more variables than maxPartitionSize, this is just FGES.
+ */
+public final class PartitionedFges implements GraphSearch {
+
+    /**
+     * How the screen is made. CORRELATION keeps significant marginal correlations, from
+     * the covariances; SCORE keeps positive first-step score differences.
+     */
+    public enum ScreenType {
+        CORRELATION, SCORE
+    }
+
+    private final Score score;
+    private final List<Node> variables;
+    private int maxPartitionSize = 1000;
+    private int overlap = 200;
+    private int screenDegree = 20;
+    private ScreenType screenType = ScreenType.CORRELATION;
+    private double screenAlpha = 0.01;
+    private ICovarianceMatrix covariances = null;
+    private Graph screenGraph = null;
+    private IKnowledge knowledge = new Knowledge2();
+    private boolean faithfulnessAssumed = true;
+    private boolean symmetricFirstStep = false;
+    private boolean parallel = true;
+    private boolean verbose = false;
+    private List<List<Node>> partitions = new ArrayList<>();
+    private long elapsedTime;
+    private final TetradLogger logger = TetradLogger.getInstance();
+
+    public PartitionedFges(Score score) {
+        if (score == null) throw new NullPointerException("Score may not be null.");
+        this.score = score;
+        this.variables = new ArrayList<>();
+
+        for (Node node : score.getVariables()) {
+            if (node.getNodeType() == NodeType.MEASURED) {
+                this.variables.add(node);
+            }
+        }
+    }
+
+    /**
+     * @return the pattern found.
+     */
+    public Graph search() {
+        long start = System.currentTimeMillis();
+        Graph graph;
+
+        if (variables.size() <= maxPartitionSize) {
+            partitions = Collections.singletonList(variables);
+            graph = newFges(score).search();
+        } else {
+            Map<Node, Integer> indices = indices();
+            Graph screen = screenGraph != null
+                    ? GraphUtils.replaceNodes(screenGraph, variables) : screen(indices);
+            partitions = partition(screen);
+
+            if (verbose) {
+                logger.log("info", "Screen has " + screen.getNumEdges() + " edges; "
+                        + partitions.size() + " partitions");
+            }
+
+            graph = merge(screen, searchPartitions(screen, indices));
+        }
+
+        this.elapsedTime = System.currentTimeMillis() - start;
+
+        if (verbose) {
+            logger.log("info", "Elapsed time = " + elapsedTime / 1000.0 + " s");
+        }
+
+        return graph;
+    }
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * @return the cores of the partitions of the last search, which are disjoint and
+     * cover the variables.
+     */
+    public List<List<Node>> getPartitions() {
+        return partitions;
+    }
+
+    public int getMaxPartitionSize() {
+        return maxPartitionSize;
+    }
+
+    /**
+     * Sets the most variables in the core of a partition, which is searched together
+     * with its neighbors in the screen.
+     */
+    public void setMaxPartitionSize(int maxPartitionSize) {
+        if (maxPartitionSize < 1) {
+            throw new IllegalArgumentException("Max partition size must be at least 1: " + maxPartitionSize);
+        }
+
+        this.maxPartitionSize = maxPartitionSize;
+    }
+
+    public int getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Sets the most variables outside a core searched together with it, taken from its
+     * neighbors in the screen in order of their scores with the core.
+     */
+    public void setOverlap(int overlap) {
+        if (overlap < 0) throw new IllegalArgumentException("Overlap must be at least 0: " + overlap);
+        this.overlap = overlap;
+    }
+
+    public int getScreenDegree() {
+        return screenDegree;
+    }
+
+    /**
+     * Sets the number of other variables each variable keeps in the screen.
+     */
+    public void setScreenDegree(int screenDegree) {
+        if (screenDegree < 1) {
+            throw new IllegalArgumentException("Screen degree must be at least 1: " + screenDegree);
+        }
+
+        this.screenDegree = screenDegree;
+    }
+
+    public ScreenType getScreenType() {
+        return screenType;
+    }
+
+    /**
+     * Sets how the screen is made: CORRELATION (the default), from the covariances of
+     * the score or those given by setCovariances, or SCORE, which scores every pair.
+     */
+    public void setScreenType(ScreenType screenType) {
+        if (screenType == null) throw new NullPointerException("Screen type may not be null.");
+        this.screenType = screenType;
+    }
+
+    public double getScreenAlpha() {
+        return screenAlpha;
+    }
+
+    /**
+     * Sets the significance level of the Fisher Z test of a marginal correlation, at or
+     * below which it is kept by the correlation screen.
+     */
+    public void setScreenAlpha(double screenAlpha) {
+        if (!(screenAlpha > 0 && screenAlpha < 1)) {
+            throw new IllegalArgumentException("Screen alpha must be in (0, 1): " + screenAlpha);
+        }
+
+        this.screenAlpha = screenAlpha;
+    }
+
+    public ICovarianceMatrix getCovariances() {
+        return covariances;
+    }
+
+    /**
+     * Sets the covariances for the correlation screen, over the variables of the score.
+     * Null (the default) to use those of the score, if it is a SemBicScore.
+     */
+    public void setCovariances(ICovarianceMatrix covariances) {
+        this.covariances = covariances;
+    }
+
+    public Graph getScreenGraph() {
+        return screenGraph;
+    }
+
+    /**
+     * Sets a screen to use instead of making one, for instance the adjacencies from
+     * FasStableConcurrent with a small depth. Only pairs adjacent in it can be adjacent in
+     * the result. Null (the default) to make one as set by setScreenType.
+     */
+    public void setScreenGraph(Graph screenGraph) {
+        this.screenGraph = screenGraph;
+    }
+
+    public IKnowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public void setKnowledge(IKnowledge knowledge) {
+        if (knowledge == null) throw new NullPointerException("Knowledge may not be null.");
+        this.knowledge = knowledge;
+    }
+
+    /**
+     * See Fges.setFaithfulnessAssumed.
+     */
+    public void setFaithfulnessAssumed(boolean faithfulnessAssumed) {
+        this.faithfulnessAssumed = faithfulnessAssumed;
+    }
+
+    public boolean isFaithfulnessAssumed() {
+        return faithfulnessAssumed;
+    }
+
+    /**
+     * See Fges.setSymmetricFirstStep.
+     */
+    public void setSymmetricFirstStep(boolean symmetricFirstStep) {
+        this.symmetricFirstStep = symmetricFirstStep;
+    }
+
+    public boolean isSymmetricFirstStep() {
+        return symmetricFirstStep;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * True (the default) if the screen and the partitions should be searched in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    //===========================PRIVATE METHODS========================//
+
+    private Fges newFges(Score score) {
+        Fges fges = new Fges(score);
+        fges.setKnowledge(knowledge);
+        fges.setFaithfulnessAssumed(faithfulnessAssumed);
+        fges.setSymmetricFirstStep(symmetricFirstStep);
+        return fges;
+    }
+
+    // For each variable, the screenDegree others most strongly related to it, by the
+    // screen type.
+    private Graph screen(final Map<Node, Integer> indices) {
+        final Correlations correlations = screenType == ScreenType.CORRELATION ? correlations() : null;
+        final List<List<Node>> found = new ArrayList<>(Collections.<List<Node>>nCopies(variables.size(), null));
+        final int chunk = Math.max(1, variables.size() / (10 * ForkJoinPoolInstance.getInstance().getPool().getParallelism()));
+
+        class ScreenTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private ScreenTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= chunk) {
+                    for (int i = from; i < to; i++) {
+                        if (Thread.currentThread().isInterrupted()) break;
+                        found.set(i, correlations != null
+                                ? correlations.screen(i)
+                                : screen(variables.get(i), indices));
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    ScreenTask left = new ScreenTask(from, mid);
+                    ScreenTask right = new ScreenTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        if (parallel) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new ScreenTask(0, variables.size()));
+        } else {
+            new ScreenTask(0, variables.size()).compute();
+        }
+
+        Graph screen = new EdgeListGraph(variables);
+
+        for (int i = 0; i < variables.size(); i++) {
+            if (found.get(i) == null) continue;
+            Node y = variables.get(i);
+
+            for (Node x : found.get(i)) {
+                if (!screen.isAdjacentTo(x, y)) {
+                    screen.addUndirectedEdge(x, y);
+                }
+            }
+        }
+
+        return screen;
+    }
+
+    private Correlations correlations() {
+        ICovarianceMatrix covariances = this.covariances;
+
+        if (covariances == null && score instanceof SemBicScore) {
+            covariances = ((SemBicScore) score).getCovariances();
+        }
+
+        if (covariances == null) {
+            throw new IllegalStateException("The correlation screen needs covariances; set them, "
+                    + "or use the score screen.");
+        }
+
+        return new Correlations(covariances);
+    }
+
+    // The screenDegree variables whose scores go up the most with y as a parent.
+    private List<Node> screen(Node y, Map<Node, Integer> indices) {
+        final Map<Node, Double> bumps = new HashMap<>();
+        int parent = indices.get(y);
+
+        for (Node x : variables) {
+            if (x == y) continue;
+            int child = indices.get(x);
+            double bump = score.localScoreDiff(parent, child);
+
+            if (symmetricFirstStep) {
+                bump = Math.max(bump, score.localScoreDiff(child, parent));
+            }
+
+            if (bump > 0) {
+                bumps.put(x, bump);
+            }
+        }
+
+        return strongest(bumps, screenDegree);
+    }
+
+    // Cuts the variables into cores of at most maxPartitionSize, taking them breadth-first
+    // along the screen so that each core holds neighborhoods.
+    private List<List<Node>> partition(Graph screen) {
+        Set<Node> variables = new HashSet<>(this.variables);
+        List<List<Node>> cores = new ArrayList<>();
+        List<Node> core = new ArrayList<>();
+        Set<Node> queued = new HashSet<>();
+        LinkedList<Node> queue = new LinkedList<>();
+
+        for (Node start : this.variables) {
+            if (queued.contains(start)) continue;
+
+            queue.add(start);
+            queued.add(start);
+
+            while (!queue.isEmpty()) {
+                Node node = queue.removeFirst();
+                core.add(node);
+
+                if (core.size() == maxPartitionSize) {
+                    cores.add(core);
+                    core = new ArrayList<>();
+                }
+
+                for (Node adj : screen.getAdjacentNodes(node)) {
+                    if (variables.contains(adj) && queued.add(adj)) {
+                        queue.add(adj);
+                    }
+                }
+            }
+        }
+
+        if (!core.isEmpty()) {
+            cores.add(core);
+        }
+
+        return cores;
+    }
+
+    // Runs FGES on each core with its overlap, bounded by the screen.
+    private List<Graph> searchPartitions(final Graph screen, final Map<Node, Integer> indices) {
+        final List<Graph> found = new ArrayList<>(Collections.<Graph>nCopies(partitions.size(), null));
+
+        class PartitionTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private PartitionTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 1) {
+                    for (int i = from; i < to; i++) {
+                        if (Thread.currentThread().isInterrupted()) break;
+                        found.set(i, searchPartition(partitions.get(i), screen, indices));
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+
+                    PartitionTask left = new PartitionTask(from, mid);
+                    PartitionTask right = new PartitionTask(mid, to);
+
+                    left.fork();
+                    right.compute();
+                    left.join();
+
+                    return true;
+                }
+            }
+        }
+
+        if (parallel) {
+            ForkJoinPoolInstance.getInstance().getPool().invoke(new PartitionTask(0, partitions.size()));
+        } else {
+            new PartitionTask(0, partitions.size()).compute();
+        }
+
+        return found;
+    }
+
+    private Graph searchPartition(List<Node> core, Graph screen, Map<Node, Integer> indices) {
+        Set<Node> inCore = new HashSet<>(core);
+        Map<Node, Double> bumps = new HashMap<>();
+
+        for (Node x : core) {
+            for (Node z : screen.getAdjacentNodes(x)) {
+                if (inCore.contains(z) || !indices.containsKey(z)) continue;
+
+                double bump = score.localScoreDiff(indices.get(z), indices.get(x));
+                Double max = bumps.get(z);
+
+                if (max == null || bump > max) {
+                    bumps.put(z, bump);
+                }
+            }
+        }
+
+        List<Node> nodes = new ArrayList<>(core);
+        nodes.addAll(strongest(bumps, overlap));
+
+        Fges fges = newFges(new PartitionScore(score, nodes, indices));
+        fges.setBoundGraph(screen.subgraph(nodes));
+        Graph pattern = fges.search();
+
+        if (verbose) {
+            logger.log("info", "Partition of " + core.size() + " + " + (nodes.size() - core.size())
+                    + " variables: " + pattern.getNumEdges() + " edges");
+        }
+
+        return pattern;
+    }
+
+    // Searches all of the variables, adding only edges adjacent in some partition's result
+    // or in the screen between cores.
+    private Graph merge(Graph screen, List<Graph> patterns) {
+        Map<Node, Integer> coreOf = new HashMap<>();
+
+        for (int i = 0; i < partitions.size(); i++) {
+            for (Node node : partitions.get(i)) {
+                coreOf.put(node, i);
+            }
+        }
+
+        Graph bound = new EdgeListGraph(variables);
+
+        for (Edge edge : screen.getEdges()) {
+            Integer core1 = coreOf.get(edge.getNode1());
+            Integer core2 = coreOf.get(edge.getNode2());
+
+            if (core1 != null && core2 != null && !core1.equals(core2)) {
+                bound.addUndirectedEdge(edge.getNode1(), edge.getNode2());
+            }
+        }
+
+        for (Graph pattern : patterns) {
+            if (pattern == null) continue;
+
+            for (Edge edge : pattern.getEdges()) {
+                if (!bound.isAdjacentTo(edge.getNode1(), edge.getNode2())) {
+                    bound.addUndirectedEdge(edge.getNode1(), edge.getNode2());
+                }
+            }
+        }
+
+        if (verbose) {
+            logger.log("info", "Merging, bounded by " + bound.getNumEdges() + " edges");
+        }
+
+        Fges fges = newFges(score);
+        fges.setBoundGraph(bound);
+        return fges.search();
+    }
+
+    // The (at most) n nodes with the largest values, largest first.
+    private static List<Node> strongest(final Map<Node, Double> values, int n) {
+        List<Node> nodes = new ArrayList<>(values.keySet());
+
+        Collections.sort(nodes, new Comparator<Node>() {
+            public int compare(Node o1, Node o2) {
+                return Double.compare(values.get(o2), values.get(o1));
+            }
+        });
+
+        return nodes.size() > n ? new ArrayList<>(nodes.subList(0, n)) : nodes;
+    }
+
+    private Map<Node, Integer> indices() {
+        Map<Node, Integer> indices = new HashMap<>();
+        List<Node> all = score.getVariables();
+
+        for (int i = 0; i < all.size(); i++) {
+            indices.put(all.get(i), i);
+        }
+
+        return indices;
+    }
+
+    /**
+     * The marginal correlations of the variables, for the correlation screen.
+     */
+    private final class Correlations {
+        private final ICovarianceMatrix covariances;
+        private final int[] indices;
+        private final double[] sd;
+        private final double cutoff;
+
+        private Correlations(ICovarianceMatrix covariances) {
+            this.covariances = covariances;
+            this.indices = new int[variables.size()];
+            this.sd = new double[variables.size()];
+            Map<String, Integer> names = new HashMap<>();
+
+            for (String name : covariances.getVariableNames()) {
+                names.put(name, names.size());
+            }
+
+            for (int i = 0; i < variables.size(); i++) {
+                Integer index = names.get(variables.get(i).getName());
+
+                if (index == null) {
+                    throw new IllegalArgumentException("Not in the covariances: " + variables.get(i));
+                }
+
+                indices[i] = index;
+                sd[i] = Math.sqrt(covariances.getValue(indices[i], indices[i]));
+            }
+
+            // |r| at which the Fisher Z test rejects at screenAlpha.
+            int n = covariances.getSampleSize();
+            this.cutoff = Math.tanh(StatUtils.getZForAlpha(screenAlpha) / Math.sqrt(n - 3.0));
+        }
+
+        // The screenDegree variables most strongly correlated with variable i, if
+        // significantly.
+        private List<Node> screen(int i) {
+            Map<Node, Double> correlations = new HashMap<>();
+
+            for (int j = 0; j < variables.size(); j++) {
+                if (j == i) continue;
+
+                double r = Math.abs(covariances.getValue(indices[i], indices[j]) / (sd[i] * sd[j]));
+
+                if (r > cutoff) {
+                    correlations.put(variables.get(j), r);
+                }
+            }
+
+            return strongest(correlations, screenDegree);
+        }
+    }
+
+    /**
+     * The score restricted to some of its variables, renumbered in the given order.
+     */
+    private static final class PartitionScore implements Score {
+        private final Score score;
+        private final List<Node> variables;
+        private final int[] indices;
+
+        private PartitionScore(Score score, List<Node> variables, Map<Node, Integer> indices) {
+            this.score = score;
+            this.variables = variables;
+            this.indices = new int[variables.size()];
+
+            for (int i = 0; i < variables.size(); i++) {
+                this.indices[i] = indices.get(variables.get(i));
+            }
+        }
+
+        public double localScore(int node, int... parents) {
+            return score.localScore(indices[node], map(parents));
+        }
+
+        public double localScoreDiff(int x, int y, int[] z) {
+            return score.localScoreDiff(indices[x], indices[y], map(z));
+        }
+
+        public double localScoreDiff(int x, int y) {
+            return score.localScoreDiff(indices[x], indices[y]);
+        }
+
+        public double localScore(int node, int parent) {
+            return score.localScore(indices[node], indices[parent]);
+        }
+
+        public double localScore(int node) {
+            return score.localScore(indices[node]);
+        }
+
+        public List<Node> getVariables() {
+            return variables;
+        }
+
+        public boolean isEffectEdge(double bump) {
+            return score.isEffectEdge(bump);
+        }
+
+        public int getSampleSize() {
+            return score.getSampleSize();
+        }
+
+        public Node getVariable(String targetName) {
+            for (Node node : variables) {
+                if (node.getName().equals(targetName)) {
+                    return node;
+                }
+            }
+
+            return null;
+        }
+
+        public int getMaxDegree() {
+            return score.getMaxDegree();
+        }
+
+        public boolean determines(List<Node> z, Node y) {
+            return score.determines(z, y);
+        }
+
+        private int[] map(int[] nodes) {
+            int[] mapped = new int[nodes.length];
+
+            for (int i = 0; i < nodes.length; i++) {
+                mapped[i] = indices[nodes[i]];
+            }
+
+            return mapped;
+        }
+    }
+}
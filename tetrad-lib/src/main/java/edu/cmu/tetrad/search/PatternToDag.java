@@ -23,7 +23,9 @@ package edu.cmu.tetrad.search;
 
 import edu.cmu.tetrad.graph.*;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -46,6 +48,11 @@ public class PatternToDag {
      */
     private Graph pattern;
 
+    /**
+     * The DAGs in the pattern, once asked for.
+     */
+    private MarkovEquivalenceClass dagsInPattern;
+
     //=============================CONSTRUCTORS==========================//
 
     public PatternToDag(Graph pattern) {
@@ -64,6 +71,35 @@ public class PatternToDag {
     public Graph patternToDagMeek() {
         return SearchGraphUtils.dagFromPattern(pattern);
     }
+
+    /**
+     * @return the number of DAGs in the pattern, counted in polynomial time without listing them.
+     * @throws IllegalArgumentException if the graph is not a pattern.
+     */
+    public BigInteger countDags() {
+        return getDagsInPattern().count();
+    }
+
+    /**
+     * @return the DAGs in the pattern, generated one at a time. For scoring many DAGs without copying
+     * each, use getDagsInPattern().cursor().
+     * @throws IllegalArgumentException if the graph is not a pattern.
+     */
+    public Iterator<Graph> dags() {
+        return getDagsInPattern().iterator();
+    }
+
+    /**
+     * @return the Markov equivalence class of the pattern, which counts and lists its DAGs.
+     * @throws IllegalArgumentException if the graph is not a pattern.
+     */
+    public MarkovEquivalenceClass getDagsInPattern() {
+        if (dagsInPattern == null) {
+            dagsInPattern = new MarkovEquivalenceClass(pattern);
+        }
+
+        return dagsInPattern;
+    }
 }
 
 
@@ -25,6 +25,7 @@ import edu.cmu.tetrad.data.IKnowledge;
 import edu.cmu.tetrad.data.Knowledge2;
 import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.util.ChoiceGenerator;
+import edu.cmu.tetrad.util.SearchMetrics;
 import edu.cmu.tetrad.util.TetradLogger;
 
 import java.util.ArrayList;
@@ -128,6 +129,11 @@ public final class PcAll implements GraphSearch {
 
     private boolean verbose = false;
 
+    /**
+     * Times the skeleton, collider and Meek phases.
+     */
+    private SearchMetrics metrics = SearchMetrics.current();
+
     private boolean useHeuristic = false;
     private int maxPathLength;
 
@@ -320,11 +326,17 @@ public final class PcAll implements GraphSearch {
         IFas fas;
 
         if (getFasRule() == FasRule.FAS) {
-            fas = new Fas(initialGraph, getIndependenceTest());
+            Fas _fas = new Fas(initialGraph, getIndependenceTest());
+            _fas.setMetrics(metrics);
+            fas = _fas;
         } else if (getFasRule() == FasRule.FAS_STABLE) {
-            fas = new FasStable(initialGraph, getIndependenceTest());
+            FasStable _fas = new FasStable(initialGraph, getIndependenceTest());
+            _fas.setMetrics(metrics);
+            fas = _fas;
         } else if (getFasRule() == FasRule.FAS_STABLE_CONCURRENT) {
-            fas = new FasStableConcurrent(initialGraph, getIndependenceTest());
+            FasStableConcurrent _fas = new FasStableConcurrent(initialGraph, getIndependenceTest());
+            _fas.setMetrics(metrics);
+            fas = _fas;
         } else {
             throw new IllegalArgumentException("Not a supported FAS: " + getFasRule());
         }
@@ -335,11 +347,15 @@ public final class PcAll implements GraphSearch {
 
         // Note that we are ignoring the sepset map returned by this method
         // on purpose; it is not used in this search.
+        long start = System.nanoTime();
         graph = fas.search();
         sepsets = fas.getSepsets();
+        metrics.time(SearchMetrics.SKELETON, System.nanoTime() - start);
 
         SearchGraphUtils.pcOrientbk(knowledge, graph, nodes);
 
+        start = System.nanoTime();
+
         if (colliderDiscovery == ColliderDiscovery.FAS_SEPSETS) {
             if (verbose) {
                 System.out.println("FAS Sepset orientation...");
@@ -365,13 +381,16 @@ public final class PcAll implements GraphSearch {
             //            orientUnshieldedTriplesConcurrent(knowledge, getIndependenceTest(), getMaxIndegree());
         }
 
+        metrics.time(SearchMetrics.COLLIDERS, System.nanoTime() - start);
+
         SearchGraphUtils.basicPattern(graph, false);
         graph = GraphUtils.replaceNodes(graph, nodes);
 
-        MeekRules meekRules = new MeekRules();
-//        meekRules.setAggressivelyPreventCycles(this.aggressivelyPreventCycles);
-        meekRules.setKnowledge(knowledge);
-        meekRules.orientImplied(graph);
+        start = System.nanoTime();
+        MeekPropagator propagator = new MeekPropagator();
+        propagator.setKnowledge(knowledge);
+        propagator.orientImplied(graph);
+        metrics.time(SearchMetrics.MEEK, System.nanoTime() - start);
 
         // Remove ambiguities whose status have been determined.
         Set<Triple> ambiguities = graph.getAmbiguousTriples();
@@ -674,6 +693,21 @@ public final class PcAll implements GraphSearch {
         this.verbose = verbose;
     }
 
+    /**
+     * @return the metrics this search reports into; by default those current when it was constructed.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics this search reports into. They are passed on to the adjacency search.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        if (metrics == null) throw new NullPointerException("Metrics may not be null.");
+        this.metrics = metrics;
+    }
+
     public Graph getInitialGraph() {
         return initialGraph;
     }
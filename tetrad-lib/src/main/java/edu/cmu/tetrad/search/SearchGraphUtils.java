@@ -1760,10 +1760,35 @@ public final class SearchGraphUtils {
         return getDagsInPatternMeek(pattern, new Knowledge2());
     }
 
+    /**
+     * Lists the DAGs in the given pattern that the knowledge allows. Without knowledge the class is
+     * listed by MarkovEquivalenceClass; with knowledge, and for graphs that are not quite patterns
+     * (for instance, with non-chordal undirected parts), DagInPatternIterator is used, which prunes
+     * orientations the knowledge rules out rather than listing the whole class.
+     */
     public static List<Graph> getDagsInPatternMeek(Graph pattern, IKnowledge knowledge) {
-        DagInPatternIterator iterator = new DagInPatternIterator(pattern, knowledge);
         List<Graph> dags = new ArrayList<>();
 
+        if (knowledge.isEmpty()) {
+            MarkovEquivalenceClass dagsInPattern;
+
+            try {
+                dagsInPattern = new MarkovEquivalenceClass(pattern);
+            } catch (IllegalArgumentException e) {
+                dagsInPattern = null;
+            }
+
+            if (dagsInPattern != null) {
+                for (Graph dag : dagsInPattern) {
+                    dags.add(dag);
+                }
+
+                return dags;
+            }
+        }
+
+        DagInPatternIterator iterator = new DagInPatternIterator(pattern, knowledge);
+
         while (iterator.hasNext()) {
             Graph graph = iterator.next();
 
@@ -25,6 +25,8 @@ import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.data.ICovarianceMatrix;
 import edu.cmu.tetrad.graph.Node;
 import edu.cmu.tetrad.util.DepthChoiceGenerator;
+import edu.cmu.tetrad.util.MatrixKernel;
+import edu.cmu.tetrad.util.SearchMetrics;
 import edu.cmu.tetrad.util.StatUtils;
 import edu.cmu.tetrad.util.TetradMatrix;
 import edu.cmu.tetrad.util.TetradVector;
@@ -69,6 +71,9 @@ public class SemBicScore implements Score {
 
     private Map<String, Integer> indexMap;
 
+    // Counts the scores computed, for the metrics current when this score was constructed.
+    private final SearchMetrics metrics = SearchMetrics.current();
+
 
     /**
      * Constructs the score using a covariance matrix.
@@ -88,15 +93,21 @@ public class SemBicScore implements Score {
      * Calculates the sample likelihood and BIC score for i given its parents in a simple SEM model
      */
     public double localScore(int i, int... parents) {
+        metrics.count(SearchMetrics.SCORES);
+
         for (int p : parents) if (forbidden.contains(p)) return Double.NaN;
 
         try {
-            double s2 = getCovariances().getValue(i, i);
-            int p = parents.length;
-
-            TetradMatrix covxx = getSelection(getCovariances(), parents, parents);
-            TetradVector covxy = getSelection(getCovariances(), parents, new int[]{i}).getColumn(0);
-            s2 -= covxx.inverse().times(covxy).dotProduct(covxy);
+            double s2;
+
+            if (parents.length + 1 <= MatrixKernel.MAX_SIZE) {
+                s2 = MatrixKernel.residualVariance(getCovariances(), i, parents);
+            } else {
+                s2 = getCovariances().getValue(i, i);
+                TetradMatrix covxx = getSelection(getCovariances(), parents, parents);
+                TetradVector covxy = getSelection(getCovariances(), parents, new int[]{i}).getColumn(0);
+                s2 -= covxx.inverse().times(covxy).dotProduct(covxy);
+            }
 
             if (s2 <= 0) {
                 if (isVerbose()) {
@@ -140,6 +151,7 @@ public class SemBicScore implements Score {
 
     @Override
     public double localScoreDiff(int x, int y, int[] z) {
+        metrics.count(SearchMetrics.SCORES);
 
         Node _x = variables.get(x);
         Node _y = variables.get(y);
@@ -174,6 +186,12 @@ public class SemBicScore implements Score {
         indices[0] = indexMap.get(x.getName());
         indices[1] = indexMap.get(y.getName());
         for (int i = 0; i < z.size(); i++) indices[i + 2] = indexMap.get(z.get(i).getName());
+
+        if (indices.length <= MatrixKernel.MAX_SIZE) {
+            return MatrixKernel.partialCorrelation(covariances, indices[0], indices[1],
+                    Arrays.copyOfRange(indices, 2, indices.length));
+        }
+
         TetradMatrix submatrix = covariances.getSubmatrix(indices).getMatrix();
         return StatUtils.partialCorrelation(submatrix);
     }
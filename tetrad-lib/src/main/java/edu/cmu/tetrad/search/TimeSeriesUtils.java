@@ -368,8 +368,101 @@ public class TimeSeriesUtils {
         List<Node> variables = data.getVariables();
         int dataSize = variables.size();
         int laggedRows = data.getNumRows() - numLags;
-        IKnowledge knowledge = new Knowledge2();
+        List<Node> newVariables = createLaggedVariables(variables, numLags);
+        IKnowledge knowledge = createLagKnowledge(newVariables, numLags);
         Node[][] laggedNodes = new Node[numLags + 1][dataSize];
+
+        for (int lag = 0; lag <= numLags; lag++) {
+            for (int col = 0; col < dataSize; col++) {
+                laggedNodes[lag][col] = newVariables.get(col + lag * dataSize);
+            }
+        }
+
+        DataSet laggedData = new ColtDataSet(laggedRows, newVariables);
+        for (int lag = 0; lag <= numLags; lag++) {
+            for (int col = 0; col < dataSize; col++) {
+                for (int row = 0; row < laggedRows; row++) {
+                    Node laggedNode = laggedNodes[lag][col];
+                    if (laggedNode instanceof ContinuousVariable) {
+                        double value = data.getDouble(row + numLags - lag, col);
+                        laggedData.setDouble(row, col + lag * dataSize, value);
+                    } else {
+                        int value = data.getInt(row + numLags - lag, col);
+                        laggedData.setInt(row, col + lag * dataSize, value);
+                    }
+                }
+            }
+        }
+
+        knowledge.setDefaultToKnowledgeLayout(true);
+//        knowledge.setLagged(true);
+        laggedData.setKnowledge(knowledge);
+//        laggedData.setName(data.getNode());
+        return laggedData;
+    }
+
+    /**
+     * Creates a read-only lagged view of the given time series, with the same
+     * variables, rows and knowledge as createLagData(data, numLags), but
+     * looking values up in the given data rather than copying them. Use
+     * LaggedCovarianceMatrix for covariances over the view that are computed
+     * from the original series. Setting a value in the view materializes it
+     * first, leaving the given data alone; the given data itself must not be
+     * modified while the view is in use. If the data
+     * is not a BoxDataSet, its values (but not their lags) are copied once into
+     * a column-major box first.
+     */
+    public static DataSet createLagDataView(DataSet data, int numLags) {
+        List<Node> newVariables = createLaggedVariables(data.getVariables(), numLags);
+        DataBox box = new LaggedDataBox(getDataBox(data), newVariables, numLags);
+        DataSet laggedData = new BoxDataSet(box, newVariables);
+
+        IKnowledge knowledge = createLagKnowledge(newVariables, numLags);
+        knowledge.setDefaultToKnowledgeLayout(true);
+        laggedData.setKnowledge(knowledge);
+        return laggedData;
+    }
+
+    private static DataBox getDataBox(DataSet data) {
+        if (data instanceof BoxDataSet) {
+            return ((BoxDataSet) data).getDataBox();
+        }
+
+        List<Node> variables = data.getVariables();
+
+        if (data.isContinuous()) {
+            double[][] columns = new double[variables.size()][data.getNumRows()];
+
+            for (int j = 0; j < variables.size(); j++) {
+                for (int i = 0; i < data.getNumRows(); i++) {
+                    columns[j][i] = data.getDouble(i, j);
+                }
+            }
+
+            return new VerticalDoubleDataBox(columns);
+        }
+
+        DataBox box = new MixedDataBox(variables, data.getNumRows());
+
+        for (int j = 0; j < variables.size(); j++) {
+            for (int i = 0; i < data.getNumRows(); i++) {
+                if (variables.get(j) instanceof DiscreteVariable) {
+                    box.set(i, j, data.getInt(i, j));
+                } else {
+                    box.set(i, j, data.getDouble(i, j));
+                }
+            }
+        }
+
+        return box;
+    }
+
+    /**
+     * The lagged copies of the given variables, lag-major, named X for lag 0
+     * and X:lag otherwise.
+     */
+    private static List<Node> createLaggedVariables(List<Node> variables, int numLags) {
+        int dataSize = variables.size();
         List<Node> newVariables = new ArrayList<>((numLags + 1) * dataSize + 1);
 
         for (int lag = 0; lag <= numLags; lag++) {
@@ -394,7 +487,6 @@ public class TimeSeriesUtils {
                 }
                 newVariables.add(laggedNode);
                 laggedNode.setCenter(80 * col + 50, 80 * (numLags - lag) + 50);
-                laggedNodes[lag][col] = laggedNode;
 //                knowledge.addToTier(numLags - lag, laggedNode.getName());
             }
         }
@@ -431,6 +523,15 @@ public class TimeSeriesUtils {
 //            }
 //        });
 
+        return newVariables;
+    }
+
+    /**
+     * Tiers for lagged variables, later lags in earlier tiers.
+     */
+    private static IKnowledge createLagKnowledge(List<Node> newVariables, int numLags) {
+        IKnowledge knowledge = new Knowledge2();
+
 //        System.out.println("Variable list after the sort = " + newVariables);
         for (Node node : newVariables) {
             String varName = node.getName();
@@ -447,27 +548,7 @@ public class TimeSeriesUtils {
             knowledge.addToTier(numLags - lag, node.getName());
         }
 
-        DataSet laggedData = new ColtDataSet(laggedRows, newVariables);
-        for (int lag = 0; lag <= numLags; lag++) {
-            for (int col = 0; col < dataSize; col++) {
-                for (int row = 0; row < laggedRows; row++) {
-                    Node laggedNode = laggedNodes[lag][col];
-                    if (laggedNode instanceof ContinuousVariable) {
-                        double value = data.getDouble(row + numLags - lag, col);
-                        laggedData.setDouble(row, col + lag * dataSize, value);
-                    } else {
-                        int value = data.getInt(row + numLags - lag, col);
-                        laggedData.setInt(row, col + lag * dataSize, value);
-                    }
-                }
-            }
-        }
-
-        knowledge.setDefaultToKnowledgeLayout(true);
-//        knowledge.setLagged(true);
-        laggedData.setKnowledge(knowledge);
-//        laggedData.setName(data.getNode());
-        return laggedData;
+        return knowledge;
     }
 
     /**
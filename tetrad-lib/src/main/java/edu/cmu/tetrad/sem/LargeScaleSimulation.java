@@ -120,49 +120,59 @@ public final class LargeScaleSimulation {
         int size = variableNodes.size();
         setupModel(size);
 
+        if (graph instanceof TimeLagGraph) {
+            sampleSize += 200;
+        }
+
+        final double[][] all = new double[variableNodes.size()][sampleSize];
+
+        // Each block of rows draws from its own substream of a stream from RandomUtil,
+        // so the data depend only on RandomUtil's seed, not on the number of threads.
+        final RandomStream master = RandomUtil.getInstance().nextStream();
+        final int blockSize = 1000;
+        final int numRows = sampleSize;
+        int numBlocks = (sampleSize + blockSize - 1) / blockSize;
+
         class SimulateTask extends RecursiveTask<Boolean> {
 
             private final int from;
             private final int to;
-            private double[][] all;
-            private int chunk;
 
-            public SimulateTask(int from, int to, double[][] all, int chunk) {
+            public SimulateTask(int from, int to) {
                 this.from = from;
                 this.to = to;
-                this.all = all;
-                this.chunk = chunk;
             }
 
             @Override
             protected Boolean compute() {
-                if (from - to > chunk) {
-                    int mid = from + to / 2;
-                    SimulateTask left = new SimulateTask(from, mid, all, chunk);
-                    SimulateTask right = new SimulateTask(mid, to, all, chunk);
+                if (to - from > 1) {
+                    int mid = (to + from) / 2;
+                    SimulateTask left = new SimulateTask(from, mid);
+                    SimulateTask right = new SimulateTask(mid, to);
                     left.fork();
                     right.compute();
                     left.join();
                     return true;
                 } else {
-                    for (int i = from; i < to; i++) {
-                        NormalDistribution normal = new NormalDistribution(new Well1024a(++seed), 0, 1);//sqrt(errorVars[col]));
-                        normal.sample();
+                    for (int b = from; b < to; b++) {
+                        RandomStream stream = master.stream(b);
 
-                        if (verbose && (i + 1) % 50 == 0) {
-                            System.out.println("Simulating " + (i + 1));
-                        }
+                        for (int i = b * blockSize; i < Math.min((b + 1) * blockSize, numRows); i++) {
+                            if (verbose && (i + 1) % 50 == 0) {
+                                System.out.println("Simulating " + (i + 1));
+                            }
 
-                        for (int col : tierIndices) {
-                            double value = normal.sample() * sqrt(errorVars[col]);
+                            for (int col : tierIndices) {
+                                double value = stream.nextGaussian() * sqrt(errorVars[col]);
 
-                            for (int j = 0; j < parents[col].length; j++) {
-                                value += all[parents[col][j]][i] * coefs[col][j];
-                            }
+                                for (int j = 0; j < parents[col].length; j++) {
+                                    value += all[parents[col][j]][i] * coefs[col][j];
+                                }
 
-                            value += means[col];
+                                value += means[col];
 
-                            all[col][i] = value;
+                                all[col][i] = value;
+                            }
                         }
                     }
 
@@ -171,15 +181,7 @@ public final class LargeScaleSimulation {
             }
         }
 
-        if (graph instanceof TimeLagGraph) {
-            sampleSize += 200;
-        }
-
-        double[][] all = new double[variableNodes.size()][sampleSize];
-
-        int chunk = sampleSize / ForkJoinPoolInstance.getInstance().getPool().getParallelism() + 1;
-
-        ForkJoinPoolInstance.getInstance().getPool().invoke(new SimulateTask(0, sampleSize, all, chunk));
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new SimulateTask(0, numBlocks));
 
         if (graph instanceof TimeLagGraph) {
             int[] rem = new int[200];
@@ -1,16 +1,26 @@
 package edu.cmu.tetrad.util;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
 import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Edges;
 import edu.cmu.tetrad.graph.EdgeListGraphSingleConnections;
 import edu.cmu.tetrad.graph.EdgeTypeProbability;
 import edu.cmu.tetrad.graph.Endpoint;
@@ -200,4 +210,426 @@ public class JsonUtils {
 		return graphNode;
 	}
 
+	/**
+	 * The node types in the order of their ordinals in Gson's JSON for a graph.
+	 */
+	private static final NodeType[] NODE_TYPES = { NodeType.MEASURED, NodeType.LATENT, NodeType.ERROR,
+			NodeType.SESSION, NodeType.RANDOMIZE, NodeType.LOCK, NodeType.NO_TYPE };
+
+	/**
+	 * Writes a graph as JSON, one node, edge or triple at a time, in the form Gson gives
+	 * an EdgeListGraph, so that parseJSONObjectToTetradGraph and readGraphJson can read it
+	 * back. The per-node edge lists and the name map Gson would also write are left out,
+	 * since they repeat the nodes and edges.
+	 * 
+	 * @param graph The graph.
+	 * @param out The writer, which is flushed but not closed.
+	 * @param pretty True if the JSON should be indented.
+	 */
+	public static void writeGraphJson(Graph graph, Writer out, boolean pretty) throws IOException {
+		JsonWriter writer = new JsonWriter(out);
+		if (pretty) {
+			writer.setIndent("  ");
+		}
+
+		writer.beginObject();
+
+		writer.name("nodes").beginArray();
+		for (Node node : graph.getNodes()) {
+			writeNode(writer, node);
+		}
+		writer.endArray();
+
+		List<Edge> edges = new ArrayList<>(graph.getEdges());
+		Edges.sortEdges(edges);
+
+		writer.name("edgesSet").beginArray();
+		for (Edge edge : edges) {
+			writeEdge(writer, edge);
+		}
+		writer.endArray();
+
+		writeTriples(writer, "ambiguousTriples", graph.getAmbiguousTriples());
+		writeTriples(writer, "underLineTriples", graph.getUnderLines());
+		writeTriples(writer, "dottedUnderLineTriples", graph.getDottedUnderlines());
+
+		writer.name("stuffRemovedSinceLastTripleAccess").value(false);
+
+		writer.name("highlightedEdges").beginArray();
+		for (Edge edge : edges) {
+			if (graph.isHighlighted(edge)) {
+				writeEdge(writer, edge);
+			}
+		}
+		writer.endArray();
+
+		writer.name("pattern").value(graph.isPattern());
+		writer.name("pag").value(graph.isPag());
+
+		writer.endObject();
+		writer.flush();
+	}
+
+	private static void writeNode(JsonWriter writer, Node node) throws IOException {
+		writer.beginObject();
+		writer.name("name").value(node.getName());
+		writer.name("nodeType").beginObject().name("ordinal").value(nodeTypeOrdinal(node.getNodeType())).endObject();
+		writer.name("centerX").value(node.getCenterX());
+		writer.name("centerY").value(node.getCenterY());
+		writer.endObject();
+	}
+
+	private static void writeEdge(JsonWriter writer, Edge edge) throws IOException {
+		writer.beginObject();
+		writer.name("node1");
+		writeNode(writer, edge.getNode1());
+		writer.name("node2");
+		writeNode(writer, edge.getNode2());
+		writer.name("endpoint1").beginObject().name("ordinal").value(endpointOrdinal(edge.getEndpoint1())).endObject();
+		writer.name("endpoint2").beginObject().name("ordinal").value(endpointOrdinal(edge.getEndpoint2())).endObject();
+		writer.name("bold").value(edge.isBold());
+
+		writer.name("properties").beginArray();
+		for (Edge.Property property : edge.getProperties()) {
+			writer.value(property.name());
+		}
+		writer.endArray();
+
+		writer.name("edgeTypeProbabilities").beginArray();
+		for (EdgeTypeProbability probability : edge.getEdgeTypeProbabilities()) {
+			writer.beginObject();
+			writer.name("edgeType").value(probability.getEdgeType().name());
+			writer.name("probability").value(probability.getProbability());
+			writer.endObject();
+		}
+		writer.endArray();
+
+		writer.endObject();
+	}
+
+	private static void writeTriples(JsonWriter writer, String name, Set<Triple> triples) throws IOException {
+		writer.name(name).beginArray();
+		for (Triple triple : triples) {
+			writer.beginObject();
+			writer.name("x");
+			writeNode(writer, triple.getX());
+			writer.name("y");
+			writeNode(writer, triple.getY());
+			writer.name("z");
+			writeNode(writer, triple.getZ());
+			writer.endObject();
+		}
+		writer.endArray();
+	}
+
+	/**
+	 * Reads a graph from JSON written by writeGraphJson or by Gson, token by token, without
+	 * holding the text in memory. Fields other than those writeGraphJson writes are skipped.
+	 * The nodes must come before the edges and triples, as they do in both.
+	 * 
+	 * @param in The reader, which is not closed.
+	 */
+	public static Graph readGraphJson(Reader in) throws IOException {
+		JsonReader reader = new JsonReader(in);
+		EdgeListGraphSingleConnections graph = null;
+		Map<String, Node> names = new HashMap<>();
+
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+
+			if ("nodes".equals(name)) {
+				List<Node> nodes = new ArrayList<>();
+
+				reader.beginArray();
+				while (reader.hasNext()) {
+					Node node = readNode(reader);
+					nodes.add(node);
+					names.put(node.getName(), node);
+				}
+				reader.endArray();
+
+				graph = new EdgeListGraphSingleConnections(nodes);
+			} else if ("edgesSet".equals(name)) {
+				requireNodes(graph, name);
+
+				reader.beginArray();
+				while (reader.hasNext()) {
+					graph.addEdge(readEdge(reader, names));
+				}
+				reader.endArray();
+			} else if ("ambiguousTriples".equals(name) || "underLineTriples".equals(name)
+					|| "dottedUnderLineTriples".equals(name)) {
+				requireNodes(graph, name);
+
+				reader.beginArray();
+				while (reader.hasNext()) {
+					Triple triple = readTriple(reader, names);
+
+					if ("ambiguousTriples".equals(name)) {
+						graph.addAmbiguousTriple(triple.getX(), triple.getY(), triple.getZ());
+					} else if ("underLineTriples".equals(name)) {
+						graph.addUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
+					} else {
+						graph.addDottedUnderlineTriple(triple.getX(), triple.getY(), triple.getZ());
+					}
+				}
+				reader.endArray();
+			} else if ("highlightedEdges".equals(name)) {
+				requireNodes(graph, name);
+
+				reader.beginArray();
+				while (reader.hasNext()) {
+					Edge edge = readEdge(reader, names);
+					if (graph.containsEdge(edge)) {
+						graph.setHighlighted(edge, true);
+					}
+				}
+				reader.endArray();
+			} else if ("stuffRemovedSinceLastTripleAccess".equals(name)) {
+				requireNodes(graph, name);
+				graph.setStuffRemovedSinceLastTripleAccess(reader.nextBoolean());
+			} else if ("pattern".equals(name)) {
+				requireNodes(graph, name);
+				graph.setPattern(reader.nextBoolean());
+			} else if ("pag".equals(name)) {
+				requireNodes(graph, name);
+				graph.setPag(reader.nextBoolean());
+			} else {
+				reader.skipValue();
+			}
+		}
+
+		reader.endObject();
+
+		if (graph == null) {
+			throw new IllegalArgumentException("Expecting a graph with nodes.");
+		}
+
+		return graph;
+	}
+
+	private static void requireNodes(Graph graph, String name) {
+		if (graph == null) {
+			throw new IllegalArgumentException("Expecting the nodes before " + name + ".");
+		}
+	}
+
+	private static Node readNode(JsonReader reader) throws IOException {
+		String name = null;
+		int ordinal = 0;
+		int centerX = -1;
+		int centerY = -1;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "name":
+				name = reader.nextString();
+				break;
+			case "nodeType":
+				ordinal = readOrdinal(reader);
+				break;
+			case "centerX":
+				centerX = reader.nextInt();
+				break;
+			case "centerY":
+				centerY = reader.nextInt();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (name == null) {
+			throw new IllegalArgumentException("Expecting a node name.");
+		}
+
+		GraphNode graphNode = new GraphNode(name);
+		graphNode.setNodeType(NODE_TYPES[ordinal]);
+		graphNode.setCenter(centerX, centerY);
+
+		return graphNode;
+	}
+
+	// The node of the graph with the name of the node object being read.
+	private static Node readNodeRef(JsonReader reader, Map<String, Node> names) throws IOException {
+		String name = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if ("name".equals(reader.nextName())) {
+				name = reader.nextString();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		Node node = names.get(name);
+
+		if (node == null) {
+			throw new IllegalArgumentException("Unknown node: " + name);
+		}
+
+		return node;
+	}
+
+	private static int readOrdinal(JsonReader reader) throws IOException {
+		int ordinal = 0;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if ("ordinal".equals(reader.nextName())) {
+				ordinal = reader.nextInt();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return ordinal;
+	}
+
+	private static Edge readEdge(JsonReader reader, Map<String, Node> names) throws IOException {
+		Node node1 = null;
+		Node node2 = null;
+		Endpoint endpoint1 = null;
+		Endpoint endpoint2 = null;
+		boolean bold = false;
+		List<Edge.Property> properties = new ArrayList<>();
+		List<EdgeTypeProbability> probabilities = new ArrayList<>();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "node1":
+				node1 = readNodeRef(reader, names);
+				break;
+			case "node2":
+				node2 = readNodeRef(reader, names);
+				break;
+			case "endpoint1":
+				endpoint1 = Endpoint.TYPES[readOrdinal(reader)];
+				break;
+			case "endpoint2":
+				endpoint2 = Endpoint.TYPES[readOrdinal(reader)];
+				break;
+			case "bold":
+				bold = reader.nextBoolean();
+				break;
+			case "properties":
+				reader.beginArray();
+				while (reader.hasNext()) {
+					Edge.Property property = parseJSONObjectToEdgeProperty(reader.nextString());
+					if (property != null) {
+						properties.add(property);
+					}
+				}
+				reader.endArray();
+				break;
+			case "edgeTypeProbabilities":
+				reader.beginArray();
+				while (reader.hasNext()) {
+					probabilities.add(readEdgeTypeProbability(reader));
+				}
+				reader.endArray();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (node1 == null || node2 == null || endpoint1 == null || endpoint2 == null) {
+			throw new IllegalArgumentException("Expecting two nodes and two endpoints for an edge.");
+		}
+
+		Edge edge = new Edge(node1, node2, endpoint1, endpoint2);
+		edge.setBold(bold);
+
+		for (Edge.Property property : properties) {
+			edge.addProperty(property);
+		}
+
+		for (EdgeTypeProbability probability : probabilities) {
+			edge.addEdgeTypeProbability(probability);
+		}
+
+		return edge;
+	}
+
+	private static EdgeTypeProbability readEdgeTypeProbability(JsonReader reader) throws IOException {
+		EdgeType edgeType = EdgeType.nil;
+		double probability = 0.0;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+
+			if ("edgeType".equals(name) && reader.peek() == JsonToken.STRING) {
+				edgeType = EdgeType.valueOf(reader.nextString());
+			} else if ("probability".equals(name)) {
+				probability = reader.nextDouble();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return new EdgeTypeProbability(edgeType, probability);
+	}
+
+	private static Triple readTriple(JsonReader reader, Map<String, Node> names) throws IOException {
+		Node x = null;
+		Node y = null;
+		Node z = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "x":
+				x = readNodeRef(reader, names);
+				break;
+			case "y":
+				y = readNodeRef(reader, names);
+				break;
+			case "z":
+				z = readNodeRef(reader, names);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (x == null || y == null || z == null) {
+			throw new IllegalArgumentException("Expecting three nodes for a triple.");
+		}
+
+		return new Triple(x, y, z);
+	}
+
+	private static int nodeTypeOrdinal(NodeType type) {
+		for (int i = 0; i < NODE_TYPES.length; i++) {
+			if (NODE_TYPES[i] == type) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("Unexpected node type: " + type);
+	}
+
+	private static int endpointOrdinal(Endpoint endpoint) {
+		for (int i = 0; i < Endpoint.TYPES.length; i++) {
+			if (Endpoint.TYPES[i] == endpoint) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("Unexpected endpoint: " + endpoint);
+	}
+
 }
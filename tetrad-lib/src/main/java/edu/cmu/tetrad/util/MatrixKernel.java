@@ -0,0 +1,525 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.util;
+
+import edu.cmu.tetrad.data.ICovarianceMatrix;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+import java.util.Arrays;
+
+/**
+ * Linear algebra for the small dense matrices that scores and tests take from
+ * covariance matrices--a set of parents or a conditioning set, seldom more than a few
+ * dozen variables--on flat row-major double[] arrays. At these sizes the object and
+ * block layout overhead of TetradMatrix (and of the commons-math decompositions behind
+ * it) costs more than the arithmetic; TetradMatrix and StatUtils delegate here for
+ * matrices of up to MAX_SIZE rows.
+ * <p>
+ * The methods that take a covariance matrix and indices copy the submatrix they need
+ * into a workspace held by the calling thread, so once the workspace has grown to the
+ * largest size used, they allocate nothing, and any number of threads may call them at
+ * once.
+ * <p>
+ * Symmetric positive definite matrices are factored by Cholesky; a pivot not above
+ * PIVOT_TOLERANCE times the largest diagonal entry is taken for singularity. Other
+ * square matrices are inverted through LU with partial pivoting, taking a pivot below
+ * 1e-9 in absolute value for singularity, as TetradMatrix.inverse always has. The
+ * residual variance and partial covariance and correlation functions replace code that
+ * inverted a submatrix with TetradMatrix.inverse, so they also take a Cholesky pivot
+ * below 1e-9 for singularity; a near-collinear conditioning set is then reported as
+ * singular to SemBicScore, IndTestFisherZ and StatUtils just as before. Either way a
+ * SingularMatrixException is thrown.
+ */
+public final class MatrixKernel {
+
+    /**
+     * The largest number of rows for which TetradMatrix and StatUtils delegate to this
+     * class.
+     */
+    public static final int MAX_SIZE = 50;
+
+    /**
+     * Cholesky pivots not above this times the largest diagonal entry are taken for
+     * singularity.
+     */
+    public static final double PIVOT_TOLERANCE = 1e-12;
+
+    private static final double LU_SINGULARITY_THRESHOLD = 1e-9;
+    private static final double DETERMINANT_SINGULARITY_THRESHOLD = 1e-11;
+
+    private static final ThreadLocal<Workspace> WORKSPACE = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
+    private MatrixKernel() {
+    }
+
+    //=============================PUBLIC METHODS=========================//
+
+    /**
+     * @return The variance of y left after regressing it on x, var(y) - cov(y, x)
+     * inverse(cov(x, x)) cov(x, y), where these are indices into the covariance matrix.
+     * @throws SingularMatrixException if cov(x, x) is singular.
+     */
+    public static double residualVariance(TetradMatrix covariance, int y, int[] x) {
+        int k = x.length + 1;
+        double[] a = WORKSPACE.get().matrix(k * k);
+        gather(covariance, x, y, y, a, k);
+        return residualVariance(a, k);
+    }
+
+    /**
+     * As residualVariance(TetradMatrix, int, int[]), reading the entries from the
+     * covariance matrix as needed.
+     */
+    public static double residualVariance(ICovarianceMatrix covariance, int y, int[] x) {
+        int k = x.length + 1;
+        double[] a = WORKSPACE.get().matrix(k * k);
+        gather(covariance, x, y, y, a, k);
+        return residualVariance(a, k);
+    }
+
+    /**
+     * @return The partial covariance of x and y given z, where these are indices into
+     * the covariance matrix.
+     * @throws SingularMatrixException if cov(z, z) is singular.
+     */
+    public static double partialCovariance(TetradMatrix covariance, int x, int y, int[] z) {
+        int k = z.length + 2;
+        double[] a = WORKSPACE.get().matrix(k * k);
+        gather(covariance, z, x, y, a, k);
+        return partialCovariances(a, k)[1];
+    }
+
+    /**
+     * @return The partial correlation of x and y given z, where these are indices into
+     * the covariance matrix; this is minus the (x, y) entry of the precision matrix of
+     * (x, y, z), scaled by the square roots of its (x, x) and (y, y) entries.
+     * @throws SingularMatrixException if cov(x, y, z) is singular.
+     */
+    public static double partialCorrelation(TetradMatrix covariance, int x, int y, int[] z) {
+        int k = z.length + 2;
+        double[] a = WORKSPACE.get().matrix(k * k);
+        gather(covariance, z, x, y, a, k);
+        return partialCorrelation(a, k);
+    }
+
+    /**
+     * As partialCorrelation(TetradMatrix, int, int, int[]), reading the entries from the
+     * covariance matrix as needed.
+     */
+    public static double partialCorrelation(ICovarianceMatrix covariance, int x, int y, int[] z) {
+        int k = z.length + 2;
+        double[] a = WORKSPACE.get().matrix(k * k);
+        gather(covariance, z, x, y, a, k);
+        return partialCorrelation(a, k);
+    }
+
+    /**
+     * @return The log of the determinant of the submatrix of the covariance matrix over
+     * the given indices.
+     * @throws SingularMatrixException if that submatrix is singular.
+     */
+    public static double logDeterminant(TetradMatrix covariance, int[] indices) {
+        int k = indices.length;
+        double[] a = WORKSPACE.get().matrix(k * k);
+
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j <= i; j++) {
+                a[i * k + j] = covariance.get(indices[i], indices[j]);
+            }
+        }
+
+        choleskyDecompose(a, k);
+        return choleskyLogDeterminant(a, k);
+    }
+
+    /**
+     * Replaces the lower triangle (with the diagonal) of the symmetric positive definite
+     * n x n matrix a, stored row-major, by its Cholesky factor L, with a = L L'. Only the
+     * lower triangle is read, and the upper is left as it was.
+     *
+     * @throws SingularMatrixException if a is not positive definite.
+     */
+    public static void choleskyDecompose(double[] a, int n) {
+        choleskyDecompose(a, n, n, 0.0);
+    }
+
+    /**
+     * Solves L L' x = b in place for the Cholesky factor L of an n x n matrix, as left by
+     * choleskyDecompose.
+     */
+    public static void choleskySolve(double[] l, int n, double[] b) {
+        for (int i = 0; i < n; i++) {
+            double sum = b[i];
+            int row = i * n;
+            for (int j = 0; j < i; j++) sum -= l[row + j] * b[j];
+            b[i] = sum / l[row + i];
+        }
+
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = b[i];
+            for (int j = i + 1; j < n; j++) sum -= l[j * n + i] * b[j];
+            b[i] = sum / l[i * n + i];
+        }
+    }
+
+    /**
+     * @return The log of the determinant of L L', for the Cholesky factor L of an n x n
+     * matrix, as left by choleskyDecompose.
+     */
+    public static double choleskyLogDeterminant(double[] l, int n) {
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) sum += Math.log(l[i * n + i]);
+        return 2.0 * sum;
+    }
+
+    /**
+     * Sets inverse to the inverse of the symmetric positive definite n x n matrix a,
+     * row-major, by Cholesky. a is overwritten.
+     *
+     * @throws SingularMatrixException if a is not positive definite.
+     */
+    public static void invertSymmetric(double[] a, int n, double[] inverse) {
+        choleskyDecompose(a, n);
+        double[] column = WORKSPACE.get().vector(n);
+
+        for (int c = 0; c < n; c++) {
+            Arrays.fill(column, 0, n, 0.0);
+            column[c] = 1.0;
+            choleskySolve(a, n, column);
+            for (int i = 0; i < n; i++) inverse[i * n + c] = column[i];
+        }
+    }
+
+    /**
+     * Sets inverse to the inverse of the square n x n matrix a, row-major, by LU with
+     * partial pivoting. a is overwritten by its LU factors.
+     *
+     * @throws SingularMatrixException if a pivot is below 1e-9 in absolute value.
+     */
+    public static void invert(double[] a, int n, double[] inverse) {
+        int[] pivots = WORKSPACE.get().pivots(n);
+        luDecompose(a, n, pivots, LU_SINGULARITY_THRESHOLD);
+        double[] column = WORKSPACE.get().vector(n);
+
+        for (int c = 0; c < n; c++) {
+
+            for (int i = 0; i < n; i++) {
+                column[i] = pivots[i] == c ? 1.0 : 0.0;
+            }
+
+            luSolve(a, n, column);
+            for (int i = 0; i < n; i++) inverse[i * n + c] = column[i];
+        }
+    }
+
+    /**
+     * @return The determinant of the square n x n matrix a, row-major, by LU with partial
+     * pivoting; zero if a pivot is below 1e-11 in absolute value, as from commons-math's
+     * LUDecomposition. a is overwritten.
+     */
+    public static double determinant(double[] a, int n) {
+        int[] pivots = WORKSPACE.get().pivots(n);
+
+        try {
+            luDecompose(a, n, pivots, DETERMINANT_SINGULARITY_THRESHOLD);
+        } catch (SingularMatrixException e) {
+            return 0.0;
+        }
+
+        double det = 1.0;
+
+        for (int i = 0; i < n; i++) {
+            det *= a[i * n + i];
+        }
+
+        return det * permutationSign(pivots, n);
+    }
+
+    /**
+     * @return The entries of the matrix, row-major, in a new array.
+     */
+    public static double[] flatten(TetradMatrix matrix) {
+        int m = matrix.rows();
+        int n = matrix.columns();
+        double[] a = new double[m * n];
+
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                a[i * n + j] = matrix.get(i, j);
+            }
+        }
+
+        return a;
+    }
+
+    //=============================PRIVATE METHODS=========================//
+
+    // Copies cov(z..., x, y) into the k x k workspace, lower triangle only, with z first
+    // so that its block can be factored in place; k is the length of z plus 1 to leave
+    // out y, or plus 2.
+    private static void gather(TetradMatrix covariance, int[] z, int x, int y, double[] a, int k) {
+        int m = z.length;
+
+        for (int i = 0; i < k; i++) {
+            int vi = i < m ? z[i] : i == m ? x : y;
+
+            for (int j = 0; j <= i; j++) {
+                int vj = j < m ? z[j] : j == m ? x : y;
+                a[i * k + j] = covariance.get(vi, vj);
+            }
+        }
+    }
+
+    private static void gather(ICovarianceMatrix covariance, int[] z, int x, int y, double[] a, int k) {
+        int m = z.length;
+
+        for (int i = 0; i < k; i++) {
+            int vi = i < m ? z[i] : i == m ? x : y;
+
+            for (int j = 0; j <= i; j++) {
+                int vj = j < m ? z[j] : j == m ? x : y;
+                a[i * k + j] = covariance.getValue(vi, vj);
+            }
+        }
+    }
+
+    // The residual variance of the last variable of the k x k matrix given the others.
+    private static double residualVariance(double[] a, int k) {
+        int m = k - 1;
+        choleskyDecompose(a, m, k, LU_SINGULARITY_THRESHOLD);
+
+        // The last row, below the factored block, is cov(y, x); solving L u = cov(x, y)
+        // in place leaves u there.
+        int row = m * k;
+        double s2 = a[row + m];
+
+        for (int i = 0; i < m; i++) {
+            double sum = a[row + i];
+            for (int j = 0; j < i; j++) sum -= a[i * k + j] * a[row + j];
+            a[row + i] = sum / a[i * k + i];
+            s2 -= a[row + i] * a[row + i];
+        }
+
+        return s2;
+    }
+
+    // The covariances of the last two variables of the k x k matrix given the others:
+    // {var(x | z), cov(x, y | z), var(y | z)}.
+    private static double[] partialCovariances(double[] a, int k) {
+        int m = k - 2;
+        choleskyDecompose(a, m, k, LU_SINGULARITY_THRESHOLD);
+
+        int rowX = m * k;
+        int rowY = (m + 1) * k;
+        double sxx = a[rowX + m];
+        double sxy = a[rowY + m];
+        double syy = a[rowY + m + 1];
+
+        for (int i = 0; i < m; i++) {
+            double sumX = a[rowX + i];
+            double sumY = a[rowY + i];
+
+            for (int j = 0; j < i; j++) {
+                sumX -= a[i * k + j] * a[rowX + j];
+                sumY -= a[i * k + j] * a[rowY + j];
+            }
+
+            double u = sumX / a[i * k + i];
+            double v = sumY / a[i * k + i];
+            a[rowX + i] = u;
+            a[rowY + i] = v;
+
+            sxx -= u * u;
+            sxy -= u * v;
+            syy -= v * v;
+        }
+
+        double[] partials = WORKSPACE.get().partials;
+        partials[0] = sxx;
+        partials[1] = sxy;
+        partials[2] = syy;
+        return partials;
+    }
+
+    private static double partialCorrelation(double[] a, int k) {
+        double[] partials = partialCovariances(a, k);
+
+        // The last two pivots of the factorization of cov(z, x, y).
+        if (!(partials[0] > LU_SINGULARITY_THRESHOLD)) throw new SingularMatrixException();
+        if (!(partials[2] - partials[1] * partials[1] / partials[0] > LU_SINGULARITY_THRESHOLD)) {
+            throw new SingularMatrixException();
+        }
+
+        return partials[1] / Math.sqrt(partials[0] * partials[2]);
+    }
+
+    // Factors the leading n x n block of a matrix with the given row stride. Pivots not
+    // above PIVOT_TOLERANCE times the largest diagonal entry, or not above the given
+    // absolute threshold, are taken for singularity.
+    private static void choleskyDecompose(double[] a, int n, int stride, double threshold) {
+        double max = 0.0;
+        for (int i = 0; i < n; i++) max = Math.max(max, a[i * stride + i]);
+        double tolerance = Math.max(PIVOT_TOLERANCE * max, threshold);
+
+        for (int j = 0; j < n; j++) {
+            int rowJ = j * stride;
+            double d = a[rowJ + j];
+
+            for (int k = 0; k < j; k++) {
+                d -= a[rowJ + k] * a[rowJ + k];
+            }
+
+            if (!(d > tolerance)) throw new SingularMatrixException();
+
+            double ljj = Math.sqrt(d);
+            a[rowJ + j] = ljj;
+
+            for (int i = j + 1; i < n; i++) {
+                int rowI = i * stride;
+                double s = a[rowI + j];
+
+                for (int k = 0; k < j; k++) {
+                    s -= a[rowI + k] * a[rowJ + k];
+                }
+
+                a[rowI + j] = s / ljj;
+            }
+        }
+    }
+
+    // Doolittle LU in place with row pivoting; pivots[i] is the original row now at i.
+    private static void luDecompose(double[] a, int n, int[] pivots, double threshold) {
+        for (int i = 0; i < n; i++) pivots[i] = i;
+
+        for (int col = 0; col < n; col++) {
+            int max = col;
+            double largest = Math.abs(a[col * n + col]);
+
+            for (int row = col + 1; row < n; row++) {
+                double value = Math.abs(a[row * n + col]);
+
+                if (value > largest) {
+                    largest = value;
+                    max = row;
+                }
+            }
+
+            if (largest < threshold) throw new SingularMatrixException();
+
+            if (max != col) {
+                for (int j = 0; j < n; j++) {
+                    double t = a[max * n + j];
+                    a[max * n + j] = a[col * n + j];
+                    a[col * n + j] = t;
+                }
+
+                int t = pivots[max];
+                pivots[max] = pivots[col];
+                pivots[col] = t;
+            }
+
+            double pivot = a[col * n + col];
+
+            for (int row = col + 1; row < n; row++) {
+                double factor = a[row * n + col] / pivot;
+                a[row * n + col] = factor;
+
+                if (factor != 0.0) {
+                    for (int j = col + 1; j < n; j++) {
+                        a[row * n + j] -= factor * a[col * n + j];
+                    }
+                }
+            }
+        }
+    }
+
+    // Solves L U x = b in place, b already permuted.
+    private static void luSolve(double[] lu, int n, double[] b) {
+        for (int i = 0; i < n; i++) {
+            double sum = b[i];
+            for (int j = 0; j < i; j++) sum -= lu[i * n + j] * b[j];
+            b[i] = sum;
+        }
+
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = b[i];
+            for (int j = i + 1; j < n; j++) sum -= lu[i * n + j] * b[j];
+            b[i] = sum / lu[i * n + i];
+        }
+    }
+
+    // +1 or -1 as the permutation is even or odd.
+    private static double permutationSign(int[] permutation, int n) {
+        boolean[] visited = WORKSPACE.get().visited(n);
+        double sign = 1.0;
+
+        for (int i = 0; i < n; i++) {
+            if (visited[i]) continue;
+            int length = 0;
+
+            for (int j = i; !visited[j]; j = permutation[j]) {
+                visited[j] = true;
+                length++;
+            }
+
+            if (length % 2 == 0) sign = -sign;
+        }
+
+        return sign;
+    }
+
+    // Arrays reused by the calls on one thread, grown as needed.
+    private static final class Workspace {
+        private double[] matrix = new double[64];
+        private double[] vector = new double[8];
+        private int[] pivots = new int[8];
+        private boolean[] visited = new boolean[8];
+        private final double[] partials = new double[3];
+
+        private double[] matrix(int size) {
+            if (matrix.length < size) matrix = new double[Math.max(size, 2 * matrix.length)];
+            return matrix;
+        }
+
+        private double[] vector(int size) {
+            if (vector.length < size) vector = new double[Math.max(size, 2 * vector.length)];
+            return vector;
+        }
+
+        private int[] pivots(int size) {
+            if (pivots.length < size) pivots = new int[Math.max(size, 2 * pivots.length)];
+            return pivots;
+        }
+
+        private boolean[] visited(int size) {
+            if (visited.length < size) visited = new boolean[Math.max(size, 2 * visited.length)];
+            Arrays.fill(visited, 0, size, false);
+            return visited;
+        }
+    }
+}
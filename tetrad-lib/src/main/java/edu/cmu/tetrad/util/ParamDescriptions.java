@@ -101,6 +101,8 @@ public class ParamDescriptions {
         map.put("itr", new ParamDescription("ITR parameter (GLASSO)", false));
         map.put("ipen", new ParamDescription("IPEN parameter (GLASSO)", false));
         map.put("thr", new ParamDescription("THR parameter (GLASSO) (min = 0.0)", 1e-4, 0.0, Double.MAX_VALUE));
+        map.put("rho", new ParamDescription("RHO parameter, the penalty (GLASSO) (min = 0.0)", 1.0, 0.0, Double.MAX_VALUE));
+        map.put("blockScreening", new ParamDescription("Yes if GLASSO should be solved separately (in parallel) over the blocks of the thresholded covariance matrix", true));
 
         map.put("targetName", new ParamDescription("Target variable name", ""));
         map.put("verbose", new ParamDescription("Yes if verbose output should be printed or logged", false));
@@ -0,0 +1,284 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.util;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * A fast, splittable stream of random numbers, for parallel code: each task or block of
+ * rows draws from its own stream, derived from a master seed, so that results are the
+ * same whatever the number of threads or the order in which tasks run, and no lock is
+ * shared. The generator is xoroshiro128++, seeded by SplitMix64.
+ * <p>
+ * stream(index) gives the index'th substream of this one, which depends only on this
+ * stream's seed and the index, not on what has been drawn; split() gives a new stream
+ * seeded from this one's next value, like java.util.SplittableRandom. A stream is not
+ * thread-safe; give each thread its own.
+ * <p>
+ * The stream implements RandomGenerator, so it may back commons-math distributions, and
+ * RandomUtil.setThreadStream lets code that calls RandomUtil.getInstance() draw from it.
+ */
+public final class RandomStream implements RandomGenerator {
+
+    // The SplitMix64 increment, 2^64 / golden ratio.
+    private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+    private static final float FLOAT_UNIT = 0x1.0p-24f;
+
+    private long seed;
+    private long s0;
+    private long s1;
+
+    // The second of the last pair of normals, if not yet used.
+    private double nextNormal;
+    private boolean haveNextNormal = false;
+
+    /**
+     * @param seed The seed; streams with the same seed give the same values.
+     */
+    public RandomStream(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * @return The index'th substream of this stream, which depends only on this stream's
+     * seed and the index. Substreams of different indices are independent.
+     */
+    public RandomStream stream(long index) {
+        return new RandomStream(mix(mix(seed + GAMMA) ^ mix(index * GAMMA + 0x632be59bd9b4e019L)));
+    }
+
+    /**
+     * @return A new stream seeded from the next value of this one.
+     */
+    public RandomStream split() {
+        return new RandomStream(nextLong());
+    }
+
+    /**
+     * @return The seed this stream started from (or was last given).
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+        long x = seed;
+        this.s0 = mix(x += GAMMA);
+        this.s1 = mix(x + GAMMA);
+
+        // The state may not be all zero.
+        if (s0 == 0 && s1 == 0) s1 = GAMMA;
+
+        this.haveNextNormal = false;
+    }
+
+    public void setSeed(int seed) {
+        setSeed((long) seed);
+    }
+
+    public void setSeed(int[] seed) {
+        long x = 0;
+
+        for (int s : seed) {
+            x = mix(x + GAMMA) ^ (s & 0xffffffffL);
+        }
+
+        setSeed(x);
+    }
+
+    /**
+     * @return The next 64 random bits.
+     */
+    public long nextLong() {
+        long s0 = this.s0;
+        long s1 = this.s1;
+        long result = Long.rotateLeft(s0 + s1, 17) + s0;
+
+        s1 ^= s0;
+        this.s0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+        this.s1 = Long.rotateLeft(s1, 28);
+
+        return result;
+    }
+
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * @return A uniform integer in [0, n), without bias.
+     */
+    public int nextInt(int n) {
+        if (n <= 0) throw new IllegalArgumentException("Bound must be positive: " + n);
+
+        // Lemire's multiply and reject.
+        long m = (nextLong() >>> 32) * n;
+        long low = m & 0xffffffffL;
+
+        if (low < n) {
+            long threshold = (0x100000000L - n) % n;
+
+            while (low < threshold) {
+                m = (nextLong() >>> 32) * n;
+                low = m & 0xffffffffL;
+            }
+        }
+
+        return (int) (m >>> 32);
+    }
+
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    public void nextBytes(byte[] bytes) {
+        int i = 0;
+
+        while (i < bytes.length) {
+            long bits = nextLong();
+
+            for (int k = 0; k < 8 && i < bytes.length; k++) {
+                bytes[i++] = (byte) bits;
+                bits >>>= 8;
+            }
+        }
+    }
+
+    /**
+     * @return A uniform double in [0, 1).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    public float nextFloat() {
+        return (nextLong() >>> 40) * FLOAT_UNIT;
+    }
+
+    /**
+     * @return A standard normal value.
+     */
+    public double nextGaussian() {
+        if (haveNextNormal) {
+            haveNextNormal = false;
+            return nextNormal;
+        }
+
+        // Marsaglia's polar method, which gives two at a time.
+        double u;
+        double v;
+        double s;
+
+        do {
+            u = 2.0 * nextDouble() - 1.0;
+            v = 2.0 * nextDouble() - 1.0;
+            s = u * u + v * v;
+        } while (s >= 1.0 || s == 0.0);
+
+        double multiplier = Math.sqrt(-2.0 * Math.log(s) / s);
+        nextNormal = v * multiplier;
+        haveNextNormal = true;
+        return u * multiplier;
+    }
+
+    /**
+     * @param mean The mean of the Normal.
+     * @param sd   The standard deviation of the Normal.
+     * @return Ibid.
+     */
+    public double nextNormal(double mean, double sd) {
+        if (sd <= 0) {
+            throw new IllegalArgumentException("Standard deviation must be positive: " + sd);
+        }
+
+        return nextGaussian() * sd + mean;
+    }
+
+    /**
+     * @return A uniform double in [low, high).
+     */
+    public double nextUniform(double low, double high) {
+        if (low == high) return low;
+        return low + (high - low) * nextDouble();
+    }
+
+    /**
+     * @param weights Nonnegative weights of categories 0, 1, ..., not necessarily summing
+     *                to one.
+     * @return A category drawn with probability proportional to its weight.
+     */
+    public int nextCategorical(double[] weights) {
+        double sum = 0.0;
+
+        for (double weight : weights) {
+            sum += weight;
+        }
+
+        if (!(sum > 0)) {
+            throw new IllegalArgumentException("Weights must have a positive sum.");
+        }
+
+        double r = nextDouble() * sum;
+        int last = weights.length - 1;
+
+        for (int k = 0; k < last; k++) {
+            r -= weights[k];
+            if (r < 0) return k;
+        }
+
+        return last;
+    }
+
+    /**
+     * @param cumulative Cumulative probabilities of categories 0, 1, ..., nondecreasing,
+     *                   the last being 1 (or the total weight).
+     * @return A category drawn from them, by binary search.
+     */
+    public int nextCategoricalCumulative(double[] cumulative) {
+        double r = nextDouble() * cumulative[cumulative.length - 1];
+        int low = 0;
+        int high = cumulative.length - 1;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (cumulative[mid] > r) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    // The SplitMix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -42,6 +42,11 @@ import java.util.Map;
  * The 64-bit Mersenne Twister implementation from the COLT library is used to generate random numbers.
  * <p>
  * To see what distributions are currently supported, look at the methods of the class. These many change over time.
+ * <p>
+ * Parallel code should not share the singleton, which is a point of contention and makes results depend on the
+ * scheduling of threads. Instead, it should draw a master stream with <code>nextStream</code> and give each task or
+ * block of rows its own substream (see RandomStream). Code in a task that calls <code>getInstance</code>, directly
+ * or not, may be given the task's stream with <code>setThreadStream</code>.
  *
  * @author Joseph Ramsey
  */
@@ -52,6 +57,11 @@ public class RandomUtil {
      */
     private static final RandomUtil randomUtil = new RandomUtil();
 
+    /**
+     * Instances drawing from streams, for the threads given them by setThreadStream.
+     */
+    private static final ThreadLocal<RandomUtil> threadInstance = new ThreadLocal<>();
+
     // Random number generator from the Apache library.
     private RandomGenerator randomGenerator;
 
@@ -61,6 +71,9 @@ public class RandomUtil {
 
     private Map<Long, RandomGenerator> seedsToGenerators = new HashedMap<>();
 
+    // The stream drawn from, or null for the singleton's generator.
+    private RandomStream stream = null;
+
 
     //========================================CONSTRUCTORS===================================//
 
@@ -81,10 +94,36 @@ public class RandomUtil {
     }
 
     /**
-     * @return the singleton instance of this class.
+     * Constructs a random number generator drawing from the given stream.
+     */
+    private RandomUtil(RandomStream stream) {
+        this.stream = stream;
+        this.randomGenerator = stream;
+        this.normal = new NormalDistribution(stream, 0, 1);
+        this.seed = stream.getSeed();
+        seedsToGenerators.put(seed, stream);
+    }
+
+    /**
+     * @return the singleton instance of this class, or if the current thread has been given a stream by
+     * setThreadStream, an instance drawing from that stream.
      */
     public static RandomUtil getInstance() {
-        return randomUtil;
+        RandomUtil instance = threadInstance.get();
+        return instance != null ? instance : randomUtil;
+    }
+
+    /**
+     * Makes getInstance, in the current thread, return an instance drawing from the given stream, until this is
+     * called again; null restores the singleton. For a task in a ForkJoinPool, this should be set and cleared (in a
+     * finally block) around code that does not itself wait on other tasks, since a thread waiting may run them.
+     */
+    public static void setThreadStream(RandomStream stream) {
+        if (stream == null) {
+            threadInstance.remove();
+        } else {
+            threadInstance.set(new RandomUtil(stream));
+        }
     }
 
     //=======================================PUBLIC METHODS=================================//
@@ -101,6 +140,14 @@ public class RandomUtil {
         return randomGenerator.nextDouble();
     }
 
+    /**
+     * @return A new stream, seeded from this generator, from which parallel tasks may take substreams. The
+     * substreams are determined by the seed of this generator, however the tasks are scheduled.
+     */
+    public RandomStream nextStream() {
+        return new RandomStream(nextLong());
+    }
+
     /**
      * @param low  Ibid.
      * @param high Ibid.
@@ -108,7 +155,9 @@ public class RandomUtil {
      */
     public double nextUniform(double low, double high) {
         if (low == high) return low;
-        else {
+        else if (stream != null) {
+            return stream.nextUniform(low, high);
+        } else {
             return new UniformRealDistribution(randomGenerator, low, high).sample();
         }
     }
@@ -123,7 +172,7 @@ public class RandomUtil {
             throw new IllegalArgumentException("Standard deviation must be non-negative: " + sd);
         }
 
-        double sample = normal.sample();
+        double sample = stream != null ? stream.nextGaussian() : normal.sample();
         return sample * sd + mean;
 
 //        return new NormalDistribution(randomGenerator, mean, sd).sample();
@@ -160,9 +209,15 @@ public class RandomUtil {
      *             setting the seed can be used to repeat previous behavior.
      */
     public void setSeed(long seed) {
+        if (stream != null) {
+            stream = new RandomStream(seed);
+            randomGenerator = stream;
+        } else {
+
+            // Do not change this generator; you will screw up innuerable unit tests!
+            randomGenerator = new SynchronizedRandomGenerator(new Well44497b(seed));
+        }
 
-        // Do not change this generator; you will screw up innuerable unit tests!
-        randomGenerator = new SynchronizedRandomGenerator(new Well44497b(seed));
         seedsToGenerators.put(seed, randomGenerator);
         normal = new NormalDistribution(randomGenerator, 0, 1);
         this.seed = seed;
@@ -172,6 +227,7 @@ public class RandomUtil {
 
         // Do not change this generator; you will screw up innuerable unit tests!
         randomGenerator = seedsToGenerators.get(seed);
+        if (stream != null) stream = (RandomStream) randomGenerator;
         normal = new NormalDistribution(randomGenerator, 0, 1);
         this.seed = seed;
 
@@ -0,0 +1,361 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.util;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and phase timers for a search. Searches, independence tests and
+ * scores pick up the metrics current for the thread that constructs them (see
+ * setCurrent) and report into them as they run, from any thread; counters are
+ * striped (LongAdder), so reporting from parallel tasks does not contend. When
+ * no metrics are current a disabled instance is used, whose methods return
+ * immediately.
+ * <p>
+ * Counts are reported under their names and phase times, in milliseconds,
+ * under the phase name followed by "Ms". A snapshot may be taken at any time,
+ * written as CSV or JSON, or sent periodically to a progress sink.
+ * <p>
+ * Metrics may also be cancelled, after which anything reporting into them gets
+ * a CancellationException; since tests and scores report on every call, this
+ * stops a search promptly even where it does not check for interruption.
+ */
+public final class SearchMetrics {
+
+    /**
+     * Calls to IndependenceTest.isIndependent.
+     */
+    public static final String INDEPENDENCE_TESTS = "independenceTests";
+
+    /**
+     * Calls to Score.localScore.
+     */
+    public static final String SCORES = "scores";
+
+    /**
+     * Independence tests and scores answered from a shared cache instead of
+     * being computed again.
+     */
+    public static final String CACHE_HITS = "cacheHits";
+
+    /**
+     * Edges added to the search graph.
+     */
+    public static final String EDGES_ADDED = "edgesAdded";
+
+    /**
+     * Edges removed from the search graph.
+     */
+    public static final String EDGES_REMOVED = "edgesRemoved";
+
+    /**
+     * The adjacency search as a whole; see also skeletonDepth(int).
+     */
+    public static final String SKELETON = "skeleton";
+
+    /**
+     * Orientation of unshielded colliders.
+     */
+    public static final String COLLIDERS = "colliders";
+
+    /**
+     * Meek rule orientation.
+     */
+    public static final String MEEK = "meek";
+
+    /**
+     * The forward (insertion) phase of FGES.
+     */
+    public static final String FORWARD = "forward";
+
+    /**
+     * The backward (deletion) phase of FGES.
+     */
+    public static final String BACKWARD = "backward";
+
+    /**
+     * Possible-D-SEP removal in the FCI family.
+     */
+    public static final String POSSIBLE_DSEP = "possibleDsep";
+
+    /**
+     * The final orientation rules of the FCI family.
+     */
+    public static final String FINAL_ORIENTATION = "finalOrientation";
+
+    /**
+     * The discriminating path rule (R4), within the final orientation.
+     */
+    public static final String DISCRIMINATING_PATHS = "discriminatingPaths";
+
+    /**
+     * Zhang's rules R5-R10, within the final orientation.
+     */
+    public static final String COMPLETE_RULE_SET = "completeRuleSet";
+
+    /**
+     * Receives snapshots.
+     */
+    public interface Sink {
+        void report(Map<String, Double> snapshot);
+    }
+
+    private static final SearchMetrics NONE = new SearchMetrics(false);
+    private static final ThreadLocal<SearchMetrics> CURRENT = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> timers = new ConcurrentHashMap<>();
+    private Timer progress;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructs new, enabled metrics with nothing counted yet.
+     */
+    public SearchMetrics() {
+        this(true);
+    }
+
+    private SearchMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the metrics current for this thread, or a disabled instance if
+     * none have been set.
+     */
+    public static SearchMetrics current() {
+        SearchMetrics metrics = CURRENT.get();
+        return metrics == null ? NONE : metrics;
+    }
+
+    /**
+     * Makes the given metrics current for this thread, so that searches, tests
+     * and scores constructed on it report into them; null clears them.
+     *
+     * @return the metrics previously current, or null, for restoring afterward.
+     */
+    public static SearchMetrics setCurrent(SearchMetrics metrics) {
+        SearchMetrics previous = CURRENT.get();
+
+        if (metrics == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(metrics);
+        }
+
+        return previous;
+    }
+
+    /**
+     * @return the phase name for the given depth of an adjacency search.
+     */
+    public static String skeletonDepth(int depth) {
+        return SKELETON + "Depth" + depth;
+    }
+
+    /**
+     * @return false if this is the disabled instance, which records nothing.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds one to the given counter.
+     */
+    public void count(String name) {
+        if (!enabled) return;
+        checkCancelled();
+        adder(counters, name).increment();
+    }
+
+    /**
+     * Adds n to the given counter.
+     */
+    public void count(String name, long n) {
+        if (!enabled) return;
+        checkCancelled();
+        adder(counters, name).add(n);
+    }
+
+    /**
+     * Adds the given number of nanoseconds to the time for the given phase.
+     * Typically, <code>long start = System.nanoTime(); ...; metrics.time(phase,
+     * System.nanoTime() - start);</code>
+     */
+    public void time(String phase, long nanos) {
+        if (!enabled) return;
+        checkCancelled();
+        adder(timers, phase).add(nanos);
+    }
+
+    /**
+     * Cancels whatever is reporting into these metrics; from now on count and
+     * time throw a CancellationException. The disabled instance cannot be
+     * cancelled.
+     */
+    public void cancel() {
+        if (!enabled) throw new IllegalStateException("The disabled metrics cannot be cancelled.");
+        cancelled = true;
+    }
+
+    /**
+     * @return true if cancel has been called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the value of the given counter, 0 if nothing has been counted.
+     */
+    public long getCount(String name) {
+        LongAdder adder = counters.get(name);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * @return the total time for the given phase in nanoseconds.
+     */
+    public long getNanos(String phase) {
+        LongAdder adder = timers.get(phase);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * @return the counts and phase times (in milliseconds, under the phase
+     * name plus "Ms") so far, sorted by name.
+     */
+    public Map<String, Double> snapshot() {
+        Map<String, Double> snapshot = new TreeMap<>();
+
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), (double) entry.getValue().sum());
+        }
+
+        for (Map.Entry<String, LongAdder> entry : timers.entrySet()) {
+            snapshot.put(entry.getKey() + "Ms", entry.getValue().sum() / 1e6);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Clears all counts and times.
+     */
+    public void reset() {
+        counters.clear();
+        timers.clear();
+    }
+
+    /**
+     * Sends a snapshot to the given sink.
+     */
+    public void report(Sink sink) {
+        sink.report(snapshot());
+    }
+
+    /**
+     * Sends a snapshot to the given sink every periodMillis milliseconds, on a
+     * daemon thread, until stopProgress is called. Replaces any sink already
+     * receiving progress.
+     */
+    public synchronized void startProgress(final Sink sink, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis);
+        }
+
+        stopProgress();
+
+        progress = new Timer("search-metrics", true);
+        progress.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                report(sink);
+            }
+        }, periodMillis, periodMillis);
+    }
+
+    /**
+     * Stops sending progress snapshots.
+     */
+    public synchronized void stopProgress() {
+        if (progress != null) {
+            progress.cancel();
+            progress = null;
+        }
+    }
+
+    /**
+     * Writes a snapshot as CSV with a header line, one name,value line per
+     * metric.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("name,value\n");
+
+        for (Map.Entry<String, Double> entry : snapshot().entrySet()) {
+            out.write(entry.getKey() + "," + entry.getValue() + "\n");
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Writes a snapshot as a JSON object from names to values.
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write(new JSONObject(snapshot()).toString());
+        out.flush();
+    }
+
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Search cancelled.");
+        }
+    }
+
+    private static LongAdder adder(ConcurrentMap<String, LongAdder> map, String name) {
+        LongAdder adder = map.get(name);
+
+        if (adder == null) {
+            adder = map.computeIfAbsent(name, k -> new LongAdder());
+        }
+
+        return adder;
+    }
+}
@@ -1687,6 +1687,9 @@ public final class StatUtils {
      * @return the given partial covariance.
      */
     public static double partialCovariance(TetradMatrix submatrix) {
+        if (submatrix.rows() <= MatrixKernel.MAX_SIZE) {
+            return MatrixKernel.partialCovariance(submatrix, 0, 1, range(2, submatrix.rows()));
+        }
 
         // Using the method in Whittacker.
         // cov(X, Y | Z) = cov(X, Y) - cov(X, Z) inverse(cov(Z, Z)) cov(Z, Y)
@@ -1720,6 +1723,10 @@ public final class StatUtils {
         if (y > covariance.rows()) throw new IllegalArgumentException();
         for (int aZ : z) if (aZ > covariance.rows()) throw new IllegalArgumentException();
 
+        if (z.length + 2 <= MatrixKernel.MAX_SIZE) {
+            return MatrixKernel.partialCovariance(covariance, x, y, z);
+        }
+
         int[] selection = new int[z.length + 2];
 
         selection[0] = x;
@@ -1746,7 +1753,11 @@ public final class StatUtils {
      *
      * @return the given partial correlation.
      */
-    public static synchronized double partialCorrelation(TetradMatrix submatrix) {
+    public static double partialCorrelation(TetradMatrix submatrix) {
+        if (submatrix.rows() <= MatrixKernel.MAX_SIZE) {
+            return MatrixKernel.partialCorrelation(submatrix, 0, 1, range(2, submatrix.rows()));
+        }
+
 //        double cov = partialCovariance(submatrix);
 //
 //        int[] selection1 = new int[submatrix.rows()];
@@ -1781,6 +1792,10 @@ public final class StatUtils {
         if (y > covariance.rows()) throw new IllegalArgumentException();
         for (int aZ : z) if (aZ > covariance.rows()) throw new IllegalArgumentException();
 
+        if (z.length + 2 <= MatrixKernel.MAX_SIZE) {
+            return MatrixKernel.partialCorrelation(covariance, x, y, z);
+        }
+
         int[] selection = new int[z.length + 2];
 
         selection[0] = x;
@@ -1790,6 +1805,13 @@ public final class StatUtils {
         return partialCorrelation(covariance.getSelection(selection, selection));
     }
 
+    // from, from + 1, ..., to - 1.
+    private static int[] range(int from, int to) {
+        int[] range = new int[Math.max(0, to - from)];
+        for (int i = 0; i < range.length; i++) range[i] = from + i;
+        return range;
+    }
+
     public static double logCoshScore(double[] _f) {
         _f = standardizeData(_f);
 
@@ -353,6 +353,12 @@ public class TetradMatrix implements TetradSerializable {
 
             return new TetradMatrix(inverse);
         }
+        else if (rows() <= MatrixKernel.MAX_SIZE) {
+            double[] a = MatrixKernel.flatten(this);
+            double[] inverse = new double[a.length];
+            MatrixKernel.invert(a, rows(), inverse);
+            return unflatten(inverse, rows());
+        }
         else {
 
             // Using LUDecomposition.
@@ -375,6 +381,13 @@ public class TetradMatrix implements TetradSerializable {
         if (!isSquare()) throw new IllegalArgumentException();
         if (rows() == 0) return new TetradMatrix(0, 0);
 
+        if (rows() <= MatrixKernel.MAX_SIZE) {
+            double[] a = MatrixKernel.flatten(this);
+            double[] inverse = new double[a.length];
+            MatrixKernel.invertSymmetric(a, rows(), inverse);
+            return unflatten(inverse, rows());
+        }
+
         // Using LUDecomposition.
         // other options: QRDecomposition, CholeskyDecomposition, EigenDecomposition, QRDecomposition,
         // RRQRDDecomposition, SingularValueDecomposition. Very cool. Also MatrixUtils.blockInverse,
@@ -399,6 +412,17 @@ public class TetradMatrix implements TetradSerializable {
         return new TetradMatrix(MatrixUtils.pseudoInverse(data));
     }
 
+    // The n x n matrix with the given entries, row-major.
+    private static TetradMatrix unflatten(double[] a, int n) {
+        double[][] data = new double[n][n];
+
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a, i * n, data[i], 0, n);
+        }
+
+        return new TetradMatrix(data);
+    }
+
     public static TetradMatrix identity(int rows) {
         TetradMatrix m = new TetradMatrix(rows, rows);
         for (int i = 0; i < rows; i++) m.set(i, i, 1);
@@ -418,6 +442,10 @@ public class TetradMatrix implements TetradSerializable {
     }
 
     public double det() {
+        if (isSquare() && rows() > 0 && rows() <= MatrixKernel.MAX_SIZE) {
+            return MatrixKernel.determinant(MatrixKernel.flatten(this), rows());
+        }
+
         return new LUDecomposition(apacheData).getDeterminant();
     }
 
@@ -34,12 +34,14 @@ import edu.cmu.tetrad.graph.*;
 import edu.cmu.tetrad.search.GraphSearch;
 import edu.cmu.tetrad.sem.GeneralizedSemIm;
 import edu.cmu.tetrad.sem.GeneralizedSemPm;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
 import edu.cmu.tetrad.util.StatUtils;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.RecursiveTask;
 
 //import cern.colt.Arrays;
 //import la.matrix.Matrix;
@@ -89,6 +91,18 @@ public class MGM extends ConvexProximal implements GraphSearch{
     //parameter weights
     private DoubleMatrix1D weights;
 
+    //true if the categorical blocks of the loss and gradient should be computed in parallel
+    private boolean parallel = true;
+
+    //edges screened out by the strong rules while solving along a lambda path, indexed like variables; the
+    //parameters of a screened edge are held at zero by the proximal operator. Null if nothing is screened.
+    private boolean[][] screened = null;
+
+    //relative slack allowed in the KKT conditions of an edge at zero at a converged fit along a lambda path, and the
+    //most times a fit is continued to repair violations of them
+    private static final double KKT_TOLERANCE = 1e-3;
+    private static final int MAX_KKT_ROUNDS = 20;
+
     public MGM(DoubleMatrix2D x, DoubleMatrix2D y, List<Node> variables, int[] l, double[] lambda){
 
         if(l.length != y.columns())
@@ -355,6 +369,91 @@ public class MGM extends ConvexProximal implements GraphSearch{
         return Math.log(myX.assign(Functions.minus(maxX)).assign(Functions.exp).zSum()) + maxX;
     }
 
+    /**
+     * Categorical part of the negative log pseudolikelihood. Each discrete variable owns its own column block of
+     * wxProd, so the blocks are independent and are evaluated in parallel when that is turned on.
+     *
+     * @param wxProd X*theta' + D*phi + e*alpha2', n by lsum
+     * @param gradient if true each block of wxProd is overwritten by softmax(wxProd) - indicator(Y), which is what
+     *                 the gradient code needs downstream
+     * @return the (unscaled) categorical loss
+     */
+    private double catLoss(final DoubleMatrix2D wxProd, final boolean gradient) {
+        if (!parallel || q < 2) {
+            double catloss = 0;
+
+            for (int i = 0; i < q; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                catloss += catLoss(wxProd, i, gradient);
+            }
+
+            return catloss;
+        }
+
+        class CatLossTask extends RecursiveTask<Double> {
+            private final int from;
+            private final int to;
+
+            private CatLossTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Double compute() {
+                if (to - from <= 1) {
+                    double catloss = 0;
+
+                    for (int i = from; i < to; i++) {
+                        catloss += catLoss(wxProd, i, gradient);
+                    }
+
+                    return catloss;
+                } else {
+                    final int mid = (to + from) / 2;
+                    CatLossTask left = new CatLossTask(from, mid);
+                    CatLossTask right = new CatLossTask(mid, to);
+                    left.fork();
+                    return right.compute() + left.join();
+                }
+            }
+        }
+
+        return ForkJoinPoolInstance.getInstance().getPool().invoke(new CatLossTask(0, q));
+    }
+
+    //categorical loss for the single discrete variable i, see above
+    private double catLoss(DoubleMatrix2D wxProd, int i, boolean gradient) {
+        DoubleMatrix2D wxTemp = wxProd.viewPart(0, lcumsum[i], n, l[i]);
+        double catloss = 0;
+
+        for (int k = 0; k < n; k++) {
+            DoubleMatrix1D curRow = wxTemp.viewRow(k);
+
+            catloss -= curRow.get((int) yDat.get(k, i) - 1);
+            catloss += logsumexp(curRow);
+        }
+
+        if (gradient) {
+            // does this need to be done in log space??
+            wxTemp.assign(Functions.exp);
+            DoubleMatrix1D invDenom = factory1D.make(n, 1.0).assign(margSum(wxTemp, 2), Functions.div);
+            wxTemp.assign(new Algebra().mult(factory2D.diagonal(invDenom), wxTemp));
+
+            for (int k = 0; k < n; k++) {
+                DoubleMatrix1D curRow = wxTemp.viewRow(k);
+
+                //wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))=wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))-1;
+                curRow.set((int) yDat.get(k, i) - 1, curRow.get((int) yDat.get(k, i) - 1) - 1);
+            }
+        }
+
+        return catloss;
+    }
+
     //calculate parameter weights as in Lee and Hastie
     private void calcWeights(){
         weights = factory1D.make(p+q);
@@ -473,16 +572,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
         end
         */
 
-        double catloss = 0;
-        for(int i = 0; i < yDat.columns(); i++){
-            DoubleMatrix2D wxTemp = wxProd.viewPart(0, lcumsum[i], n, l[i]);
-            for(int k = 0; k < n; k++){
-                DoubleMatrix1D curRow = wxTemp.viewRow(k);
-
-                catloss -= curRow.get((int) yDat.get(k, i) - 1);
-                catloss += logsumexp(curRow);
-            }
-        }
+        double catloss = catLoss(wxProd, false);
 
         return (sqloss + catloss)/((double) n);
     }
@@ -584,36 +674,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
         end
         */
 
-        double catloss = 0;
-        for(int i = 0; i < yDat.columns(); i++){
-            if (Thread.currentThread().isInterrupted()) {
-                break;
-            }
-
-            DoubleMatrix2D wxTemp = wxProd.viewPart(0, lcumsum[i], n, l[i]);
-            //need to copy init values for calculating nll
-            DoubleMatrix2D wxTemp0 = wxTemp.copy();
-
-            // does this need to be done in log space??
-            wxTemp.assign(Functions.exp);
-            DoubleMatrix1D invDenom = factory1D.make(n,1.0).assign(margSum(wxTemp, 2), Functions.div);
-            wxTemp.assign(alg.mult(factory2D.diagonal(invDenom), wxTemp));
-            for(int k = 0; k < n; k++){
-                if (Thread.currentThread().isInterrupted()) {
-                    break;
-                }
-
-                DoubleMatrix1D curRow = wxTemp.viewRow(k);
-                DoubleMatrix1D curRow0 = wxTemp0.viewRow(k);
-
-                catloss -= curRow0.get((int) yDat.get(k, i) - 1);
-                catloss += logsumexp(curRow0);
-
-
-                //wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))=wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))-1;
-                curRow.set((int) yDat.get(k,i)-1, curRow.get((int) yDat.get(k,i)-1) - 1);
-            }
-        }
+        double catloss = catLoss(wxProd, true);
 
         //gradalpha2=sum(wxprod,1)';
         gradOut.alpha2 = margSum(wxProd,1);
@@ -828,20 +889,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
         end
         */
 
-        for(int i = 0; i < yDat.columns(); i++){
-            DoubleMatrix2D wxTemp = wxProd.viewPart(0, lcumsum[i], n, l[i]);
-
-            // does this need to be done in log space??
-            wxTemp.assign(Functions.exp);
-            DoubleMatrix1D invDenom = factory1D.make(n,1.0).assign(margSum(wxTemp, 2), Functions.div);
-            wxTemp.assign(alg.mult(factory2D.diagonal(invDenom), wxTemp));
-            for(int k = 0; k < n; k++){
-                DoubleMatrix1D curRow = wxTemp.viewRow(k);
-
-                //wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))=wxtemp(sub2ind(size(wxtemp),(1:n)',Y(:,r)))-1;
-                curRow.set((int) yDat.get(k,i)-1, curRow.get((int) yDat.get(k,i)-1) - 1);
-            }
-        }
+        catLoss(wxProd, true);
 
         //gradalpha2=sum(wxprod,1)';
         grad.alpha2 = margSum(wxProd,1);
@@ -940,7 +988,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
 
                 double curVal =  par.beta.get(i,j);
                 if(curVal !=0){
-                    par.beta.set(i,j, curVal*betascale.get(i,j));
+                    par.beta.set(i,j, isScreened(i, j) ? 0 : curVal*betascale.get(i,j));
                 }
             }
         }
@@ -974,7 +1022,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
                 DoubleMatrix1D tempVec = par.theta.viewColumn(i).viewPart(lcumsum[j], l[j]);
                 //double thetaScale = Math.max(0, 1 - tlam.get(1)*weightMat.get(i, p+j)/Math.sqrt(alg.norm2(tempVec)));
                 double foo = norm2(tempVec);
-                double thetaScale = Math.max(0, 1 - tlam.get(1) * weightMat.get(i, p+j)/norm2(tempVec));
+                double thetaScale = isScreened(i, p + j) ? 0 : Math.max(0, 1 - tlam.get(1) * weightMat.get(i, p+j)/norm2(tempVec));
                 tempVec.assign(Functions.mult(thetaScale));
             }
         }
@@ -1005,7 +1053,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
 
                 //Not sure why this isnt Frobenius norm...
                 //double phiScale = Math.max(0, 1-tlam.get(2)*weightMat.get(p+i,p+j)/alg.norm2(tempMat));
-                double phiScale = Math.max(0, 1 - tlam.get(2) * weightMat.get(p + i,p+j)/norm2(tempMat));
+                double phiScale = isScreened(p + i, p + j) ? 0 : Math.max(0, 1 - tlam.get(2) * weightMat.get(p + i,p+j)/norm2(tempMat));
                 //double phiScale = Math.max(0, 1-tlam.get(2)*weightMat.get(p+i,p+j)/alg.normF(tempMat));
                 tempMat.assign(Functions.mult(phiScale));
             }
@@ -1060,7 +1108,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
 
                 double curVal =  par.beta.get(i,j);
                 if(curVal !=0){
-                    curVal=curVal * betascale.get(i,j);
+                    curVal = isScreened(i, j) ? 0 : curVal * betascale.get(i,j);
                     par.beta.set(i,j,curVal);
                     betaNorms += Math.abs(betaWeight.get(i,j)*curVal);
                 }
@@ -1097,7 +1145,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
                 DoubleMatrix1D tempVec = par.theta.viewColumn(i).viewPart(lcumsum[j], l[j]);
                 //double thetaScale = Math.max(0, 1 - tlam.get(1)*weightMat.get(i, p+j)/Math.sqrt(alg.norm2(tempVec)));
                 double foo = norm2(tempVec);
-                double thetaScale = Math.max(0, 1 - tlam.get(1) * weightMat.get(i, p+j)/norm2(tempVec));
+                double thetaScale = isScreened(i, p + j) ? 0 : Math.max(0, 1 - tlam.get(1) * weightMat.get(i, p+j)/norm2(tempVec));
                 tempVec.assign(Functions.mult(thetaScale));
                 thetaNorms += weightMat.get(i, p+j)*Math.sqrt(alg.norm2(tempVec));
             }
@@ -1130,7 +1178,7 @@ public class MGM extends ConvexProximal implements GraphSearch{
 
                 //not sure why this isnt Frobenius norm...
                 //double phiScale = Math.max(0, 1-tlam.get(2)*weightMat.get(p+i,p+j)/alg.norm2(tempMat));
-                double phiScale = Math.max(0, 1 - tlam.get(2) * weightMat.get(p + i,p+j)/norm2(tempMat));
+                double phiScale = isScreened(p + i, p + j) ? 0 : Math.max(0, 1 - tlam.get(2) * weightMat.get(p + i,p+j)/norm2(tempMat));
                 //double phiScale = Math.max(0, 1-tlam.get(2)*weightMat.get(p+i,p+j)/alg.normF(tempMat));
                 tempMat.assign(Functions.mult(phiScale));
                 phiNorms += weightMat.get(p+i,p+j)*alg.normF(tempMat);
@@ -1351,6 +1399,240 @@ public class MGM extends ConvexProximal implements GraphSearch{
         return elapsedTime;
     }
 
+    /**
+     * Solves the MGM for a decreasing sequence of lambdas, each fit warm started from the solution of the previous
+     * one. Before each fit the sequential strong rules of Tibshirani et al (2012) screen out edges whose gradient
+     * is well below the new penalty; those edges are held at zero during the fit. Each fit is converged on the
+     * objective, as by learn(epsilon, iterLimit), and then the KKT conditions are checked over the screened edges;
+     * screened edges that violate them are put back and the fit is continued. If screened edges still violate them
+     * after MAX_KKT_ROUNDS fits, the screen is dropped and the fit is continued over all edges. Each point of the
+     * path is therefore a fit of the full problem at that lambda, to the same tolerance as learn, though warm
+     * started from the previous point rather than from a cold start.
+     *
+     * @param lambdas one row of {cc, cd, dd} penalties per step, each column non-increasing
+     * @param epsilon tolerance in change of objective function for each fit, as in learn
+     * @param iterLimit iteration limit for each fit, as in learn
+     * @return the graph learned at each lambda, in the same order as lambdas
+     */
+    public List<Graph> searchPath(double[][] lambdas, double epsilon, int iterLimit){
+        for(int k = 0; k < lambdas.length; k++){
+            if(lambdas[k].length != 3)
+                throw new IllegalArgumentException("Lambda should have three values for cc, cd, and dd edges respectively");
+
+            for(int t = 0; t < 3 && k > 0; t++){
+                if(lambdas[k][t] > lambdas[k-1][t])
+                    throw new IllegalArgumentException("Lambda path must be non-increasing: " +
+                            Arrays.toString(lambdas[k-1]) + " then " + Arrays.toString(lambdas[k]));
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<Graph> graphs = new ArrayList<>();
+        double[] prevLambda = null;
+        double[][] norms = null;
+
+        try {
+            for (double[] lam : lambdas) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                setLambda(lam);
+
+                if (prevLambda != null) {
+                    screened = new boolean[p + q][p + q];
+
+                    for (int i = 0; i < p + q; i++) {
+                        for (int j = i + 1; j < p + q; j++) {
+                            int t = edgeType(i, j);
+                            screened[i][j] = norms[i][j] < 2 * lam[t] - prevLambda[t];
+                        }
+                    }
+                }
+
+                boolean violated = true;
+
+                for (int round = 0; round < MAX_KKT_ROUNDS && violated; round++) {
+                    learn(epsilon, iterLimit);
+                    norms = edgeGradientNorms();
+                    violated = false;
+
+                    if (screened == null) break;
+
+                    for (int i = 0; i < p + q; i++) {
+                        for (int j = i + 1; j < p + q; j++) {
+                            if (screened[i][j] && norms[i][j] > (1 + KKT_TOLERANCE) * lam[edgeType(i, j)]) {
+                                screened[i][j] = false;
+                                violated = true;
+                            }
+                        }
+                    }
+                }
+
+                if (violated) {
+                    screened = null;
+                    learn(epsilon, iterLimit);
+                    norms = edgeGradientNorms();
+                }
+
+                graphs.add(graphFromMGM());
+                prevLambda = lam;
+            }
+        } finally {
+            screened = null;
+        }
+
+        elapsedTime = System.currentTimeMillis() - startTime;
+        return graphs;
+    }
+
+    /**
+     * Solves the MGM along a path, converging each fit to the default objective tolerance of 1e-5.
+     *
+     * @param lambdas one row of {cc, cd, dd} penalties per step, each column non-increasing
+     * @param iterLimit iteration limit for each fit, as in learn
+     * @return the graph learned at each lambda, in the same order as lambdas
+     */
+    public List<Graph> searchPath(double[][] lambdas, int iterLimit){
+        return searchPath(lambdas, 1e-5, iterLimit);
+    }
+
+    /**
+     * Solves the MGM along a path using the same penalty for all three edge types.
+     *
+     * @param lambdas non-increasing sequence of penalties
+     * @return the graph learned at each lambda
+     */
+    public List<Graph> searchPath(double[] lambdas){
+        double[][] lams = new double[lambdas.length][];
+
+        for(int k = 0; k < lambdas.length; k++){
+            lams[k] = new double[]{lambdas[k], lambdas[k], lambdas[k]};
+        }
+
+        return searchPath(lams, 1000);
+    }
+
+    /**
+     * The smallest {cc, cd, dd} penalties for which the fit has no edges, found from the gradient at the fit of the
+     * node parameters alone. The current parameters of this MGM are left unchanged.
+     *
+     * @param iterLimit iteration limit for fitting the node parameters
+     * @return lambda max for cc, cd and dd edges
+     */
+    public double[] lambdaMax(int iterLimit){
+        MGMParams oldParams = new MGMParams(params);
+        double[] lambdaMax = new double[3];
+
+        screened = new boolean[p + q][p + q];
+
+        for(boolean[] row : screened){
+            Arrays.fill(row, true);
+        }
+
+        try {
+            learn(1e-5, iterLimit);
+            double[][] norms = edgeGradientNorms();
+
+            for (int i = 0; i < p + q; i++) {
+                for (int j = i + 1; j < p + q; j++) {
+                    int t = edgeType(i, j);
+                    lambdaMax[t] = Math.max(lambdaMax[t], norms[i][j]);
+                }
+            }
+        } finally {
+            screened = null;
+            params = oldParams;
+        }
+
+        return lambdaMax;
+    }
+
+    /**
+     * Log-spaced decreasing sequence of penalties, as usually used for lasso paths.
+     *
+     * @param lambdaMax the first (largest) penalty
+     * @param ratio lambda min / lambda max, in (0, 1)
+     * @param numLambdas length of the sequence, at least 2
+     * @return the sequence
+     */
+    public static double[] lambdaPath(double lambdaMax, double ratio, int numLambdas){
+        if(ratio <= 0 || ratio >= 1)
+            throw new IllegalArgumentException("ratio must be (0,1): " + ratio);
+
+        if(numLambdas < 2)
+            throw new IllegalArgumentException("Need at least two lambdas for a path: " + numLambdas);
+
+        double[] lambdas = new double[numLambdas];
+        double step = Math.log(ratio) / (numLambdas - 1);
+
+        for(int k = 0; k < numLambdas; k++){
+            lambdas[k] = lambdaMax * Math.exp(k * step);
+        }
+
+        return lambdas;
+    }
+
+    public void setLambda(double[] lambda){
+        if(lambda.length != 3)
+            throw new IllegalArgumentException("Lambda should have three values for cc, cd, and dd edges respectively");
+
+        this.lambda = factory1D.make(lambda);
+    }
+
+    /**
+     * @param parallel true (the default) if the categorical blocks of the loss and gradient should be computed in
+     *                 parallel. Turn this off when many MGMs are already being fit in parallel, as in stability
+     *                 searches.
+     */
+    public void setParallel(boolean parallel){
+        this.parallel = parallel;
+    }
+
+    private boolean isScreened(int i, int j){
+        return screened != null && (i < j ? screened[i][j] : screened[j][i]);
+    }
+
+    //0 for cc, 1 for cd and 2 for dd edges, i < j
+    private int edgeType(int i, int j){
+        if(j < p) return 0;
+        if(i < p) return 1;
+        return 2;
+    }
+
+    /**
+     * Weighted norms of the blocks of the smooth gradient at the current parameters, one per edge (upper triangle,
+     * indexed like variables). An edge at zero satisfies the KKT conditions for a penalty iff its norm is at most
+     * the penalty for its edge type.
+     */
+    private double[][] edgeGradientNorms(){
+        MGMParams grad = new MGMParams(smoothGradient(params.toMatrix1D()), p, lsum);
+        double[][] norms = new double[p + q][p + q];
+
+        for(int i = 0; i < p; i++){
+            for(int j = i+1; j < p; j++){
+                norms[i][j] = Math.abs(grad.beta.get(i, j)) / (weights.get(i) * weights.get(j));
+            }
+        }
+
+        for(int i = 0; i < p; i++){
+            for(int j = 0; j < q; j++){
+                norms[i][p+j] = norm2(grad.theta.viewColumn(i).viewPart(lcumsum[j], l[j])) /
+                        (weights.get(i) * weights.get(p+j));
+            }
+        }
+
+        for(int i = 0; i < q; i++){
+            for(int j = i+1; j < q; j++){
+                //same norm as the proximal operator uses for phi blocks
+                norms[p+i][p+j] = norm2(grad.phi.viewPart(lcumsum[i], lcumsum[j], l[i], l[j])) /
+                        (weights.get(p+i) * weights.get(p+j));
+            }
+        }
+
+        return norms;
+    }
+
 
     /*
      * PRIVATE UTILS
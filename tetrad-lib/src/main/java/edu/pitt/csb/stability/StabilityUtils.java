@@ -137,6 +137,65 @@ public class StabilityUtils {
         return thetaMat;
     }
 
+    //returns one edgewise stability matrix per lambda for MGM. Instead of refitting from scratch for every lambda,
+    //each subsample is solved once along the whole (decreasing) lambda path with warm starts and strong rule
+    //screening, see MGM.searchPath. Subsamples are run in parallel.
+    public static DoubleMatrix2D[] StabilitySearchMGMPath(final DataSet data, final double[][] lambdas, int N, int b){
+        final int numVars = data.getNumColumns();
+        final DoubleMatrix2D[] thetaMats = new DoubleMatrix2D[lambdas.length];
+
+        for (int k = 0; k < lambdas.length; k++) {
+            thetaMats[k] = DoubleFactory2D.dense.make(numVars, numVars, 0.0);
+        }
+
+        final int[][] samps = subSampleNoReplacement(data.getNumRows(), b, N);
+
+        final ForkJoinPool pool = ForkJoinPoolInstance.getInstance().getPool();
+
+        class StabilityPathAction extends RecursiveAction{
+            private int from;
+            private int to;
+
+            public StabilityPathAction(int from, int to){
+                this.from = from;
+                this.to = to;
+            }
+
+            private void addToMats(List<Graph> graphs){
+                synchronized (thetaMats) {
+                    for (int k = 0; k < graphs.size(); k++) {
+                        thetaMats[k].assign(MixedUtils.skeletonToMatrix(graphs.get(k)), Functions.plus);
+                    }
+                }
+            }
+
+            @Override
+            protected void compute(){
+                if (to - from <= 1) {
+                    for (int s = from; s < to; s++) {
+                        DataSet dataSubSamp = data.subsetRows(samps[s]).copy();
+                        MGM m = new MGM(dataSubSamp, lambdas[0]);
+
+                        //the subsamples already keep the pool busy
+                        m.setParallel(false);
+                        addToMats(m.searchPath(lambdas, 1000));
+                    }
+                } else {
+                    final int mid = (to + from) / 2;
+                    invokeAll(new StabilityPathAction(from, mid), new StabilityPathAction(mid, to));
+                }
+            }
+        }
+
+        pool.invoke(new StabilityPathAction(0, N));
+
+        for (DoubleMatrix2D thetaMat : thetaMats) {
+            thetaMat.assign(Functions.mult(1.0 / N));
+        }
+
+        return thetaMats;
+    }
+
     //needs a symmetric matrix
     //array of averages of instability matrix over [all, cc, cd, dd] edges
     public static double[] totalInstabilityUndir(DoubleMatrix2D xi, List<Node> vars){
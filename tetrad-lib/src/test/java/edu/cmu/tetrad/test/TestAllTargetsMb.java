@@ -0,0 +1,258 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.*;
+import edu.cmu.tetrad.search.mb.Iamb;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.SearchMetrics;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the all-targets Markov blanket search and the caching test and score it shares
+ * among targets.
+ */
+public class TestAllTargetsMb {
+
+    @Test
+    public void testMatchesSingleTargetSearches() {
+        final DataSet data = simulate(30, 2048L);
+        IndependenceTest test = new IndTestFisherZ(data, 0.01);
+
+        AllTargetsMb.MbSearchFactory iamb = new AllTargetsMb.MbSearchFactory() {
+            public MbSearch create(IndependenceTest test) {
+                return new Iamb(test);
+            }
+        };
+
+        AllTargetsMb.MbSearchFactory mbfs = new AllTargetsMb.MbSearchFactory() {
+            public MbSearch create(IndependenceTest test) {
+                return new Mbfs(test, 3);
+            }
+        };
+
+        Supplier<IndependenceTest> tests = new Supplier<IndependenceTest>() {
+            public IndependenceTest get() {
+                return new IndTestFisherZ(data, 0.01);
+            }
+        };
+
+        for (AllTargetsMb.MbSearchFactory factory : Arrays.asList(iamb, mbfs)) {
+            for (AllTargetsMb search : Arrays.asList(AllTargetsMb.forTest(test, factory),
+                    AllTargetsMb.forTest(tests, factory))) {
+                Graph graph = search.search();
+                Map<Node, List<Node>> mbs = search.getMbs();
+
+                assertEquals(test.getVariables(), new ArrayList<>(mbs.keySet()));
+
+                for (Node target : test.getVariables()) {
+                    List<Node> mb = factory.create(test).findMb(target.getName());
+                    assertEquals(new HashSet<>(mb), new HashSet<>(mbs.get(target)));
+                }
+
+                for (Edge edge : graph.getEdges()) {
+                    assertTrue(mbs.get(edge.getNode1()).contains(edge.getNode2()));
+                    assertTrue(mbs.get(edge.getNode2()).contains(edge.getNode1()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMissesInParallel() throws Exception {
+        RandomUtil.getInstance().setSeed(4829L);
+        final Graph dag = GraphUtils.randomGraph(10, 0, 10, 30, 15, 15, false);
+        final List<Node> nodes = dag.getNodes();
+
+        // Each test waits until two are testing at once, which they can only be if
+        // different facts are tested in parallel.
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final CachingIndependenceTest cached = new CachingIndependenceTest(new Supplier<IndependenceTest>() {
+            public IndependenceTest get() {
+                return new IndTestDSep(dag) {
+                    @Override
+                    public boolean isIndependent(Node x, Node y, List<Node> z) {
+                        calls.incrementAndGet();
+
+                        try {
+                            barrier.await(10, TimeUnit.SECONDS);
+                        } catch (Exception e) {
+                            throw new IllegalStateException("Facts were not tested in parallel.", e);
+                        }
+
+                        return super.isIndependent(x, y, z);
+                    }
+                };
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<Double>> pValues = new ArrayList<>();
+
+            // Two facts, each asked for twice.
+            for (int i = 0; i < 4; i++) {
+                final Node y = nodes.get(1 + i % 2);
+
+                pValues.add(executor.submit(new Callable<Double>() {
+                    public Double call() {
+                        cached.isIndependent(nodes.get(0), y, nodes.get(3));
+                        return cached.getPValue();
+                    }
+                }));
+            }
+
+            IndependenceTest test = new IndTestDSep(dag);
+
+            for (int i = 0; i < 4; i++) {
+                test.isIndependent(nodes.get(0), nodes.get(1 + i % 2), nodes.get(3));
+                assertEquals(test.getPValue(), pValues.get(i).get(), 0.0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, calls.get());
+        assertEquals(2, cached.getCacheSize());
+    }
+
+    @Test
+    public void testFgesMb() {
+        DataSet data = simulate(20, 39483L);
+        Score score = new SemBicScore(new CovarianceMatrix(data));
+
+        AllTargetsMb search = AllTargetsMb.forScore(score, new AllTargetsMb.FgesMbFactory() {
+            public FgesMb create(Score score) {
+                return new FgesMb(score);
+            }
+        });
+
+        Map<Node, List<Node>> mbs = search.findMbs();
+
+        for (Node target : score.getVariables()) {
+            List<Node> mb = new FgesMb(score).search(target).getNodes();
+            mb.remove(target);
+            assertEquals(new HashSet<>(mb), new HashSet<>(mbs.get(target)));
+        }
+    }
+
+    @Test
+    public void testSymmetry() {
+        final Node x = new GraphNode("X");
+        final Node y = new GraphNode("Y");
+        final Node z = new GraphNode("Z");
+
+        // Y is in X's blanket but not the reverse; Y and Z agree.
+        final Map<Node, List<Node>> mbs = new HashMap<>();
+        mbs.put(x, Collections.singletonList(y));
+        mbs.put(y, Collections.singletonList(z));
+        mbs.put(z, Collections.singletonList(y));
+
+        AllTargetsMb search = new AllTargetsMb(Arrays.asList(x, y, z), new AllTargetsMb.TargetSearch() {
+            public List<Node> findMb(Node target) {
+                return mbs.get(target);
+            }
+        });
+
+        Graph graph = search.search();
+        assertFalse(graph.isAdjacentTo(x, y));
+        assertTrue(graph.isAdjacentTo(y, z));
+        assertEquals(1, graph.getNumEdges());
+
+        search.setSymmetric(false);
+        graph = search.search();
+        assertTrue(graph.isAdjacentTo(x, y));
+        assertEquals(2, graph.getNumEdges());
+
+        // With X the only target, its blanket is taken as is.
+        search.setSymmetric(true);
+        search.setTargets(Collections.singletonList(x));
+        graph = search.search();
+        assertTrue(graph.isAdjacentTo(x, y));
+        assertEquals(1, graph.getNumEdges());
+    }
+
+    @Test
+    public void testCaches() {
+        DataSet data = simulate(10, 5938L);
+        IndependenceTest test = new IndTestFisherZ(data, 0.05);
+        List<Node> nodes = test.getVariables();
+
+        SearchMetrics metrics = new SearchMetrics();
+        SearchMetrics previous = SearchMetrics.setCurrent(metrics);
+
+        try {
+            CachingIndependenceTest cached = new CachingIndependenceTest(test);
+            Score score = new SemBicScore(new CovarianceMatrix(data));
+            CachingScore cachedScore = new CachingScore(score);
+
+            boolean independent = test.isIndependent(nodes.get(0), nodes.get(1), nodes.get(2), nodes.get(3));
+            double p = test.getPValue();
+
+            assertEquals(independent, cached.isIndependent(nodes.get(0), nodes.get(1), nodes.get(2), nodes.get(3)));
+            assertEquals(p, cached.getPValue(), 0.0);
+            assertEquals(independent, cached.isIndependent(nodes.get(1), nodes.get(0), nodes.get(3), nodes.get(2)));
+            assertEquals(p, cached.getPValue(), 0.0);
+            assertEquals(1, cached.getCacheSize());
+
+            assertEquals(score.localScore(4, 1, 2), cachedScore.localScore(4, 2, 1), 0.0);
+            assertEquals(score.localScore(4, 1, 2), cachedScore.localScore(4, 1, 2), 0.0);
+            assertEquals(score.localScoreDiff(1, 4), cachedScore.localScoreDiff(1, 4), 0.0);
+            assertEquals(2, cachedScore.getCacheSize());
+
+            assertEquals(2, metrics.getCount(SearchMetrics.CACHE_HITS));
+        } finally {
+            SearchMetrics.setCurrent(previous);
+        }
+    }
+
+    private static DataSet simulate(int numNodes, long seed) {
+        RandomUtil.getInstance().setSeed(seed);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numNodes; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        Graph graph = GraphUtils.randomGraph(nodes, 0, numNodes, 30, 15, 15, false);
+        SemIm im = new SemIm(new SemPm(graph));
+        return im.simulateData(1000, false);
+    }
+}
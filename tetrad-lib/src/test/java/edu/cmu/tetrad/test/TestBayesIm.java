@@ -23,7 +23,9 @@ package edu.cmu.tetrad.test;
 
 import edu.cmu.tetrad.bayes.BayesIm;
 import edu.cmu.tetrad.bayes.BayesPm;
+import edu.cmu.tetrad.bayes.JunctionTreeUpdater;
 import edu.cmu.tetrad.bayes.MlBayesIm;
+import edu.cmu.tetrad.data.DataSet;
 import edu.cmu.tetrad.graph.*;
 import org.junit.Test;
 
@@ -203,6 +205,44 @@ public final class TestBayesIm {
         }
     }
 
+    @Test
+    public void testSimulateDataParallel() {
+        Graph graph = GraphConverter.convert("X1-->X2,X1-->X3,X2-->X4,X3-->X4");
+        BayesPm bayesPm = new BayesPm(new Dag(graph), 2, 4);
+        MlBayesIm bayesIm = new MlBayesIm(bayesPm, MlBayesIm.RANDOM);
+
+        DataSet data = bayesIm.simulateDataParallel(50000, 2934L, false);
+        assertEquals(50000, data.getNumRows());
+        assertEquals(4, data.getNumColumns());
+
+        // Same seed, same data.
+        DataSet data2 = bayesIm.simulateDataParallel(50000, 2934L, false);
+
+        for (int i = 0; i < data.getNumRows(); i += 97) {
+            for (int j = 0; j < data.getNumColumns(); j++) {
+                assertEquals(data.getInt(i, j), data2.getInt(i, j));
+            }
+        }
+
+        // The frequencies match the marginals.
+        JunctionTreeUpdater updater = new JunctionTreeUpdater(bayesIm);
+
+        for (int j = 0; j < bayesIm.getNumNodes(); j++) {
+            double[] marginals = updater.calculateUpdatedMarginals(j);
+            int column = data.getColumn(data.getVariable(bayesIm.getNode(j).getName()));
+
+            for (int k = 0; k < marginals.length; k++) {
+                int count = 0;
+
+                for (int i = 0; i < data.getNumRows(); i++) {
+                    if (data.getInt(i, column) == k) count++;
+                }
+
+                assertEquals(marginals[k], count / (double) data.getNumRows(), 0.01);
+            }
+        }
+    }
+
     private static boolean rowsEqual(BayesIm bayesIm, int node, int row1,
                                      int row2) {
         for (int col = 0; col < bayesIm.getNumColumns(node); col++) {
@@ -0,0 +1,263 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.Comparison;
+import edu.cmu.tetrad.algcomparison.graph.RandomForward;
+import edu.cmu.tetrad.algcomparison.simulation.BinaryDataCache;
+import edu.cmu.tetrad.algcomparison.simulation.LoadContinuousDataAndGraphs;
+import edu.cmu.tetrad.algcomparison.simulation.LoadDataAndGraphs;
+import edu.cmu.tetrad.algcomparison.simulation.SemSimulation;
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the binary data format and the binary cache of saved simulations.
+ */
+public class TestBinaryData {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        DataSet dataSet = mixedData(37);
+
+        for (boolean compressed : new boolean[]{false, true}) {
+            File file = folder.newFile("data." + compressed + ".tds");
+            BinaryDataWriter.writeData(dataSet, file, compressed);
+            DataSet loaded = BinaryDataReader.readData(file);
+
+            assertEquals("mixed", loaded.getName());
+            assertEquals(dataSet.getNumRows(), loaded.getNumRows());
+            assertEquals(dataSet.getVariables(), loaded.getVariables());
+
+            for (int j = 0; j < dataSet.getNumColumns(); j++) {
+                Node variable = loaded.getVariable(j);
+                assertEquals(dataSet.getVariable(j).getClass(), variable.getClass());
+
+                if (variable instanceof DiscreteVariable) {
+                    assertEquals(((DiscreteVariable) dataSet.getVariable(j)).getCategories(),
+                            ((DiscreteVariable) variable).getCategories());
+                }
+
+                for (int i = 0; i < dataSet.getNumRows(); i++) {
+                    if (variable instanceof DiscreteVariable) {
+                        assertEquals(dataSet.getInt(i, j), loaded.getInt(i, j));
+                    } else {
+                        assertEquals(dataSet.getDouble(i, j), loaded.getDouble(i, j), 0.0);
+                    }
+                }
+            }
+
+            assertEquals(!compressed, ((BoxDataSet) loaded).getDataBox() instanceof MappedDataBox);
+        }
+    }
+
+    @Test
+    public void testMappedIsReadOnly() throws IOException {
+        File file = folder.newFile("data.tds");
+        BinaryDataWriter.writeData(mixedData(10), file, false);
+        DataSet loaded = BinaryDataReader.readData(file);
+        DataSet copy = loaded.copy();
+
+        // Setting a value materializes the mapped box.
+        loaded.setDouble(3, 0, 42.0);
+        assertFalse(((BoxDataSet) loaded).getDataBox() instanceof MappedDataBox);
+        assertEquals(42.0, loaded.getDouble(3, 0), 0.0);
+        assertEquals(copy.getDouble(4, 0), loaded.getDouble(4, 0), 0.0);
+        assertEquals(copy.getInt(4, 1), loaded.getInt(4, 1));
+
+        // The file is unchanged.
+        assertEquals(copy.getDouble(3, 0), BinaryDataReader.readData(file).getDouble(3, 0), 0.0);
+
+        // So does setting a discrete value.
+        DataSet loaded2 = BinaryDataReader.readData(file);
+        loaded2.setInt(2, 1, 2);
+        assertFalse(((BoxDataSet) loaded2).getDataBox() instanceof MappedDataBox);
+        assertEquals(2, loaded2.getInt(2, 1));
+        assertEquals(copy.getInt(3, 1), loaded2.getInt(3, 1));
+    }
+
+    @Test
+    public void testLoaderPrefersCache() throws IOException {
+        RandomUtil.getInstance().setSeed(2049382L);
+
+        Parameters parameters = new Parameters();
+        parameters.set("numRuns", 2);
+        parameters.set("numMeasures", 8);
+        parameters.set("avgDegree", 2);
+        parameters.set("sampleSize", 100, 200);
+
+        SemSimulation simulation = new SemSimulation(new RandomForward());
+        simulation.createData(parameters);
+
+        File dir = folder.newFolder("comparison");
+        new Comparison().saveToFiles(dir.getAbsolutePath(), simulation, parameters);
+
+        File saved = new File(dir, "save/2");
+        assertTrue(BinaryDataCache.exists(saved));
+        assertEquals(2, BinaryDataCache.read(saved).getNumRuns());
+
+        LoadDataAndGraphs binary = new LoadDataAndGraphs(saved.getAbsolutePath());
+        binary.createData(new Parameters());
+
+        assertTrue(new File(saved, "binary/index.txt").delete());
+
+        LoadDataAndGraphs text = new LoadDataAndGraphs(saved.getAbsolutePath());
+        text.createData(new Parameters());
+
+        assertEquals(2, binary.getNumDataModels());
+        assertEquals(text.getNumDataModels(), binary.getNumDataModels());
+
+        for (int k = 0; k < 2; k++) {
+            assertEquals(text.getTrueGraph(k), binary.getTrueGraph(k));
+
+            DataSet binaryData = (DataSet) binary.getDataModel(k);
+            DataSet textData = (DataSet) text.getDataModel(k);
+
+            assertTrue(((BoxDataSet) binaryData).getDataBox() instanceof MappedDataBox);
+            assertEquals(200, binaryData.getNumRows());
+            assertEquals(textData.getVariableNames(), binaryData.getVariableNames());
+
+            // The text files are rounded.
+            for (int i = 0; i < textData.getNumRows(); i++) {
+                for (int j = 0; j < textData.getNumColumns(); j++) {
+                    assertEquals(textData.getDouble(i, j), binaryData.getDouble(i, j), 1e-3);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStaleCacheIsNotUsed() throws IOException {
+        RandomUtil.getInstance().setSeed(3928L);
+
+        Parameters parameters = new Parameters();
+        parameters.set("numRuns", 2);
+        parameters.set("numMeasures", 5);
+        parameters.set("avgDegree", 2);
+        parameters.set("sampleSize", 100);
+
+        SemSimulation simulation = new SemSimulation(new RandomForward());
+        simulation.createData(parameters);
+
+        File dir = folder.newFolder("comparison");
+        new Comparison().saveToFiles(dir.getAbsolutePath(), simulation, parameters);
+
+        File saved = new File(dir, "save");
+        assertTrue(BinaryDataCache.isCurrent(saved));
+
+        // An edit to a text data file after the cache was written.
+        File index = new File(saved, "binary/index.txt");
+        assertTrue(new File(saved, "data/data.2.txt").setLastModified(index.lastModified() + 10000));
+
+        assertTrue(BinaryDataCache.exists(saved));
+        assertFalse(BinaryDataCache.isCurrent(saved));
+
+        LoadDataAndGraphs text = new LoadDataAndGraphs(saved.getAbsolutePath());
+        text.createData(new Parameters());
+
+        assertEquals(2, text.getNumDataModels());
+
+        // The text files were parsed, not the cache mapped.
+        for (int k = 0; k < 2; k++) {
+            DataSet dataSet = (DataSet) text.getDataModel(k);
+            assertFalse(dataSet instanceof BoxDataSet && ((BoxDataSet) dataSet).getDataBox() instanceof MappedDataBox);
+        }
+    }
+
+    @Test
+    public void testBrokenCacheFallsBackToText() throws IOException {
+        RandomUtil.getInstance().setSeed(3928L);
+
+        Parameters parameters = new Parameters();
+        parameters.set("numRuns", 2);
+        parameters.set("numMeasures", 5);
+        parameters.set("avgDegree", 2);
+        parameters.set("sampleSize", 100);
+
+        SemSimulation simulation = new SemSimulation(new RandomForward());
+        simulation.createData(parameters);
+
+        File dir = folder.newFolder("comparison");
+        new Comparison().saveToFiles(dir.getAbsolutePath(), simulation, parameters);
+
+        File saved = new File(dir, "save");
+
+        try (PrintWriter out = new PrintWriter(new File(saved, "binary/index.txt"))) {
+            out.println("run\tdata\tgraph");
+            out.println("garbage");
+        }
+
+        assertTrue(BinaryDataCache.isCurrent(saved));
+
+        LoadContinuousDataAndGraphs text = new LoadContinuousDataAndGraphs(saved.getAbsolutePath());
+        text.createData(new Parameters());
+
+        assertEquals(2, text.getNumDataModels());
+        assertEquals(simulation.getDataModel(1).getVariableNames(), text.getDataModel(1).getVariableNames());
+    }
+
+    private DataSet mixedData(int numRows) {
+        List<Node> variables = new ArrayList<>();
+        variables.add(new ContinuousVariable("X1"));
+        variables.add(new DiscreteVariable("X2", Arrays.asList("low", "medium", "high")));
+        variables.add(new ContinuousVariable("X3"));
+        variables.add(new DiscreteVariable("X4", 2));
+
+        double[][] continuousData = new double[4][];
+        int[][] discreteData = new int[4][];
+        continuousData[0] = new double[numRows];
+        discreteData[1] = new int[numRows];
+        continuousData[2] = new double[numRows];
+        discreteData[3] = new int[numRows];
+
+        RandomUtil random = RandomUtil.getInstance();
+
+        for (int i = 0; i < numRows; i++) {
+            continuousData[0][i] = random.nextNormal(0, 1);
+            discreteData[1][i] = random.nextInt(3);
+            continuousData[2][i] = i % 7 == 0 ? Double.NaN : random.nextNormal(0, 1);
+            discreteData[3][i] = i % 5 == 0 ? DiscreteVariable.MISSING_VALUE : random.nextInt(2);
+        }
+
+        DataSet dataSet = new BoxDataSet(new MixedDataBox(variables, numRows, continuousData, discreteData), variables);
+        dataSet.setName("mixed");
+        return dataSet;
+    }
+}
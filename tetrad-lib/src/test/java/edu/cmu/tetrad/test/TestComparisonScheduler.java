@@ -0,0 +1,239 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.Comparison;
+import edu.cmu.tetrad.algcomparison.algorithm.Algorithm;
+import edu.cmu.tetrad.algcomparison.algorithm.Algorithms;
+import edu.cmu.tetrad.algcomparison.algorithm.oracle.pattern.Fges;
+import edu.cmu.tetrad.algcomparison.algorithm.oracle.pattern.Pc;
+import edu.cmu.tetrad.algcomparison.graph.RandomForward;
+import edu.cmu.tetrad.algcomparison.independence.FisherZ;
+import edu.cmu.tetrad.algcomparison.score.SemBicScore;
+import edu.cmu.tetrad.algcomparison.simulation.SemSimulation;
+import edu.cmu.tetrad.algcomparison.simulation.Simulations;
+import edu.cmu.tetrad.algcomparison.statistic.*;
+import edu.cmu.tetrad.data.DataModel;
+import edu.cmu.tetrad.data.DataType;
+import edu.cmu.tetrad.graph.EdgeListGraph;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that parallel and checkpointed comparisons give the same tables as sequential ones, and that
+ * cells that time out are cancelled and run again on resuming.
+ */
+public class TestComparisonScheduler {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParallel() throws IOException {
+        File sequential = folder.newFolder("sequential");
+        File parallel = folder.newFolder("parallel");
+
+        Comparison comparison = new Comparison();
+        comparison.setParallelized(false);
+        compare(comparison, sequential);
+
+        comparison = new Comparison();
+        comparison.setParallelized(true);
+        comparison.setNumWorkers(3);
+        compare(comparison, parallel);
+
+        assertEquals(tables(sequential), tables(parallel));
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        File dir = folder.newFolder("checkpointed");
+
+        Comparison comparison = new Comparison();
+        comparison.setNumWorkers(2);
+        comparison.setCheckpointed(true);
+        compare(comparison, dir);
+        List<String> first = tables(dir);
+
+        File[] cells = new File(dir, "checkpoint").listFiles((d, name) -> name.startsWith("run."));
+        assertEquals(8, cells.length);
+
+        // Forget one cell; the rest are restored.
+        assertTrue(new File(dir, "checkpoint/run.1.txt").delete());
+
+        comparison = new Comparison();
+        comparison.setNumWorkers(2);
+        comparison.setCheckpointed(true);
+        compare(comparison, dir);
+
+        assertEquals(first, tables(dir));
+    }
+
+    @Test
+    public void testTimeout() throws IOException {
+        File dir = folder.newFolder("timeout");
+        Algorithms algorithms = new Algorithms();
+        algorithms.add(new Pc(new FisherZ()));
+        algorithms.add(new Stalling());
+
+        Comparison comparison = new Comparison();
+        comparison.setNumWorkers(2);
+        comparison.setCheckpointed(true);
+        comparison.setTimeout(200, TimeUnit.MILLISECONDS);
+
+        Stalling.CALLS.set(0);
+        compare(comparison, dir, algorithms);
+
+        // Every stalled cell was cancelled, and only the finished cells were checkpointed.
+        assertEquals(4, Stalling.CALLS.get());
+        File[] cells = new File(dir, "checkpoint").listFiles((d, name) -> name.startsWith("run."));
+        assertEquals(4, cells.length);
+
+        // Resuming runs the cancelled cells again.
+        comparison = new Comparison();
+        comparison.setNumWorkers(2);
+        comparison.setCheckpointed(true);
+        comparison.setTimeout(200, TimeUnit.MILLISECONDS);
+        compare(comparison, dir, algorithms);
+
+        assertEquals(8, Stalling.CALLS.get());
+    }
+
+    @Test
+    public void testUncopyableAlgorithm() throws IOException {
+        File sequential = folder.newFolder("sequential");
+        File parallel = folder.newFolder("parallel");
+
+        Algorithms algorithms = new Algorithms();
+        algorithms.add(new Pc(new FisherZ()));
+        algorithms.add(new Uncopyable());
+
+        Comparison comparison = new Comparison();
+        comparison.setParallelized(false);
+        compare(comparison, sequential, algorithms);
+
+        // Can't be given a copy per cell, so the cells are run one at a time rather than share it.
+        comparison = new Comparison();
+        comparison.setParallelized(true);
+        comparison.setNumWorkers(3);
+        compare(comparison, parallel, algorithms);
+
+        assertEquals(tables(sequential), tables(parallel));
+    }
+
+    private void compare(Comparison comparison, File dir) {
+        Algorithms algorithms = new Algorithms();
+        algorithms.add(new Pc(new FisherZ()));
+        algorithms.add(new Fges(new SemBicScore()));
+        compare(comparison, dir, algorithms);
+    }
+
+    private void compare(Comparison comparison, File dir, Algorithms algorithms) {
+        RandomUtil.getInstance().setSeed(4930293L);
+
+        Parameters parameters = new Parameters();
+        parameters.set("numRuns", 4);
+        parameters.set("numMeasures", 10);
+        parameters.set("avgDegree", 2);
+        parameters.set("sampleSize", 500);
+
+        Statistics statistics = new Statistics();
+        statistics.add(new AdjacencyPrecision());
+        statistics.add(new AdjacencyRecall());
+        statistics.add(new ArrowheadPrecision());
+        statistics.add(new ArrowheadRecall());
+
+        Simulations simulations = new Simulations();
+        simulations.add(new SemSimulation(new RandomForward()));
+
+        comparison.compareFromSimulations(dir.getAbsolutePath(), simulations, algorithms, statistics, parameters);
+    }
+
+    // The output, less the date on the first line.
+    private List<String> tables(File dir) throws IOException {
+        List<String> lines = Files.readAllLines(new File(dir, "Comparison.txt").toPath());
+        return lines.subList(1, lines.size());
+    }
+
+    // Searches until it is interrupted.
+    private static class Stalling implements Algorithm {
+        static final long serialVersionUID = 23L;
+        private static final AtomicInteger CALLS = new AtomicInteger();
+
+        @Override
+        public Graph search(DataModel dataSet, Parameters parameters) {
+            CALLS.incrementAndGet();
+
+            try {
+                while (true) Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new RuntimeException("Cancelled.", e);
+            }
+        }
+
+        @Override
+        public Graph getComparisonGraph(Graph graph) {
+            return new EdgeListGraph(graph);
+        }
+
+        @Override
+        public String getDescription() {
+            return "Stalling";
+        }
+
+        @Override
+        public DataType getDataType() {
+            return DataType.Continuous;
+        }
+
+        @Override
+        public List<String> getParameters() {
+            return new ArrayList<>();
+        }
+    }
+
+    // PC with state that can't be serialized.
+    private static class Uncopyable extends Pc {
+        static final long serialVersionUID = 23L;
+        private final Object state = new Object();
+
+        private Uncopyable() {
+            super(new FisherZ());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.CovarianceAccumulator;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.apache.commons.math3.linear.BlockRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.stat.correlation.Covariance;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the blocked covariance accumulator against commons-math and against pairwise
+ * computation with missing values.
+ */
+public class TestCovarianceAccumulator {
+
+    @Test
+    public void testCovariance() {
+        double[][] columns = columns(150, 1037, 0.0);
+
+        RealMatrix expected = new Covariance(new BlockRealMatrix(columns).transpose()).getCovarianceMatrix();
+        TetradMatrix actual = CovarianceAccumulator.covariance(columns, 1037);
+
+        assertClose(expected, actual, 1e-10);
+    }
+
+    @Test
+    public void testChunks() {
+        double[][] columns = columns(70, 1000, 0.0);
+        TetradMatrix expected = CovarianceAccumulator.covariance(columns, 1000);
+
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(70);
+        int[] sizes = {1, 300, 257, 442};
+        int start = 0;
+
+        for (int size : sizes) {
+            double[][] chunk = new double[70][size];
+
+            for (int j = 0; j < 70; j++) {
+                System.arraycopy(columns[j], start, chunk[j], 0, size);
+            }
+
+            accumulator.addColumns(chunk, size);
+            start += size;
+        }
+
+        assertEquals(1000, accumulator.getSampleSize());
+        assertClose(expected.getRealMatrix(), accumulator.getMatrix(), 1e-10);
+
+        double[][] lower = accumulator.getLowerTriangle();
+        assertEquals(expected.get(69, 3), lower[69][3], 1e-10);
+    }
+
+    @Test
+    public void testMissingValues() {
+        double[][] columns = columns(90, 600, 0.05);
+        TetradMatrix actual = CovarianceAccumulator.covariance(columns, 600);
+
+        for (int i = 0; i < 90; i++) {
+            for (int j = 0; j < 90; j++) {
+                double expected = CovarianceAccumulator.covariance(columns[i], columns[j], 600);
+                assertEquals(expected, actual.get(i, j), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testSinglePrecision() {
+        double[][] columns = columns(80, 2000, 0.0);
+        TetradMatrix expected = CovarianceAccumulator.covariance(columns, 2000);
+
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(80);
+        accumulator.setSinglePrecision(true);
+        accumulator.addColumns(columns, 2000);
+
+        assertClose(expected.getRealMatrix(), accumulator.getMatrix(), 1e-4);
+    }
+
+    // Correlated columns with offsets far from zero, with the given fraction missing.
+    private double[][] columns(int numVars, int numRows, double missing) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(2930492L);
+        double[][] columns = new double[numVars][numRows];
+
+        for (int k = 0; k < numRows; k++) {
+            double common = random.nextNormal(0, 1);
+
+            for (int j = 0; j < numVars; j++) {
+                columns[j][k] = 100.0 + j + 0.5 * common + random.nextNormal(0, 1);
+
+                if (random.nextDouble() < missing) {
+                    columns[j][k] = Double.NaN;
+                }
+            }
+        }
+
+        return columns;
+    }
+
+    private void assertClose(RealMatrix expected, TetradMatrix actual, double tolerance) {
+        for (int i = 0; i < expected.getRowDimension(); i++) {
+            for (int j = 0; j < expected.getColumnDimension(); j++) {
+                assertEquals(expected.getEntry(i, j), actual.get(i, j), tolerance);
+            }
+        }
+    }
+}
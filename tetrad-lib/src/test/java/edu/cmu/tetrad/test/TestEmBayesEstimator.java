@@ -0,0 +1,145 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.*;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests expected counts and EM for data with missing values and latent variables.
+ */
+public final class TestEmBayesEstimator {
+
+    @Test
+    public void testExpectedCounts() {
+        RandomUtil.getInstance().setSeed(38211L);
+        Graph graph = new Dag(GraphUtils.randomGraph(8, 1, 10, 4, 4, 4, false));
+        BayesIm im = new MlBayesIm(new BayesPm(graph, 2, 3), MlBayesIm.RANDOM);
+        DataSet data = withMissingValues(im.simulateData(300, false), 0.2);
+
+        ExpectedCounts expectedCounts = new ExpectedCounts(data, im.getVariables());
+        assertTrue(expectedCounts.getNumPatterns() <= 300);
+
+        double[][] counts = expectedCounts.getCounts(im);
+
+        for (int node = 0; node < im.getNumNodes(); node++) {
+            assertSameCounts(im, data, node, im.getParents(node), counts[node]);
+        }
+
+        // A family that is not one of the net's, with its parents out of order.
+        int[] parents = {5, 2, 0};
+        assertSameCounts(im, data, 7, parents, expectedCounts.getCounts(im, 7, parents));
+    }
+
+    @Test
+    public void testMaximization() {
+        RandomUtil.getInstance().setSeed(59102L);
+        Graph graph = new Dag(GraphUtils.randomGraph(6, 0, 7, 3, 3, 3, false));
+        BayesIm im = new MlBayesIm(new BayesPm(graph, 2, 2), MlBayesIm.RANDOM);
+        DataSet data = withMissingValues(im.simulateData(10000, false), 0.2);
+
+        EmBayesEstimator estimator = new EmBayesEstimator(im.getBayesPm(), data);
+        BayesIm estimated = estimator.maximization(1e-4);
+
+        for (int node = 0; node < im.getNumNodes(); node++) {
+            Node variable = estimated.getNode(im.getNode(node).getName());
+            int _node = estimated.getNodeIndex(variable);
+
+            for (int row = 0; row < im.getNumRows(node); row++) {
+                for (int col = 0; col < im.getNumColumns(node); col++) {
+                    assertEquals(im.getProbability(node, row, col),
+                            estimated.getProbability(_node, row, col), 0.1);
+                }
+            }
+        }
+    }
+
+    // Compares the expected counts with sums of joint marginals from the row summing updater.
+    private void assertSameCounts(BayesIm im, DataSet data, int node, int[] parents, double[] counts) {
+        int[] family = new int[parents.length + 1];
+        System.arraycopy(parents, 0, family, 0, parents.length);
+        family[parents.length] = node;
+
+        int[] dims = new int[family.length];
+        int size = 1;
+
+        for (int i = 0; i < family.length; i++) {
+            dims[i] = im.getNumColumns(family[i]);
+            size *= dims[i];
+        }
+
+        double[] expected = new double[size];
+        RowSummingExactUpdater updater = new RowSummingExactUpdater(im);
+
+        for (int i = 0; i < data.getNumRows(); i++) {
+            Evidence evidence = Evidence.tautology(im);
+
+            for (int j = 0; j < data.getNumColumns(); j++) {
+                int value = data.getInt(i, j);
+                if (value == -99) continue;
+                int v = im.getNodeIndex(im.getNode(data.getVariable(j).getName()));
+                evidence.getProposition().setCategory(v, value);
+            }
+
+            updater.setEvidence(evidence);
+
+            for (int cell = 0; cell < size; cell++) {
+                int[] values = new int[family.length];
+
+                for (int k = family.length - 1, c = cell; k >= 0; k--) {
+                    values[k] = c % dims[k];
+                    c /= dims[k];
+                }
+
+                expected[cell] += updater.getJointMarginal(family, values);
+            }
+        }
+
+        assertEquals(expected.length, counts.length);
+
+        for (int cell = 0; cell < size; cell++) {
+            assertEquals(expected[cell], counts[cell], 1e-8);
+        }
+    }
+
+    private DataSet withMissingValues(DataSet data, double fraction) {
+        for (int i = 0; i < data.getNumRows(); i++) {
+            for (int j = 0; j < data.getNumColumns(); j++) {
+                if (RandomUtil.getInstance().nextDouble() < fraction) {
+                    data.setInt(i, j, -99);
+                }
+            }
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,109 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.search.Glasso;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests block screening and the rho path for Glasso.
+ */
+public class TestGlasso {
+
+    @Test
+    public void testBlockScreening() {
+        DoubleMatrix2D cov = covariance();
+
+        for (double rho : new double[]{0.3, 0.1, 0.05}) {
+            Glasso full = new Glasso(cov);
+            full.setRhoAllEqual(rho);
+            full.setThr(1e-6);
+            DoubleMatrix2D wwi1 = full.search().getWwi();
+
+            Glasso blocks = new Glasso(cov);
+            blocks.setRhoAllEqual(rho);
+            blocks.setThr(1e-6);
+            blocks.setBlockScreening(true);
+            DoubleMatrix2D wwi2 = blocks.search().getWwi();
+
+            assertClose(wwi1, wwi2, 1e-4);
+        }
+    }
+
+    @Test
+    public void testPath() {
+        DoubleMatrix2D cov = covariance();
+        double[] rhos = {0.5, 0.3, 0.2, 0.1};
+
+        Glasso glasso = new Glasso(cov);
+        glasso.setThr(1e-6);
+        glasso.setBlockScreening(true);
+        List<Glasso.Result> path = glasso.searchPath(rhos);
+
+        assertEquals(rhos.length, path.size());
+
+        for (int k = 0; k < rhos.length; k++) {
+            Glasso cold = new Glasso(cov);
+            cold.setThr(1e-6);
+            cold.setRhoAllEqual(rhos[k]);
+            assertClose(cold.search().getWwi(), path.get(k).getWwi(), 1e-4);
+        }
+    }
+
+    // Two unconnected random graphs, so the thresholded covariance has at least two blocks.
+    private DoubleMatrix2D covariance() {
+        RandomUtil.getInstance().setSeed(29483829L);
+
+        Graph graph = GraphUtils.randomGraph(20, 0, 10, 10, 10, 10, false);
+
+        for (int i = 0; i < 10; i++) {
+            for (int j = 10; j < 20; j++) {
+                graph.removeEdge(graph.getNodes().get(i), graph.getNodes().get(j));
+            }
+        }
+
+        SemIm im = new SemIm(new SemPm(graph));
+        DataSet data = im.simulateData(1000, false);
+        return new DenseDoubleMatrix2D(new CovarianceMatrix(data).getMatrix().toArray());
+    }
+
+    private void assertClose(DoubleMatrix2D m1, DoubleMatrix2D m2, double tol) {
+        for (int i = 0; i < m1.rows(); i++) {
+            for (int j = 0; j < m1.columns(); j++) {
+                assertEquals(m1.get(i, j), m2.get(i, j), tol);
+            }
+        }
+    }
+}
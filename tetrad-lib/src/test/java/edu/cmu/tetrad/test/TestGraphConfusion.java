@@ -0,0 +1,137 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.statistic.utils.ArrowConfusion;
+import edu.cmu.tetrad.algcomparison.statistic.utils.GraphConfusion;
+import edu.cmu.tetrad.graph.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the single-pass comparison of true and estimated graphs.
+ */
+public class TestGraphConfusion {
+
+    @Test
+    public void testCounts() {
+        List<Node> nodes = nodes();
+        Graph truth = new EdgeListGraph(nodes);
+        truth.addDirectedEdge(nodes.get(0), nodes.get(1));
+        truth.addDirectedEdge(nodes.get(1), nodes.get(2));
+
+        Graph est = new EdgeListGraph(nodes);
+        est.addDirectedEdge(nodes.get(0), nodes.get(1));
+        est.addDirectedEdge(nodes.get(2), nodes.get(1));
+        est.addUndirectedEdge(nodes.get(2), nodes.get(3));
+
+        GraphConfusion confusion = new GraphConfusion(truth, est);
+
+        assertEquals(2, confusion.getAdjTp());
+        assertEquals(1, confusion.getAdjFp());
+        assertEquals(0, confusion.getAdjFn());
+        assertEquals(6, confusion.getAdjTn());
+
+        assertEquals(1, confusion.getArrowsTp());
+        assertEquals(1, confusion.getArrowsFp());
+        assertEquals(1, confusion.getArrowsFn());
+        assertEquals(1, confusion.getArrowsTn());
+
+        assertEquals(1, confusion.getTailsTp());
+        assertEquals(3, confusion.getTailsFp());
+        assertEquals(1, confusion.getTailsFn());
+        assertEquals(1, confusion.getTailsTn());
+    }
+
+    @Test
+    public void testTwoCycles() {
+        List<Node> nodes = nodes();
+        Graph truth = new EdgeListGraph(nodes);
+        truth.addDirectedEdge(nodes.get(0), nodes.get(1));
+        truth.addDirectedEdge(nodes.get(1), nodes.get(0));
+        truth.addDirectedEdge(nodes.get(2), nodes.get(3));
+        truth.addDirectedEdge(nodes.get(3), nodes.get(2));
+
+        Graph est = new EdgeListGraph(nodes);
+        est.addDirectedEdge(nodes.get(0), nodes.get(1));
+        est.addDirectedEdge(nodes.get(1), nodes.get(0));
+        est.addDirectedEdge(nodes.get(1), nodes.get(2));
+        est.addDirectedEdge(nodes.get(2), nodes.get(1));
+
+        ArrowConfusion confusion = new ArrowConfusion(truth, est);
+        assertEquals(1, confusion.getTwoCycleTp());
+        assertEquals(1, confusion.getTwoCycleFp());
+        assertEquals(1, confusion.getTwoCycleFn());
+    }
+
+    // Nodes are matched by name.
+    @Test
+    public void testNames() {
+        Graph truth = GraphUtils.randomGraph(10, 0, 12, 10, 10, 10, false);
+        Graph est = new EdgeListGraph();
+
+        for (Node node : truth.getNodes()) {
+            est.addNode(new GraphNode(node.getName()));
+        }
+
+        for (Edge edge : truth.getEdges()) {
+            est.addDirectedEdge(est.getNode(edge.getNode1().getName()), est.getNode(edge.getNode2().getName()));
+        }
+
+        GraphConfusion confusion = new GraphConfusion(truth, est);
+        assertEquals(truth.getNumEdges(), confusion.getAdjTp());
+        assertEquals(0, confusion.getAdjFp());
+        assertEquals(truth.getNumEdges(), confusion.getArrowsTp());
+        assertEquals(0, confusion.getArrowsFp());
+    }
+
+    @Test
+    public void testCaching() {
+        Graph truth = GraphUtils.randomGraph(10, 0, 12, 10, 10, 10, false);
+        Graph est = GraphUtils.randomGraph(truth.getNodes(), 0, 12, 10, 10, 10, false);
+
+        assertNotSame(GraphConfusion.of(truth, est), GraphConfusion.of(truth, est));
+
+        GraphConfusion.setCaching(true);
+
+        try {
+            GraphConfusion confusion = GraphConfusion.of(truth, est);
+            assertSame(confusion, GraphConfusion.of(truth, est));
+            assertNotSame(confusion, GraphConfusion.of(truth, new EdgeListGraph(est)));
+        } finally {
+            GraphConfusion.setCaching(false);
+        }
+
+        assertNotSame(GraphConfusion.of(truth, est), GraphConfusion.of(truth, est));
+    }
+
+    private List<Node> nodes() {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) nodes.add(new GraphNode("X" + i));
+        return nodes;
+    }
+}
@@ -0,0 +1,189 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+
+package edu.cmu.tetrad.test;
+
+import com.google.gson.GsonBuilder;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.graph.EdgeTypeProbability.EdgeType;
+import edu.cmu.tetrad.util.JsonUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the binary graph format and the streaming text and JSON graph readers and writers.
+ */
+public class TestGraphIo {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        Graph graph = graph();
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        Edges.sortEdges(edges);
+        graph.setHighlighted(edges.get(0), true);
+
+        for (boolean compressed : new boolean[]{false, true}) {
+            File file = folder.newFile("graph." + compressed + ".tgr");
+            BinaryGraphWriter.writeGraph(graph, file, compressed);
+
+            assertTrue(BinaryGraphReader.isBinaryGraph(file));
+
+            Graph loaded = BinaryGraphReader.readGraph(file);
+            assertSame(graph, loaded);
+            assertEquals(NodeType.LATENT, loaded.getNode("X3").getNodeType());
+            assertEquals(40, loaded.getNode("X2").getCenterX());
+            assertTrue(loaded.isHighlighted(loaded.getEdge(loaded.getNode(edges.get(0).getNode1().getName()),
+                    loaded.getNode(edges.get(0).getNode2().getName()))));
+            assertFalse(loaded.isHighlighted(loaded.getEdge(loaded.getNode(edges.get(1).getNode1().getName()),
+                    loaded.getNode(edges.get(1).getNode2().getName()))));
+
+            assertSame(graph, GraphUtils.loadGraph(file));
+        }
+    }
+
+    @Test
+    public void testTextRoundTrip() throws IOException {
+        Graph graph = graph();
+        String text = GraphUtils.graphToText(graph);
+
+        assertSame(graph, GraphUtils.readerToGraphTxt(text));
+
+        File file = folder.newFile("graph.txt");
+        GraphUtils.saveGraph(graph, file, false);
+        assertSame(graph, GraphUtils.loadGraphTxt(file));
+    }
+
+    @Test
+    public void testTextBootstraps() throws IOException {
+        String text = "Graph Nodes:\nA,B,C\n\nGraph Edges:\n"
+                + "1. A --> B [no edge]:0.1000[-->]:0.6000[<--]:0.0000[o->]:0.0000[<-o]:0.0000[o-o]:0.0000[<->]:0.3000[---]:0.0000 dd nl\n"
+                + "2. B o-o C [o-o]:0.7500\n";
+
+        Graph graph = GraphUtils.readerToGraphTxt(text);
+        Edge ab = graph.getEdge(graph.getNode("A"), graph.getNode("B"));
+        Edge bc = graph.getEdge(graph.getNode("B"), graph.getNode("C"));
+
+        assertEquals(Edges.directedEdge(graph.getNode("A"), graph.getNode("B")), ab);
+        assertEquals(8, ab.getEdgeTypeProbabilities().size());
+        assertEquals(EdgeType.aa, ab.getEdgeTypeProbabilities().get(6).getEdgeType());
+        assertEquals(0.3, ab.getEdgeTypeProbabilities().get(6).getProbability(), 1e-10);
+        assertEquals(2, ab.getProperties().size());
+
+        assertEquals(Edges.nondirectedEdge(graph.getNode("B"), graph.getNode("C")), bc);
+        assertEquals(1, bc.getEdgeTypeProbabilities().size());
+        assertEquals(0.75, bc.getEdgeTypeProbabilities().get(0).getProbability(), 1e-10);
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws IOException {
+        Graph graph = graph();
+
+        StringWriter out = new StringWriter();
+        JsonUtils.writeGraphJson(graph, out, true);
+        String json = out.toString();
+
+        assertSame(graph, JsonUtils.readGraphJson(new StringReader(json)));
+        assertEquals(graph.getEdges(), JsonUtils.parseJSONObjectToTetradGraph(json).getEdges());
+
+        // Gson's own form of the graph can be read as well.
+        String gson = new GsonBuilder().create().toJson(graph);
+        assertSame(graph, GraphUtils.readerToGraphJson(new StringReader(gson)));
+    }
+
+    private static void assertSame(Graph expected, Graph actual) {
+        assertEquals(GraphUtils.graphToText(expected), GraphUtils.graphToText(actual));
+        assertEquals(expected.getNodeNames(), actual.getNodeNames());
+        assertEquals(expected.isPag(), actual.isPag());
+
+        for (Edge edge : expected.getEdges()) {
+            Edge other = actual.getEdge(actual.getNode(edge.getNode1().getName()),
+                    actual.getNode(edge.getNode2().getName()));
+
+            assertEquals(edge.getProperties(), other.getProperties());
+            assertEquals(edge.getEdgeTypeProbabilities().size(), other.getEdgeTypeProbabilities().size());
+
+            for (int i = 0; i < edge.getEdgeTypeProbabilities().size(); i++) {
+                EdgeTypeProbability p = edge.getEdgeTypeProbabilities().get(i);
+                EdgeTypeProbability q = other.getEdgeTypeProbabilities().get(i);
+                assertEquals(p.getEdgeType(), q.getEdgeType());
+                assertEquals(p.getProbability(), q.getProbability(), 0.0);
+            }
+        }
+    }
+
+    // A random graph with some bootstrap probabilities, properties, node types, positions
+    // and triples.
+    private static Graph graph() {
+        RandomUtil.getInstance().setSeed(3829482L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        Graph graph = GraphUtils.randomGraph(nodes, 0, 30, 5, 5, 5, false);
+
+        graph.getNode("X3").setNodeType(NodeType.LATENT);
+        graph.getNode("X2").setCenter(40, 70);
+
+        int count = 0;
+
+        for (Edge edge : graph.getEdges()) {
+            if (count % 3 == 0) {
+                edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.nil, 0.125));
+                edge.addEdgeTypeProbability(new EdgeTypeProbability(EdgeType.ta, 0.875));
+                edge.addProperty(Edge.Property.dd);
+                edge.addProperty(Edge.Property.pl);
+            }
+
+            if (count % 5 == 0) {
+                graph.setEndpoint(edge.getNode1(), edge.getNode2(), Endpoint.CIRCLE);
+            }
+
+            count++;
+        }
+
+        for (Node y : graph.getNodes()) {
+            List<Node> adj = graph.getAdjacentNodes(y);
+
+            if (adj.size() >= 2) {
+                graph.addUnderlineTriple(adj.get(0), y, adj.get(1));
+                break;
+            }
+        }
+
+        return graph;
+    }
+}
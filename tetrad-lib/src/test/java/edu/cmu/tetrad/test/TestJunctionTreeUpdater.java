@@ -0,0 +1,160 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.*;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the junction tree updater against the row summing updater.
+ */
+public final class TestJunctionTreeUpdater {
+
+    @Test
+    public void testMarginals() {
+        RandomUtil.getInstance().setSeed(49283L);
+        BayesIm im = randomIm(12, 18);
+
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(3, 1);
+        evidence.getProposition().removeCategory(7, 0);
+
+        JunctionTreeUpdater junctionTree = new JunctionTreeUpdater(im, evidence);
+        RowSummingExactUpdater rowSumming = new RowSummingExactUpdater(im, evidence);
+
+        assertSameMarginals(im, junctionTree, rowSumming);
+
+        for (int i = 0; i < im.getNumNodes(); i++) {
+            double[] prior1 = junctionTree.calculatePriorMarginals(i);
+            double[] prior2 = rowSumming.calculatePriorMarginals(i);
+
+            for (int j = 0; j < prior1.length; j++) {
+                assertEquals(prior2[j], prior1[j], 1e-10);
+            }
+        }
+
+        // Changing only the evidence reuses the compiled tree.
+        evidence.getProposition().setCategory(10, 0);
+        evidence.getProposition().setVariable(3, true);
+        junctionTree.setEvidence(evidence);
+        rowSumming.setEvidence(evidence);
+
+        assertSameMarginals(im, junctionTree, rowSumming);
+    }
+
+    @Test
+    public void testManipulation() {
+        RandomUtil.getInstance().setSeed(12938L);
+        BayesIm im = randomIm(10, 15);
+
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(4, 0);
+        evidence.setManipulated(4, true);
+        evidence.getProposition().setCategory(8, 1);
+
+        JunctionTreeUpdater junctionTree = new JunctionTreeUpdater(im, evidence);
+        RowSummingExactUpdater rowSumming = new RowSummingExactUpdater(im, evidence);
+
+        assertTrue(junctionTree.getManipulatedGraph().getParents(
+                junctionTree.getManipulatedGraph().getNode(im.getNode(4).getName())).isEmpty());
+        assertSameMarginals(im, junctionTree, rowSumming);
+    }
+
+    @Test
+    public void testJointMarginal() {
+        RandomUtil.getInstance().setSeed(77123L);
+        BayesIm im = randomIm(10, 14);
+
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(2, 0);
+
+        JunctionTreeUpdater junctionTree = new JunctionTreeUpdater(im, evidence);
+        RowSummingExactUpdater rowSumming = new RowSummingExactUpdater(im, evidence);
+
+        int[][] variables = {{0}, {1, 5}, {0, 6, 9}, {3, 4, 7, 8}};
+        int[][] values = {{1}, {0, 1}, {1, 0, 1}, {0, 0, 1, 1}};
+
+        for (int i = 0; i < variables.length; i++) {
+            assertEquals(rowSumming.getJointMarginal(variables[i], values[i]),
+                    junctionTree.getJointMarginal(variables[i], values[i]), 1e-10);
+        }
+
+        // The marginals are unchanged by the joint queries.
+        assertSameMarginals(im, junctionTree, rowSumming);
+    }
+
+    @Test
+    public void testImpossibleEvidence() {
+        RandomUtil.getInstance().setSeed(23481L);
+        BayesIm im = randomIm(6, 8);
+
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setVariable(1, false);
+
+        JunctionTreeUpdater updater = new JunctionTreeUpdater(im, evidence);
+        assertTrue(Double.isNaN(updater.getMarginal(0, 0)));
+        assertTrue(Double.isNaN(updater.getUpdatedBayesIm().getProbability(0, 0, 0)));
+    }
+
+    private void assertSameMarginals(BayesIm im, BayesUpdater updater1, BayesUpdater updater2) {
+        for (int i = 0; i < im.getNumNodes(); i++) {
+            double[] marginals1 = updater1.calculateUpdatedMarginals(i);
+            double[] marginals2 = updater2.calculateUpdatedMarginals(i);
+
+            for (int j = 0; j < marginals1.length; j++) {
+                assertEquals(marginals2[j], marginals1[j], 1e-10);
+            }
+        }
+
+        BayesIm updated1 = ((ManipulatingBayesUpdater) updater1).getUpdatedBayesIm();
+        BayesIm updated2 = ((ManipulatingBayesUpdater) updater2).getUpdatedBayesIm();
+
+        for (int i = 0; i < updated1.getNumNodes(); i++) {
+            for (int row = 0; row < updated1.getNumRows(i); row++) {
+                for (int col = 0; col < updated1.getNumColumns(i); col++) {
+                    double p1 = updated1.getProbability(i, row, col);
+                    double p2 = updated2.getProbability(i, row, col);
+
+                    if (Double.isNaN(p2)) {
+                        assertTrue(Double.isNaN(p1));
+                    } else {
+                        assertEquals(p2, p1, 1e-10);
+                    }
+                }
+            }
+        }
+    }
+
+    private BayesIm randomIm(int numNodes, int numEdges) {
+        Graph graph = new Dag(GraphUtils.randomGraph(numNodes, 0, numEdges, 5, 4, 4, false));
+        BayesPm pm = new BayesPm(graph, 2, 3);
+        return new MlBayesIm(pm, MlBayesIm.RANDOM);
+    }
+}
@@ -0,0 +1,187 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.data.KnowledgeIndex;
+import edu.cmu.tetrad.graph.GraphNode;
+import edu.cmu.tetrad.graph.Node;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests knowledge compiled for a list of variables.
+ */
+public class TestKnowledgeIndex {
+
+    @Test
+    public void testTiers() {
+        Knowledge2 knowledge = new Knowledge2(Arrays.asList("A", "B", "C", "D", "E"));
+        knowledge.addToTier(0, "A");
+        knowledge.addToTier(0, "B");
+        knowledge.addToTier(1, "C");
+        knowledge.addToTier(2, "D");
+        knowledge.setTierForbiddenWithin(0, true);
+
+        assertTrue(knowledge.isForbidden("C", "A"));
+        assertTrue(knowledge.isForbidden("D", "C"));
+        assertTrue(knowledge.isForbidden("A", "B"));
+        assertFalse(knowledge.isForbidden("A", "C"));
+        assertFalse(knowledge.isForbidden("A", "A"));
+        assertFalse(knowledge.isForbidden("E", "A"));
+        assertFalse(knowledge.isForbidden("A", "E"));
+        assertFalse(knowledge.isForbidden("A", "Z"));
+
+        assertEquals(1, knowledge.isInWhichTier(new GraphNode("C")));
+        assertEquals(-1, knowledge.isInWhichTier(new GraphNode("E")));
+
+        // C is in tiers 1 and 2, so edges into it from tier 2 and out of it to tier 0 are
+        // forbidden.
+        knowledge.addToTier(2, "C");
+        assertTrue(knowledge.isForbidden("C", "A"));
+        assertTrue(knowledge.isForbidden("D", "C"));
+        assertFalse(knowledge.isForbidden("C", "D"));
+        assertEquals(1, knowledge.isInWhichTier(new GraphNode("C")));
+
+        knowledge.setTierForbiddenWithin(0, false);
+        assertFalse(knowledge.isForbidden("A", "B"));
+    }
+
+    @Test
+    public void testRules() {
+        Knowledge2 knowledge = new Knowledge2(Arrays.asList("X1", "X2", "X3", "Y1", "Y2"));
+        knowledge.setForbidden("X*", "Y1");
+        knowledge.setRequired("Y2", "X1,X3");
+
+        assertTrue(knowledge.isForbidden("X2", "Y1"));
+        assertFalse(knowledge.isForbidden("Y1", "X2"));
+        assertFalse(knowledge.isForbidden("X2", "Y2"));
+        assertTrue(knowledge.isRequired("Y2", "X3"));
+        assertFalse(knowledge.isRequired("Y2", "X2"));
+        assertFalse(knowledge.noEdgeRequired("X1", "Y2"));
+
+        knowledge.removeForbidden("X*", "Y1");
+        assertFalse(knowledge.isForbidden("X2", "Y1"));
+
+        knowledge.removeVariable("X3");
+        assertFalse(knowledge.isRequired("Y2", "X3"));
+
+        knowledge.clear();
+        assertFalse(knowledge.isRequired("Y2", "X1"));
+    }
+
+    @Test
+    public void testCopy() {
+        Knowledge2 knowledge = new Knowledge2(Arrays.asList("A", "B", "C", "D"));
+        knowledge.addToTier(0, "A");
+        knowledge.addToTier(1, "B");
+        knowledge.setRequired("C", "D");
+
+        Knowledge2 copy = (Knowledge2) knowledge.copy();
+        assertTrue(copy.isForbidden("B", "A"));
+        assertTrue(copy.isRequired("C", "D"));
+
+        // Editing the copy's tiers and rules leaves the original alone.
+        copy.addToTier(0, "C");
+        copy.removeFromTiers("B");
+        copy.setTierForbiddenWithin(0, true);
+        copy.removeRequired("C", "D");
+
+        assertTrue(copy.isForbidden("A", "C"));
+        assertFalse(copy.isForbidden("B", "A"));
+        assertFalse(copy.isRequired("C", "D"));
+
+        assertEquals(Arrays.asList("A"), knowledge.getTier(0));
+        assertEquals(Arrays.asList("B"), knowledge.getTier(1));
+        assertFalse(knowledge.isForbidden("A", "C"));
+        assertTrue(knowledge.isForbidden("B", "A"));
+        assertTrue(knowledge.isRequired("C", "D"));
+        assertFalse(knowledge.isTierForbiddenWithin(0));
+
+        // The copy's tier rules still follow its tiers.
+        copy.addToTier(1, "D");
+        assertTrue(copy.isForbidden("D", "A"));
+        assertFalse(knowledge.isForbidden("D", "A"));
+    }
+
+    @Test
+    public void testIndex() {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            nodes.add(new GraphNode("X" + i));
+        }
+
+        Knowledge2 knowledge = new Knowledge2();
+
+        for (int i = 0; i < 6; i++) {
+            knowledge.addToTier(i / 2, "X" + i);
+        }
+
+        knowledge.setForbidden("X0", "X1");
+        knowledge.setRequired("X0", "X5");
+
+        KnowledgeIndex index = knowledge.getIndex(nodes);
+        assertSame(index, knowledge.getIndex(nodes));
+        assertFalse(index.isEmpty());
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i / 2, index.getTier(i));
+
+            for (int j = 0; j < 6; j++) {
+                String x = "X" + i;
+                String y = "X" + j;
+                assertEquals(knowledge.isForbidden(x, y), index.isForbidden(i, j));
+                assertEquals(knowledge.isForbidden(x, y), index.isForbidden(nodes.get(i), nodes.get(j)));
+                assertEquals(knowledge.isRequired(x, y), index.isRequired(i, j));
+            }
+        }
+
+        assertTrue(index.isForbidden(2, 1));
+        assertTrue(index.isForbidden(0, 1));
+        assertTrue(index.isRequired(0, 5));
+
+        // Nodes not among the variables are looked up in the knowledge.
+        List<Node> some = nodes.subList(0, 3);
+        KnowledgeIndex index2 = knowledge.getIndex(some);
+        assertEquals(-1, index2.indexOf("X5"));
+        assertTrue(index2.isForbidden(nodes.get(5), nodes.get(0)));
+
+        // Edits make a new index.
+        knowledge.setForbidden("X4", "X5");
+        KnowledgeIndex index3 = knowledge.getIndex(nodes);
+        assertNotSame(index, index3);
+        assertFalse(index.isForbidden(4, 5));
+        assertTrue(index3.isForbidden(4, 5));
+
+        IKnowledge empty = new Knowledge2();
+        assertTrue(empty.getIndex(nodes).isEmpty());
+    }
+}
@@ -0,0 +1,166 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.*;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import edu.cmu.tetrad.search.TimeSeriesUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests lagged views of time series and their covariances.
+ */
+public class TestLaggedData {
+
+    @Test
+    public void testView() {
+        DataSet data = simulate(100);
+        int numLags = 2;
+
+        DataSet lagged = TimeSeriesUtils.createLagData(data, numLags);
+        DataSet view = TimeSeriesUtils.createLagDataView(data, numLags);
+
+        assertEquals(lagged.getVariableNames(), view.getVariableNames());
+        assertEquals(lagged.getNumRows(), view.getNumRows());
+        assertEquals(lagged.getKnowledge().toString(), view.getKnowledge().toString());
+
+        for (int i = 0; i < lagged.getNumRows(); i++) {
+            for (int j = 0; j < lagged.getNumColumns(); j++) {
+                assertEquals(lagged.getDouble(i, j), view.getDouble(i, j), 0.0);
+            }
+        }
+
+        DataSet copy = view.copy();
+        copy.setDouble(0, 0, 1.0);
+        assertEquals(1.0, copy.getDouble(0, 0), 0.0);
+        assertEquals(lagged.getDouble(0, 0), view.getDouble(0, 0), 0.0);
+    }
+
+    @Test
+    public void testSetMaterializesView() {
+        DataSet data = simulate(20);
+        DataSet view = TimeSeriesUtils.createLagDataView(data, 1);
+        double value = data.getDouble(1, 0);
+
+        view.setDouble(0, 0, 1.0);
+
+        assertEquals(1.0, view.getDouble(0, 0), 0.0);
+        assertEquals(value, data.getDouble(1, 0), 0.0);
+        assertFalse(LaggedCovarianceMatrix.isLaggedView(view));
+    }
+
+    @Test
+    public void testLikeIsEmpty() {
+        DataSet view = TimeSeriesUtils.createLagDataView(simulate(20), 2);
+        DataBox like = ((BoxDataSet) view).getDataBox().like();
+
+        assertTrue(like instanceof VerticalDoubleDataBox);
+        assertEquals(view.getNumRows(), like.numRows());
+        assertEquals(view.getNumColumns(), like.numCols());
+
+        for (int i = 0; i < like.numRows(); i++) {
+            for (int j = 0; j < like.numCols(); j++) {
+                assertTrue(Double.isNaN(like.get(i, j).doubleValue()));
+            }
+        }
+    }
+
+    @Test
+    public void testExactCovariance() {
+        DataSet data = simulate(100);
+        int numLags = 3;
+
+        ICovarianceMatrix expected = new CovarianceMatrix(TimeSeriesUtils.createLagData(data, numLags));
+        ICovarianceMatrix cov = new LaggedCovarianceMatrix(TimeSeriesUtils.createLagDataView(data, numLags), false);
+
+        assertEquals(expected.getSampleSize(), cov.getSampleSize());
+
+        for (int i = 0; i < cov.getDimension(); i++) {
+            for (int j = 0; j < cov.getDimension(); j++) {
+                assertEquals(expected.getValue(i, j), cov.getValue(i, j), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testStationaryCovariance() {
+        DataSet data = simulate(5000);
+        int numLags = 2;
+        int dataSize = data.getNumColumns();
+
+        ICovarianceMatrix exact = new CovarianceMatrix(TimeSeriesUtils.createLagData(data, numLags));
+        DataSet view = TimeSeriesUtils.createLagDataView(data, numLags);
+        ICovarianceMatrix cov = DataUtils.getCovMatrix(view);
+
+        assertTrue(cov instanceof LaggedCovarianceMatrix);
+        assertTrue(new IndTestFisherZ(view, 0.01).getCov() instanceof LaggedCovarianceMatrix);
+
+        for (int i = 0; i < cov.getDimension(); i++) {
+            for (int j = 0; j < cov.getDimension(); j++) {
+                assertEquals(cov.getValue(i, j), cov.getValue(j, i), 0.0);
+                assertEquals(exact.getValue(i, j), cov.getValue(i, j), 0.1);
+
+                // Shifting both lags leaves the covariance unchanged.
+                if (i + dataSize < cov.getDimension() && j + dataSize < cov.getDimension()) {
+                    assertEquals(cov.getValue(i, j), cov.getValue(i + dataSize, j + dataSize), 0.0);
+                }
+            }
+        }
+
+        assertEquals(exact.getVariableNames(), cov.getSubmatrix(exact.getVariableNames()).getVariableNames());
+    }
+
+    // A first-order vector autoregression, so that lags are correlated.
+    private DataSet simulate(int sampleSize) {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(38482838L);
+
+        List<Node> variables = new ArrayList<>();
+        for (int j = 0; j < 4; j++) variables.add(new ContinuousVariable("X" + (j + 1)));
+
+        DataSet data = new BoxDataSet(new VerticalDoubleDataBox(sampleSize, variables.size()), variables);
+
+        for (int i = 0; i < sampleSize; i++) {
+            for (int j = 0; j < variables.size(); j++) {
+                double value = random.nextNormal(0, 1);
+
+                if (i > 0) {
+                    value += 0.5 * data.getDouble(i - 1, j);
+                    if (j > 0) value += 0.3 * data.getDouble(i - 1, j - 1);
+                }
+
+                data.setDouble(i, j, value);
+            }
+        }
+
+        return data;
+    }
+}
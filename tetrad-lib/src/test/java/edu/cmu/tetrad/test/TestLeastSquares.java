@@ -0,0 +1,141 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.regression.LeastSquares;
+import edu.cmu.tetrad.regression.RegressionCovariance;
+import edu.cmu.tetrad.regression.RegressionDataset;
+import edu.cmu.tetrad.regression.RegressionResult;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the least squares engine behind RegressionDataset and RegressionCovariance.
+ */
+public class TestLeastSquares {
+
+    @Test
+    public void testAgainstQr() {
+        DataSet data = data();
+        int n = data.getNumRows();
+        double[][] columns = data.getDoubleData().transpose().toArray();
+
+        // Far from zero means, which the normal equations must survive.
+        for (double[] column : columns) {
+            for (int i = 0; i < n; i++) column[i] += 1000;
+        }
+
+        int[] regressors = {7, 2, 5};
+        double[][] x = new double[n][regressors.length];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < regressors.length; j++) x[i][j] = columns[regressors[j]][i];
+        }
+
+        OLSMultipleLinearRegression ols = new OLSMultipleLinearRegression();
+        ols.newSampleData(columns[0], x);
+
+        double[][] b = new double[1][4];
+        double[][] se = new double[1][4];
+        double[][] residuals = new double[1][n];
+        double[] rss = new double[1];
+
+        new LeastSquares(columns, n).regress(new int[]{0}, regressors, b, se, residuals, rss);
+
+        assertArrayEquals(ols.estimateRegressionParameters(), b[0], 1e-8);
+        assertArrayEquals(ols.estimateRegressionParametersStandardErrors(), se[0], 1e-8);
+        assertArrayEquals(ols.estimateResiduals(), residuals[0], 1e-8);
+        assertEquals(ols.calculateResidualSumOfSquares(), rss[0], 1e-8);
+    }
+
+    @Test
+    public void testSharedFactors() {
+        DataSet data = data();
+        double[][] columns = data.getDoubleData().transpose().toArray();
+        LeastSquares leastSquares = new LeastSquares(columns, data.getNumRows());
+
+        assertSame(leastSquares.getFactor(new int[]{3, 1, 4}), leastSquares.getFactor(new int[]{4, 3, 1}));
+
+        // Several targets at once, as each alone, with the regressors in any order.
+        double[][] together = new double[3][5];
+        leastSquares.regress(new int[]{0, 2, 6}, new int[]{3, 1, 4, 9}, together, null, null, null);
+
+        int[] targets = {0, 2, 6};
+
+        for (int t = 0; t < 3; t++) {
+            double[][] alone = new double[1][5];
+            leastSquares.regress(new int[]{targets[t]}, new int[]{9, 4, 1, 3}, alone, null, null, null);
+
+            assertEquals(together[t][0], alone[0][0], 1e-10);
+            assertEquals(together[t][1], alone[0][4], 1e-10);
+            assertEquals(together[t][2], alone[0][3], 1e-10);
+            assertEquals(together[t][3], alone[0][2], 1e-10);
+            assertEquals(together[t][4], alone[0][1], 1e-10);
+        }
+    }
+
+    @Test
+    public void testRegressions() {
+        DataSet data = data();
+        List<Node> variables = data.getVariables();
+        List<Node> regressors = Arrays.asList(variables.get(4), variables.get(1), variables.get(8));
+
+        RegressionDataset regression = new RegressionDataset(data);
+        RegressionResult fromData = regression.regress(variables.get(0), regressors);
+        RegressionResult fromCovariance = new RegressionCovariance(new CovarianceMatrix(data))
+                .regress(variables.get(0), regressors);
+
+        assertEquals(fromData.getRSquared(), fromCovariance.getRSquared(), 1e-10);
+
+        for (int i = 1; i <= regressors.size(); i++) {
+            assertEquals(fromData.getCoef()[i], fromCovariance.getCoef()[i], 1e-10);
+        }
+
+        double[][] residuals = regression.residuals(Arrays.asList(variables.get(0), variables.get(5)), regressors);
+        double[] alone = regression.regress(variables.get(5), regressors).getResiduals().toArray();
+
+        assertArrayEquals(fromData.getResiduals().toArray(), residuals[0], 1e-10);
+        assertArrayEquals(alone, residuals[1], 1e-10);
+    }
+
+    private DataSet data() {
+        RandomUtil.getInstance().setSeed(3829402L);
+        Graph graph = GraphUtils.randomGraph(10, 0, 12, 3, 3, 3, false);
+        return new SemIm(new SemPm(graph)).simulateData(500, false);
+    }
+}
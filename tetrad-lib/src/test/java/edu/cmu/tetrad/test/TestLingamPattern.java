@@ -89,6 +89,59 @@ public class TestLingamPattern {
         }
     }
 
+    @Test
+    public void testNotPattern() {
+        RandomUtil.getInstance().setSeed(3920392L);
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            nodes.add(new ContinuousVariable("X" + (i + 1)));
+        }
+
+        Node x1 = nodes.get(0);
+        Node x2 = nodes.get(1);
+        Node x3 = nodes.get(2);
+
+        Graph graph = new EdgeListGraph(nodes);
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x3, x2);
+
+        List<Distribution> variableDistributions = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            variableDistributions.add(new Uniform(-1, 1));
+        }
+
+        SemIm semIm = new SemIm(new SemPm(graph));
+        DataSet dataSet = simulateDataNonNormal(semIm, 1000, variableDistributions);
+
+        // X1-->X2---X3 is not a pattern; closing it under Meek's rules would direct X2-->X3,
+        // but both orientations of X2---X3 are scored.
+        Graph notPattern = new EdgeListGraph(dataSet.getVariables());
+        Node _x1 = dataSet.getVariable("X1");
+        Node _x2 = dataSet.getVariable("X2");
+        Node _x3 = dataSet.getVariable("X3");
+        notPattern.addDirectedEdge(_x1, _x2);
+        notPattern.addUndirectedEdge(_x2, _x3);
+
+        for (boolean second : new boolean[]{false, true}) {
+            Graph dag;
+
+            if (second) {
+                LingamPattern2 lingam = new LingamPattern2(notPattern, Collections.singletonList(dataSet));
+                lingam.search();
+                dag = lingam.getBestDag();
+            } else {
+                LingamPattern lingam = new LingamPattern(notPattern, dataSet);
+                lingam.search();
+                dag = lingam.getBestDag();
+            }
+
+            assertTrue(dag.isParentOf(_x3, _x2));
+        }
+    }
+
     /**
      * This simulates data by picking random values for the exogenous terms and percolating this information down
      * through the SEM, assuming it is acyclic. Fast for large simulations but hangs for cyclic models.
@@ -0,0 +1,170 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.Discretizer;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.regression.LogisticIrls;
+import edu.cmu.tetrad.search.IndTestMNLRLRT;
+import edu.cmu.tetrad.search.IndTestMultinomialLogisticRegression;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the logistic regression engine and the tests that use it.
+ */
+public class TestLogisticIrls {
+
+    @Test
+    public void testBinary() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(3829L);
+        int n = 1000;
+        double[][] columns = new double[3][n];
+        int[] target = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            columns[0][i] = random.nextNormal(0, 1);
+            columns[1][i] = random.nextNormal(2, 3);
+            columns[2][i] = random.nextDouble() < 0.5 ? 1 : 0;
+            double eta = -0.5 + columns[0][i] - 0.2 * columns[1][i] + 0.7 * columns[2][i];
+            target[i] = random.nextDouble() < 1.0 / (1.0 + Math.exp(-eta)) ? 1 : 0;
+        }
+
+        int[] regressors = {0, 1, 2};
+        LogisticIrls.Fit fit = LogisticIrls.binary(columns, regressors, target, null, null, 0.0);
+        assertTrue(fit.isConverged());
+
+        // The score equations hold at the maximum.
+        double[] beta = fit.getCoefficients();
+        double[] score = new double[4];
+
+        for (int i = 0; i < n; i++) {
+            double eta = beta[0];
+            for (int j = 0; j < 3; j++) eta += beta[j + 1] * columns[j][i];
+            double residual = target[i] - 1.0 / (1.0 + Math.exp(-eta));
+            score[0] += residual;
+            for (int j = 0; j < 3; j++) score[j + 1] += residual * columns[j][i];
+        }
+
+        for (double s : score) assertEquals(0.0, s, 1e-6);
+
+        // Starting from the model without a regressor gives the same fit.
+        LogisticIrls.Fit small = LogisticIrls.binary(columns, new int[]{0, 1}, target, null, null, 0.0);
+        double[] start = Arrays.copyOf(small.getCoefficients(), 4);
+        LogisticIrls.Fit warm = LogisticIrls.binary(columns, regressors, target, null, start, 0.0);
+        assertEquals(fit.getLogLikelihood(), warm.getLogLikelihood(), 1e-8);
+        assertTrue(warm.getIterations() <= fit.getIterations());
+        assertTrue(small.getLogLikelihood() < fit.getLogLikelihood());
+        assertTrue(LogisticIrls.interceptOnlyLogLikelihood(target, 2, null) < small.getLogLikelihood());
+
+        // A two-category multinomial fit is the binary fit.
+        LogisticIrls.Fit multinomial = LogisticIrls.multinomial(columns, regressors, target, 2, null, null, 0.0);
+        assertEquals(fit.getLogLikelihood(), multinomial.getLogLikelihood(), 1e-10);
+    }
+
+    @Test
+    public void testMultinomial() {
+        RandomUtil random = RandomUtil.getInstance();
+        random.setSeed(7729L);
+        int n = 1500;
+        double[][] columns = new double[2][n];
+        int[] target = new int[n];
+        int[] rows = new int[n / 2];
+
+        for (int i = 0; i < n; i++) {
+            columns[0][i] = random.nextNormal(0, 1);
+            columns[1][i] = random.nextNormal(0, 1);
+            double e1 = Math.exp(0.3 + columns[0][i]);
+            double e2 = Math.exp(-0.2 - columns[1][i] + 0.5 * columns[0][i]);
+            double u = random.nextDouble() * (1 + e1 + e2);
+            target[i] = u < 1 ? 0 : u < 1 + e1 ? 1 : 2;
+        }
+
+        for (int i = 0; i < rows.length; i++) rows[i] = 2 * i;
+
+        LogisticIrls.Fit fit = LogisticIrls.multinomial(columns, new int[]{0, 1}, target, 3, rows, null, 0.0);
+        assertTrue(fit.isConverged());
+        assertEquals(6, fit.getCoefficients().length);
+        assertEquals(1.0, fit.getCoefficients()[1], 0.3);
+        assertEquals(-1.0, fit.getCoefficients()[5], 0.3);
+
+        // A penalty pulls the coefficients in and lowers the likelihood.
+        LogisticIrls.Fit penalized = LogisticIrls.multinomial(columns, new int[]{0, 1}, target, 3, rows, null, 50.0);
+        assertTrue(Math.abs(penalized.getCoefficients()[1]) < Math.abs(fit.getCoefficients()[1]));
+        assertTrue(penalized.getLogLikelihood() < fit.getLogLikelihood());
+    }
+
+    @Test
+    public void testIndependenceTests() {
+        RandomUtil.getInstance().setSeed(1450705713157L);
+
+        Graph graph = GraphUtils.randomGraph(6, 0, 6, 3, 3, 3, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(1000, false);
+
+        Discretizer discretizer = new Discretizer(data);
+        discretizer.setVariablesCopied(true);
+        discretizer.equalCounts(data.getVariable(0), 3);
+        discretizer.equalCounts(data.getVariable(1), 2);
+        data = discretizer.discretize();
+
+        IndTestMultinomialLogisticRegression test = new IndTestMultinomialLogisticRegression(data, 0.01);
+        IndTestMNLRLRT lrt = new IndTestMNLRLRT(data, 0.01);
+        List<Node> nodes = data.getVariables();
+
+        for (Node x : nodes) {
+            for (Node y : nodes) {
+                if (x == y) continue;
+                List<Node> z = Collections.singletonList(nodes.get(5) == x || nodes.get(5) == y
+                        ? nodes.get(4) : nodes.get(5));
+
+                // Repeating a test gives the same answer from the cached null models.
+                test.isIndependent(x, y, z);
+                double p = test.getPValue();
+                test.isIndependent(x, y, z);
+                assertEquals(p, test.getPValue(), 1e-10);
+
+                lrt.isIndependent(x, y, z);
+                assertTrue(lrt.getPValue() >= 0 && lrt.getPValue() <= 1);
+
+                Node gx = graph.getNode(x.getName());
+                Node gy = graph.getNode(y.getName());
+
+                if (graph.isAdjacentTo(gx, gy)) {
+                    assertTrue(test.isDependent(x, y, z));
+                }
+            }
+        }
+    }
+}
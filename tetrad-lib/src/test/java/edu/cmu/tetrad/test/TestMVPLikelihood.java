@@ -0,0 +1,189 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.data.Discretizer;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.*;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.ForkJoinPoolInstance;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import edu.cmu.tetrad.util.TetradVector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the mixed variables polynomial likelihood.
+ */
+public class TestMVPLikelihood {
+
+    @Test
+    public void testPolynomialRegression() {
+        DataSet data = data(0);
+        MVPLikelihood likelihood = new MVPLikelihood(data, -1, 2, false);
+
+        // Regress X1 on X2 and X2 squared, standardized, directly.
+        int n = data.getNumRows();
+        double[] x = data.getDoubleData().getColumn(1).toArray();
+        double mean = 0.0;
+        double sumSquares = 0.0;
+
+        for (double v : x) {
+            mean += v;
+            sumSquares += v * v;
+        }
+
+        mean /= n;
+        double sd = Math.sqrt(sumSquares / n - mean * mean);
+
+        TetradMatrix design = new TetradMatrix(n, 3);
+        TetradVector y = data.getDoubleData().getColumn(0);
+
+        for (int i = 0; i < n; i++) {
+            double z = (x[i] - mean) / sd;
+            design.set(i, 0, z);
+            design.set(i, 1, z * z);
+            design.set(i, 2, 1);
+        }
+
+        TetradMatrix xt = design.transpose();
+        TetradVector residuals = design.times(xt.times(design).inverse().times(xt.times(y))).minus(y);
+        double sigma2 = residuals.dotProduct(residuals) / n;
+        double expected = -(n / 2) * (Math.log(2 * Math.PI) + Math.log(sigma2) + 1);
+
+        assertEquals(expected, likelihood.getLik(0, new int[]{1}), 1e-6);
+    }
+
+    @Test
+    public void testConcurrentUse() {
+        DataSet data = data(3);
+        final MVPLikelihood sequential = new MVPLikelihood(data, -1, 1, false);
+        final MVPLikelihood concurrent = new MVPLikelihood(data, -1, 1, false);
+        final int numVars = data.getNumColumns();
+        final List<int[]> families = new ArrayList<>();
+
+        for (int i = 0; i < numVars; i++) {
+            for (int j = 0; j < numVars; j++) {
+                for (int k = j + 1; k < numVars; k++) {
+                    if (i != j && i != k) families.add(new int[]{i, j, k});
+                }
+            }
+        }
+
+        final double[] liks = new double[families.size()];
+
+        class LikTask extends RecursiveTask<Boolean> {
+            private final int from;
+            private final int to;
+
+            private LikTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected Boolean compute() {
+                if (to - from <= 4) {
+                    for (int f = from; f < to; f++) {
+                        int[] family = families.get(f);
+                        liks[f] = concurrent.getLik(family[0], new int[]{family[1], family[2]});
+                    }
+
+                    return true;
+                } else {
+                    int mid = (to + from) / 2;
+                    LikTask left = new LikTask(from, mid);
+                    LikTask right = new LikTask(mid, to);
+                    left.fork();
+                    right.compute();
+                    left.join();
+                    return true;
+                }
+            }
+        }
+
+        ForkJoinPoolInstance.getInstance().getPool().invoke(new LikTask(0, families.size()));
+
+        for (int f = 0; f < families.size(); f++) {
+            int[] family = families.get(f);
+
+            // The same family with its parents in the other order is found in the cache.
+            assertEquals(liks[f], concurrent.getLik(family[0], new int[]{family[2], family[1]}), 0.0);
+            assertEquals(liks[f], sequential.getLik(family[0], new int[]{family[1], family[2]}), 1e-9);
+        }
+    }
+
+    @Test
+    public void testSharedLikelihood() {
+        DataSet data = data(3);
+        MVPLikelihood likelihood = new MVPLikelihood(data, -1, 1, false);
+        MVPScore score = new MVPScore(likelihood);
+        IndTestMVPLRT shared = new IndTestMVPLRT(likelihood, 0.01);
+        IndTestMVPLRT test = new IndTestMVPLRT(data, 0.01, 1, false);
+
+        assertEquals(new MVPScore(data, -1, 1, false).localScore(2, 0, 1), score.localScore(2, 0, 1), 1e-9);
+
+        List<Node> nodes = data.getVariables();
+
+        for (Node x : nodes) {
+            for (Node y : nodes) {
+                if (x == y) continue;
+                List<Node> z = Collections.singletonList(nodes.get(5) == x || nodes.get(5) == y
+                        ? nodes.get(4) : nodes.get(5));
+
+                test.isIndependent(x, y, z);
+                shared.isIndependent(x, y, z);
+                assertEquals(test.getPValue(), shared.getPValue(), 1e-9);
+                assertTrue(shared.getPValue() >= 0 && shared.getPValue() <= 1);
+            }
+        }
+    }
+
+    // Simulated continuous data over 8 variables, with the first numDiscrete discretized.
+    private DataSet data(int numDiscrete) {
+        RandomUtil.getInstance().setSeed(2948302L);
+        Graph graph = GraphUtils.randomGraph(8, 0, 8, 3, 3, 3, false);
+        DataSet data = new SemIm(new SemPm(graph)).simulateData(800, false);
+
+        Discretizer discretizer = new Discretizer(data);
+        discretizer.setVariablesCopied(true);
+
+        for (int i = 0; i < numDiscrete; i++) {
+            discretizer.equalCounts(data.getVariable(i), 3);
+        }
+
+        return discretizer.discretize();
+    }
+}
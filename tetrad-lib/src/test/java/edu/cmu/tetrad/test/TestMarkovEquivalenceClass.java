@@ -0,0 +1,260 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.DagInPatternIterator;
+import edu.cmu.tetrad.search.MarkovEquivalenceClass;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests counting and listing the DAGs in a pattern.
+ */
+public class TestMarkovEquivalenceClass {
+
+    @Test
+    public void testRandomPatterns() {
+        RandomUtil.getInstance().setSeed(29392L);
+
+        for (int t = 0; t < 100; t++) {
+            List<Node> nodes = nodes(4 + t % 5);
+            Graph dag = GraphUtils.randomGraph(nodes, 0, nodes.size() + t % 7, 30, 15, 15, false);
+            Graph pattern = SearchGraphUtils.patternForDag(dag);
+
+            // The old enumeration, which getDagsInPatternMeek no longer uses for patterns, lists the same DAGs.
+            Set<Set<Edge>> expected = new HashSet<>();
+            DagInPatternIterator iterator = new DagInPatternIterator(pattern, new Knowledge2());
+
+            while (iterator.hasNext()) {
+                assertTrue(expected.add(new HashSet<>(iterator.next().getEdges())));
+            }
+
+            Set<Set<Edge>> found = new HashSet<>();
+
+            for (Graph _dag : check(pattern)) {
+                found.add(new HashSet<>(_dag.getEdges()));
+            }
+
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void testIsPattern() {
+        List<Node> nodes = nodes(4);
+        Node x1 = nodes.get(0);
+        Node x2 = nodes.get(1);
+        Node x3 = nodes.get(2);
+        Node x4 = nodes.get(3);
+
+        Graph graph = new EdgeListGraph(nodes.subList(0, 3));
+        graph.addUndirectedEdge(x1, x2);
+        graph.addUndirectedEdge(x2, x3);
+        assertTrue(MarkovEquivalenceClass.isPattern(graph));
+
+        // A collider is compelled; a directed edge into a chain is not.
+        graph.removeEdges(x1, x2);
+        graph.removeEdges(x2, x3);
+        graph.addDirectedEdge(x1, x2);
+        graph.addDirectedEdge(x3, x2);
+        assertTrue(MarkovEquivalenceClass.isPattern(graph));
+
+        graph.removeEdges(x3, x2);
+        graph.addUndirectedEdge(x2, x3);
+        assertFalse(MarkovEquivalenceClass.isPattern(graph));
+
+        graph.removeEdges(x2, x3);
+        graph.removeEdges(x1, x2);
+        graph.addDirectedEdge(x1, x2);
+        assertFalse(MarkovEquivalenceClass.isPattern(graph));
+
+        // Not chordal, or not directed or undirected.
+        Graph cycle = new EdgeListGraph(nodes);
+
+        for (int i = 0; i < 4; i++) {
+            cycle.addUndirectedEdge(nodes.get(i), nodes.get((i + 1) % 4));
+        }
+
+        assertFalse(MarkovEquivalenceClass.isPattern(cycle));
+
+        Graph bidirected = new EdgeListGraph(Arrays.asList(x1, x4));
+        bidirected.addBidirectedEdge(x1, x4);
+        assertFalse(MarkovEquivalenceClass.isPattern(bidirected));
+
+        RandomUtil.getInstance().setSeed(3829L);
+
+        for (int t = 0; t < 20; t++) {
+            Graph dag = GraphUtils.randomGraph(nodes(6), 0, 7, 30, 15, 15, false);
+            assertTrue(MarkovEquivalenceClass.isPattern(SearchGraphUtils.patternForDag(dag)));
+        }
+    }
+
+    @Test
+    public void testKnowledge() {
+        List<Node> nodes = nodes(3);
+        Graph path = new EdgeListGraph(nodes);
+        path.addUndirectedEdge(nodes.get(0), nodes.get(1));
+        path.addUndirectedEdge(nodes.get(1), nodes.get(2));
+
+        assertEquals(3, SearchGraphUtils.getDagsInPatternMeek(path, new Knowledge2()).size());
+
+        // Only X1 --> X2 --> X3 is left once X2 --> X1 is forbidden.
+        Knowledge2 knowledge = new Knowledge2();
+        knowledge.setForbidden("X2", "X1");
+
+        List<Graph> dags = SearchGraphUtils.getDagsInPatternMeek(path, knowledge);
+        assertEquals(1, dags.size());
+        assertTrue(dags.get(0).isParentOf(nodes.get(0), nodes.get(1)));
+        assertTrue(dags.get(0).isParentOf(nodes.get(1), nodes.get(2)));
+    }
+
+    @Test
+    public void testChordalGraphs() {
+        Random random = new Random(3);
+
+        for (int t = 0; t < 100; t++) {
+            List<Node> nodes = nodes(3 + random.nextInt(7));
+            check(randomChordalGraph(nodes, random));
+        }
+    }
+
+    @Test
+    public void testKnownCounts() {
+        List<Node> nodes = nodes(12);
+
+        Graph complete = new EdgeListGraph(nodes.subList(0, 6));
+        Graph path = new EdgeListGraph(nodes);
+
+        for (int i = 0; i < 6; i++) {
+            for (int j = i + 1; j < 6; j++) {
+                complete.addUndirectedEdge(nodes.get(i), nodes.get(j));
+            }
+        }
+
+        for (int i = 0; i < 11; i++) {
+            path.addUndirectedEdge(nodes.get(i), nodes.get(i + 1));
+        }
+
+        // A tree has one DAG per choice of root.
+        assertEquals(BigInteger.valueOf(720), new MarkovEquivalenceClass(complete).count());
+        assertEquals(BigInteger.valueOf(12), new MarkovEquivalenceClass(path).count());
+
+        // A collider fixes the class.
+        Graph collider = new EdgeListGraph(nodes.subList(0, 3));
+        collider.addDirectedEdge(nodes.get(0), nodes.get(1));
+        collider.addDirectedEdge(nodes.get(2), nodes.get(1));
+        assertEquals(BigInteger.ONE, new MarkovEquivalenceClass(collider).count());
+    }
+
+    @Test
+    public void testLargeClass() {
+        List<Node> nodes = nodes(300);
+        Graph graph = randomChordalGraph(nodes, new Random(5));
+
+        MarkovEquivalenceClass dags = new MarkovEquivalenceClass(graph);
+        assertTrue(dags.count().compareTo(BigInteger.valueOf(Long.MAX_VALUE)) > 0);
+
+        MarkovEquivalenceClass.Cursor cursor = dags.cursor();
+        int[] parents = new int[nodes.size()];
+
+        for (int k = 0; k < 1000; k++) {
+            assertTrue(cursor.next());
+
+            // getParents agrees with isParent.
+            int y = k % nodes.size();
+            int numParents = cursor.getParents(y, parents);
+
+            for (int i = 0; i < numParents; i++) {
+                assertTrue(cursor.isParent(parents[i], y));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotChordal() {
+        List<Node> nodes = nodes(4);
+        Graph cycle = new EdgeListGraph(nodes);
+
+        for (int i = 0; i < 4; i++) {
+            cycle.addUndirectedEdge(nodes.get(i), nodes.get((i + 1) % 4));
+        }
+
+        new MarkovEquivalenceClass(cycle);
+    }
+
+    // Checks that the listed DAGs are distinct members of the class and as many as counted.
+    private List<Graph> check(Graph pattern) {
+        MarkovEquivalenceClass mec = new MarkovEquivalenceClass(pattern);
+        List<Graph> dags = new ArrayList<>();
+        Set<Set<Edge>> distinct = new HashSet<>();
+
+        for (Graph dag : mec) {
+            assertFalse(dag.existsDirectedCycle());
+            assertEquals(pattern, SearchGraphUtils.patternForDag(dag));
+            assertTrue(distinct.add(new HashSet<>(dag.getEdges())));
+            dags.add(dag);
+        }
+
+        assertEquals(BigInteger.valueOf(dags.size()), mec.count());
+        return dags;
+    }
+
+    // A random connected chordal graph, built so that each node's earlier neighbors form a clique.
+    private Graph randomChordalGraph(List<Node> nodes, Random random) {
+        Graph graph = new EdgeListGraph(nodes);
+        List<Set<Integer>> earlier = new ArrayList<>();
+        earlier.add(new HashSet<Integer>());
+
+        for (int i = 1; i < nodes.size(); i++) {
+            int u = random.nextInt(i);
+            Set<Integer> adjacent = new HashSet<>();
+            adjacent.add(u);
+
+            for (int w : earlier.get(u)) {
+                if (random.nextDouble() < 0.5) adjacent.add(w);
+            }
+
+            earlier.add(adjacent);
+
+            for (int w : adjacent) {
+                graph.addUndirectedEdge(nodes.get(w), nodes.get(i));
+            }
+        }
+
+        return graph;
+    }
+
+    private List<Node> nodes(int n) {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < n; i++) nodes.add(new GraphNode("X" + (i + 1)));
+        return nodes;
+    }
+}
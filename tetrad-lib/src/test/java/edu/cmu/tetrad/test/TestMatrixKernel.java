@@ -0,0 +1,175 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.ContinuousVariable;
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.search.IndTestFisherZ;
+import edu.cmu.tetrad.search.SemBicScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.MatrixKernel;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.TetradMatrix;
+import org.apache.commons.math3.linear.BlockRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularMatrixException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the small dense matrix kernel against commons-math.
+ */
+public class TestMatrixKernel {
+
+    @Test
+    public void testInverse() {
+        RandomUtil.getInstance().setSeed(4820394L);
+        int n = 12;
+        double[][] data = new double[n][n];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                data[i][j] = RandomUtil.getInstance().nextNormal(0, 1);
+            }
+        }
+
+        RealMatrix expected = new LUDecomposition(new BlockRealMatrix(data)).getSolver().getInverse();
+        TetradMatrix inverse = new TetradMatrix(data).inverse();
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                assertEquals(expected.getEntry(i, j), inverse.get(i, j), 1e-9);
+            }
+        }
+
+        assertEquals(new LUDecomposition(new BlockRealMatrix(data)).getDeterminant(),
+                new TetradMatrix(data).det(), 1e-9);
+    }
+
+    @Test
+    public void testCovarianceFunctions() {
+        RandomUtil.getInstance().setSeed(2938411L);
+        Dag dag = new Dag(GraphUtils.randomGraph(20, 0, 30, 5, 5, 5, false));
+        DataSet data = new SemIm(new SemPm(dag)).simulateData(500, false);
+        CovarianceMatrix cov = new CovarianceMatrix(data);
+        TetradMatrix m = cov.getMatrix();
+
+        int x = 3;
+        int y = 7;
+        int[] z = {0, 12, 5, 19, 9};
+        int[] all = {3, 7, 0, 12, 5, 19, 9};
+
+        RealMatrix precision = new LUDecomposition(m.getSelection(all, all).getRealMatrix())
+                .getSolver().getInverse();
+        double r = -precision.getEntry(0, 1) / Math.sqrt(precision.getEntry(0, 0) * precision.getEntry(1, 1));
+
+        assertEquals(r, MatrixKernel.partialCorrelation(m, x, y, z), 1e-10);
+        assertEquals(r, MatrixKernel.partialCorrelation(cov, x, y, z), 1e-10);
+
+        RealMatrix zInverse = new LUDecomposition(m.getSelection(z, z).getRealMatrix()).getSolver().getInverse();
+        RealMatrix covZy = m.getSelection(z, new int[]{y}).getRealMatrix();
+        RealMatrix covXz = m.getSelection(new int[]{x}, z).getRealMatrix();
+        RealMatrix covYz = m.getSelection(new int[]{y}, z).getRealMatrix();
+
+        assertEquals(m.get(x, y) - covXz.multiply(zInverse).multiply(covZy).getEntry(0, 0),
+                MatrixKernel.partialCovariance(m, x, y, z), 1e-10);
+        assertEquals(m.get(y, y) - covYz.multiply(zInverse).multiply(covZy).getEntry(0, 0),
+                MatrixKernel.residualVariance(cov, y, z), 1e-10);
+
+        assertEquals(Math.log(new LUDecomposition(m.getSelection(all, all).getRealMatrix()).getDeterminant()),
+                MatrixKernel.logDeterminant(m, all), 1e-8);
+    }
+
+    @Test
+    public void testSingular() {
+        double[][] data = {{1, 2, 3}, {2, 4, 6}, {3, 6, 10}};
+        TetradMatrix m = new TetradMatrix(data);
+
+        try {
+            MatrixKernel.residualVariance(m, 2, new int[]{0, 1});
+            fail("Expected a singular matrix.");
+        } catch (SingularMatrixException e) {
+            // Expected.
+        }
+
+        try {
+            new TetradMatrix(data).inverse();
+            fail("Expected a singular matrix.");
+        } catch (SingularMatrixException e) {
+            // Expected.
+        }
+
+        assertEquals(0.0, MatrixKernel.residualVariance(m, 1, new int[]{0}), 1e-12);
+    }
+
+    @Test
+    public void testNearCollinear() {
+
+        // X3 = X1 + X2 + e, with var(e) = 1e-10, and Y independent of the rest. The
+        // pivots of cov(X1, X2, X3) are 1, 1, 1e-10; the last is above the Cholesky
+        // relative tolerance but below the 1e-9 that TetradMatrix.inverse has always
+        // used, so scores and tests still see these as singular.
+        double[][] data = {
+                {1, 0, 1, 0},
+                {0, 1, 1, 0},
+                {1, 1, 2 + 1e-10, 0},
+                {0, 0, 0, 1}};
+        TetradMatrix m = new TetradMatrix(data);
+
+        List<Node> variables = new ArrayList<>();
+        for (String name : new String[]{"X1", "X2", "X3", "Y"}) variables.add(new ContinuousVariable(name));
+        CovarianceMatrix cov = new CovarianceMatrix(variables, m, 1000);
+
+        try {
+            MatrixKernel.residualVariance(m, 3, new int[]{0, 1, 2});
+            fail("Expected a singular matrix.");
+        } catch (SingularMatrixException e) {
+            // Expected.
+        }
+
+        try {
+            MatrixKernel.partialCorrelation(m, 0, 3, new int[]{1, 2});
+            fail("Expected a singular matrix.");
+        } catch (SingularMatrixException e) {
+            // Expected.
+        }
+
+        assertTrue(Double.isNaN(new SemBicScore(cov).localScore(3, 0, 1, 2)));
+        assertFalse(new IndTestFisherZ(cov, 0.01).isIndependent(variables.get(0), variables.get(3),
+                Arrays.asList(variables.get(1), variables.get(2))));
+
+        // Subsets that are not near-collinear are unaffected.
+        assertEquals(1.0, MatrixKernel.residualVariance(m, 3, new int[]{0, 1}), 1e-12);
+    }
+}
@@ -0,0 +1,117 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.IKnowledge;
+import edu.cmu.tetrad.data.Knowledge2;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.MeekPropagator;
+import edu.cmu.tetrad.search.MeekRules;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the worklist implementation of the Meek rules.
+ */
+public class TestMeekPropagator {
+
+    @Test
+    public void testAgreesWithMeekRules() {
+        RandomUtil.getInstance().setSeed(3829L);
+
+        for (int t = 0; t < 200; t++) {
+            int numNodes = 5 + t % 20;
+            Graph dag = GraphUtils.randomGraph(numNodes, 0, numNodes * (1 + t % 3), 30, 15, 15, false);
+            Graph colliders = colliders(dag);
+
+            Graph expected = new EdgeListGraph(colliders);
+            MeekRules rules = new MeekRules();
+            rules.setKnowledge(new Knowledge2());
+            rules.orientImplied(expected);
+
+            Graph graph = new EdgeListGraph(colliders);
+            new MeekPropagator().orientImplied(graph);
+
+            assertEquals(expected, graph);
+        }
+    }
+
+    @Test
+    public void testKnowledge() {
+        Graph graph = GraphConverter.convert("A-->B,B---C");
+
+        IKnowledge knowledge = new Knowledge2();
+        knowledge.setForbidden("B", "C");
+
+        MeekPropagator propagator = new MeekPropagator();
+        propagator.setKnowledge(knowledge);
+        propagator.orientImplied(graph);
+
+        assertEquals(GraphConverter.convert("A-->B,B---C"), graph);
+
+        propagator.setKnowledge(new Knowledge2());
+        propagator.orientImplied(graph);
+
+        assertEquals(GraphConverter.convert("A-->B,B-->C"), graph);
+    }
+
+    @Test
+    public void testUndirectUnforcedEdges() {
+        Graph graph = GraphConverter.convert("A-->B,B-->C,D-->E,F-->E");
+
+        MeekPropagator propagator = new MeekPropagator();
+        propagator.setUndirectUnforcedEdges(true);
+        propagator.orientImplied(graph, Arrays.asList(graph.getNode("B"), graph.getNode("C")));
+
+        // Neither A-->B nor B-->C is forced; D-->E<--F is an unshielded collider and stays.
+        assertEquals(GraphConverter.convert("A---B,B---C,D-->E,F-->E"), graph);
+        assertTrue(propagator.getVisited().contains(graph.getNode("A")));
+        assertFalse(propagator.getVisited().contains(graph.getNode("D")));
+    }
+
+    // The skeleton of the DAG with its unshielded colliders oriented.
+    private Graph colliders(Graph dag) {
+        Graph graph = new EdgeListGraph(dag);
+        graph.reorientAllWith(Endpoint.TAIL);
+
+        for (Node y : dag.getNodes()) {
+            List<Node> parents = dag.getParents(y);
+
+            for (int i = 0; i < parents.size(); i++) {
+                for (int j = i + 1; j < parents.size(); j++) {
+                    if (!dag.isAdjacentTo(parents.get(i), parents.get(j))) {
+                        graph.setEndpoint(parents.get(i), y, Endpoint.ARROW);
+                        graph.setEndpoint(parents.get(j), y, Endpoint.ARROW);
+                    }
+                }
+            }
+        }
+
+        return graph;
+    }
+}
@@ -0,0 +1,105 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.algcomparison.graph.RandomForward;
+import edu.cmu.tetrad.algcomparison.simulation.LeeHastieSimulation;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Edge;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.util.Parameters;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.pitt.csb.mgm.MGM;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the lambda path mode of MGM.
+ */
+public class TestMgm {
+
+    @Test
+    public void testPath() {
+        RandomUtil.getInstance().setSeed(492939494L);
+
+        DataSet data = simulate();
+
+        MGM mgm = new MGM(data, new double[]{.1, .1, .1});
+        double[] lambdaMax = mgm.lambdaMax(1000);
+
+        for (double lambda : lambdaMax) {
+            assertTrue(lambda > 0);
+        }
+
+        double max = Math.max(lambdaMax[0], Math.max(lambdaMax[1], lambdaMax[2]));
+        double[] lambdas = MGM.lambdaPath(1.01 * max, 0.05, 6);
+
+        List<Graph> path = mgm.searchPath(lambdas);
+
+        assertEquals(lambdas.length, path.size());
+
+        // Above lambda max nothing survives.
+        assertEquals(0, path.get(0).getNumEdges());
+
+        assertTrue(path.get(path.size() - 1).getNumEdges() > 0);
+
+        // Warm starts and strong rule screening should find what a cold fit finds at each lambda.
+        for (int k = 0; k < lambdas.length; k++) {
+            MGM cold = new MGM(data, new double[]{lambdas[k], lambdas[k], lambdas[k]});
+            cold.learn(1e-5, 1000);
+            Graph coldGraph = cold.graphFromMGM();
+
+            assertEquals(coldGraph.getNumEdges(), path.get(k).getNumEdges());
+
+            for (Edge edge : coldGraph.getEdges()) {
+                assertTrue(path.get(k).isAdjacentTo(path.get(k).getNode(edge.getNode1().getName()),
+                        path.get(k).getNode(edge.getNode2().getName())));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncreasingPath() {
+        RandomUtil.getInstance().setSeed(492939494L);
+        MGM mgm = new MGM(simulate(), new double[]{.1, .1, .1});
+        mgm.searchPath(new double[]{.1, .2});
+    }
+
+    private DataSet simulate() {
+        Parameters parameters = new Parameters();
+        parameters.set("numMeasures", 8);
+        parameters.set("avgDegree", 2);
+        parameters.set("sampleSize", 500);
+        parameters.set("percentDiscrete", 50);
+        parameters.set("numCategories", 3);
+        parameters.set("numRuns", 1);
+        parameters.set("dataType", "mixed");
+
+        LeeHastieSimulation simulation = new LeeHastieSimulation(new RandomForward());
+        simulation.createData(parameters);
+        return (DataSet) simulation.getDataModel(0);
+    }
+}
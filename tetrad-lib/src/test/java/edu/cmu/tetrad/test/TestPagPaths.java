@@ -0,0 +1,165 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.DagSepsets;
+import edu.cmu.tetrad.search.DagToPag;
+import edu.cmu.tetrad.search.Fci;
+import edu.cmu.tetrad.search.FciOrient;
+import edu.cmu.tetrad.search.IndTestDSep;
+import edu.cmu.tetrad.search.PagPaths;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the path searches used by the FCI orientation rules.
+ */
+public class TestPagPaths {
+
+    @Test
+    public void testEndpoints() {
+        Graph graph = GraphConverter.convert("A-->B,B<->C,Co->D,Do-oA");
+        PagPaths paths = new PagPaths(graph);
+
+        for (Node x : graph.getNodes()) {
+            for (Node y : graph.getNodes()) {
+                int _x = paths.index(x);
+                int _y = paths.index(y);
+
+                assertEquals(graph.isAdjacentTo(x, y), paths.isAdjacent(_x, _y));
+
+                if (graph.isAdjacentTo(x, y)) {
+                    assertEquals(graph.getEndpoint(x, y), paths.getEndpoint(_x, _y));
+                } else {
+                    assertNull(paths.getEndpoint(_x, _y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUncoveredPdPaths() {
+        RandomUtil.getInstance().setSeed(48282L);
+
+        for (int t = 0; t < 30; t++) {
+            Graph dag = GraphUtils.randomGraph(12, 3, 16, 30, 15, 15, false);
+            Graph pag = new DagToPag(dag).convert();
+            PagPaths paths = new PagPaths(pag);
+            List<Node> nodes = pag.getNodes();
+
+            for (Node a : nodes) {
+                for (Node b : pag.getAdjacentNodes(a)) {
+                    for (Node c : nodes) {
+                        if (c == a) continue;
+
+                        boolean expected = existsUncoveredPdPath(pag, a, b, c);
+                        boolean found = paths.existsUncoveredPdPath(paths.index(a), paths.index(b),
+                                paths.index(c), -1);
+
+                        assertEquals(expected, found);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRule10() {
+        // Ao->C, B-->C<--D, with uncovered p.d. paths <A,B> and <A,D>, B and D nonadjacent.
+        Graph graph = GraphConverter.convert("Ao->C,B-->C,D-->C,Ao->B,Ao-oD");
+
+        FciOrient orient = new FciOrient(new DagSepsets(new EdgeListGraph(graph.getNodes())));
+        orient.rulesR8R9R10(graph);
+
+        assertEquals(Endpoint.TAIL, graph.getEndpoint(graph.getNode("C"), graph.getNode("A")));
+    }
+
+    @Test
+    public void testParallelIsOptIn() {
+        RandomUtil.getInstance().setSeed(2939402L);
+        Graph dag = GraphUtils.randomGraph(14, 3, 18, 30, 15, 15, false);
+
+        final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+        IndTestDSep test = new IndTestDSep(dag) {
+            @Override
+            public boolean isIndependent(Node x, Node y, List<Node> z) {
+                threads.add(Thread.currentThread());
+                return super.isIndependent(x, y, z);
+            }
+        };
+
+        Fci fci = new Fci(test);
+        assertFalse(fci.isParallel());
+        Graph sequential = fci.search();
+
+        // By default the test is only called from the searching thread.
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+
+        Fci parallel = new Fci(new IndTestDSep(dag));
+        parallel.setParallel(true);
+
+        assertEquals(sequential, parallel.search());
+    }
+
+    // Lists paths from a through b, keeping those that are uncovered and potentially directed, until one reaches c.
+    private boolean existsUncoveredPdPath(Graph graph, Node a, Node b, Node c) {
+        List<Node> path = new ArrayList<>();
+        path.add(a);
+        return extend(graph, path, b, c);
+    }
+
+    private boolean extend(Graph graph, List<Node> path, Node next, Node c) {
+        if (path.contains(next)) return false;
+
+        Node prev = path.get(path.size() - 1);
+
+        if (graph.getEndpoint(prev, next) == Endpoint.TAIL || graph.getEndpoint(next, prev) == Endpoint.ARROW) {
+            return false;
+        }
+
+        if (path.size() >= 2 && graph.isAdjacentTo(path.get(path.size() - 2), next)) {
+            return false;
+        }
+
+        if (next == c) return true;
+
+        path.add(next);
+
+        for (Node node : graph.getAdjacentNodes(next)) {
+            if (extend(graph, path, node, c)) return true;
+        }
+
+        path.remove(path.size() - 1);
+        return false;
+    }
+}
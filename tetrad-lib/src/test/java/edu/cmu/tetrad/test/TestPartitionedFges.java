@@ -0,0 +1,203 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.*;
+import edu.cmu.tetrad.search.Fges;
+import edu.cmu.tetrad.search.PartitionedFges;
+import edu.cmu.tetrad.search.Score;
+import edu.cmu.tetrad.search.SearchGraphUtils;
+import edu.cmu.tetrad.search.SemBicScore;
+import edu.cmu.tetrad.sem.SemIm;
+import edu.cmu.tetrad.sem.SemPm;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests FGES over partitions of the variables.
+ */
+public class TestPartitionedFges {
+
+    @Test
+    public void testOnePartitionIsFges() {
+        RandomUtil.getInstance().setSeed(4938L);
+        Graph dag = randomDag(30);
+        Score score = new SemBicScore(new CovarianceMatrix(simulate(dag)));
+
+        Graph fges = new Fges(score).search();
+        PartitionedFges search = new PartitionedFges(score);
+        Graph partitioned = search.search();
+
+        assertEquals(1, search.getPartitions().size());
+        assertEquals(fges, partitioned);
+    }
+
+    @Test
+    public void testPartitions() {
+        RandomUtil.getInstance().setSeed(29384L);
+        Graph dag = randomDag(120);
+        DataSet data = simulate(dag);
+        Score score = new SemBicScore(new CovarianceMatrix(data));
+
+        for (PartitionedFges.ScreenType screenType : PartitionedFges.ScreenType.values()) {
+            PartitionedFges search = new PartitionedFges(score);
+            search.setScreenType(screenType);
+            search.setMaxPartitionSize(30);
+            search.setOverlap(10);
+            checkPartitions(search, dag, data);
+        }
+    }
+
+    @Test
+    public void testCorrelationScreen() {
+        RandomUtil.getInstance().setSeed(5830L);
+        Graph dag = randomDag(60);
+        DataSet data = simulate(dag);
+        final Score score = new SemBicScore(new CovarianceMatrix(data));
+        final Set<List<Integer>> pairs = Collections.newSetFromMap(new ConcurrentHashMap<List<Integer>, Boolean>());
+
+        // Records the pairs whose first-step score differences are asked for.
+        Score counting = new Score() {
+            public double localScore(int node, int... parents) {
+                return score.localScore(node, parents);
+            }
+
+            public double localScoreDiff(int x, int y, int[] z) {
+                return score.localScoreDiff(x, y, z);
+            }
+
+            public double localScoreDiff(int x, int y) {
+                pairs.add(Arrays.asList(Math.min(x, y), Math.max(x, y)));
+                return score.localScoreDiff(x, y);
+            }
+
+            public double localScore(int node, int parent) {
+                return score.localScore(node, parent);
+            }
+
+            public double localScore(int node) {
+                return score.localScore(node);
+            }
+
+            public List<Node> getVariables() {
+                return score.getVariables();
+            }
+
+            public boolean isEffectEdge(double bump) {
+                return score.isEffectEdge(bump);
+            }
+
+            public int getSampleSize() {
+                return score.getSampleSize();
+            }
+
+            public Node getVariable(String targetName) {
+                return score.getVariable(targetName);
+            }
+
+            public int getMaxDegree() {
+                return score.getMaxDegree();
+            }
+
+            public boolean determines(List<Node> z, Node y) {
+                return score.determines(z, y);
+            }
+        };
+
+        PartitionedFges search = new PartitionedFges(counting);
+        assertEquals(PartitionedFges.ScreenType.CORRELATION, search.getScreenType());
+        search.setMaxPartitionSize(20);
+        search.setOverlap(5);
+        search.setScreenDegree(5);
+
+        try {
+            search.search();
+            fail("Expected the correlation screen to need covariances.");
+        } catch (IllegalStateException e) {
+            // Only a SemBicScore's covariances are found by themselves.
+        }
+
+        search.setCovariances(new CovarianceMatrix(data));
+        checkPartitions(search, dag, data);
+
+        // Only pairs in the screen are scored, not all of them.
+        int numPairs = 60 * 59 / 2;
+        assertTrue(pairs.size() < numPairs / 4);
+
+        pairs.clear();
+        search.setScreenType(PartitionedFges.ScreenType.SCORE);
+        search.search();
+        assertEquals(numPairs, pairs.size());
+    }
+
+    private static void checkPartitions(PartitionedFges search, Graph dag, DataSet data) {
+        int maxPartitionSize = search.getMaxPartitionSize();
+        Graph partitioned = search.search();
+
+        Set<Node> covered = new HashSet<>();
+
+        for (List<Node> core : search.getPartitions()) {
+            assertTrue(core.size() <= maxPartitionSize);
+
+            for (Node node : core) {
+                assertTrue(covered.add(node));
+            }
+        }
+
+        assertEquals(new HashSet<>(data.getVariables()), covered);
+        assertTrue(search.getPartitions().size() >= data.getNumColumns() / maxPartitionSize);
+
+        Graph pattern = GraphUtils.replaceNodes(SearchGraphUtils.patternForDag(dag), data.getVariables());
+        int adjTp = 0;
+
+        for (Edge edge : partitioned.getEdges()) {
+            if (pattern.isAdjacentTo(edge.getNode1(), edge.getNode2())) adjTp++;
+        }
+
+        assertTrue(adjTp >= 0.9 * pattern.getNumEdges());
+        assertTrue(adjTp >= 0.9 * partitioned.getNumEdges());
+    }
+
+    private static Graph randomDag(int numNodes) {
+        List<Node> nodes = new ArrayList<>();
+
+        for (int i = 0; i < numNodes; i++) {
+            nodes.add(new GraphNode("X" + (i + 1)));
+        }
+
+        return GraphUtils.randomGraph(nodes, 0, numNodes, 10, 10, 10, false);
+    }
+
+    private static DataSet simulate(Graph dag) {
+        SemIm im = new SemIm(new SemPm(dag));
+        return im.simulateData(1000, false);
+    }
+}
@@ -0,0 +1,136 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.graph.Node;
+import edu.cmu.tetrad.sem.LargeScaleSimulation;
+import edu.cmu.tetrad.util.RandomStream;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests splittable random streams and their use through RandomUtil.
+ */
+public class TestRandomStream {
+
+    @Test
+    public void testStreams() {
+        RandomStream a = new RandomStream(3920L);
+        RandomStream b = new RandomStream(3920L);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(a.nextLong(), b.nextLong());
+        }
+
+        // Substreams depend only on the seed and the index.
+        RandomStream c = new RandomStream(3920L);
+        assertEquals(a.stream(7).nextLong(), c.stream(7).nextLong());
+        assertNotEquals(c.stream(7).nextLong(), c.stream(8).nextLong());
+        assertNotEquals(c.split().nextLong(), c.split().nextLong());
+    }
+
+    @Test
+    public void testSamplers() {
+        RandomStream stream = new RandomStream(2837L);
+        int n = 200000;
+        double sum = 0.0;
+        double sumSquares = 0.0;
+
+        for (int i = 0; i < n; i++) {
+            double x = stream.nextNormal(1.0, 2.0);
+            sum += x;
+            sumSquares += x * x;
+        }
+
+        double mean = sum / n;
+        assertEquals(1.0, mean, 0.02);
+        assertEquals(4.0, sumSquares / n - mean * mean, 0.05);
+
+        int[] counts = new int[3];
+        double[] weights = {1, 2, 5};
+        double[] cumulative = {1, 3, 8};
+
+        for (int i = 0; i < n; i++) {
+            counts[stream.nextCategorical(weights)]++;
+            counts[stream.nextCategoricalCumulative(cumulative)]++;
+
+            int k = stream.nextInt(7);
+            assertTrue(k >= 0 && k < 7);
+
+            double u = stream.nextUniform(-1, 3);
+            assertTrue(u >= -1 && u < 3);
+        }
+
+        assertEquals(2.0 / 8.0, counts[1] / (2.0 * n), 0.005);
+        assertEquals(5.0 / 8.0, counts[2] / (2.0 * n), 0.005);
+    }
+
+    @Test
+    public void testThreadStream() {
+        RandomUtil singleton = RandomUtil.getInstance();
+
+        RandomUtil.setThreadStream(new RandomStream(12L));
+
+        try {
+            assertNotSame(singleton, RandomUtil.getInstance());
+            assertEquals(new RandomStream(12L).nextDouble(), RandomUtil.getInstance().nextDouble(), 0.0);
+        } finally {
+            RandomUtil.setThreadStream(null);
+        }
+
+        assertSame(singleton, RandomUtil.getInstance());
+    }
+
+    @Test
+    public void testSimulation() {
+        RandomUtil.getInstance().setSeed(48203L);
+        Graph graph = GraphUtils.randomGraph(20, 0, 30, 100, 100, 100, false);
+        List<Node> vars = graph.getNodes();
+        int[] causalOrdering = new int[vars.size()];
+        List<Node> ordering = new Dag(graph).getCausalOrdering();
+
+        for (int i = 0; i < ordering.size(); i++) {
+            causalOrdering[i] = vars.indexOf(ordering.get(i));
+        }
+
+        DataSet first = simulate(graph, vars, causalOrdering);
+        DataSet second = simulate(graph, vars, causalOrdering);
+
+        assertTrue(first.getDoubleData().equals(second.getDoubleData(), 0.0));
+    }
+
+    private DataSet simulate(Graph graph, List<Node> vars, int[] causalOrdering) {
+        RandomUtil.getInstance().setSeed(77L);
+        LargeScaleSimulation simulation = new LargeScaleSimulation(graph, vars, causalOrdering);
+        simulation.setCoefRange(0.2, 0.7);
+        return simulation.simulateDataRecursive(2500);
+    }
+}
@@ -0,0 +1,130 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.bayes.*;
+import edu.cmu.tetrad.graph.Dag;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.util.RandomUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sampling updater against the junction tree updater.
+ */
+public final class TestSamplingUpdater {
+
+    @Test
+    public void testLikelihoodWeighting() {
+        RandomUtil.getInstance().setSeed(38291L);
+        BayesIm im = randomIm(15, 20);
+        Evidence evidence = evidence(im);
+
+        SamplingUpdater sampling = new SamplingUpdater(im, evidence);
+        sampling.setMethod(SamplingUpdater.Method.LIKELIHOOD_WEIGHTING);
+        sampling.setTargetEss(20000);
+
+        assertClose(im, new JunctionTreeUpdater(im, evidence), sampling, 0.03);
+        assertTrue(sampling.getEffectiveSampleSize() >= 20000);
+    }
+
+    @Test
+    public void testGibbs() {
+        RandomUtil.getInstance().setSeed(2341L);
+        BayesIm im = randomIm(15, 20);
+        Evidence evidence = evidence(im);
+
+        SamplingUpdater sampling = new SamplingUpdater(im, evidence);
+        sampling.setMethod(SamplingUpdater.Method.GIBBS);
+        sampling.setTargetEss(5000);
+
+        assertClose(im, new JunctionTreeUpdater(im, evidence), sampling, 0.05);
+    }
+
+    @Test
+    public void testJointMarginal() {
+        RandomUtil.getInstance().setSeed(99123L);
+        BayesIm im = randomIm(10, 12);
+        Evidence evidence = evidence(im);
+
+        SamplingUpdater sampling = new SamplingUpdater(im, evidence);
+        JunctionTreeUpdater exact = new JunctionTreeUpdater(im, evidence);
+
+        int[] variables = {1, 4, 6};
+        int[] values = {0, 1, 0};
+
+        assertEquals(exact.getJointMarginal(variables, values),
+                sampling.getJointMarginal(variables, values), 0.03);
+    }
+
+    @Test
+    public void testReproducible() {
+        BayesIm im = randomIm(12, 15);
+        Evidence evidence = evidence(im);
+
+        for (SamplingUpdater.Method method : SamplingUpdater.Method.values()) {
+            RandomUtil.getInstance().setSeed(4472L);
+            SamplingUpdater sampling1 = new SamplingUpdater(im, evidence);
+            sampling1.setMethod(method);
+            sampling1.setTargetEss(2000);
+            double[] marginals1 = sampling1.calculateUpdatedMarginals(5);
+
+            RandomUtil.getInstance().setSeed(4472L);
+            SamplingUpdater sampling2 = new SamplingUpdater(im, evidence);
+            sampling2.setMethod(method);
+            sampling2.setTargetEss(2000);
+            double[] marginals2 = sampling2.calculateUpdatedMarginals(5);
+
+            for (int j = 0; j < marginals1.length; j++) {
+                assertEquals(marginals1[j], marginals2[j], 0.0);
+            }
+        }
+    }
+
+    private Evidence evidence(BayesIm im) {
+        Evidence evidence = Evidence.tautology(im);
+        evidence.getProposition().setCategory(2, 1);
+        evidence.getProposition().setCategory(7, 0);
+        return evidence;
+    }
+
+    private void assertClose(BayesIm im, BayesUpdater exact, BayesUpdater sampling, double tolerance) {
+        for (int i = 0; i < im.getNumNodes(); i++) {
+            double[] marginals1 = exact.calculateUpdatedMarginals(i);
+            double[] marginals2 = sampling.calculateUpdatedMarginals(i);
+
+            for (int j = 0; j < marginals1.length; j++) {
+                assertEquals(marginals1[j], marginals2[j], tolerance);
+            }
+        }
+    }
+
+    private BayesIm randomIm(int numNodes, int numEdges) {
+        Graph graph = new Dag(GraphUtils.randomGraph(numNodes, 0, numEdges, 5, 4, 4, false));
+        BayesPm pm = new BayesPm(graph, 2, 3);
+        return new MlBayesIm(pm, MlBayesIm.RANDOM);
+    }
+}
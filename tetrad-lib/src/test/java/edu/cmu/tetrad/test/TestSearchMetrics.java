@@ -0,0 +1,138 @@
+///////////////////////////////////////////////////////////////////////////////
+// For information as to what this class does, see the Javadoc, below.       //
+// Copyright (C) 1998, 1999, 2000, 2001, 2002, 2003, 2004, 2005, 2006,       //
+// 2007, 2008, 2009, 2010, 2014, 2015 by Peter Spirtes, Richard Scheines, Joseph   //
+// Ramsey, and Clark Glymour.                                                //
+//                                                                           //
+// This program is free software; you can redistribute it and/or modify      //
+// it under the terms of the GNU General Public License as published by      //
+// the Free Software Foundation; either version 2 of the License, or         //
+// (at your option) any later version.                                       //
+//                                                                           //
+// This program is distributed in the hope that it will be useful,           //
+// but WITHOUT ANY WARRANTY; without even the implied warranty of            //
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the             //
+// GNU General Public License for more details.                              //
+//                                                                           //
+// You should have received a copy of the GNU General Public License         //
+// along with this program; if not, write to the Free Software               //
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA //
+///////////////////////////////////////////////////////////////////////////////
+
+
+package edu.cmu.tetrad.test;
+
+import edu.cmu.tetrad.data.CovarianceMatrix;
+import edu.cmu.tetrad.data.DataSet;
+import edu.cmu.tetrad.graph.Graph;
+import edu.cmu.tetrad.graph.GraphUtils;
+import edu.cmu.tetrad.search.*;
+import edu.cmu.tetrad.sem.LargeScaleSimulation;
+import edu.cmu.tetrad.util.RandomUtil;
+import edu.cmu.tetrad.util.SearchMetrics;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the counters and phase timers reported by searches.
+ */
+public class TestSearchMetrics {
+
+    @Test
+    public void testFges() {
+        DataSet data = simulate();
+
+        SearchMetrics metrics = new SearchMetrics();
+        SearchMetrics previous = SearchMetrics.setCurrent(metrics);
+
+        try {
+            Fges fges = new Fges(new SemBicScore(new CovarianceMatrix(data)));
+            fges.setVerbose(false);
+            Graph graph = fges.search();
+
+            assertTrue(metrics.getCount(SearchMetrics.SCORES) > 0);
+            assertTrue(metrics.getCount(SearchMetrics.EDGES_ADDED) >= graph.getNumEdges());
+            assertTrue(metrics.getNanos(SearchMetrics.FORWARD) > 0);
+            assertTrue(metrics.getNanos(SearchMetrics.BACKWARD) > 0);
+        } finally {
+            SearchMetrics.setCurrent(previous);
+        }
+
+        assertNotSame(metrics, SearchMetrics.current());
+    }
+
+    @Test
+    public void testPc() {
+        DataSet data = simulate();
+
+        SearchMetrics metrics = new SearchMetrics();
+        SearchMetrics previous = SearchMetrics.setCurrent(metrics);
+        IndTestFisherZ test = new IndTestFisherZ(data, 0.01);
+        SearchMetrics.setCurrent(previous);
+
+        PcAll pc = new PcAll(test, null);
+        pc.setMetrics(metrics);
+        pc.search();
+
+        assertTrue(metrics.getCount(SearchMetrics.INDEPENDENCE_TESTS) > 0);
+        assertTrue(metrics.getNanos(SearchMetrics.SKELETON) > 0);
+        assertTrue(metrics.getNanos(SearchMetrics.skeletonDepth(0)) > 0);
+        assertTrue(metrics.getNanos(SearchMetrics.MEEK) > 0);
+
+        Map<String, Double> snapshot = metrics.snapshot();
+        assertTrue(snapshot.containsKey(SearchMetrics.SKELETON + "Ms"));
+    }
+
+    @Test
+    public void testDisabled() {
+        SearchMetrics none = SearchMetrics.current();
+        assertFalse(none.isEnabled());
+        none.count(SearchMetrics.SCORES);
+        assertEquals(0, none.getCount(SearchMetrics.SCORES));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCancel() {
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.count(SearchMetrics.SCORES);
+        metrics.cancel();
+        assertTrue(metrics.isCancelled());
+        metrics.count(SearchMetrics.SCORES);
+    }
+
+    @Test
+    public void testOutput() throws Exception {
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.count(SearchMetrics.INDEPENDENCE_TESTS, 5);
+        metrics.time(SearchMetrics.MEEK, 2000000);
+
+        StringWriter csv = new StringWriter();
+        metrics.writeCsv(csv);
+        assertEquals("name,value\nindependenceTests,5.0\nmeekMs,2.0\n", csv.toString());
+
+        StringWriter json = new StringWriter();
+        metrics.writeJson(json);
+        JSONObject object = new JSONObject(json.toString());
+        assertEquals(5.0, object.getDouble("independenceTests"), 0.0);
+        assertEquals(2.0, object.getDouble("meekMs"), 0.0);
+
+        final int[] reports = new int[1];
+        metrics.startProgress(snapshot -> reports[0]++, 10);
+        Thread.sleep(200);
+        metrics.stopProgress();
+        assertTrue(reports[0] > 0);
+    }
+
+    private DataSet simulate() {
+        RandomUtil.getInstance().setSeed(3929429L);
+        Graph graph = GraphUtils.randomGraph(10, 0, 10, 10, 10, 10, false);
+        LargeScaleSimulation simulation = new LargeScaleSimulation(graph);
+        return simulation.simulateDataFisher(10, 10, 1000, 0.001, false);
+    }
+}